@@ -14,8 +14,9 @@ public class OpenApiConfig {
         return new OpenAPI()
             .components(new Components())
             .info(new Info().title("Widgets API").description(
-                "A web service to work with widgets via HTTP REST API. The service stores only widgets,\n" +
-                    "assuming that all clients work with the same board.\n" +
+                "A web service to work with widgets on boards via HTTP REST API. The service stores only widgets.\n" +
+                    "Boards are spread over the nodes of the cluster, a request for a board of another node is\n" +
+                    "redirected to it.\n" +
                     "A Widget is an object on a plane in a Cartesian coordinate system that has coordinates (X, Y),\n" +
                     "Z-index, width, height, last modification date, and a unique identifier . X, Y, and Z-index are\n" +
                     "integers (may be negative). Width and height are integers > 0.\n" +
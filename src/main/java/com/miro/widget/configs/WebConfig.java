@@ -0,0 +1,83 @@
+package com.miro.widget.configs;
+
+import com.miro.widget.controllers.BoardRoutingInterceptor;
+import com.miro.widget.controllers.RaftLeaderInterceptor;
+import com.miro.widget.controllers.ReplicaInterceptor;
+import com.miro.widget.service.cluster.BoardRouter;
+import com.miro.widget.service.repositories.raft.RaftNode;
+import com.miro.widget.service.repositories.replication.ReplicationFollower;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+    private final BoardRouter boardRouter;
+    private final ReplicationFollower replicationFollower;
+    private final String leaderUrl;
+    private final RaftNode raftNode;
+    private final List<String> raftUrls;
+    private final int streamThreadsCount;
+    private final long streamTimeoutMs;
+
+    @Autowired
+    public WebConfig(
+        BoardRouter boardRouter,
+        @Nullable ReplicationFollower replicationFollower,
+        @Value("${widget.replication.leader-url:http://localhost:8080}") String leaderUrl,
+        @Nullable RaftNode raftNode,
+        @Value("${widget.raft.urls:}") List<String> raftUrls,
+        @Value("${widget.streams.max-threads:16}") int streamThreadsCount,
+        @Value("${widget.streams.timeout-ms:600000}") long streamTimeoutMs
+    ) {
+        this.boardRouter = boardRouter;
+        this.replicationFollower = replicationFollower;
+        this.leaderUrl = leaderUrl;
+        this.raftNode = raftNode;
+        this.raftUrls = raftUrls;
+        this.streamThreadsCount = streamThreadsCount;
+        this.streamTimeoutMs = streamTimeoutMs;
+    }
+
+    // An export holds a thread for as long as it streams, so exports get a bounded pool of their own, and exports
+    // beyond it wait for a thread instead of starting more. Change feeds hold no thread while they wait for changes
+    // and set no timeout on themselves
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamThreadsCount);
+        executor.setMaxPoolSize(streamThreadsCount);
+        executor.setThreadNamePrefix("widget-stream-");
+        executor.setDaemon(true);
+        executor.initialize();
+
+        configurer.setTaskExecutor(executor);
+        configurer.setDefaultTimeout(streamTimeoutMs);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (raftNode != null) {
+            registry.addInterceptor(new RaftLeaderInterceptor(raftNode, raftUrls))
+                .addPathPatterns("/api/v1/widgets", "/api/v1/widgets/**", "/api/v1/widgets:*");
+        }
+
+        // Only the default board is replicated, a replica hands boards over to the leader
+        if (replicationFollower != null) {
+            registry.addInterceptor(new ReplicaInterceptor(replicationFollower, leaderUrl, true))
+                .addPathPatterns("/api/v1/widgets", "/api/v1/widgets/**", "/api/v1/widgets:*");
+            registry.addInterceptor(new ReplicaInterceptor(replicationFollower, leaderUrl, false))
+                .addPathPatterns("/api/v1/boards/**");
+            return;
+        }
+
+        registry.addInterceptor(new BoardRoutingInterceptor(boardRouter)).addPathPatterns("/api/v1/boards/**");
+    }
+}
@@ -0,0 +1,68 @@
+package com.miro.widget.controllers;
+
+import com.miro.widget.service.cluster.BoardRouter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * Redirects requests for boards owned by another node of the cluster to that node. 307 keeps the method and the body,
+ * so writes are repeated on the owner as they are.
+ * <p>
+ * Requests served here are in flight on their board until they complete, streams until the async dispatch which
+ * ends them, so the board is not handed over under them.
+ */
+public class BoardRoutingInterceptor implements HandlerInterceptor {
+    private static final String BOARD_ID_ATTRIBUTE = BoardRoutingInterceptor.class.getName() + ".boardId";
+
+    private final BoardRouter boardRouter;
+
+    public BoardRoutingInterceptor(BoardRouter boardRouter) {
+        this.boardRouter = boardRouter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        @SuppressWarnings("unchecked")
+        var pathVariables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        var boardId = pathVariables == null ? null : pathVariables.get("boardId");
+
+        // The async dispatch of a stream was let in with the request which started it
+        if (boardId == null || request.getAttribute(BOARD_ID_ATTRIBUTE) != null)
+            return true;
+
+        var owner = boardRouter.enter(boardId);
+
+        if (owner == null) {
+            request.setAttribute(BOARD_ID_ATTRIBUTE, boardId);
+            return true;
+        }
+
+        var location = owner + request.getRequestURI();
+
+        if (request.getQueryString() != null)
+            location += "?" + request.getQueryString();
+
+        response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+        response.setHeader(HttpHeaders.LOCATION, location);
+
+        return false;
+    }
+
+    // Not called for a request which goes async until its async dispatch completes
+    @Override
+    public void afterCompletion(
+        HttpServletRequest request, HttpServletResponse response, Object handler, Exception exc) {
+        var boardId = (String) request.getAttribute(BOARD_ID_ATTRIBUTE);
+
+        if (boardId != null) {
+            request.removeAttribute(BOARD_ID_ATTRIBUTE);
+            boardRouter.exit(boardId);
+        }
+    }
+}
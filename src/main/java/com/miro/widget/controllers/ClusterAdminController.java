@@ -0,0 +1,69 @@
+package com.miro.widget.controllers;
+
+import com.miro.widget.service.cluster.BoardRouter;
+import io.swagger.v3.oas.annotations.Hidden;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import result.errors.ValidationError;
+
+import javax.validation.constraints.NotNull;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Replaces the nodes of the cluster. Kept out of the public API and its documentation: a request has to carry the
+ * admin token of the cluster, without a token configured the nodes only come from the configuration, and only the
+ * configured members of the cluster may be among the nodes.
+ */
+@Hidden
+@Validated
+@RestController
+@RequestMapping(path = "internal/v1/cluster/nodes", produces = MediaType.APPLICATION_JSON_VALUE)
+public class ClusterAdminController {
+    private static final String TOKEN_HEADER = "X-Cluster-Token";
+
+    private final BoardRouter boardRouter;
+    private final byte[] adminToken;
+
+    @Autowired
+    public ClusterAdminController(
+        BoardRouter boardRouter,
+        @Value("${widget.cluster.admin-token:}") String adminToken
+    ) {
+        this.boardRouter = boardRouter;
+        this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PutMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> v1SetNodes(
+        @RequestHeader(name = TOKEN_HEADER, required = false) String token,
+        @RequestBody @NotNull List<@NotNull String> nodes
+    ) {
+        if (!isAdmin(token))
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        var setNodesResult = boardRouter.setNodes(nodes);
+
+        if (setNodesResult.hasError(ValidationError.class))
+            return ResponseEntity.badRequest().body(setNodesResult.getError());
+
+        return ResponseEntity.ok(boardRouter.getNodes());
+    }
+
+    // Compared in constant time, so the time of a refusal tells nothing about the token
+    private boolean isAdmin(String token) {
+        return adminToken.length > 0 &&
+            token != null &&
+            MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,37 @@
+package com.miro.widget.controllers;
+
+import com.miro.widget.service.cluster.BoardRouter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping(path = "api/v1/cluster/nodes", produces = MediaType.APPLICATION_JSON_VALUE)
+public class ClusterController {
+    private final BoardRouter boardRouter;
+
+    @Autowired
+    public ClusterController(BoardRouter boardRouter) {
+        this.boardRouter = boardRouter;
+    }
+
+    @GetMapping
+    @Operation(summary = "Returns the nodes of the cluster", description = "Returns base URLs of the nodes boards " +
+        "are spread over. An empty list means that this node serves all boards")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", content = @Content(array = @ArraySchema(schema = @Schema(
+            implementation = String.class))))
+    })
+    public ResponseEntity<?> v1GetNodes() {
+        return ResponseEntity.ok(boardRouter.getNodes());
+    }
+}
@@ -0,0 +1,122 @@
+package com.miro.widget.controllers;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.miro.widget.service.models.V1WidgetColumnsDto;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads widgets to import from newline-delimited JSON, one object with the fields of a create request per line. The
+ * body goes through the parser token by token straight into columns of primitives, so a widget takes 20 bytes of
+ * memory and no objects, and fields are checked on the spot instead of binding every line to a request and running
+ * bean validation on it.
+ */
+final class NdjsonWidgetReader {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int count;
+    private int[] zIndexes = new int[INITIAL_CAPACITY];
+    private int[] centerXs = new int[INITIAL_CAPACITY];
+    private int[] centerYs = new int[INITIAL_CAPACITY];
+    private int[] widths = new int[INITIAL_CAPACITY];
+    private int[] heights = new int[INITIAL_CAPACITY];
+
+    private NdjsonWidgetReader() {
+    }
+
+    // Throws IllegalArgumentException with the line of the first invalid widget
+    static V1WidgetColumnsDto read(JsonParser parser, int maxWidgetsCount) throws IOException {
+        var reader = new NdjsonWidgetReader();
+        JsonToken token;
+
+        while ((token = parser.nextToken()) != null) {
+            if (token != JsonToken.START_OBJECT)
+                throw invalid(parser, "widget is not a JSON object");
+
+            if (reader.count == maxWidgetsCount)
+                throw invalid(parser, String.format("more than %d widgets", maxWidgetsCount));
+
+            reader.readWidget(parser, maxWidgetsCount);
+        }
+
+        return new V1WidgetColumnsDto(
+            reader.count, reader.zIndexes, reader.centerXs, reader.centerYs, reader.widths, reader.heights);
+    }
+
+    private void readWidget(JsonParser parser, int maxWidgetsCount) throws IOException {
+        Integer centerX = null;
+        Integer centerY = null;
+        Integer z = null;
+        Integer width = null;
+        Integer height = null;
+        String field;
+
+        while ((field = parser.nextFieldName()) != null) {
+            parser.nextToken();
+
+            switch (field) {
+                case "centerX":
+                    centerX = readInteger(parser, field);
+                    break;
+                case "centerY":
+                    centerY = readInteger(parser, field);
+                    break;
+                case "z":
+                    z = readInteger(parser, field);
+                    break;
+                case "width":
+                    width = readInteger(parser, field);
+                    break;
+                case "height":
+                    height = readInteger(parser, field);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (centerX == null || centerY == null || width == null || height == null)
+            throw invalid(parser, "centerX, centerY, width, and height are required");
+
+        if (width < 1 || height < 1)
+            throw invalid(parser, "width and height must be greater than or equal to 1");
+
+        if (z != null && z == V1WidgetColumnsDto.NO_Z)
+            throw invalid(parser, "z is too big");
+
+        if (count == zIndexes.length)
+            grow((int) Math.min(2L * count, maxWidgetsCount));
+
+        zIndexes[count] = z == null ? V1WidgetColumnsDto.NO_Z : z;
+        centerXs[count] = centerX;
+        centerYs[count] = centerY;
+        widths[count] = width;
+        heights[count] = height;
+        count++;
+    }
+
+    private void grow(int capacity) {
+        zIndexes = Arrays.copyOf(zIndexes, capacity);
+        centerXs = Arrays.copyOf(centerXs, capacity);
+        centerYs = Arrays.copyOf(centerYs, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+    }
+
+    private static Integer readInteger(JsonParser parser, String field) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL)
+            return null;
+
+        if (parser.currentToken() != JsonToken.VALUE_NUMBER_INT || parser.getNumberType() != JsonParser.NumberType.INT)
+            throw invalid(parser, String.format("%s is not a 32-bit integer", field));
+
+        return parser.getIntValue();
+    }
+
+    private static IllegalArgumentException invalid(JsonParser parser, String message) {
+        return new IllegalArgumentException(
+            String.format("Line %d: %s", parser.getCurrentLocation().getLineNr(), message));
+    }
+}
@@ -0,0 +1,60 @@
+package com.miro.widget.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.miro.widget.service.models.V1WidgetVisitor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+/**
+ * Writes widgets as newline-delimited JSON straight from the values the repository passes, without DTOs or response
+ * models in between. Lines are flat objects with the fields of a create request plus the ID and the update time, so
+ * an export can be imported as it is. The update time is written the same way as in the other responses.
+ */
+final class NdjsonWidgetWriter implements V1WidgetVisitor {
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString Z = new SerializedString("z");
+    private static final SerializableString CENTER_X = new SerializedString("centerX");
+    private static final SerializableString CENTER_Y = new SerializedString("centerY");
+    private static final SerializableString WIDTH = new SerializedString("width");
+    private static final SerializableString HEIGHT = new SerializedString("height");
+    private static final SerializableString UPDATED_AT = new SerializedString("updatedAt");
+
+    private final JsonGenerator generator;
+    private final WidgetJsonFields fields;
+
+    NdjsonWidgetWriter(JsonGenerator generator, ObjectWriter dateTimeWriter) {
+        this.generator = generator;
+        this.fields = new WidgetJsonFields(dateTimeWriter);
+    }
+
+    @Override
+    public void visit(UUID id, int z, int centerX, int centerY, int width, int height, ZonedDateTime updatedAt) {
+        try {
+            generator.writeStartObject();
+            generator.writeFieldName(ID);
+            fields.writeId(generator, id);
+            generator.writeFieldName(Z);
+            generator.writeNumber(z);
+            generator.writeFieldName(CENTER_X);
+            generator.writeNumber(centerX);
+            generator.writeFieldName(CENTER_Y);
+            generator.writeNumber(centerY);
+            generator.writeFieldName(WIDTH);
+            generator.writeNumber(width);
+            generator.writeFieldName(HEIGHT);
+            generator.writeNumber(height);
+            generator.writeFieldName(UPDATED_AT);
+            fields.writeDateTime(generator, updatedAt);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+}
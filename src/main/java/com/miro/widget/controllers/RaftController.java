@@ -0,0 +1,45 @@
+package com.miro.widget.controllers;
+
+import com.miro.widget.controllers.models.responses.V1RaftStatusResponse;
+import com.miro.widget.service.repositories.raft.RaftNode;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@ConditionalOnProperty(prefix = "widget.raft", name = "enabled", havingValue = "true")
+@RequestMapping(path = "api/v1/raft", produces = MediaType.APPLICATION_JSON_VALUE)
+public class RaftController {
+    private final RaftNode raftNode;
+
+    @Autowired
+    public RaftController(RaftNode raftNode) {
+        this.raftNode = raftNode;
+    }
+
+    @GetMapping
+    @Operation(summary = "Returns the Raft status of the node", description = "Returns the role of the node, " +
+        "the current term, the known leader and the last committed write")
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            content = @Content(schema = @Schema(implementation = V1RaftStatusResponse.class)))
+    })
+    public ResponseEntity<?> v1GetStatus() {
+        return ResponseEntity.ok(new V1RaftStatusResponse(
+            raftNode.getId(),
+            raftNode.getRole().name(),
+            raftNode.getCurrentTerm(),
+            raftNode.getLeaderId(),
+            raftNode.getCommitIndex()));
+    }
+}
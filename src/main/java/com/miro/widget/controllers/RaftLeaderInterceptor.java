@@ -0,0 +1,53 @@
+package com.miro.widget.controllers;
+
+import com.miro.widget.service.repositories.raft.RaftNode;
+import com.miro.widget.service.repositories.raft.RaftRole;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.List;
+
+/**
+ * Redirects writes of the replicated widgets to the Raft leader, reads are served by every node. While an election
+ * is going on there is no one to redirect to, so writes are answered with 503 and the client retries.
+ */
+public class RaftLeaderInterceptor implements HandlerInterceptor {
+    private final RaftNode raftNode;
+    private final List<String> urls;
+
+    // URLs of the HTTP API of Raft members, in the order of members
+    public RaftLeaderInterceptor(RaftNode raftNode, List<String> urls) {
+        this.raftNode = raftNode;
+        this.urls = urls;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (HttpMethod.GET.matches(request.getMethod()) || raftNode.getRole() == RaftRole.LEADER)
+            return true;
+
+        var leaderId = raftNode.getLeaderId();
+
+        if (leaderId < 0 || leaderId >= urls.size()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return false;
+        }
+
+        var leaderUrl = urls.get(leaderId);
+        var location = (leaderUrl.endsWith("/") ? leaderUrl.substring(0, leaderUrl.length() - 1) : leaderUrl) +
+            request.getRequestURI();
+
+        if (request.getQueryString() != null)
+            location += "?" + request.getQueryString();
+
+        response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+        response.setHeader(HttpHeaders.LOCATION, location);
+
+        return false;
+    }
+}
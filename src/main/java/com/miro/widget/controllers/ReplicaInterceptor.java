@@ -0,0 +1,69 @@
+package com.miro.widget.controllers;
+
+import com.miro.widget.service.repositories.replication.ReplicationFollower;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Lets a read replica serve reads of the replicated widgets and redirects everything else to the leader. Reads carry
+ * the staleness of the replica, and a client that accepts less staleness than that in X-Max-Staleness-Ms is
+ * redirected to the leader as well.
+ */
+public class ReplicaInterceptor implements HandlerInterceptor {
+    public static final String STALENESS_HEADER = "X-Replication-Staleness-Ms";
+    public static final String MAX_STALENESS_HEADER = "X-Max-Staleness-Ms";
+
+    private final ReplicationFollower replicationFollower;
+    private final String leaderUrl;
+    private final boolean isReplicated;
+
+    // Requests for widgets which aren't replicated always go to the leader
+    public ReplicaInterceptor(ReplicationFollower replicationFollower, String leaderUrl, boolean isReplicated) {
+        this.replicationFollower = replicationFollower;
+        this.leaderUrl = leaderUrl.endsWith("/") ? leaderUrl.substring(0, leaderUrl.length() - 1) : leaderUrl;
+        this.isReplicated = isReplicated;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!isReplicated || !HttpMethod.GET.matches(request.getMethod()))
+            return redirectToLeader(request, response);
+
+        var stalenessMs = replicationFollower.getStalenessMs();
+        var maxStalenessMs = request.getHeader(MAX_STALENESS_HEADER);
+
+        if (stalenessMs < 0)
+            return redirectToLeader(request, response);
+
+        if (maxStalenessMs != null) {
+            try {
+                if (stalenessMs > Long.parseLong(maxStalenessMs))
+                    return redirectToLeader(request, response);
+            } catch (NumberFormatException exc) {
+                response.setStatus(HttpStatus.BAD_REQUEST.value());
+                return false;
+            }
+        }
+
+        response.setHeader(STALENESS_HEADER, String.valueOf(stalenessMs));
+
+        return true;
+    }
+
+    private boolean redirectToLeader(HttpServletRequest request, HttpServletResponse response) {
+        var location = leaderUrl + request.getRequestURI();
+
+        if (request.getQueryString() != null)
+            location += "?" + request.getQueryString();
+
+        response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+        response.setHeader(HttpHeaders.LOCATION, location);
+
+        return false;
+    }
+}
@@ -0,0 +1,43 @@
+package com.miro.widget.controllers;
+
+import com.miro.widget.controllers.models.responses.V1ReplicationStatusResponse;
+import com.miro.widget.service.repositories.replication.ReplicationFollower;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@ConditionalOnProperty(prefix = "widget.replication", name = "role", havingValue = "follower")
+@RequestMapping(path = "api/v1/replication", produces = MediaType.APPLICATION_JSON_VALUE)
+public class ReplicationController {
+    private final ReplicationFollower replicationFollower;
+
+    @Autowired
+    public ReplicationController(ReplicationFollower replicationFollower) {
+        this.replicationFollower = replicationFollower;
+    }
+
+    @GetMapping
+    @Operation(summary = "Returns the replication status of the read replica", description = "Returns whether " +
+        "the replica is connected to the leader, the last leader write applied and the replication lag")
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            content = @Content(schema = @Schema(implementation = V1ReplicationStatusResponse.class)))
+    })
+    public ResponseEntity<?> v1GetStatus() {
+        return ResponseEntity.ok(new V1ReplicationStatusResponse(
+            replicationFollower.isConnected(),
+            replicationFollower.getAppliedSequence(),
+            replicationFollower.getStalenessMs()));
+    }
+}
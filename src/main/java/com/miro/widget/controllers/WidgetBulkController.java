@@ -0,0 +1,251 @@
+package com.miro.widget.controllers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.miro.widget.controllers.models.requests.V1BatchOperationRequest;
+import com.miro.widget.controllers.models.responses.V1BatchItemResponse;
+import com.miro.widget.controllers.models.responses.V1BatchResponse;
+import com.miro.widget.controllers.models.responses.V1ImportResponse;
+import com.miro.widget.controllers.validation.models.ValidationErrorResponse;
+import com.miro.widget.mappers.WebAndBllMapper;
+import com.miro.widget.service.BoardNotFoundException;
+import com.miro.widget.service.BoardRegistry;
+import com.miro.widget.service.WidgetService;
+import com.miro.widget.service.models.V1BatchOperationDto;
+import com.miro.widget.service.models.V1BatchOperationType;
+import com.miro.widget.service.models.V1WidgetColumnsDto;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import result.errors.NotFoundError;
+import result.errors.ValidationError;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Endpoints which work on many widgets of a board at once. They live next to the widget collection as custom methods
+ * ({@code widgets:batch}, {@code widgets:import}, {@code widgets:export}), so that they don't collide with widget
+ * IDs.
+ */
+@Validated
+@RestController
+@RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+public class WidgetBulkController {
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final WebAndBllMapper mapper;
+    private final WidgetService widgetService;
+    private final BoardRegistry boardRegistry;
+    private final JsonFactory jsonFactory;
+    private final ObjectWriter dateTimeWriter;
+    private final int maxImportSize;
+
+    @Autowired
+    public WidgetBulkController(
+        WebAndBllMapper mapper,
+        WidgetService widgetService,
+        BoardRegistry boardRegistry,
+        ObjectMapper objectMapper,
+        @Value("${widget.import.max-widgets:1000000}") int maxImportSize
+    ) {
+        this.mapper = mapper;
+        this.widgetService = widgetService;
+        this.boardRegistry = boardRegistry;
+        this.jsonFactory = objectMapper.getFactory();
+        this.dateTimeWriter = WidgetJsonFields.dateTimeWriterOf(objectMapper);
+        this.maxImportSize = maxImportSize;
+    }
+
+    @PostMapping(
+        path = {"api/v1/widgets:batch", "api/v1/boards/{boardId}/widgets:batch"},
+        consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Applies a batch of widget operations", description = "Takes an ordered list of create, " +
+        "update and delete operations with the same fields as the single widget requests, and applies them as one " +
+        "write: concurrent readers see either none or all of them. Each operation sees the result of the previous " +
+        "ones, so a widget created without Z-index goes above the widgets created before it in the batch. The " +
+        "response reports the status of every operation in the order of the request, a widget which is not found " +
+        "fails its own operation only")
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200", content = @Content(schema = @Schema(implementation = V1BatchResponse.class))),
+        @ApiResponse(
+            responseCode = "400", description = "BadRequest", content = @Content(
+            schema = @Schema(implementation = ValidationErrorResponse.class))),
+        @ApiResponse(responseCode = "500", description = "InternalServerError", content = @Content())
+    })
+    public ResponseEntity<?> v1ApplyBatch(
+        @PathVariable(required = false) @Pattern(regexp = WidgetController.BOARD_ID_PATTERN) String boardId,
+        @RequestBody @NotNull @Size(min = 1, max = MAX_BATCH_SIZE)
+        List<@NotNull @Valid V1BatchOperationRequest> operations) {
+        for (var i = 0; i < operations.size(); i++) {
+            var violation = checkOperation(operations.get(i));
+
+            if (violation != null)
+                return ResponseEntity.badRequest().body(String.format("Operation %d: %s", i, violation));
+        }
+
+        var dtos = operations.stream().map(mapper::v1BatchOperationRequestToDto).collect(toList());
+        var applyBatchResult = openBoard(boardId).v1ApplyBatch(dtos);
+
+        if (applyBatchResult.isFailed())
+            return ResponseEntity.internalServerError().body(applyBatchResult.getError());
+
+        var results = applyBatchResult.getValue();
+        var items = new ArrayList<V1BatchItemResponse>(results.size());
+
+        for (var i = 0; i < results.size(); i++) {
+            var result = results.get(i);
+
+            if (result.hasError(NotFoundError.class)) {
+                items.add(new V1BatchItemResponse(
+                    HttpStatus.NOT_FOUND.value(), null, result.getError().getMessage()));
+            } else if (result.isFailed()) {
+                items.add(new V1BatchItemResponse(
+                    HttpStatus.INTERNAL_SERVER_ERROR.value(), null, result.getError().getMessage()));
+            } else {
+                items.add(new V1BatchItemResponse(
+                    statusOf(dtos.get(i)),
+                    result.getValue() == null ? null : mapper.v1DtoToGetAllItem(result.getValue()),
+                    null));
+            }
+        }
+
+        return ResponseEntity.ok(new V1BatchResponse(items));
+    }
+
+    @PostMapping(
+        path = {"api/v1/widgets:import", "api/v1/boards/{boardId}/widgets:import"},
+        consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Replaces all widgets with imported ones", description = "Takes newline-delimited JSON, " +
+        "one widget per line with the same fields as a create request, and replaces all widgets of the board with " +
+        "them at once. Widgets get new identifiers. Z-indexes must not repeat, widgets without a Z-index go above " +
+        "all the others in the order of the lines. Nothing is imported if any line is invalid. Takes up to " +
+        "widget.import.max-widgets widgets (1 000 000 by default), an import holds about 50 bytes per widget in " +
+        "memory on top of the storage")
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200", content = @Content(schema = @Schema(implementation = V1ImportResponse.class))),
+        @ApiResponse(responseCode = "400", description = "BadRequest", content = @Content()),
+        @ApiResponse(responseCode = "500", description = "InternalServerError", content = @Content())
+    })
+    public ResponseEntity<?> v1Import(
+        @PathVariable(required = false) @Pattern(regexp = WidgetController.BOARD_ID_PATTERN) String boardId,
+        InputStream body) throws IOException {
+        V1WidgetColumnsDto widgets;
+
+        try (var parser = jsonFactory.createParser(body)) {
+            widgets = NdjsonWidgetReader.read(parser, maxImportSize);
+        } catch (JsonProcessingException | IllegalArgumentException exc) {
+            return ResponseEntity.badRequest().body(exc.getMessage());
+        }
+
+        var importResult = openBoard(boardId).v1Import(widgets);
+
+        if (importResult.hasError(ValidationError.class))
+            return ResponseEntity.badRequest().body(importResult.getError());
+
+        if (importResult.isFailed())
+            return ResponseEntity.internalServerError().body(importResult.getError());
+
+        return ResponseEntity.ok(new V1ImportResponse(importResult.getValue()));
+    }
+
+    @GetMapping(
+        path = {"api/v1/widgets:export", "api/v1/boards/{boardId}/widgets:export"},
+        produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Exports all widgets", description = "Streams all widgets of the board sorted by Z-index, " +
+        "from smallest to largest, as newline-delimited JSON with one flat widget per line, which the import takes " +
+        "as it is. Widgets are read slice by slice while the response is written, so writes made during the export " +
+        "may or may not be in it. A failure in the middle of the export breaks the response off")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", content = @Content()),
+        @ApiResponse(responseCode = "400", description = "BadRequest", content = @Content(
+            schema = @Schema(implementation = ValidationErrorResponse.class)))
+    })
+    public ResponseEntity<StreamingResponseBody> v1Export(
+        @PathVariable(required = false) @Pattern(regexp = WidgetController.BOARD_ID_PATTERN) String boardId) {
+        var board = board(boardId);
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(output -> {
+            try (var generator = jsonFactory.createGenerator(output)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+
+                var exportResult = board.v1Export(new NdjsonWidgetWriter(generator, dateTimeWriter));
+
+                if (exportResult.isFailed())
+                    throw new IOException(exportResult.getError().getMessage());
+            } catch (UncheckedIOException exc) {
+                throw exc.getCause();
+            }
+        });
+    }
+
+    // Fields which the single widget requests get from the path or require by themselves
+    private static String checkOperation(V1BatchOperationRequest operation) {
+        var hasFields = operation.getCenterX() != null || operation.getCenterY() != null ||
+            operation.getWidth() != null || operation.getHeight() != null || operation.getZ() != null;
+
+        switch (operation.getOp()) {
+            case "create":
+                if (operation.getId() != null)
+                    return "the server generates the identifier of a created widget";
+
+                if (operation.getCenterX() == null || operation.getCenterY() == null ||
+                    operation.getWidth() == null || operation.getHeight() == null)
+                    return "centerX, centerY, width, and height of a created widget are required";
+
+                return null;
+            case "update":
+                if (operation.getId() == null)
+                    return "id of an updated widget is required";
+
+                return hasFields ? null : "there is nothing to update according to the operation";
+            default:
+                if (operation.getId() == null)
+                    return "id of a deleted widget is required";
+
+                return hasFields ? "a deletion takes the id only" : null;
+        }
+    }
+
+    private static int statusOf(V1BatchOperationDto operation) {
+        return operation.getType() == V1BatchOperationType.CREATE
+            ? HttpStatus.CREATED.value()
+            : HttpStatus.OK.value();
+    }
+
+    // Widgets under api/v1/widgets belong to the default board, other boards are only read once written to
+    private WidgetService board(String boardId) {
+        return boardId == null
+            ? widgetService
+            : boardRegistry.findBoard(boardId).orElseThrow(() -> new BoardNotFoundException(boardId));
+    }
+
+    private WidgetService openBoard(String boardId) {
+        return boardId == null ? widgetService : boardRegistry.openBoard(boardId);
+    }
+}
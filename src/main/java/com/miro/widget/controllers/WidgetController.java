@@ -1,42 +1,76 @@
 package com.miro.widget.controllers;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.miro.widget.controllers.models.requests.*;
 import com.miro.widget.controllers.models.responses.*;
 import com.miro.widget.controllers.validation.models.ValidationErrorResponse;
+import com.miro.widget.controllers.validation.models.Violation;
 import com.miro.widget.mappers.WebAndBllMapper;
+import com.miro.widget.service.BoardNotFoundException;
+import com.miro.widget.service.BoardRegistry;
 import com.miro.widget.service.WidgetService;
+import com.miro.widget.service.models.V1AreaDto;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import result.errors.NotFoundError;
+import result.errors.PreconditionFailedError;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import java.io.IOException;
+import java.util.List;
 import java.util.UUID;
 
 import static java.util.stream.Collectors.toList;
 
 @Validated
 @RestController
-@RequestMapping(path = "api/v1/widgets", produces = MediaType.APPLICATION_JSON_VALUE)
+@RequestMapping(
+    path = {"api/v1/widgets", "api/v1/boards/{boardId}/widgets"}, produces = MediaType.APPLICATION_JSON_VALUE)
 public class WidgetController {
+    // Board IDs name directories of board storages
+    static final String BOARD_ID_PATTERN = "[A-Za-z0-9_-]{1,64}";
+
     private final WebAndBllMapper mapper;
     private final WidgetService widgetService;
+    private final BoardRegistry boardRegistry;
+    private final WidgetJsonCache jsonCache;
+    private final JsonFactory jsonFactory;
+    private final ObjectWriter dateTimeWriter;
 
     @Autowired
-    public WidgetController(WebAndBllMapper mapper, WidgetService widgetService) {
+    public WidgetController(
+        WebAndBllMapper mapper,
+        WidgetService widgetService,
+        BoardRegistry boardRegistry,
+        ObjectMapper objectMapper,
+        @Value("${widget.json-cache.max-bytes:67108864}") long jsonCacheMaxBytes
+    ) {
         this.mapper = mapper;
         this.widgetService = widgetService;
+        this.boardRegistry = boardRegistry;
+        this.jsonCache = new WidgetJsonCache(mapper, objectMapper, jsonCacheMaxBytes);
+        this.jsonFactory = objectMapper.getFactory();
+        this.dateTimeWriter = WidgetJsonFields.dateTimeWriterOf(objectMapper);
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -52,8 +86,10 @@ public class WidgetController {
             schema = @Schema(implementation = ValidationErrorResponse.class))),
         @ApiResponse(responseCode = "500", description = "InternalServerError", content = @Content())
     })
-    public ResponseEntity<?> v1Create(@RequestBody @NotNull @Valid V1CreateWidgetRequest request) {
-        var createWidgetResult = widgetService.v1Create(mapper.v1CreateRequestToDto(request));
+    public ResponseEntity<?> v1Create(
+        @PathVariable(required = false) @Pattern(regexp = BOARD_ID_PATTERN) String boardId,
+        @RequestBody @NotNull @Valid V1CreateWidgetRequest request) {
+        var createWidgetResult = openBoard(boardId).v1Create(mapper.v1CreateRequestToDto(request));
 
         if (createWidgetResult.isFailed())
             return ResponseEntity.internalServerError().body(createWidgetResult.getError());
@@ -69,17 +105,22 @@ public class WidgetController {
     }
 
     @GetMapping(path = "{id}")
-    @Operation(summary = "Returns the widget by its ID", description = "Returns a complete description of the widget")
+    @Operation(summary = "Returns the widget by its ID", description = "Returns a complete description of the " +
+        "widget with a strong ETag, and only 304 Not Modified if the tag matches If-None-Match")
     @ApiResponses(value = {
         @ApiResponse(
             responseCode = "200", content = @Content(schema = @Schema(implementation = V1GetWidgetByIdResponse.class))),
+        @ApiResponse(responseCode = "304", description = "NotModified", content = @Content()),
         @ApiResponse(responseCode = "400", description = "BadRequest", content = @Content(
             schema = @Schema(implementation = ValidationErrorResponse.class))),
         @ApiResponse(responseCode = "404", description = "NotFound", content = @Content()),
         @ApiResponse(responseCode = "500", description = "InternalServerError", content = @Content())
     })
-    public ResponseEntity<?> v1GetById(@PathVariable @NotNull UUID id) {
-        var getWidgetResult = widgetService.v1GetById(id);
+    public ResponseEntity<?> v1GetById(
+        @PathVariable(required = false) @Pattern(regexp = BOARD_ID_PATTERN) String boardId,
+        @PathVariable @NotNull UUID id,
+        WebRequest webRequest) {
+        var getWidgetResult = board(boardId).v1GetById(id);
 
         if (getWidgetResult.hasError(NotFoundError.class))
             return ResponseEntity.notFound().build();
@@ -87,34 +128,164 @@ public class WidgetController {
         if (getWidgetResult.isFailed())
             return ResponseEntity.internalServerError().body(getWidgetResult.getError());
 
-        return ResponseEntity.ok(mapper.v1DtoToGetByIdResponse(getWidgetResult.getValue()));
+        var eTag = WidgetETags.ofWidget(getWidgetResult.getValue());
+
+        // The response is already 304 Not Modified
+        if (webRequest.checkNotModified(eTag))
+            return null;
+
+        return ResponseEntity.ok().eTag(eTag).body(jsonCache.writeWidget(getWidgetResult.getValue()));
     }
 
     @GetMapping
     @Operation(summary = "Returns a list of widgets", description = "Returns a list of all widgets sorted " +
-        "by Z-index, from smallest to largest")
+        "by Z-index, from smallest to largest. If afterZ, beforeZ or cursor is specified, returns a slice of " +
+        "widgets with Z-index strictly between the bounds and a cursor of the next slice instead of a page. A slice " +
+        "bounded only by beforeZ is the one right below it, so its cursor leads further down. Pages and slices " +
+        "come with a strong ETag, and only with 304 Not Modified if the tag matches If-None-Match")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", content = @Content(schema = @Schema(
+            oneOf = {V1GetAllWidgetsResponse.class, V1GetWidgetsSliceResponse.class}))),
+        @ApiResponse(responseCode = "304", description = "NotModified", content = @Content()),
+        @ApiResponse(responseCode = "400", description = "BadRequest", content = @Content(
+            schema = @Schema(implementation = ValidationErrorResponse.class))),
+        @ApiResponse(responseCode = "500", description = "InternalServerError", content = @Content())
+    })
+    public ResponseEntity<?> v1GetRange(
+        @PathVariable(required = false) @Pattern(regexp = BOARD_ID_PATTERN) String boardId,
+        @RequestParam(defaultValue = "1") @Min(1) @Max(Integer.MAX_VALUE) int page,
+        @RequestParam(defaultValue = "10") @Min(1) @Max(500) int size,
+        @RequestParam(required = false) Integer afterZ,
+        @RequestParam(required = false) Integer beforeZ,
+        @RequestParam(required = false) String cursor,
+        WebRequest webRequest,
+        HttpServletResponse response) throws IOException {
+        if (afterZ != null || beforeZ != null || cursor != null)
+            return v1GetSlice(board(boardId), afterZ, beforeZ, cursor, size, webRequest, response);
+
+        var jsonWriter = new WidgetJsonWriter(jsonFactory, dateTimeWriter, size);
+        var visitWidgetsResult = board(boardId).v1VisitRange(page, size, jsonWriter);
+
+        if (visitWidgetsResult.isFailed())
+            return ResponseEntity.internalServerError().body(visitWidgetsResult.getError());
+
+        var totalWidgetsCount = visitWidgetsResult.getValue();
+        var totalPagesCount = (int) (((long) totalWidgetsCount + size - 1) / size);
+        var eTag = WidgetETags.ofPage(totalWidgetsCount, totalPagesCount, jsonWriter.getCount(), jsonWriter.getHash());
+
+        if (webRequest.checkNotModified(eTag))
+            return null;
+
+        // Written straight from the buffer of the writer, the response is complete once the handler returns
+        startJson(response, eTag);
+        jsonWriter.writePage(totalWidgetsCount, totalPagesCount, response);
+
+        return null;
+    }
+
+    @GetMapping(path = "changes")
+    @Operation(summary = "Returns changes since a version of the board", description = "Returns the widgets " +
+        "created, updated, deleted or shifted since the version in the order of the changes, together with the " +
+        "current version to pass next time. Only the recent changes are kept, so for an older or unknown version, " +
+        "or without one, returns all widgets sorted by Z-index at the current version instead. Versions are of the " +
+        "node, not of the cluster")
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            content = @Content(schema = @Schema(implementation = V1GetWidgetChangesResponse.class))),
+        @ApiResponse(responseCode = "400", description = "BadRequest", content = @Content(
+            schema = @Schema(implementation = ValidationErrorResponse.class))),
+        @ApiResponse(responseCode = "500", description = "InternalServerError", content = @Content())
+    })
+    public ResponseEntity<?> v1GetChanges(
+        @PathVariable(required = false) @Pattern(regexp = BOARD_ID_PATTERN) String boardId,
+        @RequestParam(required = false) Long since) {
+        var getChangesResult = board(boardId).v1GetChanges(since);
+
+        if (getChangesResult.isFailed())
+            return ResponseEntity.internalServerError().body(getChangesResult.getError());
+
+        var changes = getChangesResult.getValue();
+
+        return ResponseEntity.ok(new V1GetWidgetChangesResponse(
+            changes.getVersion(),
+            changes.getChanges() == null
+                ? null
+                : changes.getChanges().stream().map(mapper::v1EventToChangeItem).collect(toList()),
+            changes.getWidgets() == null
+                ? null
+                : changes.getWidgets().stream().map(mapper::v1DtoToGetAllItem).collect(toList())));
+    }
+
+    @GetMapping(params = {"x1", "y1", "x2", "y2"})
+    @Operation(summary = "Returns a list of widgets in the area", description = "Returns a list of widgets which " +
+        "intersect the rectangle with corners (x1, y1) and (x2, y2), sorted by Z-index, from smallest to largest. " +
+        "Pages come with a strong ETag, and only with 304 Not Modified if the tag matches If-None-Match")
     @ApiResponses(value = {
         @ApiResponse(
             responseCode = "200", content = @Content(schema = @Schema(implementation = V1GetAllWidgetsResponse.class))),
+        @ApiResponse(responseCode = "304", description = "NotModified", content = @Content()),
         @ApiResponse(responseCode = "400", description = "BadRequest", content = @Content(
             schema = @Schema(implementation = ValidationErrorResponse.class))),
         @ApiResponse(responseCode = "500", description = "InternalServerError", content = @Content())
     })
-    public ResponseEntity<?> v1GetRange(
+    public ResponseEntity<?> v1GetRangeInArea(
+        @PathVariable(required = false) @Pattern(regexp = BOARD_ID_PATTERN) String boardId,
+        @RequestParam int x1,
+        @RequestParam int y1,
+        @RequestParam int x2,
+        @RequestParam int y2,
         @RequestParam(defaultValue = "1") @Min(1) @Max(Integer.MAX_VALUE) int page,
-        @RequestParam(defaultValue = "10") @Min(1) @Max(500) int size) {
-        var getWidgetsResult = widgetService.v1GetRange(page, size);
+        @RequestParam(defaultValue = "10") @Min(1) @Max(500) int size,
+        WebRequest webRequest) {
+        var getWidgetsResult = board(boardId).v1GetRangeInArea(new V1AreaDto(x1, y1, x2, y2), page, size);
 
         if (getWidgetsResult.isFailed())
             return ResponseEntity.internalServerError().body(getWidgetsResult.getError());
 
-        return ResponseEntity.ok(new V1GetAllWidgetsResponse(
+        var eTag = WidgetETags.ofPage(
             getWidgetsResult.getValue().getTotalWidgetsCount(),
             getWidgetsResult.getValue().getTotalPagesCount(),
-            getWidgetsResult.getValue().getWidgets()
-            .stream()
-            .map(mapper::v1DtoToGetAllItem)
-            .collect(toList())));
+            getWidgetsResult.getValue().getWidgets());
+
+        if (webRequest.checkNotModified(eTag))
+            return null;
+
+        return ResponseEntity.ok().eTag(eTag).body(jsonCache.writePage(
+            getWidgetsResult.getValue().getTotalWidgetsCount(),
+            getWidgetsResult.getValue().getTotalPagesCount(),
+            getWidgetsResult.getValue().getWidgets()));
+    }
+
+    @GetMapping(path = "at")
+    @Operation(summary = "Returns the widget at the point", description = "Returns the widget with the highest " +
+        "Z-index whose rectangle contains the point (x, y). If stack is true, also returns all widgets containing " +
+        "the point, from the highest Z-index to the lowest")
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            content = @Content(schema = @Schema(implementation = V1GetWidgetsAtPointResponse.class))),
+        @ApiResponse(responseCode = "400", description = "BadRequest", content = @Content(
+            schema = @Schema(implementation = ValidationErrorResponse.class))),
+        @ApiResponse(responseCode = "404", description = "NotFound", content = @Content()),
+        @ApiResponse(responseCode = "500", description = "InternalServerError", content = @Content())
+    })
+    public ResponseEntity<?> v1GetAtPoint(
+        @PathVariable(required = false) @Pattern(regexp = BOARD_ID_PATTERN) String boardId,
+        @RequestParam int x, @RequestParam int y, @RequestParam(defaultValue = "false") boolean stack) {
+        var getWidgetsResult = board(boardId).v1GetAtPoint(x, y, stack);
+
+        if (getWidgetsResult.isFailed())
+            return ResponseEntity.internalServerError().body(getWidgetsResult.getError());
+
+        if (getWidgetsResult.getValue().isEmpty())
+            return ResponseEntity.notFound().build();
+
+        return ResponseEntity.ok(new V1GetWidgetsAtPointResponse(
+            mapper.v1DtoToGetAllItem(getWidgetsResult.getValue().get(0)),
+            stack
+                ? getWidgetsResult.getValue().stream().map(mapper::v1DtoToGetAllItem).collect(toList())
+                : null));
     }
 
     @PutMapping(path = "{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -122,19 +293,22 @@ public class WidgetController {
         "widget. We cannot change the widget id. All changes to widgets must occur atomically.\n" +
         "That is, if we change the XY coordinates of the widget, then we should not get an\n" +
         "intermediate state during concurrent reading. The rules related to the Z-index are the\n" +
-        "same as when creating a widget")
+        "same as when creating a widget. With If-Match, the widget is updated only if its ETag still\n" +
+        "matches, so that concurrent editors don't overwrite each other's changes unnoticed")
     @ApiResponses(value = {
         @ApiResponse(
             responseCode = "200", content = @Content(schema = @Schema(implementation = V1UpdateWidgetResponse.class))),
         @ApiResponse(responseCode = "400", description = "BadRequest", content = @Content(
             schema = @Schema(implementation = ValidationErrorResponse.class))),
         @ApiResponse(responseCode = "404", description = "NotFound", content = @Content()),
+        @ApiResponse(responseCode = "412", description = "PreconditionFailed", content = @Content()),
         @ApiResponse(responseCode = "500", description = "InternalServerError", content = @Content())
     })
     public ResponseEntity<?> v1Update(
-        @NotNull @PathVariable UUID id, @Valid @NotNull @RequestBody V1UpdateWidgetRequest request) {
-        var updateWidgetResult = widgetService.v1Update(id, mapper.v1UpdateRequestToDto(request));
-
+        @PathVariable(required = false) @Pattern(regexp = BOARD_ID_PATTERN) String boardId,
+        @NotNull @PathVariable UUID id, @Valid @NotNull @RequestBody V1UpdateWidgetRequest request,
+        @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        // Checked before the update, so an empty request doesn't touch the widget or publish a change
         if (request.getCenterX() == null &&
             request.getCenterY() == null &&
             request.getWidth() == null &&
@@ -143,13 +317,23 @@ public class WidgetController {
             return ResponseEntity.badRequest().body("There is nothing to update according to the request");
         }
 
+        var dto = mapper.v1UpdateRequestToDto(request);
+        var updateWidgetResult = ifMatch == null
+            ? board(boardId).v1Update(id, dto)
+            : board(boardId).v1Update(id, dto, widget -> WidgetETags.matchesAny(ifMatch, WidgetETags.ofWidget(widget)));
+
         if (updateWidgetResult.hasError(NotFoundError.class))
             return ResponseEntity.notFound().build();
 
+        if (updateWidgetResult.hasError(PreconditionFailedError.class))
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+
         if (updateWidgetResult.isFailed())
             return ResponseEntity.internalServerError().body(updateWidgetResult.getError());
 
-        return ResponseEntity.ok(mapper.v1DtoToUpdatingResponse(updateWidgetResult.getValue()));
+        return ResponseEntity.ok()
+            .eTag(WidgetETags.ofWidget(updateWidgetResult.getValue()))
+            .body(mapper.v1DtoToUpdatingResponse(updateWidgetResult.getValue()));
     }
 
     @DeleteMapping(path = "{id}")
@@ -161,8 +345,10 @@ public class WidgetController {
         @ApiResponse(responseCode = "404", description = "NotFound", content = @Content()),
         @ApiResponse(responseCode = "500", description = "InternalServerError", content = @Content())
     })
-    public ResponseEntity<?> v1Delete(@NotNull @PathVariable UUID id) {
-        var deleteWidgetResult = widgetService.v1Delete(id);
+    public ResponseEntity<?> v1Delete(
+        @PathVariable(required = false) @Pattern(regexp = BOARD_ID_PATTERN) String boardId,
+        @NotNull @PathVariable UUID id) {
+        var deleteWidgetResult = board(boardId).v1Delete(id);
 
         if (deleteWidgetResult.hasError(NotFoundError.class))
             return ResponseEntity.notFound().build();
@@ -172,4 +358,61 @@ public class WidgetController {
 
         return ResponseEntity.ok().build();
     }
+
+    private ResponseEntity<?> v1GetSlice(
+        WidgetService board, Integer afterZ, Integer beforeZ, String cursor, int size, WebRequest webRequest,
+        HttpServletResponse response) throws IOException {
+        if (cursor != null) {
+            var decodedCursor = V1WidgetsCursor.decode(cursor);
+
+            if (decodedCursor == null || afterZ != null || beforeZ != null)
+                return ResponseEntity.badRequest().body(new ValidationErrorResponse(List.of(
+                    new Violation("cursor", "must be a valid cursor and not be combined with afterZ or beforeZ"))));
+
+            afterZ = decodedCursor.getAfterZ();
+            beforeZ = decodedCursor.getBeforeZ();
+        }
+
+        var jsonWriter = new WidgetJsonWriter(jsonFactory, dateTimeWriter, size);
+        var visitWidgetsResult = board.v1VisitSlice(afterZ, beforeZ, size, jsonWriter);
+
+        if (visitWidgetsResult.isFailed())
+            return ResponseEntity.internalServerError().body(visitWidgetsResult.getError());
+
+        var isLast = visitWidgetsResult.getValue();
+        var eTag = WidgetETags.ofSlice(isLast, jsonWriter.getCount(), jsonWriter.getHash());
+
+        if (webRequest.checkNotModified(eTag))
+            return null;
+
+        String nextCursor = null;
+
+        if (!isLast && jsonWriter.getCount() > 0) {
+            nextCursor = afterZ == null && beforeZ != null
+                ? new V1WidgetsCursor(null, jsonWriter.getFirstZ()).encode()
+                : new V1WidgetsCursor(jsonWriter.getLastZ(), beforeZ).encode();
+        }
+
+        startJson(response, eTag);
+        jsonWriter.writeSlice(nextCursor, response);
+
+        return null;
+    }
+
+    private static void startJson(HttpServletResponse response, String eTag) {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader(HttpHeaders.ETAG, eTag);
+    }
+
+    // Widgets under api/v1/widgets belong to the default board, other boards are only read once written to
+    private WidgetService board(String boardId) {
+        return boardId == null
+            ? widgetService
+            : boardRegistry.findBoard(boardId).orElseThrow(() -> new BoardNotFoundException(boardId));
+    }
+
+    private WidgetService openBoard(String boardId) {
+        return boardId == null ? widgetService : boardRegistry.openBoard(boardId);
+    }
 }
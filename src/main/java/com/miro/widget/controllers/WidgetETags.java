@@ -0,0 +1,102 @@
+package com.miro.widget.controllers;
+
+import com.miro.widget.service.models.V1WidgetDto;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Strong entity tags of widget responses. A tag is a hash of every value the response is made of, so it changes
+ * whenever the body would, and it is computed from the values of the widgets as they come from the service, so a
+ * request which matches it is answered without mapping the widgets.
+ */
+final class WidgetETags {
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private WidgetETags() {
+    }
+
+    static String ofWidget(V1WidgetDto widget) {
+        return format(add(0, widget));
+    }
+
+    static String ofPage(int totalWidgetsCount, int totalPagesCount, List<V1WidgetDto> widgets) {
+        return ofPage(totalWidgetsCount, totalPagesCount, widgets.size(), addAll(0, widgets));
+    }
+
+    // For widgets hashed one by one with add as they pass
+    static String ofPage(int totalWidgetsCount, int totalPagesCount, int widgetsCount, long widgetsHash) {
+        return format(add(add(add(widgetsHash, widgetsCount), totalWidgetsCount), totalPagesCount));
+    }
+
+    // The cursor of the next slice follows from the request and the widgets, except for whether there is one
+    static String ofSlice(boolean isLast, int widgetsCount, long widgetsHash) {
+        return format(add(add(widgetsHash, widgetsCount), isLast ? 1 : 0));
+    }
+
+    static long add(
+        long hash, UUID id, int z, int centerX, int centerY, int width, int height, ZonedDateTime updatedAt) {
+        hash = add(hash, id.getMostSignificantBits());
+        hash = add(hash, id.getLeastSignificantBits());
+        hash = add(hash, z);
+        hash = add(hash, centerX);
+        hash = add(hash, centerY);
+        hash = add(hash, width);
+        hash = add(hash, height);
+        hash = add(hash, updatedAt.toEpochSecond());
+        hash = add(hash, updatedAt.getNano());
+
+        return add(hash, updatedAt.getOffset().getTotalSeconds());
+    }
+
+    // If-Match compares tags strongly, so weak tags never match
+    static boolean matchesAny(String ifMatch, String eTag) {
+        for (var tag : ifMatch.split(",")) {
+            var trimmed = tag.trim();
+
+            if (trimmed.equals("*") || trimmed.equals(eTag))
+                return true;
+        }
+
+        return false;
+    }
+
+    private static long addAll(long hash, List<V1WidgetDto> widgets) {
+        for (var widget : widgets)
+            hash = add(hash, widget);
+
+        return hash;
+    }
+
+    private static long add(long hash, V1WidgetDto widget) {
+        return add(
+            hash,
+            widget.getId(),
+            widget.getZ(),
+            widget.getCoordinates().getCenterX(),
+            widget.getCoordinates().getCenterY(),
+            widget.getSize().getWidth(),
+            widget.getSize().getHeight(),
+            widget.getUpdatedAt());
+    }
+
+    // Order matters, so that swapping two values changes the hash
+    private static long add(long hash, long value) {
+        return Long.rotateLeft(hash ^ mix(value), 31) * MULTIPLIER;
+    }
+
+    private static String format(long hash) {
+        return '"' + Long.toHexString(mix(hash)) + '"';
+    }
+
+    // Finalizer of MurmurHash3, which spreads every bit of the value over the whole hash
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+
+        return value ^ value >>> 33;
+    }
+}
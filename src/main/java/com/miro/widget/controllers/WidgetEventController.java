@@ -0,0 +1,77 @@
+package com.miro.widget.controllers;
+
+import com.miro.widget.service.BoardNotFoundException;
+import com.miro.widget.service.BoardRegistry;
+import com.miro.widget.service.WidgetService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.constraints.Pattern;
+
+@Validated
+@RestController
+public class WidgetEventController {
+    private final WidgetService widgetService;
+    private final BoardRegistry boardRegistry;
+    private final WidgetEventDispatcher eventDispatcher;
+
+    @Autowired
+    public WidgetEventController(
+        WidgetService widgetService,
+        BoardRegistry boardRegistry,
+        WidgetEventDispatcher eventDispatcher
+    ) {
+        this.widgetService = widgetService;
+        this.boardRegistry = boardRegistry;
+        this.eventDispatcher = eventDispatcher;
+    }
+
+    @GetMapping(
+        path = {"api/v1/widgets:events", "api/v1/boards/{boardId}/widgets:events"},
+        produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Streams changes of widgets", description = "Server-Sent Events with the changes of " +
+        "the board: created and updated with the whole widget, deleted with its ID, and shifted when a write makes " +
+        "room at an occupied Z-index. A shifted event with z and id means that the consecutive run of other widgets " +
+        "starting at z moved up by one, and comes before the event of the written widget. Consecutive updates of " +
+        "one widget may arrive as the latest one only. A resync event means that changes were missed or all " +
+        "widgets were replaced, so the widgets have to be read again. Reconnecting with Last-Event-ID continues " +
+        "after that event while it is recent enough. Only writes made through this node are streamed")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE)),
+        @ApiResponse(responseCode = "400", description = "BadRequest", content = @Content())
+    })
+    public DeferredResult<Void> v1Subscribe(
+        @PathVariable(required = false) @Pattern(regexp = WidgetController.BOARD_ID_PATTERN) String boardId,
+        @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId,
+        HttpServletRequest request,
+        HttpServletResponse response) {
+        var subscription = board(boardId).v1Subscribe(lastEventId);
+
+        // The dispatcher writes the events to the response by itself
+        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+
+        return eventDispatcher.subscribe(subscription, request);
+    }
+
+    // Widgets under api/v1/widgets belong to the default board, other boards are only read once written to
+    private WidgetService board(String boardId) {
+        return boardId == null
+            ? widgetService
+            : boardRegistry.findBoard(boardId).orElseThrow(() -> new BoardNotFoundException(boardId));
+    }
+}
@@ -0,0 +1,256 @@
+package com.miro.widget.controllers;
+
+import com.miro.widget.service.events.WidgetEventFeed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends changes of widgets to the subscribers of all boards from a fixed number of threads, so a subscriber holds no
+ * thread while it waits for changes. A feed tells the dispatcher that it has new events, and its subscribers are sent
+ * them, and heartbeats when they are due, by one task at a time, however many events come in meanwhile.
+ * <p>
+ * Responses are written without blocking. A subscriber whose connection doesn't take more is skipped until it does,
+ * and its events wait in the ring of the feed, which resyncs it if it falls behind by more than the ring. So a slow
+ * client holds up neither the threads nor the other subscribers, and holds at most one write of its own in memory.
+ * A subscriber whose connection takes nothing for longer than the stall timeout is dropped.
+ */
+@Component
+public class WidgetEventDispatcher implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(WidgetEventDispatcher.class);
+
+    // An SSE comment
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ConcurrentMap<WidgetEventFeed, Subscribers> feeds = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final long maxStallNanos;
+
+    @Autowired
+    public WidgetEventDispatcher(
+        @Value("${widget.events.dispatcher-threads:2}") int threadsCount,
+        @Value("${widget.events.heartbeat-interval-ms:15000}") long heartbeatIntervalMs,
+        @Value("${widget.events.max-stall-ms:30000}") long maxStallMs
+    ) {
+        this.executor = Executors.newScheduledThreadPool(threadsCount, runnable -> {
+            var thread = new Thread(runnable, "widget-event-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxStallNanos = TimeUnit.MILLISECONDS.toNanos(maxStallMs);
+
+        executor.scheduleWithFixedDelay(() -> feeds.values().forEach(Subscribers::signalHeartbeat),
+            heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Streams the events of the subscription in the response to the request once the handler returns the result,
+    // until the client goes away or stalls. The result never times out
+    public DeferredResult<Void> subscribe(WidgetEventFeed.Subscription subscription, HttpServletRequest request) {
+        var result = new DeferredResult<Void>(0L);
+        var subscriber = new Subscriber(subscription, result);
+
+        result.onCompletion(subscriber::remove);
+        result.onError(exc -> subscriber.remove());
+
+        // The response is only switched to non-blocking writes once the request is asynchronous
+        WebAsyncUtils.getAsyncManager(request).registerDeferredResultInterceptor(Subscriber.class.getName(),
+            new DeferredResultProcessingInterceptor() {
+                @Override
+                public <T> void preProcess(NativeWebRequest webRequest, DeferredResult<T> deferredResult)
+                    throws IOException {
+                    subscriber.open(webRequest.getNativeResponse(HttpServletResponse.class).getOutputStream());
+                }
+            });
+
+        var feed = subscription.getFeed();
+
+        feeds.compute(feed, (key, value) -> {
+            var added = value == null ? new Subscribers() : value;
+            added.members.add(subscriber);
+            return added;
+        });
+
+        feed.setListener(() -> {
+            var current = feeds.get(feed);
+
+            if (current != null)
+                current.signal();
+        });
+
+        return result;
+    }
+
+    @Override
+    public void close() {
+        feeds.clear();
+        executor.shutdownNow();
+    }
+
+    private final class Subscribers {
+        private final Set<Subscriber> members = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger signalsCount = new AtomicInteger();
+        private final AtomicBoolean isHeartbeatDue = new AtomicBoolean();
+
+        private void signal() {
+            if (signalsCount.getAndIncrement() != 0)
+                return;
+
+            try {
+                executor.execute(this::sendEvents);
+            } catch (RejectedExecutionException exc) {
+                log.debug("Events are not sent after the dispatcher is closed");
+            }
+        }
+
+        private void signalHeartbeat() {
+            isHeartbeatDue.set(true);
+            signal();
+        }
+
+        // Only one task per feed runs at a time, signals which come while it runs make it go around once more
+        private void sendEvents() {
+            int signalsSeen;
+
+            do {
+                signalsSeen = signalsCount.get();
+
+                var isHeartbeat = isHeartbeatDue.getAndSet(false);
+
+                members.forEach(subscriber -> subscriber.sendEvents(isHeartbeat));
+            } while (signalsCount.addAndGet(-signalsSeen) != 0);
+        }
+    }
+
+    private final class Subscriber implements WriteListener {
+        private final WidgetEventFeed.Subscription subscription;
+        private final DeferredResult<Void> result;
+        private ServletOutputStream output;
+        private boolean isStarted;
+        // When the connection stopped taking writes, 0 while it takes them
+        private long stalledAt;
+
+        private Subscriber(WidgetEventFeed.Subscription subscription, DeferredResult<Void> result) {
+            this.subscription = subscription;
+            this.result = result;
+        }
+
+        private synchronized void open(ServletOutputStream output) {
+            this.output = output;
+            output.setWriteListener(this);
+        }
+
+        // Called once the listener is set and then every time the connection takes writes again. Sends the headers
+        // right away instead of with the first event, and has the events which came meanwhile sent
+        @Override
+        public void onWritePossible() throws IOException {
+            synchronized (this) {
+                stalledAt = 0;
+
+                if (!isStarted) {
+                    isStarted = true;
+                    output.write(HEARTBEAT);
+                }
+
+                if (!output.isReady())
+                    return;
+
+                output.flush();
+            }
+
+            var subscribers = feeds.get(subscription.getFeed());
+
+            if (subscribers != null)
+                subscribers.signal();
+        }
+
+        @Override
+        public void onError(Throwable exc) {
+            log.debug("Dropped a subscriber to changes of widgets: {}", exc.getMessage());
+            remove();
+        }
+
+        // Only polls the subscription while the connection takes writes, so events of a stalled subscriber stay in
+        // the feed instead of piling up here
+        private synchronized void sendEvents(boolean isHeartbeat) {
+            if (!isStarted || result.isSetOrExpired())
+                return;
+
+            try {
+                if (!output.isReady()) {
+                    if (isStalled())
+                        drop();
+
+                    return;
+                }
+
+                var frames = subscription.poll();
+
+                if (frames.isEmpty() && !isHeartbeat)
+                    return;
+
+                if (frames.isEmpty()) {
+                    output.write(HEARTBEAT);
+                } else {
+                    var bytes = new ByteArrayOutputStream(frames.stream().mapToInt(frame -> frame.length).sum());
+                    frames.forEach(bytes::writeBytes);
+                    output.write(bytes.toByteArray());
+                }
+
+                if (output.isReady())
+                    output.flush();
+            } catch (IOException | RuntimeException exc) {
+                onError(exc);
+                result.setResult(null);
+            }
+        }
+
+        // Notes the time the connection stopped taking writes, and whether that was longer ago than the timeout
+        private boolean isStalled() {
+            var now = System.nanoTime();
+
+            if (stalledAt == 0) {
+                stalledAt = now;
+                return false;
+            }
+
+            return now - stalledAt > maxStallNanos;
+        }
+
+        private void drop() {
+            log.debug("Dropped a subscriber to changes of widgets which took nothing for {} ms",
+                TimeUnit.NANOSECONDS.toMillis(maxStallNanos));
+            remove();
+            result.setResult(null);
+        }
+
+        private void remove() {
+            feeds.computeIfPresent(subscription.getFeed(), (key, value) -> {
+                value.members.remove(this);
+                return value.members.isEmpty() ? null : value;
+            });
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.miro.widget.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.miro.widget.controllers.models.responses.V1GetAllWidgetsItem;
+import com.miro.widget.mappers.WebAndBllMapper;
+import com.miro.widget.service.models.V1WidgetDto;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serialized JSON of widgets, which responses by ID and by area splice together instead of mapping and serializing
+ * every widget they return; pages and slices in Z-order are written by {@link WidgetJsonWriter}. An entry is keyed
+ * by the widget ID and serves only while the widget read has the same values as the one the entry was made of, so a
+ * written widget gets a new entry on its next read and a stale one is never returned. The entry keeps the values
+ * inline rather than the widget, so checking it doesn't chase the pointers of an old widget through memory. Once
+ * entries take more than the memory budget, the ones not read since the clock hand last passed them are evicted.
+ * <p>
+ * The JSON is made by the same object mapper as the other responses, so spliced responses are the same as
+ * serialized ones.
+ */
+final class WidgetJsonCache {
+    // Rough size of an entry besides its JSON: the map node, the key and the entry itself
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final byte[] OBJECT_END = {'}'};
+
+    private final WebAndBllMapper mapper;
+    private final ObjectWriter itemWriter;
+    private final long maxBytes;
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private Iterator<Entry> clockHand;
+
+    WidgetJsonCache(WebAndBllMapper mapper, ObjectMapper objectMapper, long maxBytes) {
+        this.mapper = mapper;
+        this.itemWriter = objectMapper.writerFor(V1GetAllWidgetsItem.class);
+        this.maxBytes = maxBytes;
+    }
+
+    byte[] writeWidget(V1WidgetDto widget) {
+        return get(widget);
+    }
+
+    byte[] writePage(int totalWidgetsCount, int totalPagesCount, List<V1WidgetDto> widgets) {
+        var prefix = String.format(
+            "{\"totalWidgetsCount\":%d,\"totalPagesCount\":%d,\"widgets\":", totalWidgetsCount, totalPagesCount);
+
+        return writeArray(prefix.getBytes(StandardCharsets.US_ASCII), widgets, OBJECT_END);
+    }
+
+    // Looks up all widgets first, so that the response is allocated once at its exact size
+    private byte[] writeArray(byte[] prefix, List<V1WidgetDto> widgets, byte[] suffix) {
+        var jsons = new byte[widgets.size()][];
+        var length = prefix.length + 2 + Math.max(widgets.size() - 1, 0) + suffix.length;
+
+        for (var i = 0; i < jsons.length; i++) {
+            jsons[i] = get(widgets.get(i));
+            length += jsons[i].length;
+        }
+
+        var output = new byte[length];
+        var position = prefix.length;
+
+        System.arraycopy(prefix, 0, output, 0, prefix.length);
+        output[position++] = '[';
+
+        for (var i = 0; i < jsons.length; i++) {
+            if (i > 0)
+                output[position++] = ',';
+
+            System.arraycopy(jsons[i], 0, output, position, jsons[i].length);
+            position += jsons[i].length;
+        }
+
+        output[position++] = ']';
+        System.arraycopy(suffix, 0, output, position, suffix.length);
+
+        return output;
+    }
+
+    private byte[] get(V1WidgetDto widget) {
+        var entry = entries.get(widget.getId());
+
+        if (entry != null && entry.isOf(widget)) {
+            entry.isReferenced = true;
+
+            return entry.json;
+        }
+
+        var json = serialize(itemWriter, mapper.v1DtoToGetAllItem(widget));
+
+        if (maxBytes == 0)
+            return json;
+
+        var replaced = entries.put(widget.getId(), new Entry(widget, json));
+
+        usedBytes.addAndGet(sizeOf(json) - (replaced == null ? 0 : sizeOf(replaced.json)));
+
+        if (usedBytes.get() > maxBytes)
+            evict();
+
+        return json;
+    }
+
+    // Readers which find eviction running go on without waiting, the running one evicts for them
+    private void evict() {
+        if (!evictionLock.tryLock())
+            return;
+
+        try {
+            while (usedBytes.get() > maxBytes) {
+                if (clockHand == null || !clockHand.hasNext())
+                    clockHand = entries.values().iterator();
+
+                if (!clockHand.hasNext())
+                    return;
+
+                var entry = clockHand.next();
+
+                if (entry.isReferenced)
+                    entry.isReferenced = false;
+                else if (entries.remove(entry.id, entry))
+                    usedBytes.addAndGet(-sizeOf(entry.json));
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static byte[] serialize(ObjectWriter writer, Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    private static long sizeOf(byte[] json) {
+        return json.length + ENTRY_OVERHEAD;
+    }
+
+    private static final class Entry {
+        private final UUID id;
+        private final int z;
+        private final int centerX;
+        private final int centerY;
+        private final int width;
+        private final int height;
+        private final long updatedAtSeconds;
+        private final int updatedAtNanos;
+        private final ZoneId updatedAtZone;
+        private final byte[] json;
+        private volatile boolean isReferenced;
+
+        private Entry(V1WidgetDto widget, byte[] json) {
+            this.id = widget.getId();
+            this.z = widget.getZ();
+            this.centerX = widget.getCoordinates().getCenterX();
+            this.centerY = widget.getCoordinates().getCenterY();
+            this.width = widget.getSize().getWidth();
+            this.height = widget.getSize().getHeight();
+            this.updatedAtSeconds = widget.getUpdatedAt().toEpochSecond();
+            this.updatedAtNanos = widget.getUpdatedAt().getNano();
+            this.updatedAtZone = widget.getUpdatedAt().getZone();
+            this.json = json;
+        }
+
+        // The zone is usually the same instance, the system one
+        private boolean isOf(V1WidgetDto widget) {
+            var updatedAt = widget.getUpdatedAt();
+
+            return z == widget.getZ() &&
+                centerX == widget.getCoordinates().getCenterX() &&
+                centerY == widget.getCoordinates().getCenterY() &&
+                width == widget.getSize().getWidth() &&
+                height == widget.getSize().getHeight() &&
+                updatedAtSeconds == updatedAt.toEpochSecond() &&
+                updatedAtNanos == updatedAt.getNano() &&
+                (updatedAtZone == updatedAt.getZone() || updatedAtZone.equals(updatedAt.getZone()));
+        }
+    }
+}
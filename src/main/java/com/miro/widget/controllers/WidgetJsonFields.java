@@ -0,0 +1,147 @@
+package com.miro.widget.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
+/**
+ * Writes the widget fields which would take a string each, the ID and the update time, from ASCII formatted into a
+ * reused buffer instead, which goes out as it is since it takes no escaping. The update time is formatted as
+ * ISO_OFFSET_DATE_TIME, which is how the object mapper writes it by default; a mapper configured to write it
+ * otherwise writes it by itself.
+ */
+final class WidgetJsonFields {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final ZonedDateTime[] DATE_TIME_SAMPLES = {
+        ZonedDateTime.of(2021, 1, 2, 3, 4, 0, 0, ZoneId.of("UTC")),
+        ZonedDateTime.of(2021, 11, 12, 13, 14, 15, 160_000_000, ZoneId.of("Asia/Kolkata"))
+    };
+
+    private final ObjectWriter dateTimeWriter;
+    private final byte[] bytes = new byte[40];
+
+    // Without a writer the update time is always formatted here
+    WidgetJsonFields(ObjectWriter dateTimeWriter) {
+        this.dateTimeWriter = dateTimeWriter;
+    }
+
+    // The writer of the update time, if the mapper doesn't write samples of it the same way as they are formatted here
+    static ObjectWriter dateTimeWriterOf(ObjectMapper objectMapper) {
+        var writer = objectMapper.writerFor(ZonedDateTime.class);
+        var fields = new WidgetJsonFields(null);
+
+        for (var sample : DATE_TIME_SAMPLES) {
+            try {
+                var length = fields.formatDateTime(sample);
+                var formatted = new String(fields.bytes, 0, length, StandardCharsets.US_ASCII);
+
+                if (!writer.writeValueAsString(sample).equals('"' + formatted + '"'))
+                    return writer;
+            } catch (JsonProcessingException exc) {
+                throw new UncheckedIOException(exc);
+            }
+        }
+
+        return null;
+    }
+
+    void writeId(JsonGenerator generator, UUID id) throws IOException {
+        formatHex(id.getMostSignificantBits() >>> 32, 0, 8);
+        bytes[8] = '-';
+        formatHex(id.getMostSignificantBits() >>> 16, 9, 4);
+        bytes[13] = '-';
+        formatHex(id.getMostSignificantBits(), 14, 4);
+        bytes[18] = '-';
+        formatHex(id.getLeastSignificantBits() >>> 48, 19, 4);
+        bytes[23] = '-';
+        formatHex(id.getLeastSignificantBits(), 24, 12);
+
+        generator.writeRawUTF8String(bytes, 0, 36);
+    }
+
+    void writeDateTime(JsonGenerator generator, ZonedDateTime dateTime) throws IOException {
+        if (dateTimeWriter != null) {
+            dateTimeWriter.writeValue(generator, dateTime);
+            return;
+        }
+
+        var length = formatDateTime(dateTime);
+
+        if (length < 0)
+            generator.writeString(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(dateTime));
+        else
+            generator.writeRawUTF8String(bytes, 0, length);
+    }
+
+    private void formatHex(long value, int offset, int length) {
+        for (var i = offset + length - 1; i >= offset; i--, value >>>= 4)
+            bytes[i] = HEX_DIGITS[(int) value & 0xF];
+    }
+
+    // Returns the length, or -1 for a year which takes a sign
+    private int formatDateTime(ZonedDateTime dateTime) {
+        if (dateTime.getYear() < 0 || dateTime.getYear() > 9999)
+            return -1;
+
+        var position = formatDigits(dateTime.getYear(), 0, 4);
+        bytes[position++] = '-';
+        position = formatDigits(dateTime.getMonthValue(), position, 2);
+        bytes[position++] = '-';
+        position = formatDigits(dateTime.getDayOfMonth(), position, 2);
+        bytes[position++] = 'T';
+        position = formatDigits(dateTime.getHour(), position, 2);
+        bytes[position++] = ':';
+        position = formatDigits(dateTime.getMinute(), position, 2);
+        bytes[position++] = ':';
+        position = formatDigits(dateTime.getSecond(), position, 2);
+
+        // The fraction goes without trailing zeros, and without the point if there is nothing left of it
+        var nano = dateTime.getNano();
+
+        if (nano != 0) {
+            var digits = 9;
+
+            for (; nano % 10 == 0; nano /= 10)
+                digits--;
+
+            bytes[position++] = '.';
+            position = formatDigits(nano, position, digits);
+        }
+
+        var offset = dateTime.getOffset().getTotalSeconds();
+
+        if (offset == 0) {
+            bytes[position++] = 'Z';
+            return position;
+        }
+
+        bytes[position++] = (byte) (offset < 0 ? '-' : '+');
+        offset = Math.abs(offset);
+        position = formatDigits(offset / 3600, position, 2);
+        bytes[position++] = ':';
+        position = formatDigits(offset / 60 % 60, position, 2);
+
+        if (offset % 60 != 0) {
+            bytes[position++] = ':';
+            position = formatDigits(offset % 60, position, 2);
+        }
+
+        return position;
+    }
+
+    private int formatDigits(int value, int offset, int length) {
+        for (var i = offset + length - 1; i >= offset; i--, value /= 10)
+            bytes[i] = (byte) ('0' + value % 10);
+
+        return offset + length;
+    }
+}
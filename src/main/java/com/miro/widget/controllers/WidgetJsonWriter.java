@@ -0,0 +1,169 @@
+package com.miro.widget.controllers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.miro.widget.service.models.V1WidgetVisitor;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+/**
+ * Writes widgets as the repository passes them straight into the JSON array of a page or a slice response, without
+ * making DTOs and response items of them and serializing those. Fields are written one by one in the order of
+ * {@link com.miro.widget.controllers.models.responses.V1GetAllWidgetsItem}, so the response is the same as a
+ * serialized one.
+ * <p>
+ * The JSON goes into a buffer of the request thread, which is sized for the page up front and kept for the next
+ * requests, and from there straight into the response. So a widget costs no allocations, only a page does: the
+ * generator, and the prefix and the suffix of the response.
+ * <p>
+ * Passing widgets also hash them for the ETag and keep the Z-indexes of the first and the last one for the cursor of
+ * the next slice.
+ */
+final class WidgetJsonWriter implements V1WidgetVisitor {
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString Z = new SerializedString("z");
+    private static final SerializableString COORDINATES = new SerializedString("coordinates");
+    private static final SerializableString CENTER_X = new SerializedString("centerX");
+    private static final SerializableString CENTER_Y = new SerializedString("centerY");
+    private static final SerializableString SIZE = new SerializedString("size");
+    private static final SerializableString WIDTH = new SerializedString("width");
+    private static final SerializableString HEIGHT = new SerializedString("height");
+    private static final SerializableString UPDATED_AT = new SerializedString("updatedAt");
+    private static final byte[] WIDGETS_FIELD = "{\"widgets\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEXT_CURSOR_FIELD = ",\"nextCursor\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL_CURSOR = "null}".getBytes(StandardCharsets.US_ASCII);
+    // Longer than any widget with an update time formatted by WidgetJsonFields, a widget written by a differently
+    // configured mapper may take more and have the buffer grow
+    private static final int MAX_WIDGET_LENGTH = 256;
+    private static final ThreadLocal<PageBuffer> BUFFERS = ThreadLocal.withInitial(PageBuffer::new);
+
+    private final PageBuffer buffer;
+    private final JsonGenerator generator;
+    private final WidgetJsonFields fields;
+    private int count;
+    private int firstZ;
+    private int lastZ;
+    private long hash;
+
+    WidgetJsonWriter(JsonFactory jsonFactory, ObjectWriter dateTimeWriter, int maxWidgetsCount) {
+        this.buffer = BUFFERS.get();
+        buffer.reset(maxWidgetsCount * MAX_WIDGET_LENGTH);
+
+        try {
+            this.generator = jsonFactory.createGenerator(buffer);
+            this.fields = new WidgetJsonFields(dateTimeWriter);
+
+            generator.writeStartArray();
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    @Override
+    public void visit(UUID id, int z, int centerX, int centerY, int width, int height, ZonedDateTime updatedAt) {
+        try {
+            generator.writeStartObject();
+            generator.writeFieldName(ID);
+            fields.writeId(generator, id);
+            generator.writeFieldName(Z);
+            generator.writeNumber(z);
+            generator.writeFieldName(COORDINATES);
+            generator.writeStartObject();
+            generator.writeFieldName(CENTER_X);
+            generator.writeNumber(centerX);
+            generator.writeFieldName(CENTER_Y);
+            generator.writeNumber(centerY);
+            generator.writeEndObject();
+            generator.writeFieldName(SIZE);
+            generator.writeStartObject();
+            generator.writeFieldName(WIDTH);
+            generator.writeNumber(width);
+            generator.writeFieldName(HEIGHT);
+            generator.writeNumber(height);
+            generator.writeEndObject();
+            generator.writeFieldName(UPDATED_AT);
+            fields.writeDateTime(generator, updatedAt);
+            generator.writeEndObject();
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+
+        if (count++ == 0)
+            firstZ = z;
+
+        lastZ = z;
+        hash = WidgetETags.add(hash, id, z, centerX, centerY, width, height, updatedAt);
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int getFirstZ() {
+        return firstZ;
+    }
+
+    int getLastZ() {
+        return lastZ;
+    }
+
+    long getHash() {
+        return hash;
+    }
+
+    void writePage(int totalWidgetsCount, int totalPagesCount, HttpServletResponse response) throws IOException {
+        var prefix = String.format(
+            "{\"totalWidgetsCount\":%d,\"totalPagesCount\":%d,\"widgets\":", totalWidgetsCount, totalPagesCount);
+
+        write(prefix.getBytes(StandardCharsets.US_ASCII), new byte[] {'}'}, response);
+    }
+
+    // Cursors are URL-safe Base64, which takes no escaping
+    void writeSlice(String nextCursor, HttpServletResponse response) throws IOException {
+        var cursor = nextCursor == null
+            ? NULL_CURSOR
+            : ('"' + nextCursor + "\"}").getBytes(StandardCharsets.US_ASCII);
+        var suffix = new byte[NEXT_CURSOR_FIELD.length + cursor.length];
+
+        System.arraycopy(NEXT_CURSOR_FIELD, 0, suffix, 0, NEXT_CURSOR_FIELD.length);
+        System.arraycopy(cursor, 0, suffix, NEXT_CURSOR_FIELD.length, cursor.length);
+
+        write(WIDGETS_FIELD, suffix, response);
+    }
+
+    private void write(byte[] prefix, byte[] suffix, HttpServletResponse response) throws IOException {
+        generator.writeEndArray();
+        generator.close();
+
+        response.setContentLength(prefix.length + buffer.size() + suffix.length);
+
+        var output = response.getOutputStream();
+
+        output.write(prefix);
+        buffer.writeTo(output);
+        output.write(suffix);
+    }
+
+    // Keeps the largest array the thread has needed, which is bounded by the largest page size the API allows
+    private static final class PageBuffer extends ByteArrayOutputStream {
+        private PageBuffer() {
+            super(0);
+        }
+
+        private void reset(int capacity) {
+            if (buf.length < capacity)
+                buf = new byte[capacity];
+
+            reset();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.miro.widget.controllers.models.requests;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import java.util.UUID;
+
+@Value
+public class V1BatchOperationRequest {
+    @NotNull
+    @Pattern(regexp = "create|update|delete")
+    @Schema(
+        name = "op",
+        example = "create",
+        description = "operation: create, update or delete")
+    String op;
+
+    @Schema(
+        name = "id",
+        example = "2ae26a87-cc91-4ac2-9948-f788cb10c2d8",
+        description = "ID of the widget to update or delete")
+    UUID id;
+
+    @Min(Integer.MIN_VALUE)
+    @Max(Integer.MAX_VALUE)
+    @Schema(
+        name = "centerX",
+        example = "1",
+        description = "X coordinate of the center of the widget in a Cartesian coordinate system")
+    Integer centerX;
+
+    @Min(Integer.MIN_VALUE)
+    @Max(Integer.MAX_VALUE)
+    @Schema(
+        name = "centerY",
+        example = "-1",
+        description = "Y coordinate of the center of the widget in a Cartesian coordinate system")
+    Integer centerY;
+
+    @Min(Integer.MIN_VALUE)
+    @Max(Integer.MAX_VALUE - 1)
+    @Schema(
+        name = "z",
+        example = "10",
+        description = "unique sequence common to all widgets that determines the order of widgets " +
+            "(regardless of their coordinates)")
+    Integer z;
+
+    @Min(1)
+    @Max(Integer.MAX_VALUE)
+    @Schema(
+        name = "width",
+        example = "100",
+        description = "width of the widget")
+    Integer width;
+
+    @Min(1)
+    @Max(Integer.MAX_VALUE)
+    @Schema(
+        name = "height",
+        example = "200",
+        description = "height of the widget")
+    Integer height;
+}
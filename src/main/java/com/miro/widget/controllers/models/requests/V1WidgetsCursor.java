@@ -0,0 +1,38 @@
+package com.miro.widget.controllers.models.requests;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+@Value
+public class V1WidgetsCursor {
+    Integer afterZ;
+
+    Integer beforeZ;
+
+    public String encode() {
+        var value = String.format("%s:%s", afterZ == null ? "" : afterZ, beforeZ == null ? "" : beforeZ);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static V1WidgetsCursor decode(String cursor) {
+        try {
+            var value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            var separatorIndex = value.indexOf(':');
+
+            if (separatorIndex == -1)
+                return null;
+
+            var afterZ = value.substring(0, separatorIndex);
+            var beforeZ = value.substring(separatorIndex + 1);
+
+            return new V1WidgetsCursor(
+                afterZ.isEmpty() ? null : Integer.valueOf(afterZ),
+                beforeZ.isEmpty() ? null : Integer.valueOf(beforeZ));
+        } catch (IllegalArgumentException exc) {
+            return null;
+        }
+    }
+}
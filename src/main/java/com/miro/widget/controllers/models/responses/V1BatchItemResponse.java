@@ -0,0 +1,22 @@
+package com.miro.widget.controllers.models.responses;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import javax.validation.constraints.NotNull;
+
+@Value
+public class V1BatchItemResponse {
+    @NotNull
+    @Schema(
+        name = "status",
+        example = "201",
+        description = "HTTP status the operation would have on its own")
+    Integer status;
+
+    @Schema(name = "widget", description = "created or updated widget, absent for a deletion or a failure")
+    V1GetAllWidgetsItem widget;
+
+    @Schema(name = "error", example = "Widget with id '...' not found", description = "reason of a failure")
+    String error;
+}
@@ -0,0 +1,13 @@
+package com.miro.widget.controllers.models.responses;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import javax.validation.constraints.NotNull;
+
+@Value
+public class V1BatchResponse {
+    @NotNull
+    @Schema(name = "results", description = "results of the operations in the order of the request")
+    Iterable<V1BatchItemResponse> results;
+}
@@ -0,0 +1,28 @@
+package com.miro.widget.controllers.models.responses;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import javax.validation.constraints.NotNull;
+
+@Value
+public class V1GetWidgetChangesResponse {
+    @NotNull
+    @Schema(
+        name = "version",
+        example = "1700000000000000042",
+        description = "current version of the board, to ask for the changes since it next time")
+    Long version;
+
+    @Schema(
+        name = "changes",
+        description = "changes since the requested version in the order they were made, absent when all widgets are " +
+            "returned instead")
+    Iterable<V1WidgetChangeItem> changes;
+
+    @Schema(
+        name = "widgets",
+        description = "all widgets sorted by Z-index, returned when the changes since the requested version are no " +
+            "longer kept or no version was requested")
+    Iterable<V1GetAllWidgetsItem> widgets;
+}
@@ -0,0 +1,18 @@
+package com.miro.widget.controllers.models.responses;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import javax.validation.constraints.NotNull;
+
+@Value
+public class V1GetWidgetsAtPointResponse {
+    @NotNull
+    @Schema(name = "topmost", description = "widget with the highest Z-index containing the point")
+    V1GetAllWidgetsItem topmost;
+
+    @Schema(
+        name = "stack",
+        description = "all widgets containing the point, from the highest Z-index to the lowest, if requested")
+    Iterable<V1GetAllWidgetsItem> stack;
+}
@@ -0,0 +1,19 @@
+package com.miro.widget.controllers.models.responses;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import javax.validation.constraints.NotNull;
+
+@Value
+public class V1GetWidgetsSliceResponse {
+    @NotNull
+    @Schema(name = "widgets", description = "slice of widgets sorted by Z-index")
+    Iterable<V1GetAllWidgetsItem> widgets;
+
+    @Schema(
+        name = "nextCursor",
+        example = "MTA6",
+        description = "opaque cursor of the next slice, absent when there are no more widgets")
+    String nextCursor;
+}
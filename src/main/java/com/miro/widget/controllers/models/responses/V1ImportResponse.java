@@ -0,0 +1,13 @@
+package com.miro.widget.controllers.models.responses;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import javax.validation.constraints.NotNull;
+
+@Value
+public class V1ImportResponse {
+    @NotNull
+    @Schema(name = "importedCount", example = "1000000", description = "number of imported widgets")
+    Integer importedCount;
+}
@@ -0,0 +1,22 @@
+package com.miro.widget.controllers.models.responses;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+@Value
+public class V1RaftStatusResponse {
+    @Schema(name = "id", example = "0", description = "index of the node in the Raft members")
+    int id;
+
+    @Schema(name = "role", example = "LEADER", description = "FOLLOWER, CANDIDATE or LEADER")
+    String role;
+
+    @Schema(name = "term", example = "3")
+    long term;
+
+    @Schema(name = "leaderId", example = "0", description = "index of the leader, -1 while it is unknown")
+    int leaderId;
+
+    @Schema(name = "commitIndex", example = "1024", description = "index of the last committed write")
+    int commitIndex;
+}
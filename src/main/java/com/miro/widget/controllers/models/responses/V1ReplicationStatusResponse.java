@@ -0,0 +1,19 @@
+package com.miro.widget.controllers.models.responses;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+@Value
+public class V1ReplicationStatusResponse {
+    @Schema(name = "connected", description = "whether the replica is connected to the leader")
+    boolean connected;
+
+    @Schema(name = "appliedSequence", example = "1024",
+        description = "sequence number of the last leader write applied here, -1 before the first state arrives")
+    long appliedSequence;
+
+    @Schema(name = "stalenessMs", example = "12",
+        description = "replication lag: milliseconds since the leader moment up to which every write is " +
+            "applied here, -1 before the first state arrives")
+    long stalenessMs;
+}
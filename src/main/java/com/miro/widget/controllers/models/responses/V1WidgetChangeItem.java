@@ -0,0 +1,31 @@
+package com.miro.widget.controllers.models.responses;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import javax.validation.constraints.NotNull;
+import java.util.UUID;
+
+@Value
+public class V1WidgetChangeItem {
+    @NotNull
+    @Schema(name = "version", example = "1700000000000000042", description = "version of the board after the change")
+    Long version;
+
+    @NotNull
+    @Schema(
+        name = "type",
+        example = "updated",
+        description = "created, updated, deleted, shifted (other widgets in the consecutive run of Z-indexes " +
+            "starting at z moved up by one to make room for the widget) or resync (all widgets were replaced)")
+    String type;
+
+    @Schema(name = "id", example = "2ae26a87-cc91-4ac2-9948-f788cb10c2d8", description = "ID of the changed widget")
+    UUID id;
+
+    @Schema(name = "widget", description = "created or updated widget")
+    V1GetAllWidgetsItem widget;
+
+    @Schema(name = "z", example = "10", description = "Z-index the shifted run starts at")
+    Integer z;
+}
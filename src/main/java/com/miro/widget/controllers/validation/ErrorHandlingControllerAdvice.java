@@ -2,6 +2,8 @@ package com.miro.widget.controllers.validation;
 
 import com.miro.widget.controllers.validation.models.ValidationErrorResponse;
 import com.miro.widget.controllers.validation.models.Violation;
+import com.miro.widget.service.BoardNotFoundException;
+import com.miro.widget.service.TooManyOpenBoardsException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -11,6 +13,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
+import result.errors.Error;
 
 import javax.validation.ConstraintViolationException;
 import java.util.List;
@@ -34,6 +37,16 @@ public class ErrorHandlingControllerAdvice
         return new ResponseEntity<>(new ValidationErrorResponse(violations), HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(BoardNotFoundException.class)
+    public ResponseEntity<Object> onBoardNotFoundException(BoardNotFoundException e) {
+        return ResponseEntity.notFound().build();
+    }
+
+    @ExceptionHandler(TooManyOpenBoardsException.class)
+    public ResponseEntity<Object> onTooManyOpenBoardsException(TooManyOpenBoardsException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new Error(e.getMessage()));
+    }
+
     @Override
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     protected ResponseEntity<Object> handleMethodArgumentNotValid(
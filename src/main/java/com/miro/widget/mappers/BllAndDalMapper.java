@@ -4,6 +4,7 @@ import com.miro.widget.service.models.V1CoordinatesDto;
 import com.miro.widget.service.models.V1SizeDto;
 import com.miro.widget.service.models.V1WidgetDto;
 import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
+import com.miro.widget.service.repositories.models.V1UpdateWidgetModel;
 import com.miro.widget.service.repositories.models.V1WidgetEntity;
 import org.mapstruct.Mapper;
 
@@ -12,10 +13,10 @@ import java.util.UUID;
 
 @Mapper(componentModel = "spring")
 public abstract class BllAndDalMapper {
-    public V1WidgetDto v1EntityToDto(V1WidgetEntity entity) {
+    public V1WidgetDto v1EntityToDto(V1WidgetEntity entity, int z) {
         return new V1WidgetDto(
             entity.getId(),
-            entity.getZ(),
+            z,
             new V1CoordinatesDto(
                 entity.getCenterX(),
                 entity.getCenterY()
@@ -30,7 +31,6 @@ public abstract class BllAndDalMapper {
     public V1WidgetEntity v1InsertModelToEntity(V1InsertWidgetModel model) {
         return new V1WidgetEntity(
             UUID.randomUUID(),
-            model.getZ(),
             model.getCenterX(),
             model.getCenterY(),
             model.getWidth(),
@@ -38,4 +38,15 @@ public abstract class BllAndDalMapper {
             ZonedDateTime.now()
         );
     }
+
+    public V1WidgetEntity v1UpdateModelToEntity(V1WidgetEntity entity, V1UpdateWidgetModel model) {
+        return new V1WidgetEntity(
+            entity.getId(),
+            model.getCenterX() != null ? model.getCenterX() : entity.getCenterX(),
+            model.getCenterY() != null ? model.getCenterY() : entity.getCenterY(),
+            model.getWidth() != null ? model.getWidth() : entity.getWidth(),
+            model.getHeight() != null ? model.getHeight() : entity.getHeight(),
+            ZonedDateTime.now()
+        );
+    }
 }
@@ -2,9 +2,12 @@ package com.miro.widget.mappers;
 
 import com.miro.widget.controllers.models.requests.*;
 import com.miro.widget.controllers.models.responses.*;
+import com.miro.widget.service.events.WidgetEvent;
 import com.miro.widget.service.models.*;
 import org.mapstruct.Mapper;
 
+import java.util.Locale;
+
 @Mapper(componentModel = "spring")
 public abstract class WebAndBllMapper {
     public V1CreateWidgetDto v1CreateRequestToDto(V1CreateWidgetRequest request) {
@@ -27,6 +30,29 @@ public abstract class WebAndBllMapper {
         );
     }
 
+    public V1BatchOperationDto v1BatchOperationRequestToDto(V1BatchOperationRequest request) {
+        switch (request.getOp()) {
+            case "create":
+                return V1BatchOperationDto.create(new V1CreateWidgetDto(
+                    request.getCenterX(),
+                    request.getCenterY(),
+                    request.getZ(),
+                    request.getWidth(),
+                    request.getHeight()
+                ));
+            case "update":
+                return V1BatchOperationDto.update(request.getId(), new V1UpdateWidgetDto(
+                    request.getCenterX(),
+                    request.getCenterY(),
+                    request.getZ(),
+                    request.getWidth(),
+                    request.getHeight()
+                ));
+            default:
+                return V1BatchOperationDto.delete(request.getId());
+        }
+    }
+
     public V1CreateWidgetResponse v1DtoToCreationResponse(V1WidgetDto dto) {
         return new V1CreateWidgetResponse(
             dto.getId(),
@@ -90,4 +116,14 @@ public abstract class WebAndBllMapper {
             dto.getUpdatedAt()
         );
     }
+
+    public V1WidgetChangeItem v1EventToChangeItem(WidgetEvent event) {
+        return new V1WidgetChangeItem(
+            event.getVersion(),
+            event.getType().name().toLowerCase(Locale.ROOT),
+            event.getWidgetId(),
+            event.getWidget() == null ? null : v1DtoToGetAllItem(event.getWidget()),
+            event.getZ()
+        );
+    }
 }
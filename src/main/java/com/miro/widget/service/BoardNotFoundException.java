@@ -0,0 +1,7 @@
+package com.miro.widget.service;
+
+public class BoardNotFoundException extends RuntimeException {
+    public BoardNotFoundException(String boardId) {
+        super(String.format("Board '%s' not found", boardId));
+    }
+}
@@ -0,0 +1,202 @@
+package com.miro.widget.service;
+
+import com.miro.widget.service.repositories.WidgetRepositoryFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Boards besides the default one. Every board has its own storage, Z-index sequence and lock, so writes to different
+ * boards run in parallel and a busy board doesn't hold up the others.
+ * <p>
+ * A board is opened by the first write to it, which also restores it from its write-ahead log if there is one. Reads
+ * never open a board which has nothing stored, so requests for unknown boards cost nothing. An open board with a
+ * write-ahead log holds files and threads, so there is a limit on open boards: boards which keep their widgets in
+ * their own storage are closed once idle, or to make room for another board, and opened again on the next access.
+ * Boards without such storage stay open, and no board is opened beyond the limit.
+ * <p>
+ * Requests routed to this node are counted in flight on their board from {@link #enter} to {@link #exit}. Boards with
+ * requests in flight are never closed as idle or to make room, and a handover waits for them to finish first, so a
+ * request never works on a board closed under it.
+ */
+@Service
+public class BoardRegistry implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(BoardRegistry.class);
+
+    private static final long AWAIT_REQUESTS_INTERVAL_MS = 10;
+
+    private final ConcurrentMap<String, Board> boards = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> requestCounts = new ConcurrentHashMap<>();
+    private final WidgetRepositoryFactory repositoryFactory;
+    private final int maxOpenBoards;
+    private final long idleTimeoutNanos;
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public BoardRegistry(
+        WidgetRepositoryFactory repositoryFactory,
+        @Value("${widget.boards.max-open:256}") int maxOpenBoards,
+        @Value("${widget.boards.idle-timeout-ms:600000}") long idleTimeoutMs
+    ) {
+        this.repositoryFactory = repositoryFactory;
+        this.maxOpenBoards = maxOpenBoards;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "widget-board-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (idleTimeoutMs > 0 && repositoryFactory.isStored()) {
+            var intervalMs = Math.max(idleTimeoutMs / 2, 1);
+            scheduler.scheduleWithFixedDelay(this::closeIdleBoards, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Opens the board for a write, creating it if it doesn't exist
+    public WidgetService openBoard(String boardId) {
+        var board = boards.get(boardId);
+
+        if (board == null)
+            board = open(boardId);
+
+        return board.use();
+    }
+
+    // Empty if the board was never written to
+    public Optional<WidgetService> findBoard(String boardId) {
+        var board = boards.get(boardId);
+
+        if (board == null) {
+            if (!repositoryFactory.exists(boardId))
+                return Optional.empty();
+
+            board = open(boardId);
+        }
+
+        return Optional.of(board.use());
+    }
+
+    // Counted before the board is looked up, so a board closed as unused is never the one a request gets
+    public void enter(String boardId) {
+        requestCounts.merge(boardId, 1, Integer::sum);
+    }
+
+    public void exit(String boardId) {
+        requestCounts.computeIfPresent(boardId, (id, count) -> count == 1 ? null : count - 1);
+    }
+
+    // False if requests on some of the boards are still in flight after the timeout
+    public boolean awaitRequests(Predicate<String> boardIds, long timeoutMs) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        while (requestCounts.keySet().stream().anyMatch(boardIds)) {
+            if (System.nanoTime() - deadline >= 0)
+                return false;
+
+            Thread.sleep(AWAIT_REQUESTS_INTERVAL_MS);
+        }
+
+        return true;
+    }
+
+    public Set<String> getOpenBoardIds() {
+        return Set.copyOf(boards.keySet());
+    }
+
+    // The next access opens the board again from its storage
+    public synchronized void closeBoard(String boardId) {
+        if (boards.remove(boardId) != null)
+            repositoryFactory.close(boardId);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private synchronized Board open(String boardId) {
+        var board = boards.get(boardId);
+
+        if (board != null)
+            return board;
+
+        if (boards.size() >= maxOpenBoards && !closeLeastRecentlyUsedBoard())
+            throw new TooManyOpenBoardsException(maxOpenBoards);
+
+        board = new Board(new WidgetServiceImpl(repositoryFactory.create(boardId)));
+        boards.put(boardId, board);
+
+        return board;
+    }
+
+    private boolean closeLeastRecentlyUsedBoard() {
+        if (!repositoryFactory.isStored())
+            return false;
+
+        var now = System.nanoTime();
+        var boardIds = boards.entrySet().stream()
+            .sorted(Comparator.comparingLong(entry -> entry.getValue().usedAt - now))
+            .map(Map.Entry::getKey)
+            .collect(toList());
+
+        return boardIds.stream().anyMatch(this::closeUnusedBoard);
+    }
+
+    private synchronized void closeIdleBoards() {
+        var now = System.nanoTime();
+
+        boards.forEach((boardId, board) -> {
+            if (now - board.usedAt > idleTimeoutNanos && closeUnusedBoard(boardId)) {
+                log.info("Closed board '{}' idle for over {} ms", boardId,
+                    TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos));
+            }
+        });
+    }
+
+    // The board is taken out before its requests are checked, so a request entering afterwards opens it again
+    private boolean closeUnusedBoard(String boardId) {
+        var board = boards.remove(boardId);
+
+        if (board == null)
+            return false;
+
+        if (requestCounts.containsKey(boardId)) {
+            boards.put(boardId, board);
+            return false;
+        }
+
+        repositoryFactory.close(boardId);
+
+        return true;
+    }
+
+    private static final class Board {
+        private final WidgetService widgetService;
+        private volatile long usedAt = System.nanoTime();
+
+        private Board(WidgetService widgetService) {
+            this.widgetService = widgetService;
+        }
+
+        private WidgetService use() {
+            usedAt = System.nanoTime();
+            return widgetService;
+        }
+    }
+}
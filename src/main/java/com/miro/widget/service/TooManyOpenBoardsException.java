@@ -0,0 +1,8 @@
+package com.miro.widget.service;
+
+public class TooManyOpenBoardsException extends RuntimeException {
+    public TooManyOpenBoardsException(int maxOpenBoards) {
+        super(String.format("Failed to open board: all %d boards are open and none of them can be closed",
+            maxOpenBoards));
+    }
+}
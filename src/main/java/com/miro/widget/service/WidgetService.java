@@ -1,10 +1,14 @@
 package com.miro.widget.service;
 
+import com.miro.widget.service.events.WidgetEventFeed;
 import com.miro.widget.service.models.*;
 import result.PlainResult;
 import result.Result;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public interface WidgetService {
     Result<V1WidgetDto> v1Create(V1CreateWidgetDto dto);
@@ -13,7 +17,44 @@ public interface WidgetService {
 
     Result<V1WidgetRangeDto> v1GetRange(int page, int size);
 
+    Result<V1WidgetSliceDto> v1GetSlice(Integer afterZ, Integer beforeZ, int size);
+
+    // Passes the widgets of the page to the visitor and returns the count of all widgets, without making a DTO of
+    // every widget where the repository can
+    Result<Integer> v1VisitRange(int page, int size, V1WidgetVisitor visitor);
+
+    // Same for a slice, returns whether it is the last one
+    Result<Boolean> v1VisitSlice(Integer afterZ, Integer beforeZ, int size, V1WidgetVisitor visitor);
+
+    // Passes all widgets to the action in Z-order without collecting them first
+    PlainResult v1Export(Consumer<V1WidgetDto> action);
+
+    // Same, without making a DTO of every widget where the repository can
+    PlainResult v1Export(V1WidgetVisitor visitor);
+
+    // Changes made through this service, starting after the event with the given number or with the next event
+    WidgetEventFeed.Subscription v1Subscribe(Long lastEventId);
+
+    // Changes made through this service since the given version of the board, or all widgets at the current version
+    // if the changes are no longer kept or there is no version
+    Result<V1WidgetChangesDto> v1GetChanges(Long sinceVersion);
+
+    Result<V1WidgetRangeDto> v1GetRangeInArea(V1AreaDto area, int page, int size);
+
+    Result<List<V1WidgetDto>> v1GetAtPoint(int x, int y, boolean isStackRequired);
+
     Result<V1WidgetDto> v1Update(UUID id, V1UpdateWidgetDto dto);
 
+    // Updates the widget only if its current state passes the precondition, in the same write, and fails with a
+    // PreconditionFailedError otherwise
+    Result<V1WidgetDto> v1Update(UUID id, V1UpdateWidgetDto dto, Predicate<V1WidgetDto> precondition);
+
     PlainResult v1Delete(UUID id);
+
+    // Applies the operations in order as one write and reports the result of each, a deleted widget has no value
+    Result<List<Result<V1WidgetDto>>> v1ApplyBatch(List<V1BatchOperationDto> operations);
+
+    // Replaces all widgets with the given ones and returns their count, conflicting Z-indexes fail with a
+    // ValidationError
+    Result<Integer> v1Import(V1WidgetColumnsDto widgets);
 }
@@ -1,112 +1,437 @@
 package com.miro.widget.service;
 
+import com.miro.widget.service.events.WidgetEventFeed;
+import com.miro.widget.service.models.V1AreaDto;
+import com.miro.widget.service.models.V1BatchOperationDto;
+import com.miro.widget.service.models.V1BatchOperationType;
 import com.miro.widget.service.models.V1CreateWidgetDto;
 import com.miro.widget.service.models.V1UpdateWidgetDto;
+import com.miro.widget.service.models.V1WidgetChangesDto;
 import com.miro.widget.service.models.V1WidgetDto;
+import com.miro.widget.service.models.V1WidgetColumnsDto;
+import com.miro.widget.service.models.V1WidgetVisitor;
 import com.miro.widget.service.repositories.WidgetRepository;
+import com.miro.widget.service.repositories.models.V1BatchOperationModel;
 import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
 import com.miro.widget.service.repositories.models.V1UpdateWidgetModel;
 import com.miro.widget.service.models.V1WidgetRangeDto;
+import com.miro.widget.service.models.V1WidgetSliceDto;
 import lombok.Synchronized;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import result.PlainResult;
 import result.Result;
 import result.errors.Error;
+import result.errors.PreconditionFailedError;
+import result.errors.ValidationError;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static java.util.stream.Collectors.toList;
 
 @Service
 public class WidgetServiceImpl implements WidgetService {
-    private static int nextMaxIndex;
+    private static final int EXPORT_SLICE_SIZE = 1_000;
+    private static final int EVENT_FEED_CAPACITY = 4_096;
+    private static final int CHANGES_COPY_ATTEMPTS = 3;
+
     private final WidgetRepository widgetRepository;
+    // Versions start from the clock, so that they keep growing when the board is opened again and a version from
+    // before is never taken for a current one
+    private final WidgetEventFeed eventFeed =
+        new WidgetEventFeed(EVENT_FEED_CAPACITY, System.currentTimeMillis() * 1_000_000);
+    private int nextMaxIndex;
 
     @Autowired
     public WidgetServiceImpl(WidgetRepository widgetRepository) {
-        nextMaxIndex = 0;
         this.widgetRepository = widgetRepository;
+        this.nextMaxIndex = findNextMaxIndex();
     }
 
-    @Synchronized
     public Result<V1WidgetDto> v1Create(V1CreateWidgetDto dto) {
+        return awaitDurable(create(dto));
+    }
+
+    public Result<V1WidgetDto> v1GetById(UUID id) {
+        return widgetRepository.v1GetById(id);
+    }
+
+    public Result<V1WidgetRangeDto> v1GetRange(int page, int size) {
+        return widgetRepository.v1GetRange(page, size);
+    }
+
+    public Result<V1WidgetSliceDto> v1GetSlice(Integer afterZ, Integer beforeZ, int size) {
+        return widgetRepository.v1GetSlice(afterZ, beforeZ, size);
+    }
+
+    public Result<Integer> v1VisitRange(int page, int size, V1WidgetVisitor visitor) {
+        return widgetRepository.v1VisitRange(page, size, visitor);
+    }
+
+    public Result<Boolean> v1VisitSlice(Integer afterZ, Integer beforeZ, int size, V1WidgetVisitor visitor) {
+        return widgetRepository.v1VisitSlice(afterZ, beforeZ, size, visitor);
+    }
+
+    // Goes through slices after the last exported Z-index, so only one slice is held at a time and every slice starts
+    // with a logarithmic seek instead of skipping the pages before it. A slice is consistent on its own, but writes
+    // between slices may move widgets across the cursor, the same as with cursor paging
+    public PlainResult v1Export(Consumer<V1WidgetDto> action) {
+        Integer afterZ = null;
+
+        while (true) {
+            var getSliceResult = widgetRepository.v1GetSlice(afterZ, null, EXPORT_SLICE_SIZE);
+
+            if (getSliceResult.isFailed())
+                return PlainResult.Fail(getSliceResult.getError());
+
+            var widgets = getSliceResult.getValue().getWidgets();
+
+            widgets.forEach(action);
+
+            if (getSliceResult.getValue().isLast() || widgets.isEmpty())
+                return PlainResult.Ok();
+
+            afterZ = widgets.get(widgets.size() - 1).getZ();
+        }
+    }
+
+    // The same slices, with the count and the last Z-index of each one taken as the widgets pass
+    public PlainResult v1Export(V1WidgetVisitor visitor) {
+        var count = new int[1];
+        var lastZ = new int[1];
+        Integer afterZ = null;
+
+        while (true) {
+            count[0] = 0;
+
+            var visitSliceResult = widgetRepository.v1VisitSlice(afterZ, null, EXPORT_SLICE_SIZE,
+                (id, z, centerX, centerY, width, height, updatedAt) -> {
+                    visitor.visit(id, z, centerX, centerY, width, height, updatedAt);
+                    count[0]++;
+                    lastZ[0] = z;
+                });
+
+            if (visitSliceResult.isFailed())
+                return PlainResult.Fail(visitSliceResult.getError());
+
+            if (visitSliceResult.getValue() || count[0] == 0)
+                return PlainResult.Ok();
+
+            afterZ = lastZ[0];
+        }
+    }
+
+    public WidgetEventFeed.Subscription v1Subscribe(Long lastEventId) {
+        return eventFeed.subscribe(lastEventId);
+    }
+
+    public Result<V1WidgetChangesDto> v1GetChanges(Long sinceVersion) {
+        return getChanges(sinceVersion);
+    }
+
+    public Result<V1WidgetRangeDto> v1GetRangeInArea(V1AreaDto area, int page, int size) {
+        return widgetRepository.v1GetRangeInArea(area, page, size);
+    }
+
+    public Result<List<V1WidgetDto>> v1GetAtPoint(int x, int y, boolean isStackRequired) {
+        return widgetRepository.v1GetAtPoint(x, y, isStackRequired);
+    }
+
+    public Result<V1WidgetDto> v1Update(UUID id, V1UpdateWidgetDto dto) {
+        return awaitDurable(update(id, dto, null));
+    }
+
+    public Result<V1WidgetDto> v1Update(UUID id, V1UpdateWidgetDto dto, Predicate<V1WidgetDto> precondition) {
+        return awaitDurable(update(id, dto, precondition));
+    }
+
+    public PlainResult v1Delete(UUID id) {
+        var deleteWidgetResult = delete(id);
+
+        return deleteWidgetResult.isSucceed() ? widgetRepository.v1AwaitDurable() : deleteWidgetResult;
+    }
+
+    public Result<List<Result<V1WidgetDto>>> v1ApplyBatch(List<V1BatchOperationDto> operations) {
+        return awaitDurable(applyBatch(operations));
+    }
+
+    public Result<Integer> v1Import(V1WidgetColumnsDto widgets) {
+        return awaitDurable(importWidgets(widgets));
+    }
+
+    @Synchronized
+    private Result<V1WidgetDto> create(V1CreateWidgetDto dto) {
+        // A replicated repository may have got widgets through the node which led the replication before
+        if (dto.getZ() == null)
+            nextMaxIndex = Math.max(nextMaxIndex, findNextMaxIndex());
+
         if (nextMaxIndex == Integer.MAX_VALUE)
             return Result.Fail(new Error("Max available Z index value reached"));
 
+        if (dto.getZ() == null) {
+            var insertOnTopResult = widgetRepository.v1Insert(new V1InsertWidgetModel(
+                nextMaxIndex++, dto.getCenterX(), dto.getCenterY(), dto.getWidth(), dto.getHeight()));
+
+            if (insertOnTopResult.isSucceed())
+                eventFeed.publishCreated(insertOnTopResult.getValue());
+
+            return insertOnTopResult;
+        }
+
+        if (dto.getZ() == Integer.MAX_VALUE)
+            return Result.Fail(new Error("Z index value is too big"));
+
+        var isShifting = widgetRepository.v1GetByZIndex(dto.getZ()).isSucceed();
+
+        var insertWidgetResult = widgetRepository.v1Insert(new V1InsertWidgetModel(
+            dto.getZ(), dto.getCenterX(), dto.getCenterY(), dto.getWidth(), dto.getHeight()));
+
+        if (insertWidgetResult.isSucceed()) {
+            updateNextMaxIndex(dto.getZ(), isShifting);
+            publishWritten(insertWidgetResult.getValue(), isShifting, true);
+        }
+
+        return insertWidgetResult;
+    }
+
+    // The precondition is checked under the service lock, so no other write gets between the check and the update
+    @Synchronized
+    private Result<V1WidgetDto> update(UUID id, V1UpdateWidgetDto dto, Predicate<V1WidgetDto> precondition) {
+        if (precondition != null) {
+            var getCurrentResult = widgetRepository.v1GetById(id);
+
+            if (getCurrentResult.isFailed())
+                return getCurrentResult;
+
+            if (!precondition.test(getCurrentResult.getValue()))
+                return Result.Fail(new PreconditionFailedError(String.format("Widget with id '%s' has changed", id)));
+        }
+
+        var isShifting = false;
+
         if (dto.getZ() != null) {
             if (dto.getZ() == Integer.MAX_VALUE)
                 return Result.Fail(new Error("Z index value is too big"));
 
-            shift(dto.getZ());
+            var getOccupyingWidgetResult = widgetRepository.v1GetByZIndex(dto.getZ());
 
-            if (dto.getZ() >= nextMaxIndex)
-                nextMaxIndex = dto.getZ() + 1;
+            isShifting = getOccupyingWidgetResult.isSucceed() &&
+                !getOccupyingWidgetResult.getValue().getId().equals(id);
         }
 
-        return widgetRepository.v1Insert(new V1InsertWidgetModel(
-            dto.getZ() == null ? nextMaxIndex++ : dto.getZ(),
-            dto.getCenterX(),
-            dto.getCenterY(),
-            dto.getWidth(),
-            dto.getHeight()
-        ));
+        var updateWidgetResult = widgetRepository.v1Update(new V1UpdateWidgetModel(
+            id, dto.getZ(), dto.getCenterX(), dto.getCenterY(), dto.getWidth(), dto.getHeight()));
+
+        if (updateWidgetResult.isSucceed() && dto.getZ() != null)
+            updateNextMaxIndex(dto.getZ(), isShifting);
+
+        if (updateWidgetResult.isSucceed())
+            publishWritten(updateWidgetResult.getValue(), isShifting, false);
+
+        return updateWidgetResult;
     }
 
     @Synchronized
-    public Result<V1WidgetDto> v1GetById(UUID id) {
-        return widgetRepository.v1GetById(id);
+    private PlainResult delete(UUID id) {
+        var deleteWidgetResult = widgetRepository.v1Delete(id);
+
+        if (deleteWidgetResult.isSucceed())
+            eventFeed.publishDeleted(id);
+
+        return deleteWidgetResult;
     }
 
+    // The repository puts widgets without Z-index on top by itself, since earlier operations of the batch may move the
+    // topmost widget
     @Synchronized
-    public Result<V1WidgetRangeDto> v1GetRange(int page, int size) {
-        return widgetRepository.v1GetRange(page, size);
+    private Result<List<Result<V1WidgetDto>>> applyBatch(List<V1BatchOperationDto> operations) {
+        var models = operations.stream().map(WidgetServiceImpl::toBatchOperationModel).collect(toList());
+
+        if (models.stream().anyMatch(model -> model.getZ() != null && model.getZ() == Integer.MAX_VALUE))
+            return Result.Fail(new Error("Z index value is too big"));
+
+        var applyBatchResult = widgetRepository.v1ApplyBatch(models, Math.max(nextMaxIndex, findNextMaxIndex()));
+
+        if (applyBatchResult.isFailed())
+            return applyBatchResult;
+
+        nextMaxIndex = Math.max(nextMaxIndex, findNextMaxIndex());
+
+        // Whether an operation shifted anything is not known here, a shift of a free Z-index just moves nothing
+        for (var i = 0; i < models.size(); i++) {
+            var model = models.get(i);
+            var result = applyBatchResult.getValue().get(i);
+
+            if (result.isFailed())
+                continue;
+
+            if (model.getType() == V1BatchOperationType.DELETE)
+                eventFeed.publishDeleted(model.getId());
+            else
+                publishWritten(result.getValue(), model.getZ() != null, model.getType() == V1BatchOperationType.CREATE);
+        }
+
+        return applyBatchResult;
     }
 
+    // Replaces all widgets. Widgets are sorted by Z-index, so that the repository builds its indexes at once, and
+    // widgets without Z-index go above all the others in the order they come. Sorting takes 16 bytes per widget on top
+    // of the sorted copy of the widgets
     @Synchronized
-    public Result<V1WidgetDto> v1Update(UUID id, V1UpdateWidgetDto dto) {
-        if (dto.getZ() != null) {
-            if (dto.getZ() == Integer.MAX_VALUE)
-                return Result.Fail(new Error("Z index value is too big"));
+    private Result<Integer> importWidgets(V1WidgetColumnsDto widgets) {
+        var count = widgets.getCount();
+        var sortKeys = new long[count];
+        var sortKeysCount = 0;
 
-            var getCurrentWidgetResult = widgetRepository.v1GetById(id);
+        // Z-index in the high half keeps the order, position in the low half points back to the widget
+        for (var i = 0; i < count; i++) {
+            if (widgets.getZIndexes()[i] != V1WidgetColumnsDto.NO_Z)
+                sortKeys[sortKeysCount++] = (long) widgets.getZIndexes()[i] << 32 | i;
+        }
+
+        Arrays.sort(sortKeys, 0, sortKeysCount);
 
-            if (getCurrentWidgetResult.isFailed())
-                return getCurrentWidgetResult;
+        var positions = new int[count];
+        var zIndexes = new int[count];
 
-            if (getCurrentWidgetResult.getValue().getZ() > dto.getZ())
-                shift(dto.getZ(), getCurrentWidgetResult.getValue().getZ());
-            else {
-                shift(dto.getZ());
+        for (var i = 0; i < sortKeysCount; i++) {
+            var z = (int) (sortKeys[i] >> 32);
+
+            if (i > 0 && z == zIndexes[i - 1]) {
+                return Result.Fail(new ValidationError(String.format("Widgets %d and %d have the same Z index %d",
+                    positions[i - 1] + 1, (int) sortKeys[i] + 1, z)));
             }
 
-            if (dto.getZ() >= nextMaxIndex)
-                nextMaxIndex = dto.getZ() + 1;
+            positions[i] = (int) sortKeys[i];
+            zIndexes[i] = z;
         }
 
-        return widgetRepository.v1Update(new V1UpdateWidgetModel(
-            id, dto.getZ(), dto.getCenterX(), dto.getCenterY(), dto.getWidth(), dto.getHeight()));
+        var loadedCount = sortKeysCount;
+        var nextZ = loadedCount == 0 ? 0 : zIndexes[loadedCount - 1] + 1L;
+
+        for (var i = 0; i < count; i++) {
+            if (widgets.getZIndexes()[i] != V1WidgetColumnsDto.NO_Z)
+                continue;
+
+            if (nextZ >= Integer.MAX_VALUE)
+                return Result.Fail(new ValidationError("Max available Z index value reached"));
+
+            positions[loadedCount] = i;
+            zIndexes[loadedCount++] = (int) nextZ++;
+        }
+
+        var loadResult = widgetRepository.v1Load(widgets.select(positions, zIndexes));
+
+        if (loadResult.isFailed())
+            return Result.Fail(loadResult.getError());
+
+        nextMaxIndex = findNextMaxIndex();
+        eventFeed.publishResync();
+
+        return Result.Ok(count);
+    }
+
+    // Changes come from the feed alone, the last of them is the version. All widgets are copied outside the service
+    // lock, and the copy holds if no write was made through the service meanwhile, since every write publishes its
+    // events before it releases the lock. The copy is only made under the lock if writes keep getting in between
+    private Result<V1WidgetChangesDto> getChanges(Long sinceVersion) {
+        var changes = sinceVersion == null ? null : eventFeed.getEventsAfter(sinceVersion).orElse(null);
+
+        if (changes != null) {
+            var version = changes.isEmpty() ? sinceVersion : changes.get(changes.size() - 1).getVersion();
+
+            return Result.Ok(new V1WidgetChangesDto(version, changes, null));
+        }
+
+        for (var attempt = 0; attempt < CHANGES_COPY_ATTEMPTS; attempt++) {
+            var version = getVersion();
+            var getAllResult = getAll(version);
+
+            if (getAllResult.isFailed() || getVersion() == version)
+                return getAllResult;
+        }
+
+        return getAllLocked();
     }
 
     @Synchronized
-    public PlainResult v1Delete(UUID id) {
-        return widgetRepository.v1Delete(id);
+    private long getVersion() {
+        return eventFeed.getVersion();
     }
 
-    void shift(int startIndex) {
-        this.shift(startIndex, Integer.MAX_VALUE - 1);
+    @Synchronized
+    private Result<V1WidgetChangesDto> getAllLocked() {
+        return getAll(eventFeed.getVersion());
     }
 
-    void shift(int startIndex, int endIndex) {
-        var getSwapItemResult = widgetRepository.v1GetByZIndex(startIndex);
+    private Result<V1WidgetChangesDto> getAll(long version) {
+        var widgets = new ArrayList<V1WidgetDto>();
+        var exportResult = v1Export(widgets::add);
+
+        if (exportResult.isFailed())
+            return Result.Fail(exportResult.getError());
+
+        return Result.Ok(new V1WidgetChangesDto(version, null, widgets));
+    }
 
-        for (var i = startIndex + 1; getSwapItemResult.isSucceed() && i <= endIndex; i++) {
-            var tempItem = widgetRepository.v1GetByZIndex(i);
+    // Runs outside the service lock, so that concurrent writers wait for the same flush of the repository
+    private <T> Result<T> awaitDurable(Result<T> writeResult) {
+        if (writeResult.isFailed())
+            return writeResult;
 
-            widgetRepository.v1Update(new V1UpdateWidgetModel(getSwapItemResult.getValue().getId(), i));
+        var awaitResult = widgetRepository.v1AwaitDurable();
 
-            getSwapItemResult = tempItem;
+        return awaitResult.isSucceed() ? writeResult : Result.Fail(awaitResult.getError());
+    }
+
+    // The shift comes first, so that a subscriber makes room for the widget before placing it
+    private void publishWritten(V1WidgetDto widget, boolean isShifting, boolean isCreated) {
+        if (isShifting)
+            eventFeed.publishShifted(widget.getZ(), widget.getId());
+
+        if (isCreated)
+            eventFeed.publishCreated(widget);
+        else
+            eventFeed.publishUpdated(widget);
+    }
 
-            if (i >= nextMaxIndex)
-                nextMaxIndex = i;
+    // A repository may start with widgets already in it, new widgets without Z-index go above the topmost one
+    private int findNextMaxIndex() {
+        var getTopmostResult = widgetRepository.v1GetSlice(null, Integer.MAX_VALUE, 1);
+
+        if (getTopmostResult.isFailed() || getTopmostResult.getValue().getWidgets().isEmpty())
+            return 0;
+
+        return getTopmostResult.getValue().getWidgets().get(0).getZ() + 1;
+    }
+
+    private static V1BatchOperationModel toBatchOperationModel(V1BatchOperationDto dto) {
+        switch (dto.getType()) {
+            case CREATE:
+                var create = dto.getCreate();
+
+                return new V1BatchOperationModel(dto.getType(), null, create.getZ(),
+                    create.getCenterX(), create.getCenterY(), create.getWidth(), create.getHeight());
+            case UPDATE:
+                var update = dto.getUpdate();
+
+                return new V1BatchOperationModel(dto.getType(), dto.getId(), update.getZ(),
+                    update.getCenterX(), update.getCenterY(), update.getWidth(), update.getHeight());
+            default:
+                return new V1BatchOperationModel(dto.getType(), dto.getId(), null, null, null, null, null);
         }
     }
+
+    // The repository shifts the occupied run by one, so the topmost widget may have moved to nextMaxIndex
+    private void updateNextMaxIndex(int z, boolean isShifting) {
+        if (z >= nextMaxIndex)
+            nextMaxIndex = z + 1;
+        else if (isShifting && widgetRepository.v1GetByZIndex(nextMaxIndex).isSucceed())
+            nextMaxIndex++;
+    }
 }
@@ -0,0 +1,157 @@
+package com.miro.widget.service.cluster;
+
+import com.miro.widget.service.BoardRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import result.PlainResult;
+import result.errors.ValidationError;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Places boards on the nodes of the cluster with a {@link HashRing}. Without nodes configured every board is served
+ * locally.
+ * <p>
+ * When the nodes change, boards this node no longer owns are closed, so their new owner can open them. A board is
+ * handed over with its data only through its write-ahead log in a directory shared by the nodes, otherwise it starts
+ * empty on the new owner. Only configured members of the cluster may become nodes, by default the initial nodes.
+ * <p>
+ * Requests enter a board under the same lock the nodes are changed under, so a request either enters before the
+ * change and is waited for before its board is closed, or is redirected to the new owner and never opens the board
+ * here again.
+ */
+@Component
+public class BoardRouter {
+    private static final Logger log = LoggerFactory.getLogger(BoardRouter.class);
+
+    private final BoardRegistry boardRegistry;
+    private final String self;
+    private final int virtualNodesCount;
+    private final Set<String> members;
+    private final long drainTimeoutMs;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile HashRing hashRing;
+
+    @Autowired
+    public BoardRouter(
+        BoardRegistry boardRegistry,
+        @Value("${widget.cluster.self:}") String self,
+        @Value("${widget.cluster.nodes:}") List<String> nodes,
+        @Value("${widget.cluster.members:}") List<String> members,
+        @Value("${widget.cluster.virtual-nodes:128}") int virtualNodesCount,
+        @Value("${widget.cluster.drain-timeout-ms:10000}") long drainTimeoutMs
+    ) {
+        this.boardRegistry = boardRegistry;
+        this.self = normalize(self);
+        this.virtualNodesCount = virtualNodesCount;
+        this.members = Set.copyOf(normalize(members.isEmpty() ? nodes : members));
+        this.drainTimeoutMs = drainTimeoutMs;
+        this.hashRing = createHashRing(nodes);
+    }
+
+    // Null if the board is served by this node
+    public String findRemoteOwner(String boardId) {
+        var currentHashRing = hashRing;
+
+        if (currentHashRing == null)
+            return null;
+
+        var owner = currentHashRing.ownerOf(boardId);
+
+        return owner.equals(self) ? null : owner;
+    }
+
+    // Null if the board is served by this node, the request is then in flight on the board until it exits
+    public String enter(String boardId) {
+        lock.readLock().lock();
+
+        try {
+            var owner = findRemoteOwner(boardId);
+
+            if (owner == null)
+                boardRegistry.enter(boardId);
+
+            return owner;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void exit(String boardId) {
+        boardRegistry.exit(boardId);
+    }
+
+    public List<String> getNodes() {
+        var currentHashRing = hashRing;
+
+        return currentHashRing == null ? List.of() : currentHashRing.getNodes();
+    }
+
+    public synchronized PlainResult setNodes(List<String> nodes) {
+        var unknownNodes = normalize(nodes).stream()
+            .filter(node -> !members.contains(node))
+            .collect(toList());
+
+        if (!unknownNodes.isEmpty()) {
+            return PlainResult.Fail(new ValidationError(
+                String.format("Nodes %s are not members of the cluster %s", unknownNodes, members)));
+        }
+
+        lock.writeLock().lock();
+
+        try {
+            hashRing = createHashRing(nodes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // No request enters the moved boards here anymore, the ones in flight may still open them until they finish
+        try {
+            if (!boardRegistry.awaitRequests(boardId -> findRemoteOwner(boardId) != null, drainTimeoutMs))
+                log.warn("Requests on moved boards still run after {} ms, closing the boards under them",
+                    drainTimeoutMs);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted waiting for requests on moved boards, closing the boards under them");
+        }
+
+        var movedBoardIds = boardRegistry.getOpenBoardIds().stream()
+            .filter(boardId -> findRemoteOwner(boardId) != null)
+            .collect(toList());
+
+        movedBoardIds.forEach(boardRegistry::closeBoard);
+
+        log.info("Cluster nodes changed to {}, handed over {} boards", getNodes(), movedBoardIds.size());
+
+        return PlainResult.Ok();
+    }
+
+    private HashRing createHashRing(List<String> nodes) {
+        var normalizedNodes = normalize(nodes);
+
+        return normalizedNodes.isEmpty() ? null : new HashRing(normalizedNodes, virtualNodesCount);
+    }
+
+    private static List<String> normalize(List<String> nodes) {
+        return nodes.stream()
+            .map(BoardRouter::normalize)
+            .filter(node -> !node.isEmpty())
+            .distinct()
+            .collect(toList());
+    }
+
+    // Node URLs are compared as strings, so http://host:port/ and http://host:port are the same node
+    private static String normalize(String node) {
+        var trimmedNode = node.trim();
+
+        return trimmedNode.endsWith("/") ? trimmedNode.substring(0, trimmedNode.length() - 1) : trimmedNode;
+    }
+}
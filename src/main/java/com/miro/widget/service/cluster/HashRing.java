@@ -0,0 +1,81 @@
+package com.miro.widget.service.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hashing of boards onto nodes. Every node is placed on the ring at many points (virtual nodes) and a
+ * board belongs to the node of the first point at or after the hash of the board ID. Boards spread evenly over the
+ * nodes, and a node joining or leaving moves only the boards on the arcs it takes or gives away.
+ * <p>
+ * Hashes don't depend on the JVM, so all nodes with the same list of nodes agree on the owners.
+ */
+public class HashRing {
+    private final List<String> nodes;
+    // Sorted points of the ring and the nodes they belong to
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(List<String> nodes, int virtualNodesCount) {
+        if (nodes.isEmpty() || virtualNodesCount < 1)
+            throw new IllegalArgumentException("Hash ring needs at least one node and one virtual node per node");
+
+        this.nodes = List.copyOf(nodes);
+
+        var size = nodes.size() * virtualNodesCount;
+        var unsortedPoints = new long[size];
+
+        for (var i = 0; i < nodes.size(); i++) {
+            for (var j = 0; j < virtualNodesCount; j++)
+                unsortedPoints[i * virtualNodesCount + j] = hash(nodes.get(i) + "#" + j);
+        }
+
+        var sortedIndexes = sortByPoints(unsortedPoints);
+
+        this.points = new long[size];
+        this.owners = new String[size];
+
+        for (var i = 0; i < size; i++) {
+            points[i] = unsortedPoints[sortedIndexes[i]];
+            owners[i] = nodes.get(sortedIndexes[i] / virtualNodesCount);
+        }
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public String ownerOf(String boardId) {
+        var index = Arrays.binarySearch(points, hash(boardId));
+
+        if (index < 0)
+            index = -index - 1;
+
+        return owners[index == points.length ? 0 : index];
+    }
+
+    private static int[] sortByPoints(long[] points) {
+        var sortedIndexes = new Integer[points.length];
+
+        for (var i = 0; i < points.length; i++)
+            sortedIndexes[i] = i;
+
+        Arrays.sort(sortedIndexes, (left, right) -> Long.compare(points[left], points[right]));
+
+        return Arrays.stream(sortedIndexes).mapToInt(Integer::intValue).toArray();
+    }
+
+    // FNV-1a over UTF-8 bytes with the MurmurHash3 finalizer, which spreads similar IDs over the whole ring
+    private static long hash(String value) {
+        var hash = 0xcbf29ce484222325L;
+
+        for (var b : value.getBytes(StandardCharsets.UTF_8))
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+
+        hash = (hash ^ hash >>> 33) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ hash >>> 33) * 0xc4ceb9fe1a85ec53L;
+
+        return hash ^ hash >>> 33;
+    }
+}
@@ -0,0 +1,22 @@
+package com.miro.widget.service.events;
+
+import com.miro.widget.service.models.V1WidgetDto;
+import lombok.Value;
+
+import java.util.UUID;
+
+@Value
+public class WidgetEvent {
+    long version;
+
+    WidgetEventType type;
+
+    // Changed widget, absent for a resync
+    UUID widgetId;
+
+    // State of a created or updated widget
+    V1WidgetDto widget;
+
+    // Start of the shifted run
+    Integer z;
+}
@@ -0,0 +1,256 @@
+package com.miro.widget.service.events;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.miro.widget.service.models.V1WidgetDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Changes of the widgets of one board as Server-Sent Events. Every event is encoded once into a complete SSE frame
+ * and put into a ring shared by all subscribers, each subscriber only keeps its position in the ring. So publishing
+ * costs the same for any number of subscribers, and the memory a slow subscriber holds up is bounded by the ring.
+ * A subscriber which falls behind by more than the ring gets a single resync event instead of the changes it missed.
+ * <p>
+ * A shift is one event for the whole run: widgets in the consecutive run of Z-indexes starting at z, except the
+ * written widget, moved up by one. The run is empty if z was free, so the event is safe to apply either way.
+ * <p>
+ * Events are numbered in the order the writes were applied, before they are durable, and the number of the last one
+ * is the version of the board. The ring also serves changes since a version to clients which poll instead of
+ * staying subscribed.
+ * <p>
+ * Subscribers don't wait on the feed. A listener hears of every published event and reads the subscriptions when it
+ * sees fit. Reads only copy the events they are after under the lock of the feed and collapse them outside it, so a
+ * write never waits for readers to collapse updates.
+ */
+public class WidgetEventFeed {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final byte[][] frames;
+    private final WidgetEvent[] events;
+    private final long initialSequence;
+    private long lastSequence;
+    private volatile Runnable listener;
+
+    public WidgetEventFeed(int capacity) {
+        this(capacity, 0);
+    }
+
+    // Numbers of events start after the initial one
+    public WidgetEventFeed(int capacity, long initialSequence) {
+        this.frames = new byte[capacity][];
+        this.events = new WidgetEvent[capacity];
+        this.initialSequence = initialSequence;
+        this.lastSequence = initialSequence;
+    }
+
+    public void publishCreated(V1WidgetDto widget) {
+        publish(WidgetEventType.CREATED, widget.getId(), widget, null, generator -> writeWidget(generator, widget));
+    }
+
+    public void publishUpdated(V1WidgetDto widget) {
+        publish(WidgetEventType.UPDATED, widget.getId(), widget, null, generator -> writeWidget(generator, widget));
+    }
+
+    public void publishDeleted(UUID id) {
+        publish(WidgetEventType.DELETED, id, null, null, generator -> generator.writeStringField("id", id.toString()));
+    }
+
+    public void publishShifted(int z, UUID id) {
+        publish(WidgetEventType.SHIFTED, id, null, z, generator -> {
+            generator.writeNumberField("z", z);
+            generator.writeStringField("id", id.toString());
+        });
+    }
+
+    // All widgets were replaced, subscribers have to read them again
+    public void publishResync() {
+        publish(WidgetEventType.RESYNC, null, null, null, generator -> { });
+    }
+
+    public synchronized long getVersion() {
+        return lastSequence;
+    }
+
+    // Events after the given version with updates collapsed the same way as for subscribers, or nothing if the ring
+    // no longer holds all of them or the version is not of this feed
+    public Optional<List<WidgetEvent>> getEventsAfter(long version) {
+        WidgetEvent[] eventsAfter;
+
+        synchronized (this) {
+            if (isMissed(version))
+                return Optional.empty();
+
+            eventsAfter = copyAfter(version, events, new WidgetEvent[(int) (lastSequence - version)]);
+        }
+
+        var collapsed = new ArrayList<WidgetEvent>();
+
+        for (var index : collapsedIndexes(eventsAfter))
+            collapsed.add(eventsAfter[index]);
+
+        return Optional.of(collapsed);
+    }
+
+    // Runs after every published event, on the thread of the writer but outside the lock of the feed, so it must
+    // return quickly
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    // Starts after the event with the given number if it is still in the ring, and with a resync otherwise. Without
+    // a number starts with the next event
+    public Subscription subscribe(Long lastEventId) {
+        synchronized (this) {
+            if (lastEventId == null)
+                return new Subscription(lastSequence, false);
+
+            return isMissed(lastEventId) ? new Subscription(lastSequence, true) : new Subscription(lastEventId, false);
+        }
+    }
+
+    private void publish(
+        WidgetEventType type, UUID widgetId, V1WidgetDto widget, Integer z, FieldsWriter fieldsWriter) {
+        synchronized (this) {
+            var sequence = lastSequence + 1;
+            var index = (int) (sequence % frames.length);
+
+            frames[index] = encode(sequence, type, fieldsWriter);
+            events[index] = new WidgetEvent(sequence, type, widgetId, widget, z);
+            lastSequence = sequence;
+        }
+
+        var listener = this.listener;
+
+        if (listener != null)
+            listener.run();
+    }
+
+    // Events after the given number which are not in the ring or have not happened
+    private boolean isMissed(long sequence) {
+        return sequence < initialSequence || sequence > lastSequence || lastSequence - sequence > frames.length;
+    }
+
+    // Elements of the ring for the events after the given number, in their order
+    private static <T> T[] copyAfter(long sequence, T[] ring, T[] copy) {
+        for (var i = 0; i < copy.length; i++)
+            copy[i] = ring[(int) ((sequence + 1 + i) % ring.length)];
+
+        return copy;
+    }
+
+    // Consecutive updates of one widget are collapsed into the latest one, since each of them carries the whole widget
+    private static List<Integer> collapsedIndexes(WidgetEvent[] events) {
+        var indexes = new ArrayList<Integer>();
+
+        for (var index = 0; index < events.length; index++) {
+            var previous = indexes.isEmpty() ? null : events[indexes.get(indexes.size() - 1)];
+            var isRepeatedUpdate = previous != null && previous.getType() == WidgetEventType.UPDATED &&
+                events[index].getType() == WidgetEventType.UPDATED &&
+                events[index].getWidgetId().equals(previous.getWidgetId());
+
+            if (isRepeatedUpdate)
+                indexes.set(indexes.size() - 1, index);
+            else
+                indexes.add(index);
+        }
+
+        return indexes;
+    }
+
+    private static byte[] encode(long sequence, WidgetEventType type, FieldsWriter fieldsWriter) {
+        var output = new ByteArrayOutputStream(256);
+
+        try {
+            output.write(String.format("id: %d\nevent: %s\ndata: ", sequence, type.name().toLowerCase(Locale.ROOT))
+                .getBytes(StandardCharsets.UTF_8));
+
+            try (var generator = JSON_FACTORY.createGenerator(output)) {
+                generator.writeStartObject();
+                fieldsWriter.write(generator);
+                generator.writeEndObject();
+            }
+
+            output.write('\n');
+            output.write('\n');
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+
+        return output.toByteArray();
+    }
+
+    private static void writeWidget(JsonGenerator generator, V1WidgetDto widget) throws IOException {
+        generator.writeStringField("id", widget.getId().toString());
+        generator.writeNumberField("z", widget.getZ());
+        generator.writeNumberField("centerX", widget.getCoordinates().getCenterX());
+        generator.writeNumberField("centerY", widget.getCoordinates().getCenterY());
+        generator.writeNumberField("width", widget.getSize().getWidth());
+        generator.writeNumberField("height", widget.getSize().getHeight());
+        generator.writeStringField("updatedAt", widget.getUpdatedAt().toOffsetDateTime().toString());
+    }
+
+    private static byte[] resyncFrame(long sequence) {
+        return encode(sequence, WidgetEventType.RESYNC, generator -> { });
+    }
+
+    @FunctionalInterface
+    private interface FieldsWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    public final class Subscription {
+        private long position;
+        private boolean isResyncRequired;
+
+        private Subscription(long position, boolean isResyncRequired) {
+            this.position = position;
+            this.isResyncRequired = isResyncRequired;
+        }
+
+        public WidgetEventFeed getFeed() {
+            return WidgetEventFeed.this;
+        }
+
+        // Frames of the events after the previous call, empty if there were none. Doesn't wait for events, and is
+        // called by one thread at a time
+        public List<byte[]> poll() {
+            var polled = new ArrayList<byte[]>();
+            long polledAfter;
+            byte[][] framesAfter;
+            WidgetEvent[] eventsAfter;
+
+            synchronized (WidgetEventFeed.this) {
+                if (lastSequence - position > frames.length) {
+                    position = lastSequence;
+                    isResyncRequired = true;
+                }
+
+                var count = (int) (lastSequence - position);
+
+                polledAfter = position;
+                framesAfter = copyAfter(position, frames, new byte[count][]);
+                eventsAfter = copyAfter(position, events, new WidgetEvent[count]);
+                position = lastSequence;
+            }
+
+            if (isResyncRequired) {
+                polled.add(resyncFrame(polledAfter));
+                isResyncRequired = false;
+            }
+
+            for (var index : collapsedIndexes(eventsAfter))
+                polled.add(framesAfter[index]);
+
+            return polled;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.miro.widget.service.events;
+
+public enum WidgetEventType {
+    CREATED,
+    UPDATED,
+    DELETED,
+    SHIFTED,
+    RESYNC
+}
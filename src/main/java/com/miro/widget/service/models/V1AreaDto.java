@@ -0,0 +1,14 @@
+package com.miro.widget.service.models;
+
+import lombok.Value;
+
+@Value
+public class V1AreaDto {
+    int x1;
+
+    int y1;
+
+    int x2;
+
+    int y2;
+}
@@ -0,0 +1,31 @@
+package com.miro.widget.service.models;
+
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.UUID;
+
+@Value
+public class V1BatchOperationDto {
+    @NonNull
+    V1BatchOperationType type;
+
+    // Widget to update or delete
+    UUID id;
+
+    V1CreateWidgetDto create;
+
+    V1UpdateWidgetDto update;
+
+    public static V1BatchOperationDto create(V1CreateWidgetDto dto) {
+        return new V1BatchOperationDto(V1BatchOperationType.CREATE, null, dto, null);
+    }
+
+    public static V1BatchOperationDto update(UUID id, V1UpdateWidgetDto dto) {
+        return new V1BatchOperationDto(V1BatchOperationType.UPDATE, id, null, dto);
+    }
+
+    public static V1BatchOperationDto delete(UUID id) {
+        return new V1BatchOperationDto(V1BatchOperationType.DELETE, id, null, null);
+    }
+}
@@ -0,0 +1,7 @@
+package com.miro.widget.service.models;
+
+public enum V1BatchOperationType {
+    CREATE,
+    UPDATE,
+    DELETE
+}
@@ -0,0 +1,16 @@
+package com.miro.widget.service.models;
+
+import com.miro.widget.service.events.WidgetEvent;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class V1WidgetChangesDto {
+    long version;
+
+    // Changes since the requested version, absent when all widgets are given instead
+    List<WidgetEvent> changes;
+
+    List<V1WidgetDto> widgets;
+}
@@ -0,0 +1,49 @@
+package com.miro.widget.service.models;
+
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Widgets to create kept column by column, an array of primitives per field, so a widget takes 20 bytes instead of a
+ * DTO with five boxed fields. Only the first {@code count} positions of the arrays hold widgets.
+ */
+@Value
+public class V1WidgetColumnsDto {
+    // Stands for a missing Z-index, which is never the Z-index of a created widget anyway
+    public static final int NO_Z = Integer.MAX_VALUE;
+
+    int count;
+
+    @NonNull
+    int[] zIndexes;
+
+    @NonNull
+    int[] centerXs;
+
+    @NonNull
+    int[] centerYs;
+
+    @NonNull
+    int[] widths;
+
+    @NonNull
+    int[] heights;
+
+    // The widgets at the given positions in that order, which take the given array of Z-indexes as their own
+    public V1WidgetColumnsDto select(int[] positions, int[] selectedZIndexes) {
+        var selectedCenterXs = new int[positions.length];
+        var selectedCenterYs = new int[positions.length];
+        var selectedWidths = new int[positions.length];
+        var selectedHeights = new int[positions.length];
+
+        for (var i = 0; i < positions.length; i++) {
+            selectedCenterXs[i] = centerXs[positions[i]];
+            selectedCenterYs[i] = centerYs[positions[i]];
+            selectedWidths[i] = widths[positions[i]];
+            selectedHeights[i] = heights[positions[i]];
+        }
+
+        return new V1WidgetColumnsDto(
+            positions.length, selectedZIndexes, selectedCenterXs, selectedCenterYs, selectedWidths, selectedHeights);
+    }
+}
@@ -0,0 +1,12 @@
+package com.miro.widget.service.models;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class V1WidgetSliceDto {
+    List<V1WidgetDto> widgets;
+
+    boolean isLast;
+}
@@ -0,0 +1,22 @@
+package com.miro.widget.service.models;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+// Takes the values of widgets one by one, so that a repository can pass them as it stores them instead of making a
+// DTO of every widget
+@FunctionalInterface
+public interface V1WidgetVisitor {
+    void visit(UUID id, int z, int centerX, int centerY, int width, int height, ZonedDateTime updatedAt);
+
+    default void visit(V1WidgetDto widget) {
+        visit(
+            widget.getId(),
+            widget.getZ(),
+            widget.getCoordinates().getCenterX(),
+            widget.getCoordinates().getCenterY(),
+            widget.getSize().getWidth(),
+            widget.getSize().getHeight(),
+            widget.getUpdatedAt());
+    }
+}
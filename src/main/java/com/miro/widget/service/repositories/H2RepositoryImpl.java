@@ -0,0 +1,665 @@
+package com.miro.widget.service.repositories;
+
+import com.miro.widget.mappers.BllAndDalMapper;
+import com.miro.widget.service.models.*;
+import com.miro.widget.service.repositories.models.V1BatchOperationModel;
+import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
+import com.miro.widget.service.repositories.models.V1UpdateWidgetModel;
+import com.miro.widget.service.repositories.models.V1WidgetEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import result.PlainResult;
+import result.Result;
+import result.errors.Error;
+import result.errors.NotFoundError;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Widget storage in an H2 database over plain JDBC. Z-order is served by an index on z, and inserting or moving a
+ * widget into an occupied Z-index shifts the consecutive run above it with a single set-based update instead of
+ * reading and updating widgets one by one.
+ * <p>
+ * Writes go one at a time through their own connection, each in one transaction with its shift. Reads take
+ * connections of their own from a pool and never wait for writes: a read runs in a repeatable read transaction,
+ * which H2 serves from a snapshot of committed rows, so a count and a page of one read agree with each other and
+ * no read sees a write half applied.
+ * <p>
+ * Selected with {@code widget.repository.type=h2}.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "widget.repository", name = "type", havingValue = "h2")
+public class H2RepositoryImpl implements WidgetRepository, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(H2RepositoryImpl.class);
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS widgets (" +
+        "id UUID PRIMARY KEY, " +
+        "z INT NOT NULL, " +
+        "center_x INT NOT NULL, " +
+        "center_y INT NOT NULL, " +
+        "width INT NOT NULL, " +
+        "height INT NOT NULL, " +
+        "updated_at TIMESTAMP(9) WITH TIME ZONE NOT NULL)";
+    // Not unique, since the set-based shift moves Z-indexes through values still held by the rows above
+    private static final String CREATE_Z_INDEX = "CREATE INDEX IF NOT EXISTS widgets_z ON widgets (z)";
+    private static final String COLUMNS = "id, z, center_x, center_y, width, height, updated_at";
+    private static final String SELECT_BY_ID = "SELECT " + COLUMNS + " FROM widgets WHERE id = ?";
+    private static final String SELECT_BY_Z = "SELECT " + COLUMNS + " FROM widgets WHERE z = ?";
+    private static final String COUNT = "SELECT COUNT(*) FROM widgets";
+    private static final String SELECT_PAGE = "SELECT " + COLUMNS + " FROM widgets ORDER BY z LIMIT ? OFFSET ?";
+    // Bounds are inclusive, so that missing ones are bound as the ends of the INT range of the column
+    private static final String SELECT_ABOVE = "SELECT " + COLUMNS + " FROM widgets " +
+        "WHERE z BETWEEN ? AND ? ORDER BY z LIMIT ?";
+    private static final String SELECT_BELOW = "SELECT " + COLUMNS + " FROM widgets " +
+        "WHERE z < ? ORDER BY z DESC LIMIT ?";
+    // Bounds are doubled so that widgets of odd width or height keep integer coordinates
+    private static final String INTERSECTS = "2 * CAST(center_x AS BIGINT) - width <= ? " +
+        "AND ? <= 2 * CAST(center_x AS BIGINT) + width " +
+        "AND 2 * CAST(center_y AS BIGINT) - height <= ? " +
+        "AND ? <= 2 * CAST(center_y AS BIGINT) + height";
+    private static final String COUNT_IN_AREA = "SELECT COUNT(*) FROM widgets WHERE " + INTERSECTS;
+    private static final String SELECT_PAGE_IN_AREA = "SELECT " + COLUMNS + " FROM widgets WHERE " + INTERSECTS +
+        " ORDER BY z LIMIT ? OFFSET ?";
+    private static final String SELECT_AT_POINT = "SELECT " + COLUMNS + " FROM widgets WHERE " + INTERSECTS +
+        " ORDER BY z DESC LIMIT ?";
+    private static final String IS_OCCUPIED = "SELECT COUNT(*) FROM widgets WHERE z = ? AND id <> ?";
+    // The run of consecutive Z-indexes starting at the given one ends at the first widget without a successor
+    private static final String FIND_RUN_END = "SELECT MIN(w.z) FROM widgets w WHERE w.z >= ? AND w.id <> ? " +
+        "AND NOT EXISTS (SELECT 1 FROM widgets n WHERE n.z = CAST(w.z AS BIGINT) + 1 AND n.id <> ?)";
+    private static final String SHIFT = "UPDATE widgets SET z = z + 1 WHERE z BETWEEN ? AND ? AND id <> ?";
+    private static final String INSERT = "INSERT INTO widgets (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE = "UPDATE widgets " +
+        "SET z = ?, center_x = ?, center_y = ?, width = ?, height = ?, updated_at = ? WHERE id = ?";
+    private static final String DELETE = "DELETE FROM widgets WHERE id = ?";
+    private static final String DELETE_ALL = "DELETE FROM widgets";
+    // Saturates instead of overflowing when the topmost widget is at the maximum Z-index
+    private static final String SELECT_NEXT_TOP_Z = "SELECT LEAST(COALESCE(CAST(MAX(z) AS BIGINT) + 1, 0), " +
+        Integer.MAX_VALUE + ") FROM widgets";
+
+    private static final int LOAD_BATCH_SIZE = 1_000;
+
+    private final BllAndDalMapper mapper;
+    private final String url;
+    private final Connection connection;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ConcurrentLinkedDeque<Connection> readConnections = new ConcurrentLinkedDeque<>();
+    private volatile boolean isClosed;
+
+    @Autowired
+    public H2RepositoryImpl(
+        BllAndDalMapper mapper,
+        @Value("${widget.repository.h2.url:jdbc:h2:mem:widgets;DB_CLOSE_DELAY=-1}") String url
+    ) {
+        this.mapper = mapper;
+        this.url = url;
+
+        try {
+            this.connection = DriverManager.getConnection(url);
+
+            try (var statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+                statement.execute(CREATE_Z_INDEX);
+            }
+        } catch (SQLException exc) {
+            throw new IllegalStateException(String.format("Failed to open H2 database %s", url), exc);
+        }
+    }
+
+    public Result<V1WidgetDto> v1Insert(V1InsertWidgetModel model) {
+        try {
+            var widgetEntity = mapper.v1InsertModelToEntity(model);
+
+            return Result.Ok(write(connection -> insert(connection, model.getZ(), widgetEntity)));
+        } catch (Exception exc) {
+            var message = String.format("Failed to insert widget %s: %s", model, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<V1WidgetDto> v1GetById(UUID id) {
+        V1WidgetDto widget;
+
+        try {
+            widget = read(connection -> findById(connection, id));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widget with id '%s': %s", id, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+
+        if (widget == null) {
+            var message = String.format("Widget with id '%s' not found", id);
+            log.warn(message);
+            return Result.Fail(new NotFoundError(message));
+        }
+
+        return Result.Ok(widget);
+    }
+
+    public Result<V1WidgetDto> v1GetByZIndex(int z) {
+        V1WidgetDto widget;
+
+        try {
+            widget = read(connection -> {
+                try (var statement = connection.prepareStatement(SELECT_BY_Z)) {
+                    statement.setInt(1, z);
+
+                    var widgets = readWidgets(statement);
+
+                    return widgets.isEmpty() ? null : widgets.get(0);
+                }
+            });
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widget with z index '%d': %s", z, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+
+        if (widget == null) {
+            var message = String.format("Widget with z index '%d' not found", z);
+            log.warn(message);
+            return Result.Fail(new NotFoundError(message));
+        }
+
+        return Result.Ok(widget);
+    }
+
+    public Result<V1WidgetRangeDto> v1GetRange(int page, int size) {
+        try {
+            return Result.Ok(read(connection -> {
+                var valuesCount = count(connection, COUNT, statement -> { });
+
+                try (var statement = connection.prepareStatement(SELECT_PAGE)) {
+                    statement.setInt(1, size);
+                    statement.setLong(2, (long) (page - 1) * size);
+
+                    return new V1WidgetRangeDto(valuesCount, pagesCount(valuesCount, size), readWidgets(statement));
+                }
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve all widgets: %s", exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<V1WidgetSliceDto> v1GetSlice(Integer afterZ, Integer beforeZ, int size) {
+        try {
+            return Result.Ok(read(connection -> {
+                // Without a lower bound the slice is the one right below beforeZ, so paging goes backwards
+                var isBackward = afterZ == null && beforeZ != null;
+                var lowestZ = afterZ == null ? Integer.MIN_VALUE : afterZ + 1L;
+                var highestZ = beforeZ == null ? Integer.MAX_VALUE : beforeZ - 1L;
+                List<V1WidgetDto> widgets;
+
+                if (!isBackward && lowestZ > highestZ)
+                    return new V1WidgetSliceDto(List.of(), true);
+
+                // One widget more than requested tells whether the slice is the last one
+                try (var statement = connection.prepareStatement(isBackward ? SELECT_BELOW : SELECT_ABOVE)) {
+                    if (isBackward) {
+                        statement.setInt(1, beforeZ);
+                        statement.setInt(2, size + 1);
+                    } else {
+                        statement.setInt(1, (int) lowestZ);
+                        statement.setInt(2, (int) highestZ);
+                        statement.setInt(3, size + 1);
+                    }
+
+                    widgets = readWidgets(statement);
+                }
+
+                var isLast = widgets.size() <= size;
+
+                if (!isLast)
+                    widgets.remove(widgets.size() - 1);
+
+                if (isBackward)
+                    Collections.reverse(widgets);
+
+                return new V1WidgetSliceDto(widgets, isLast);
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widgets after %s and before %s: %s",
+                afterZ, beforeZ, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<V1WidgetRangeDto> v1GetRangeInArea(V1AreaDto area, int page, int size) {
+        try {
+            return Result.Ok(read(connection -> {
+                var minX = 2L * Math.min(area.getX1(), area.getX2());
+                var minY = 2L * Math.min(area.getY1(), area.getY2());
+                var maxX = 2L * Math.max(area.getX1(), area.getX2());
+                var maxY = 2L * Math.max(area.getY1(), area.getY2());
+                var valuesCount = count(connection, COUNT_IN_AREA,
+                    statement -> setArea(statement, minX, minY, maxX, maxY));
+
+                try (var statement = connection.prepareStatement(SELECT_PAGE_IN_AREA)) {
+                    setArea(statement, minX, minY, maxX, maxY);
+                    statement.setInt(5, size);
+                    statement.setLong(6, (long) (page - 1) * size);
+
+                    return new V1WidgetRangeDto(valuesCount, pagesCount(valuesCount, size), readWidgets(statement));
+                }
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widgets in area %s: %s", area, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<List<V1WidgetDto>> v1GetAtPoint(int x, int y, boolean isStackRequired) {
+        try {
+            return Result.Ok(read(connection -> {
+                try (var statement = connection.prepareStatement(SELECT_AT_POINT)) {
+                    setArea(statement, 2L * x, 2L * y, 2L * x, 2L * y);
+                    statement.setInt(5, isStackRequired ? Integer.MAX_VALUE : 1);
+
+                    return readWidgets(statement);
+                }
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widgets at point (%d, %d): %s", x, y, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<V1WidgetDto> v1Update(V1UpdateWidgetModel model) {
+        V1WidgetDto widget;
+
+        try {
+            widget = write(connection -> update(connection, model));
+        } catch (Exception exc) {
+            var message = String.format("Failed to update widget %s: %s", model, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+
+        if (widget == null) {
+            var message = String.format("Widget with id '%s' not found", model.getId());
+            log.error(message);
+            return Result.Fail(new NotFoundError(message));
+        }
+
+        return Result.Ok(widget);
+    }
+
+    public PlainResult v1Delete(UUID id) {
+        int deletedCount;
+
+        try {
+            deletedCount = write(connection -> delete(connection, id));
+        } catch (Exception exc) {
+            var message = String.format("Failed to delete widget with id '%s': %s", id, exc.getMessage());
+            log.error(message);
+            return PlainResult.Fail(new Error(message));
+        }
+
+        if (deletedCount == 0) {
+            var message = String.format("Widget with id '%s' not found", id);
+            log.warn(message);
+            return PlainResult.Fail(new NotFoundError(message));
+        }
+
+        return PlainResult.Ok();
+    }
+
+    public PlainResult v1DeleteAll() {
+        try {
+            write(connection -> {
+                try (var statement = connection.prepareStatement(DELETE_ALL)) {
+                    return statement.executeUpdate();
+                }
+            });
+        } catch (Exception exc) {
+            var message = String.format("Failed to delete all widgets: %s", exc.getMessage());
+            log.error(message);
+            return PlainResult.Fail(new Error(message));
+        }
+
+        return PlainResult.Ok();
+    }
+
+    // One transaction with batched inserts, the index on z is maintained as rows come in Z-order
+    public PlainResult v1Load(V1WidgetColumnsDto widgets) {
+        try {
+            write(connection -> {
+                try (var statement = connection.prepareStatement(DELETE_ALL)) {
+                    statement.executeUpdate();
+                }
+
+                try (var statement = connection.prepareStatement(INSERT)) {
+                    for (var i = 0; i < widgets.getCount(); i++) {
+                        var model = new V1InsertWidgetModel(widgets.getZIndexes()[i], widgets.getCenterXs()[i],
+                            widgets.getCenterYs()[i], widgets.getWidths()[i], widgets.getHeights()[i]);
+
+                        setWidget(statement, mapper.v1InsertModelToEntity(model), model.getZ());
+                        statement.addBatch();
+
+                        if ((i + 1) % LOAD_BATCH_SIZE == 0 || i == widgets.getCount() - 1)
+                            statement.executeBatch();
+                    }
+                }
+
+                return null;
+            });
+        } catch (Exception exc) {
+            var message = String.format("Failed to load %d widgets: %s", widgets.getCount(), exc.getMessage());
+            log.error(message);
+            return PlainResult.Fail(new Error(message));
+        }
+
+        return PlainResult.Ok();
+    }
+
+    // The whole batch is one transaction, so it commits or rolls back as a whole. Widgets which are not found fail
+    // on their own and don't roll back the rest
+    public Result<List<Result<V1WidgetDto>>> v1ApplyBatch(List<V1BatchOperationModel> operations, int minTopZ) {
+        try {
+            return Result.Ok(write(connection -> {
+                var results = new ArrayList<Result<V1WidgetDto>>(operations.size());
+
+                for (var operation : operations)
+                    results.add(apply(connection, operation, minTopZ));
+
+                return results;
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to apply batch of %d operations: %s", operations.size(),
+                exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        isClosed = true;
+
+        Connection readConnection;
+
+        while ((readConnection = readConnections.poll()) != null)
+            readConnection.close();
+
+        connection.close();
+    }
+
+    private Result<V1WidgetDto> apply(Connection connection, V1BatchOperationModel operation, int minTopZ)
+        throws SQLException {
+        switch (operation.getType()) {
+            case CREATE:
+                var z = operation.getZ() != null
+                    ? operation.getZ()
+                    : Math.max(minTopZ, count(connection, SELECT_NEXT_TOP_Z, statement -> { }));
+
+                if (z == Integer.MAX_VALUE)
+                    return Result.Fail(new Error("Max available Z index value reached"));
+
+                return Result.Ok(insert(connection, z, mapper.v1InsertModelToEntity(operation.toInsertModel(z))));
+            case UPDATE:
+                var widget = update(connection, operation.toUpdateModel());
+
+                return widget == null ? Result.Fail(notFound(operation.getId())) : Result.Ok(widget);
+            default:
+                return delete(connection, operation.getId()) == 0
+                    ? Result.Fail(notFound(operation.getId()))
+                    : Result.Ok(null);
+        }
+    }
+
+    private V1WidgetDto insert(Connection connection, int z, V1WidgetEntity widgetEntity) throws SQLException {
+        shift(connection, z, widgetEntity.getId());
+
+        try (var statement = connection.prepareStatement(INSERT)) {
+            setWidget(statement, widgetEntity, z);
+            statement.executeUpdate();
+        }
+
+        return mapper.v1EntityToDto(widgetEntity, z);
+    }
+
+    private V1WidgetDto update(Connection connection, V1UpdateWidgetModel model) throws SQLException {
+        var existingWidget = findById(connection, model.getId());
+
+        if (existingWidget == null)
+            return null;
+
+        var widgetEntity = mapper.v1UpdateModelToEntity(toEntity(existingWidget), model);
+        var z = model.getZ() != null ? model.getZ() : existingWidget.getZ();
+
+        if (model.getZ() != null)
+            shift(connection, z, model.getId());
+
+        try (var statement = connection.prepareStatement(UPDATE)) {
+            statement.setInt(1, z);
+            statement.setInt(2, widgetEntity.getCenterX());
+            statement.setInt(3, widgetEntity.getCenterY());
+            statement.setInt(4, widgetEntity.getWidth());
+            statement.setInt(5, widgetEntity.getHeight());
+            statement.setObject(6, widgetEntity.getUpdatedAt().toOffsetDateTime());
+            statement.setObject(7, widgetEntity.getId());
+            statement.executeUpdate();
+        }
+
+        return mapper.v1EntityToDto(widgetEntity, z);
+    }
+
+    private int delete(Connection connection, UUID id) throws SQLException {
+        try (var statement = connection.prepareStatement(DELETE)) {
+            statement.setObject(1, id);
+            return statement.executeUpdate();
+        }
+    }
+
+    // Makes room for a widget at the given Z-index, the widget itself doesn't block it if it is being moved
+    private void shift(Connection connection, int z, UUID id) throws SQLException {
+        var isOccupied = count(connection, IS_OCCUPIED, statement -> {
+            statement.setInt(1, z);
+            statement.setObject(2, id);
+        }) > 0;
+
+        if (!isOccupied)
+            return;
+
+        int runEnd;
+
+        try (var statement = connection.prepareStatement(FIND_RUN_END)) {
+            statement.setInt(1, z);
+            statement.setObject(2, id);
+            statement.setObject(3, id);
+
+            try (var resultSet = statement.executeQuery()) {
+                resultSet.next();
+                runEnd = resultSet.getInt(1);
+            }
+        }
+
+        try (var statement = connection.prepareStatement(SHIFT)) {
+            statement.setInt(1, z);
+            statement.setInt(2, runEnd);
+            statement.setObject(3, id);
+            statement.executeUpdate();
+        }
+    }
+
+    private static V1WidgetDto findById(Connection connection, UUID id) throws SQLException {
+        try (var statement = connection.prepareStatement(SELECT_BY_ID)) {
+            statement.setObject(1, id);
+
+            var widgets = readWidgets(statement);
+
+            return widgets.isEmpty() ? null : widgets.get(0);
+        }
+    }
+
+    private static int count(Connection connection, String sql, StatementSetter setter) throws SQLException {
+        try (var statement = connection.prepareStatement(sql)) {
+            setter.set(statement);
+
+            try (var resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }
+    }
+
+    private static List<V1WidgetDto> readWidgets(PreparedStatement statement) throws SQLException {
+        var widgets = new ArrayList<V1WidgetDto>();
+
+        try (var resultSet = statement.executeQuery()) {
+            while (resultSet.next())
+                widgets.add(toDto(resultSet));
+        }
+
+        return widgets;
+    }
+
+    // Writes run one at a time, so a write with its shift commits or rolls back as a whole before the next one
+    // touches the connection
+    private <T> T write(SqlFunction<T> writer) {
+        writeLock.lock();
+
+        try {
+            return inTransaction(connection, writer);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // A connection is taken by one read at a time and goes back to the pool after it, so there are as many
+    // connections as reads have ever run at once
+    private <T> T read(SqlFunction<T> reader) {
+        var readConnection = readConnections.poll();
+
+        try {
+            if (readConnection == null) {
+                readConnection = DriverManager.getConnection(url);
+                readConnection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            }
+
+            return inTransaction(readConnection, reader);
+        } catch (SQLException exc) {
+            throw new IllegalStateException(exc.getMessage(), exc);
+        } finally {
+            if (readConnection != null)
+                release(readConnection);
+        }
+    }
+
+    private void release(Connection readConnection) {
+        readConnections.push(readConnection);
+
+        // A read which ends after the repository is closed closes its connection itself
+        if (isClosed && readConnections.remove(readConnection)) {
+            try {
+                readConnection.close();
+            } catch (SQLException exc) {
+                log.warn("Failed to close H2 connection: {}", exc.getMessage());
+            }
+        }
+    }
+
+    private static <T> T inTransaction(Connection connection, SqlFunction<T> action) {
+        try {
+            connection.setAutoCommit(false);
+
+            try {
+                var result = action.apply(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException exc) {
+                connection.rollback();
+                throw exc;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException exc) {
+            throw new IllegalStateException(exc.getMessage(), exc);
+        }
+    }
+
+    private static void setWidget(PreparedStatement statement, V1WidgetEntity widgetEntity, int z)
+        throws SQLException {
+        statement.setObject(1, widgetEntity.getId());
+        statement.setInt(2, z);
+        statement.setInt(3, widgetEntity.getCenterX());
+        statement.setInt(4, widgetEntity.getCenterY());
+        statement.setInt(5, widgetEntity.getWidth());
+        statement.setInt(6, widgetEntity.getHeight());
+        statement.setObject(7, widgetEntity.getUpdatedAt().toOffsetDateTime());
+    }
+
+    private static void setArea(PreparedStatement statement, long minX, long minY, long maxX, long maxY)
+        throws SQLException {
+        statement.setLong(1, maxX);
+        statement.setLong(2, minX);
+        statement.setLong(3, maxY);
+        statement.setLong(4, minY);
+    }
+
+    private static NotFoundError notFound(UUID id) {
+        var message = String.format("Widget with id '%s' not found", id);
+        log.warn(message);
+        return new NotFoundError(message);
+    }
+
+    private static V1WidgetDto toDto(ResultSet resultSet) throws SQLException {
+        return new V1WidgetDto(
+            resultSet.getObject(1, UUID.class),
+            resultSet.getInt(2),
+            new V1CoordinatesDto(resultSet.getInt(3), resultSet.getInt(4)),
+            new V1SizeDto(resultSet.getInt(5), resultSet.getInt(6)),
+            resultSet.getObject(7, OffsetDateTime.class).atZoneSameInstant(ZoneId.systemDefault()));
+    }
+
+    private static V1WidgetEntity toEntity(V1WidgetDto widget) {
+        return new V1WidgetEntity(
+            widget.getId(),
+            widget.getCoordinates().getCenterX(),
+            widget.getCoordinates().getCenterY(),
+            widget.getSize().getWidth(),
+            widget.getSize().getHeight(),
+            widget.getUpdatedAt());
+    }
+
+    private static int pagesCount(int valuesCount, int size) {
+        var pagesCount = valuesCount / size;
+
+        if (pagesCount * size < valuesCount)
+            pagesCount++;
+
+        return pagesCount;
+    }
+
+    @FunctionalInterface
+    private interface SqlFunction<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface StatementSetter {
+        void set(PreparedStatement statement) throws SQLException;
+    }
+}
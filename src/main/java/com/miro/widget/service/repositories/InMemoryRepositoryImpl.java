@@ -2,46 +2,121 @@ package com.miro.widget.service.repositories;
 
 import com.miro.widget.mappers.BllAndDalMapper;
 import com.miro.widget.service.models.*;
+import com.miro.widget.service.repositories.indexes.RTree;
+import com.miro.widget.service.repositories.indexes.ZOrderTree;
 import com.miro.widget.service.repositories.models.*;
+import com.miro.widget.service.repositories.raft.RaftNode;
+import com.miro.widget.service.repositories.replication.ReplicationFollower;
+import com.miro.widget.service.repositories.replication.ReplicationLeader;
+import com.miro.widget.service.repositories.wal.Checkpointer;
+import com.miro.widget.service.repositories.wal.V1WalRecord;
+import com.miro.widget.service.repositories.wal.WidgetSnapshot;
+import com.miro.widget.service.repositories.wal.WriteAheadLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Repository;
 import result.PlainResult;
 import result.Result;
 import result.errors.Error;
 import result.errors.NotFoundError;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Repository
+@ConditionalOnProperty(prefix = "widget.repository", name = "type", havingValue = "in-memory", matchIfMissing = true)
 public class InMemoryRepositoryImpl implements WidgetRepository {
     private static final Logger log = LoggerFactory.getLogger(InMemoryRepositoryImpl.class);
-    private static final ConcurrentMap<UUID, V1WidgetEntity> idToWidgetMap = new ConcurrentHashMap<>();
-    private static final ConcurrentNavigableMap<Integer, V1WidgetEntity> zIndexToWidgetMap =
-        new ConcurrentSkipListMap<>();
+    private static final SecureRandom ID_RANDOM = new SecureRandom();
+    private static final int RANDOM_IDS_BLOCK_SIZE = 4096;
 
+    private final ConcurrentMap<UUID, ZOrderTree.Node<V1WidgetEntity>> idToWidgetMap = new ConcurrentHashMap<>();
+    private final ZOrderTree<V1WidgetEntity> zOrderTree = new ZOrderTree<>();
+    private final RTree<ZOrderTree.Node<V1WidgetEntity>> spatialIndex = new RTree<>(zOrderTree::zOf);
+    private final RepositoryLock lock = new RepositoryLock();
     private final BllAndDalMapper mapper;
+    private final WriteAheadLog writeAheadLog;
+    private final ReplicationLeader replicationLeader;
+    private final ReplicationFollower replicationFollower;
+    private final RaftNode raftNode;
 
-    @Autowired
     public InMemoryRepositoryImpl(BllAndDalMapper mapper) {
+        this(mapper, null, null);
+    }
+
+    public InMemoryRepositoryImpl(
+        BllAndDalMapper mapper,
+        @Nullable WriteAheadLog writeAheadLog,
+        @Nullable Checkpointer checkpointer
+    ) {
+        this(mapper, writeAheadLog, checkpointer, null, null);
+    }
+
+    public InMemoryRepositoryImpl(
+        BllAndDalMapper mapper,
+        @Nullable WriteAheadLog writeAheadLog,
+        @Nullable Checkpointer checkpointer,
+        @Nullable ReplicationLeader replicationLeader,
+        @Nullable ReplicationFollower replicationFollower
+    ) {
+        this(mapper, writeAheadLog, checkpointer, replicationLeader, replicationFollower, null);
+    }
+
+    // With a write-ahead log the repository starts from the latest snapshot, if there is one, and the log written
+    // after it, and appends every write to the log. A replication leader ships every write to followers, a
+    // follower takes the state of its leader and refuses writes of its own. A Raft node takes writes only as the
+    // leader and keeps the state of every node in line with the committed Raft log
+    @Autowired
+    public InMemoryRepositoryImpl(
+        BllAndDalMapper mapper,
+        @Nullable WriteAheadLog writeAheadLog,
+        @Nullable Checkpointer checkpointer,
+        @Nullable ReplicationLeader replicationLeader,
+        @Nullable ReplicationFollower replicationFollower,
+        @Nullable RaftNode raftNode
+    ) {
         this.mapper = mapper;
+        this.writeAheadLog = writeAheadLog;
+        this.replicationLeader = replicationLeader;
+        this.replicationFollower = replicationFollower;
+        this.raftNode = raftNode;
+
+        if (writeAheadLog != null)
+            recover(writeAheadLog, checkpointer);
+
+        if (replicationLeader != null)
+            replicationLeader.start(this::snapshot);
+
+        if (replicationFollower != null)
+            replicationFollower.start(this::reset, record -> lock.write(() -> apply(record)));
+
+        if (raftNode != null)
+            raftNode.start(() -> reset(List.of()), record -> lock.write(() -> apply(record)));
     }
 
     public Result<V1WidgetDto> v1Insert(V1InsertWidgetModel model) {
         try {
             var widgetEntity = mapper.v1InsertModelToEntity(model);
 
-            idToWidgetMap.put(widgetEntity.getId(), widgetEntity);
-            zIndexToWidgetMap.put(widgetEntity.getZ(), widgetEntity);
-
-            return Result.Ok(mapper.v1EntityToDto(widgetEntity));
+            return Result.Ok(lock.write(() -> {
+                checkWritable();
+                return insertLocked(model.getZ(), widgetEntity);
+            }));
         } catch (Exception exc) {
             var message = String.format("Failed to insert widget %s: %s", model, exc.getMessage());
             log.error(message);
@@ -50,48 +125,55 @@ public class InMemoryRepositoryImpl implements WidgetRepository {
     }
 
     public Result<V1WidgetDto> v1GetById(UUID id) {
-        var widgetEntity = idToWidgetMap.getOrDefault(id, null);
+        var widget = lock.read(() -> {
+            var widgetNode = idToWidgetMap.getOrDefault(id, null);
+
+            return widgetNode == null ? null : toDto(widgetNode);
+        });
 
-        if (widgetEntity == null) {
+        if (widget == null) {
             var message = String.format("Widget with id '%s' not found", id);
             log.warn(message);
             return Result.Fail(new NotFoundError(message));
         }
 
-        return Result.Ok(mapper.v1EntityToDto(widgetEntity));
+        return Result.Ok(widget);
     }
 
     public Result<V1WidgetDto> v1GetByZIndex(int z) {
-        var widgetEntity = zIndexToWidgetMap.getOrDefault(z, null);
+        var widget = lock.read(() -> {
+            var widgetNode = zOrderTree.get(z);
+
+            return widgetNode == null ? null : mapper.v1EntityToDto(widgetNode.getValue(), z);
+        });
 
-        if (widgetEntity == null) {
+        if (widget == null) {
             var message = String.format("Widget with z index '%d' not found", z);
             log.warn(message);
             return Result.Fail(new NotFoundError(message));
         }
 
-        return Result.Ok(mapper.v1EntityToDto(widgetEntity));
+        return Result.Ok(widget);
     }
 
     public Result<V1WidgetRangeDto> v1GetRange(int page, int size) {
         try {
-            var valuesCount = zIndexToWidgetMap.values().size();
-            var pagesCount = valuesCount / size;
-
-            if (pagesCount * size < valuesCount)
-                pagesCount++;
-
-            return Result.Ok(new V1WidgetRangeDto(
-                valuesCount,
-                pagesCount,
-                zIndexToWidgetMap
-                    .values()
-                    .stream()
-                    .skip((long) (page - 1) * size)
-                    .limit(size)
-                    .map(mapper::v1EntityToDto)
-                    .collect(Collectors.toList())
-            ));
+            return Result.Ok(lock.read(() -> {
+                var valuesCount = zOrderTree.size();
+                var pagesCount = valuesCount / size;
+
+                if (pagesCount * size < valuesCount)
+                    pagesCount++;
+
+                var skip = (long) (page - 1) * size;
+                var widgetNode = skip < valuesCount ? zOrderTree.nodeAt((int) skip) : null;
+                var widgets = new ArrayList<V1WidgetDto>(Math.min(size, valuesCount));
+
+                for (; widgetNode != null && widgets.size() < size; widgetNode = zOrderTree.next(widgetNode))
+                    widgets.add(toDto(widgetNode));
+
+                return new V1WidgetRangeDto(valuesCount, pagesCount, widgets);
+            }));
         } catch (Exception exc) {
             var message = String.format("Failed to retrieve all widgets: %s", exc.getMessage());
             log.error(message);
@@ -99,62 +181,253 @@ public class InMemoryRepositoryImpl implements WidgetRepository {
         }
     }
 
-    public Result<V1WidgetDto> v1Update(V1UpdateWidgetModel model) {
-        var widgetEntity = idToWidgetMap.getOrDefault(model.getId(), null);
+    public Result<V1WidgetSliceDto> v1GetSlice(Integer afterZ, Integer beforeZ, int size) {
+        try {
+            return Result.Ok(lock.read(() -> {
+                var from = afterZ == null ? 0 : zOrderTree.lowerBound((long) afterZ + 1);
+                var to = beforeZ == null ? zOrderTree.size() : zOrderTree.lowerBound(beforeZ);
 
-        if (widgetEntity == null) {
-            var message = String.format("Widget with id '%s' not found", model.getId());
+                // Without a lower bound the slice is the one right below beforeZ, so paging goes backwards
+                var isBackward = afterZ == null && beforeZ != null;
+                if (isBackward)
+                    from = Math.max(from, to - size);
+
+                var widgets = new ArrayList<V1WidgetDto>(Math.max(0, Math.min(size, to - from)));
+                var widgetNode = from < to ? zOrderTree.nodeAt(from) : null;
+
+                for (; widgetNode != null && widgets.size() < Math.min(size, to - from);
+                     widgetNode = zOrderTree.next(widgetNode))
+                    widgets.add(toDto(widgetNode));
+
+                return new V1WidgetSliceDto(widgets, isBackward ? from == 0 : from + widgets.size() >= to);
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widgets after %s and before %s: %s",
+                afterZ, beforeZ, exc.getMessage());
             log.error(message);
-            return Result.Fail(new NotFoundError(message));
+            return Result.Fail(new Error(message));
         }
+    }
 
-        if (model.getCenterX() != null)
-            widgetEntity.setCenterX(model.getCenterX());
+    public Result<Integer> v1VisitRange(int page, int size, V1WidgetVisitor visitor) {
+        var widgets = new ReadWidgets(size);
+        int valuesCount;
 
-        if (model.getCenterY() != null)
-            widgetEntity.setCenterY(model.getCenterY());
+        try {
+            valuesCount = lock.read(() -> {
+                var skip = (long) (page - 1) * size;
+                var widgetNode = skip < zOrderTree.size() ? zOrderTree.nodeAt((int) skip) : null;
 
-        if (model.getWidth() != null)
-            widgetEntity.setWidth(model.getWidth());
+                widgets.clear();
 
-        if (model.getHeight() != null)
-            widgetEntity.setHeight(model.getHeight());
+                for (; widgetNode != null && widgets.count < size; widgetNode = zOrderTree.next(widgetNode))
+                    widgets.add(widgetNode.getValue(), zOrderTree.zOf(widgetNode));
 
-        if (model.getZ() != null) {
-            if (zIndexToWidgetMap.get(widgetEntity.getZ()).getId() == widgetEntity.getId()) {
-                zIndexToWidgetMap.remove(widgetEntity.getZ());
-            }
+                return zOrderTree.size();
+            });
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve all widgets: %s", exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+
+        // The visitor may block, so it runs after the read rather than in it
+        widgets.visit(visitor);
+
+        return Result.Ok(valuesCount);
+    }
+
+    public Result<Boolean> v1VisitSlice(Integer afterZ, Integer beforeZ, int size, V1WidgetVisitor visitor) {
+        var widgets = new ReadWidgets(size);
+        boolean isLast;
+
+        try {
+            isLast = lock.read(() -> {
+                var from = afterZ == null ? 0 : zOrderTree.lowerBound((long) afterZ + 1);
+                var to = beforeZ == null ? zOrderTree.size() : zOrderTree.lowerBound(beforeZ);
+
+                var isBackward = afterZ == null && beforeZ != null;
+                if (isBackward)
+                    from = Math.max(from, to - size);
+
+                var widgetNode = from < to ? zOrderTree.nodeAt(from) : null;
+
+                widgets.clear();
+
+                for (; widgetNode != null && widgets.count < Math.min(size, to - from);
+                     widgetNode = zOrderTree.next(widgetNode))
+                    widgets.add(widgetNode.getValue(), zOrderTree.zOf(widgetNode));
+
+                return isBackward ? from == 0 : from + widgets.count >= to;
+            });
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widgets after %s and before %s: %s",
+                afterZ, beforeZ, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+
+        widgets.visit(visitor);
+
+        return Result.Ok(isLast);
+    }
+
+    public Result<V1WidgetRangeDto> v1GetRangeInArea(V1AreaDto area, int page, int size) {
+        try {
+            return Result.Ok(lock.readLocked(() -> {
+                var widgetNodes = new ArrayList<ZOrderTree.Node<V1WidgetEntity>>();
+
+                spatialIndex.search(
+                    2L * Math.min(area.getX1(), area.getX2()),
+                    2L * Math.min(area.getY1(), area.getY2()),
+                    2L * Math.max(area.getX1(), area.getX2()),
+                    2L * Math.max(area.getY1(), area.getY2()),
+                    widgetNodes::add);
+
+                var sortKeys = sortByZIndex(widgetNodes);
+                var valuesCount = sortKeys.length;
+                var pagesCount = valuesCount / size;
+
+                if (pagesCount * size < valuesCount)
+                    pagesCount++;
+
+                var from = (int) Math.min((long) (page - 1) * size, valuesCount);
+                var to = Math.min(from + size, valuesCount);
+                var widgets = new ArrayList<V1WidgetDto>(to - from);
+
+                for (var i = from; i < to; i++) {
+                    var widgetNode = widgetNodes.get((int) sortKeys[i]);
+                    widgets.add(mapper.v1EntityToDto(widgetNode.getValue(), (int) (sortKeys[i] >> 32)));
+                }
+
+                return new V1WidgetRangeDto(valuesCount, pagesCount, widgets);
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widgets in area %s: %s", area, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<List<V1WidgetDto>> v1GetAtPoint(int x, int y, boolean isStackRequired) {
+        try {
+            return Result.Ok(lock.readLocked(() -> {
+                if (!isStackRequired) {
+                    var topmostNode = spatialIndex.searchTopmost(2L * x, 2L * y);
+
+                    return topmostNode == null
+                        ? List.<V1WidgetDto>of()
+                        : List.of(mapper.v1EntityToDto(topmostNode.getValue(), zOrderTree.zOf(topmostNode)));
+                }
+
+                var widgetNodes = new ArrayList<ZOrderTree.Node<V1WidgetEntity>>();
+
+                spatialIndex.search(2L * x, 2L * y, 2L * x, 2L * y, widgetNodes::add);
+
+                var sortKeys = sortByZIndex(widgetNodes);
+                var widgets = new ArrayList<V1WidgetDto>(sortKeys.length);
+
+                for (var i = sortKeys.length - 1; i >= 0; i--) {
+                    var widgetNode = widgetNodes.get((int) sortKeys[i]);
+                    widgets.add(mapper.v1EntityToDto(widgetNode.getValue(), (int) (sortKeys[i] >> 32)));
+                }
+
+                return widgets;
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widgets at point (%d, %d): %s", x, y, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
 
-            widgetEntity.setZ(model.getZ());
-            zIndexToWidgetMap.put(widgetEntity.getZ(), widgetEntity);
+    public Result<V1WidgetDto> v1Update(V1UpdateWidgetModel model) {
+        V1WidgetDto widget;
+
+        try {
+            widget = lock.write(() -> updateLocked(model));
+        } catch (Exception exc) {
+            var message = String.format("Failed to update widget %s: %s", model, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
         }
 
-        widgetEntity.setUpdatedAt(ZonedDateTime.now());
+        if (widget == null) {
+            var message = String.format("Widget with id '%s' not found", model.getId());
+            log.error(message);
+            return Result.Fail(new NotFoundError(message));
+        }
 
-        return Result.Ok(mapper.v1EntityToDto(widgetEntity));
+        return Result.Ok(widget);
     }
 
     public PlainResult v1Delete(UUID id) {
-        var removedByIdWidget = idToWidgetMap.remove(id);
-        if (removedByIdWidget == null) {
+        ZOrderTree.Node<V1WidgetEntity> removedWidgetNode;
+
+        try {
+            removedWidgetNode = lock.write(() -> {
+                checkWritable();
+                return deleteLocked(id);
+            });
+        } catch (Exception exc) {
+            var message = String.format("Failed to delete widget with id '%s': %s", id, exc.getMessage());
+            log.error(message);
+            return PlainResult.Fail(new Error(message));
+        }
+
+        if (removedWidgetNode == null) {
             var message = String.format("Widget with id '%s' not found", id);
             log.warn(message);
             return PlainResult.Fail(new NotFoundError(message));
         }
 
-        var removedByZIndexWidget = zIndexToWidgetMap.remove(removedByIdWidget.getZ());
-        if (removedByZIndexWidget == null) {
-            var message = String.format(
-                "Widget with z index '%d' wasn't found while one with ID '%s' was", removedByIdWidget.getZ(), id);
+        return PlainResult.Ok();
+    }
+
+    public PlainResult v1DeleteAll() {
+        try {
+            lock.write(() -> {
+                checkWritable();
+                clear();
+                appendToLog(V1WalRecord.clear());
+
+                return null;
+            });
+        } catch (Exception exc) {
+            var message = String.format("Failed to delete all widgets: %s", exc.getMessage());
             log.error(message);
             return PlainResult.Fail(new Error(message));
         }
 
-        if (!removedByIdWidget.equals(removedByZIndexWidget)) {
-            var message = String.format(
-                "Widget deleted by ID is not the same as deleted by z index. First: %s, second: %s",
-                removedByIdWidget,
-                removedByZIndexWidget);
+        return PlainResult.Ok();
+    }
+
+    // Builds the indexes in one pass, the same way as a snapshot is loaded. IDs are cut from random bytes which the
+    // SecureRandom fills a block at a time, instead of UUID.randomUUID taking its lock once per widget
+    public PlainResult v1Load(V1WidgetColumnsDto columns) {
+        try {
+            var updatedAt = ZonedDateTime.now();
+            var zIndexes = columns.getZIndexes();
+            var ids = randomIds(columns.getCount());
+            var widgets = new V1WidgetEntity[ids.length];
+
+            IntStream.range(0, widgets.length).parallel().forEach(i -> widgets[i] = new V1WidgetEntity(ids[i],
+                columns.getCenterXs()[i], columns.getCenterYs()[i], columns.getWidths()[i], columns.getHeights()[i],
+                updatedAt));
+
+            lock.write(() -> {
+                checkWritable();
+                clear();
+                load(zIndexes, widgets);
+                appendToLog(V1WalRecord.clear());
+
+                for (var i = 0; i < widgets.length; i++)
+                    appendToLog(V1WalRecord.put(mapper.v1EntityToDto(widgets[i], zIndexes[i])));
+
+                return null;
+            });
+        } catch (Exception exc) {
+            var message = String.format("Failed to load %d widgets: %s", columns.getCount(), exc.getMessage());
             log.error(message);
             return PlainResult.Fail(new Error(message));
         }
@@ -162,16 +435,394 @@ public class InMemoryRepositoryImpl implements WidgetRepository {
         return PlainResult.Ok();
     }
 
-    public PlainResult v1DeleteAll() {
+    // The whole batch is one write: readers see either none or all of it, and every shift goes through the Z-order
+    // tree in logarithmic time, so overlapping shifts of the batch cost no more than separate ones
+    public Result<List<Result<V1WidgetDto>>> v1ApplyBatch(List<V1BatchOperationModel> operations, int minTopZ) {
         try {
-            idToWidgetMap.clear();
-            zIndexToWidgetMap.clear();
+            // Created widgets get their IDs outside the lock, the entity doesn't depend on the Z-index
+            var widgetEntities = operations.stream()
+                .map(operation -> operation.getType() == V1BatchOperationType.CREATE
+                    ? mapper.v1InsertModelToEntity(operation.toInsertModel(0))
+                    : null)
+                .collect(Collectors.toList());
+
+            return Result.Ok(lock.write(() -> {
+                checkWritable();
+
+                var results = new ArrayList<Result<V1WidgetDto>>(operations.size());
+
+                for (var i = 0; i < operations.size(); i++)
+                    results.add(applyLocked(operations.get(i), widgetEntities.get(i), minTopZ));
+
+                return results;
+            }));
         } catch (Exception exc) {
-            var message = String.format("Failed to delete all widgets: %s", exc.getMessage());
+            var message = String.format("Failed to apply batch of %d operations: %s", operations.size(),
+                exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public PlainResult v1AwaitDurable() {
+        if (writeAheadLog == null && raftNode == null)
+            return PlainResult.Ok();
+
+        try {
+            if (writeAheadLog != null)
+                writeAheadLog.awaitDurable();
+
+            if (raftNode != null)
+                raftNode.awaitCommitted();
+        } catch (Exception exc) {
+            var message = String.format("Failed to persist widget changes: %s", exc.getMessage());
             log.error(message);
             return PlainResult.Fail(new Error(message));
         }
 
         return PlainResult.Ok();
     }
+
+    private Result<V1WidgetDto> applyLocked(
+        V1BatchOperationModel operation, V1WidgetEntity widgetEntity, int minTopZ) {
+        switch (operation.getType()) {
+            case CREATE:
+                if (operation.getZ() != null)
+                    return Result.Ok(insertLocked(operation.getZ(), widgetEntity));
+
+                var topmostNode = zOrderTree.last();
+                var z = topmostNode == null ? minTopZ : Math.max(minTopZ, (long) zOrderTree.zOf(topmostNode) + 1);
+
+                if (z >= Integer.MAX_VALUE)
+                    return Result.Fail(new Error("Max available Z index value reached"));
+
+                return Result.Ok(insertLocked((int) z, widgetEntity));
+            case UPDATE:
+                var widget = updateLocked(operation.toUpdateModel());
+
+                return widget == null ? Result.Fail(notFound(operation.getId())) : Result.Ok(widget);
+            default:
+                return deleteLocked(operation.getId()) == null
+                    ? Result.Fail(notFound(operation.getId()))
+                    : Result.Ok(null);
+        }
+    }
+
+    private V1WidgetDto insertLocked(int z, V1WidgetEntity widgetEntity) {
+        var widgetNode = zOrderTree.insert(z, widgetEntity);
+
+        idToWidgetMap.put(widgetEntity.getId(), widgetNode);
+        addToSpatialIndex(widgetNode);
+
+        return appendToLog(toDto(widgetNode));
+    }
+
+    private V1WidgetDto updateLocked(V1UpdateWidgetModel model) {
+        checkWritable();
+
+        var widgetNode = idToWidgetMap.getOrDefault(model.getId(), null);
+
+        if (widgetNode == null)
+            return null;
+
+        // The spatial index ranks widgets by Z-order, so a widget leaves it while it moves in Z-order too
+        var isMoving = model.getCenterX() != null || model.getCenterY() != null ||
+            model.getWidth() != null || model.getHeight() != null || model.getZ() != null;
+
+        if (isMoving)
+            removeFromSpatialIndex(widgetNode);
+
+        widgetNode.setValue(mapper.v1UpdateModelToEntity(widgetNode.getValue(), model));
+
+        if (model.getZ() != null)
+            zOrderTree.move(widgetNode, model.getZ());
+
+        if (isMoving)
+            addToSpatialIndex(widgetNode);
+
+        return appendToLog(toDto(widgetNode));
+    }
+
+    private ZOrderTree.Node<V1WidgetEntity> deleteLocked(UUID id) {
+        var widgetNode = idToWidgetMap.remove(id);
+
+        remove(widgetNode);
+
+        if (widgetNode != null)
+            appendToLog(V1WalRecord.delete(id));
+
+        return widgetNode;
+    }
+
+    private void recover(WriteAheadLog writeAheadLog, Checkpointer checkpointer) {
+        try {
+            var snapshot = checkpointer == null ? null : checkpointer.latestSnapshot();
+
+            lock.write(() -> {
+                clear();
+
+                if (snapshot != null)
+                    load(snapshot);
+
+                return null;
+            });
+
+            writeAheadLog.replay(
+                snapshot == null ? 0 : snapshot.getLastSegment(), record -> lock.write(() -> apply(record)));
+        } catch (IOException exc) {
+            throw new UncheckedIOException("Failed to recover widgets", exc);
+        }
+    }
+
+    // Bulk loading of the whole snapshot: records are decoded and indexed in parallel, and the indexes are built in
+    // linear time instead of inserting widgets one by one
+    private void load(WidgetSnapshot snapshot) {
+        var startedAt = System.nanoTime();
+        var widgets = IntStream.range(0, snapshot.size())
+            .parallel()
+            .mapToObj(snapshot::entityAt)
+            .toArray(V1WidgetEntity[]::new);
+
+        load(IntStream.range(0, widgets.length).map(snapshot::zAt).toArray(), widgets);
+
+        log.info("Loaded {} widgets from snapshot in {} ms",
+            widgets.length, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    }
+
+    // Widgets have to be in Z-order
+    private void load(int[] zIndexes, V1WidgetEntity[] widgets) {
+        var loader = zOrderTree.loader();
+        var widgetNodes = new ArrayList<ZOrderTree.Node<V1WidgetEntity>>(widgets.length);
+
+        for (var i = 0; i < widgets.length; i++)
+            widgetNodes.add(loader.add(zIndexes[i], widgets[i]));
+
+        loader.finish();
+
+        var bounds = new long[4 * widgets.length];
+
+        IntStream.range(0, widgets.length).parallel().forEach(i -> {
+            var widget = widgets[i];
+
+            idToWidgetMap.put(widget.getId(), widgetNodes.get(i));
+            bounds[4 * i] = 2L * widget.getCenterX() - widget.getWidth();
+            bounds[4 * i + 1] = 2L * widget.getCenterY() - widget.getHeight();
+            bounds[4 * i + 2] = 2L * widget.getCenterX() + widget.getWidth();
+            bounds[4 * i + 3] = 2L * widget.getCenterY() + widget.getHeight();
+        });
+
+        spatialIndex.load(bounds, widgetNodes);
+    }
+
+    // The state of the repository for a new replication follower, which is registered before any later write
+    private List<V1WidgetDto> snapshot(Runnable registration) {
+        return lock.readLocked(() -> {
+            registration.run();
+
+            var widgets = new ArrayList<V1WidgetDto>(idToWidgetMap.size());
+
+            for (var widgetNode = zOrderTree.first(); widgetNode != null; widgetNode = zOrderTree.next(widgetNode))
+                widgets.add(toDto(widgetNode));
+
+            return widgets;
+        });
+    }
+
+    // Replaces the whole state with the one of the replication leader
+    private void reset(List<V1WidgetDto> widgets) {
+        var zIndexes = widgets.stream().mapToInt(V1WidgetDto::getZ).toArray();
+        var widgetEntities = widgets.stream().map(InMemoryRepositoryImpl::toEntity).toArray(V1WidgetEntity[]::new);
+
+        lock.write(() -> {
+            clear();
+            load(zIndexes, widgetEntities);
+
+            return null;
+        });
+    }
+
+    private Void apply(V1WalRecord record) {
+        switch (record.getType()) {
+            case PUT:
+                restore(record.getWidget());
+                break;
+            case DELETE:
+                remove(idToWidgetMap.remove(record.getId()));
+                break;
+            case CLEAR:
+                clear();
+                break;
+        }
+
+        return null;
+    }
+
+    // Puts the logged state of a widget back the same way the original write placed it
+    private void restore(V1WidgetDto widget) {
+        remove(idToWidgetMap.remove(widget.getId()));
+
+        var widgetNode = zOrderTree.insert(widget.getZ(), toEntity(widget));
+
+        idToWidgetMap.put(widget.getId(), widgetNode);
+        addToSpatialIndex(widgetNode);
+    }
+
+    private void remove(ZOrderTree.Node<V1WidgetEntity> widgetNode) {
+        if (widgetNode == null)
+            return;
+
+        removeFromSpatialIndex(widgetNode);
+        zOrderTree.remove(widgetNode);
+    }
+
+    private void clear() {
+        idToWidgetMap.clear();
+        zOrderTree.clear();
+        spatialIndex.clear();
+    }
+
+    private void checkWritable() {
+        if (replicationFollower != null)
+            throw new IllegalStateException("Widgets are written on the replication leader only");
+
+        if (writeAheadLog != null)
+            writeAheadLog.checkHealthy();
+
+        if (raftNode != null)
+            raftNode.checkLeader();
+    }
+
+    private V1WidgetDto appendToLog(V1WidgetDto widget) {
+        appendToLog(V1WalRecord.put(widget));
+
+        return widget;
+    }
+
+    private void appendToLog(V1WalRecord record) {
+        if (writeAheadLog != null)
+            writeAheadLog.append(record);
+
+        if (replicationLeader != null)
+            replicationLeader.publish(record);
+
+        if (raftNode != null)
+            raftNode.append(record);
+    }
+
+    private static NotFoundError notFound(UUID id) {
+        var message = String.format("Widget with id '%s' not found", id);
+        log.warn(message);
+        return new NotFoundError(message);
+    }
+
+    private V1WidgetDto toDto(ZOrderTree.Node<V1WidgetEntity> widgetNode) {
+        return mapper.v1EntityToDto(widgetNode.getValue(), zOrderTree.zOf(widgetNode));
+    }
+
+    private static V1WidgetEntity toEntity(V1WidgetDto widget) {
+        return new V1WidgetEntity(
+            widget.getId(),
+            widget.getCoordinates().getCenterX(),
+            widget.getCoordinates().getCenterY(),
+            widget.getSize().getWidth(),
+            widget.getSize().getHeight(),
+            widget.getUpdatedAt());
+    }
+
+    // Version 4 UUIDs with the same bits and the same kind of generator as UUID.randomUUID
+    private static UUID[] randomIds(int count) {
+        var ids = new UUID[count];
+        var bytes = new byte[RANDOM_IDS_BLOCK_SIZE * 16];
+        var buffer = ByteBuffer.wrap(bytes);
+
+        for (var i = 0; i < count; i++) {
+            if (i % RANDOM_IDS_BLOCK_SIZE == 0) {
+                ID_RANDOM.nextBytes(bytes);
+                buffer.clear();
+            }
+
+            ids[i] = new UUID(
+                buffer.getLong() & ~0xF000L | 0x4000L,
+                buffer.getLong() & ~(0xC000L << 48) | 0x8000L << 48);
+        }
+
+        return ids;
+    }
+
+    // Z-index in the high half keeps the order, position in the low half points back to the node
+    private long[] sortByZIndex(List<ZOrderTree.Node<V1WidgetEntity>> widgetNodes) {
+        var sortKeys = new long[widgetNodes.size()];
+
+        for (var i = 0; i < sortKeys.length; i++)
+            sortKeys[i] = (long) zOrderTree.zOf(widgetNodes.get(i)) << 32 | i;
+
+        Arrays.sort(sortKeys);
+
+        return sortKeys;
+    }
+
+    // Bounds are doubled so that widgets of odd width or height keep integer coordinates
+    private void addToSpatialIndex(ZOrderTree.Node<V1WidgetEntity> widgetNode) {
+        var widget = widgetNode.getValue();
+
+        spatialIndex.insert(
+            2L * widget.getCenterX() - widget.getWidth(),
+            2L * widget.getCenterY() - widget.getHeight(),
+            2L * widget.getCenterX() + widget.getWidth(),
+            2L * widget.getCenterY() + widget.getHeight(),
+            widgetNode);
+    }
+
+    private void removeFromSpatialIndex(ZOrderTree.Node<V1WidgetEntity> widgetNode) {
+        var widget = widgetNode.getValue();
+
+        spatialIndex.remove(
+            2L * widget.getCenterX() - widget.getWidth(),
+            2L * widget.getCenterY() - widget.getHeight(),
+            2L * widget.getCenterX() + widget.getWidth(),
+            2L * widget.getCenterY() + widget.getHeight(),
+            widgetNode);
+    }
+
+    // Widgets as a read found them, kept until it turns out consistent. Entities are immutable, so visiting them
+    // later passes the same values, and a retried read starts over without allocating anything per widget
+    private static final class ReadWidgets {
+        private V1WidgetEntity[] entities;
+        private int[] zs;
+        private int count;
+
+        private ReadWidgets(int capacity) {
+            this.entities = new V1WidgetEntity[Math.min(capacity, 1_024)];
+            this.zs = new int[entities.length];
+        }
+
+        private void clear() {
+            count = 0;
+        }
+
+        private void add(V1WidgetEntity entity, int z) {
+            if (count == entities.length) {
+                entities = Arrays.copyOf(entities, count * 2);
+                zs = Arrays.copyOf(zs, count * 2);
+            }
+
+            entities[count] = entity;
+            zs[count++] = z;
+        }
+
+        private void visit(V1WidgetVisitor visitor) {
+            for (var i = 0; i < count; i++) {
+                var entity = entities[i];
+
+                visitor.visit(
+                    entity.getId(),
+                    zs[i],
+                    entity.getCenterX(),
+                    entity.getCenterY(),
+                    entity.getWidth(),
+                    entity.getHeight(),
+                    entity.getUpdatedAt());
+            }
+        }
+    }
 }
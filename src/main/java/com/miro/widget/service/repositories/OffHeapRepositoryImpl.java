@@ -0,0 +1,22 @@
+package com.miro.widget.service.repositories;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * {@link PrimitiveRepositoryImpl} with all widget fields, the ID index and the Z-order kept in direct memory. Only
+ * DTOs returned to callers are allocated on the heap, so the heap footprint doesn't depend on the board size.
+ * <p>
+ * Selected with {@code widget.repository.type=off-heap}. Direct memory is limited by {@code -XX:MaxDirectMemorySize}
+ * and should have room for twice the initial capacity while the storage grows.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "widget.repository", name = "type", havingValue = "off-heap")
+public class OffHeapRepositoryImpl extends PrimitiveRepositoryImpl {
+    @Autowired
+    public OffHeapRepositoryImpl(@Value("${widget.repository.off-heap.initial-capacity:1048576}") int initialCapacity) {
+        super(initialCapacity, true);
+    }
+}
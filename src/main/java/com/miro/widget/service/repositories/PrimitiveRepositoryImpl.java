@@ -0,0 +1,534 @@
+package com.miro.widget.service.repositories;
+
+import com.miro.widget.service.models.*;
+import com.miro.widget.service.repositories.indexes.PrimitiveBuffers;
+import com.miro.widget.service.repositories.indexes.UuidSlotMap;
+import com.miro.widget.service.repositories.models.V1BatchOperationModel;
+import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
+import com.miro.widget.service.repositories.models.V1UpdateWidgetModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import result.PlainResult;
+import result.Result;
+import result.errors.Error;
+import result.errors.NotFoundError;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Widget storage in struct-of-arrays layout: every field of a widget lives in its own primitive buffer under the
+ * widget's slot, so a widget costs a few dozen bytes and no objects. Buffers are on the heap here and in direct
+ * memory in {@link OffHeapRepositoryImpl}. Slots are kept dense (a deleted slot is filled
+ * with the last one), which makes area and point queries a linear scan over contiguous memory. Z-order is a sorted
+ * array of slots, so rank lookups are O(1) and shifts touch only the consecutive run of Z-indexes.
+ * <p>
+ * Selected with {@code widget.repository.type=primitive}.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "widget.repository", name = "type", havingValue = "primitive")
+public class PrimitiveRepositoryImpl implements WidgetRepository {
+    private static final Logger log = LoggerFactory.getLogger(PrimitiveRepositoryImpl.class);
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int initialCapacity;
+    private final boolean isOffHeap;
+    private final UuidSlotMap idToSlotMap;
+    private final RepositoryLock lock = new RepositoryLock();
+
+    private LongBuffer idMostSigBits;
+    private LongBuffer idLeastSigBits;
+    private IntBuffer zIndexes;
+    private IntBuffer centerXs;
+    private IntBuffer centerYs;
+    private IntBuffer widths;
+    private IntBuffer heights;
+    private LongBuffer updatedAtMillis;
+
+    // Slots sorted by Z-index
+    private IntBuffer zOrder;
+    private int capacity;
+    private int size;
+
+    public PrimitiveRepositoryImpl() {
+        this(INITIAL_CAPACITY, false);
+    }
+
+    protected PrimitiveRepositoryImpl(int initialCapacity, boolean isOffHeap) {
+        this.initialCapacity = Math.max(initialCapacity, 1);
+        this.isOffHeap = isOffHeap;
+        this.idToSlotMap = new UuidSlotMap(this.initialCapacity, isOffHeap);
+        allocate(this.initialCapacity);
+    }
+
+    public Result<V1WidgetDto> v1Insert(V1InsertWidgetModel model) {
+        try {
+            var z = model.getZ();
+            var centerX = model.getCenterX();
+            var centerY = model.getCenterY();
+            var width = model.getWidth();
+            var height = model.getHeight();
+            var id = UUID.randomUUID();
+
+            return Result.Ok(lock.write(() -> insertLocked(id, z, centerX, centerY, width, height)));
+        } catch (Exception exc) {
+            var message = String.format("Failed to insert widget %s: %s", model, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<V1WidgetDto> v1GetById(UUID id) {
+        var widget = lock.read(() -> {
+            var slot = idToSlotMap.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+
+            return slot == UuidSlotMap.NO_SLOT ? null : toDto(slot);
+        });
+
+        if (widget == null) {
+            var message = String.format("Widget with id '%s' not found", id);
+            log.warn(message);
+            return Result.Fail(new NotFoundError(message));
+        }
+
+        return Result.Ok(widget);
+    }
+
+    public Result<V1WidgetDto> v1GetByZIndex(int z) {
+        var widget = lock.read(() -> {
+            var index = lowerBound(z);
+
+            return index == size || zIndexes.get(zOrder.get(index)) != z ? null : toDto(zOrder.get(index));
+        });
+
+        if (widget == null) {
+            var message = String.format("Widget with z index '%d' not found", z);
+            log.warn(message);
+            return Result.Fail(new NotFoundError(message));
+        }
+
+        return Result.Ok(widget);
+    }
+
+    public Result<V1WidgetRangeDto> v1GetRange(int page, int size) {
+        try {
+            return Result.Ok(lock.read(() -> {
+                var valuesCount = this.size;
+                var pagesCount = valuesCount / size;
+
+                if (pagesCount * size < valuesCount)
+                    pagesCount++;
+
+                var from = (int) Math.min((long) (page - 1) * size, valuesCount);
+                var to = Math.min(from + size, valuesCount);
+                var widgets = new ArrayList<V1WidgetDto>(to - from);
+
+                for (var i = from; i < to; i++)
+                    widgets.add(toDto(zOrder.get(i)));
+
+                return new V1WidgetRangeDto(valuesCount, pagesCount, widgets);
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve all widgets: %s", exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<V1WidgetSliceDto> v1GetSlice(Integer afterZ, Integer beforeZ, int size) {
+        try {
+            return Result.Ok(lock.read(() -> {
+                var from = afterZ == null ? 0 : lowerBound((long) afterZ + 1);
+                var to = beforeZ == null ? this.size : lowerBound(beforeZ);
+
+                // Without a lower bound the slice is the one right below beforeZ, so paging goes backwards
+                var isBackward = afterZ == null && beforeZ != null;
+                if (isBackward)
+                    from = Math.max(from, to - size);
+
+                var count = Math.max(0, Math.min(size, to - from));
+                var widgets = new ArrayList<V1WidgetDto>(count);
+
+                for (var i = from; i < from + count; i++)
+                    widgets.add(toDto(zOrder.get(i)));
+
+                return new V1WidgetSliceDto(widgets, isBackward ? from == 0 : from + count >= to);
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widgets after %s and before %s: %s",
+                afterZ, beforeZ, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<V1WidgetRangeDto> v1GetRangeInArea(V1AreaDto area, int page, int size) {
+        try {
+            return Result.Ok(lock.readLocked(() -> {
+                var sortKeys = findSortedByZIndex(
+                    2L * Math.min(area.getX1(), area.getX2()),
+                    2L * Math.min(area.getY1(), area.getY2()),
+                    2L * Math.max(area.getX1(), area.getX2()),
+                    2L * Math.max(area.getY1(), area.getY2()));
+
+                var valuesCount = sortKeys.length;
+                var pagesCount = valuesCount / size;
+
+                if (pagesCount * size < valuesCount)
+                    pagesCount++;
+
+                var from = (int) Math.min((long) (page - 1) * size, valuesCount);
+                var to = Math.min(from + size, valuesCount);
+                var widgets = new ArrayList<V1WidgetDto>(to - from);
+
+                for (var i = from; i < to; i++)
+                    widgets.add(toDto((int) sortKeys[i]));
+
+                return new V1WidgetRangeDto(valuesCount, pagesCount, widgets);
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widgets in area %s: %s", area, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<List<V1WidgetDto>> v1GetAtPoint(int x, int y, boolean isStackRequired) {
+        try {
+            return Result.Ok(lock.readLocked(() -> {
+                if (!isStackRequired) {
+                    var topmostSlot = -1;
+
+                    for (var slot = 0; slot < size; slot++) {
+                        if (intersects(slot, 2L * x, 2L * y, 2L * x, 2L * y) &&
+                            (topmostSlot == -1 || zIndexes.get(slot) > zIndexes.get(topmostSlot)))
+                            topmostSlot = slot;
+                    }
+
+                    return topmostSlot == -1 ? List.<V1WidgetDto>of() : List.of(toDto(topmostSlot));
+                }
+
+                var sortKeys = findSortedByZIndex(2L * x, 2L * y, 2L * x, 2L * y);
+                var widgets = new ArrayList<V1WidgetDto>(sortKeys.length);
+
+                for (var i = sortKeys.length - 1; i >= 0; i--)
+                    widgets.add(toDto((int) sortKeys[i]));
+
+                return widgets;
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to retrieve widgets at point (%d, %d): %s", x, y, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public Result<V1WidgetDto> v1Update(V1UpdateWidgetModel model) {
+        try {
+            var widget = lock.write(() -> updateLocked(model));
+
+            if (widget == null) {
+                var message = String.format("Widget with id '%s' not found", model.getId());
+                log.error(message);
+                return Result.Fail(new NotFoundError(message));
+            }
+
+            return Result.Ok(widget);
+        } catch (Exception exc) {
+            var message = String.format("Failed to update widget %s: %s", model, exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    public PlainResult v1Delete(UUID id) {
+        try {
+            var isDeleted = lock.write(() -> deleteLocked(id));
+
+            if (!isDeleted) {
+                var message = String.format("Widget with id '%s' not found", id);
+                log.warn(message);
+                return PlainResult.Fail(new NotFoundError(message));
+            }
+
+            return PlainResult.Ok();
+        } catch (Exception exc) {
+            var message = String.format("Failed to delete widget with id '%s': %s", id, exc.getMessage());
+            log.error(message);
+            return PlainResult.Fail(new Error(message));
+        }
+    }
+
+    public PlainResult v1DeleteAll() {
+        try {
+            lock.write(() -> {
+                idToSlotMap.clear();
+                clearLocked();
+
+                return null;
+            });
+        } catch (Exception exc) {
+            var message = String.format("Failed to delete all widgets: %s", exc.getMessage());
+            log.error(message);
+            return PlainResult.Fail(new Error(message));
+        }
+
+        return PlainResult.Ok();
+    }
+
+    // The whole batch is one write, so readers see either none or all of it
+    public Result<List<Result<V1WidgetDto>>> v1ApplyBatch(List<V1BatchOperationModel> operations, int minTopZ) {
+        try {
+            return Result.Ok(lock.write(() -> {
+                var results = new ArrayList<Result<V1WidgetDto>>(operations.size());
+
+                for (var operation : operations)
+                    results.add(applyLocked(operation, minTopZ));
+
+                return results;
+            }));
+        } catch (Exception exc) {
+            var message = String.format("Failed to apply batch of %d operations: %s", operations.size(),
+                exc.getMessage());
+            log.error(message);
+            return Result.Fail(new Error(message));
+        }
+    }
+
+    private Result<V1WidgetDto> applyLocked(V1BatchOperationModel operation, int minTopZ) {
+        switch (operation.getType()) {
+            case CREATE:
+                var z = operation.getZ() != null
+                    ? operation.getZ()
+                    : size == 0 ? minTopZ : Math.max(minTopZ, (long) zIndexes.get(zOrder.get(size - 1)) + 1);
+
+                if (z >= Integer.MAX_VALUE)
+                    return Result.Fail(new Error("Max available Z index value reached"));
+
+                return Result.Ok(insertLocked(UUID.randomUUID(), (int) z,
+                    operation.getCenterX(), operation.getCenterY(), operation.getWidth(), operation.getHeight()));
+            case UPDATE:
+                var widget = updateLocked(operation.toUpdateModel());
+
+                return widget == null ? Result.Fail(notFound(operation.getId())) : Result.Ok(widget);
+            default:
+                return deleteLocked(operation.getId()) ? Result.Ok(null) : Result.Fail(notFound(operation.getId()));
+        }
+    }
+
+    private V1WidgetDto insertLocked(UUID id, int z, int centerX, int centerY, int width, int height) {
+        if (size == capacity)
+            grow(capacity * 2);
+
+        var slot = size;
+
+        idMostSigBits.put(slot, id.getMostSignificantBits());
+        idLeastSigBits.put(slot, id.getLeastSignificantBits());
+        centerXs.put(slot, centerX);
+        centerYs.put(slot, centerY);
+        widths.put(slot, width);
+        heights.put(slot, height);
+        updatedAtMillis.put(slot, System.currentTimeMillis());
+
+        insertIntoZOrder(slot, z);
+        idToSlotMap.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), slot);
+
+        return toDto(slot);
+    }
+
+    private V1WidgetDto updateLocked(V1UpdateWidgetModel model) {
+        var slot = idToSlotMap.get(model.getId().getMostSignificantBits(), model.getId().getLeastSignificantBits());
+
+        if (slot == UuidSlotMap.NO_SLOT)
+            return null;
+
+        if (model.getCenterX() != null)
+            centerXs.put(slot, model.getCenterX());
+
+        if (model.getCenterY() != null)
+            centerYs.put(slot, model.getCenterY());
+
+        if (model.getWidth() != null)
+            widths.put(slot, model.getWidth());
+
+        if (model.getHeight() != null)
+            heights.put(slot, model.getHeight());
+
+        if (model.getZ() != null) {
+            removeFromZOrder(slot);
+            insertIntoZOrder(slot, model.getZ());
+        }
+
+        updatedAtMillis.put(slot, System.currentTimeMillis());
+
+        return toDto(slot);
+    }
+
+    private boolean deleteLocked(UUID id) {
+        var slot = idToSlotMap.remove(id.getMostSignificantBits(), id.getLeastSignificantBits());
+
+        if (slot == UuidSlotMap.NO_SLOT)
+            return false;
+
+        removeFromZOrder(slot);
+
+        if (slot != size)
+            moveSlot(size, slot);
+
+        return true;
+    }
+
+    private static NotFoundError notFound(UUID id) {
+        var message = String.format("Widget with id '%s' not found", id);
+        log.warn(message);
+        return new NotFoundError(message);
+    }
+
+    private V1WidgetDto toDto(int slot) {
+        return new V1WidgetDto(
+            new UUID(idMostSigBits.get(slot), idLeastSigBits.get(slot)),
+            zIndexes.get(slot),
+            new V1CoordinatesDto(centerXs.get(slot), centerYs.get(slot)),
+            new V1SizeDto(widths.get(slot), heights.get(slot)),
+            ZonedDateTime.ofInstant(Instant.ofEpochMilli(updatedAtMillis.get(slot)), ZoneId.systemDefault()));
+    }
+
+    // Number of widgets with Z-index less than the given one, which is also the position of the first one at or above
+    private int lowerBound(long z) {
+        var from = 0;
+        var to = size;
+
+        while (from < to) {
+            var middle = (from + to) >>> 1;
+
+            if (zIndexes.get(zOrder.get(middle)) < z)
+                from = middle + 1;
+            else
+                to = middle;
+        }
+
+        return from;
+    }
+
+    // Expects the Z-order to have room for one more slot, i.e. 'size' to be the number of slots already in it
+    private void insertIntoZOrder(int slot, int z) {
+        var index = lowerBound(z);
+
+        for (var i = index; i < size && zIndexes.get(zOrder.get(i)) == z + (i - index); i++)
+            zIndexes.put(zOrder.get(i), z + (i - index) + 1);
+
+        PrimitiveBuffers.move(zOrder, index, index + 1, size - index);
+        zOrder.put(index, slot);
+        zIndexes.put(slot, z);
+        size++;
+    }
+
+    private void removeFromZOrder(int slot) {
+        var index = lowerBound(zIndexes.get(slot));
+
+        size--;
+        PrimitiveBuffers.move(zOrder, index + 1, index, size - index);
+    }
+
+    private void moveSlot(int from, int to) {
+        idMostSigBits.put(to, idMostSigBits.get(from));
+        idLeastSigBits.put(to, idLeastSigBits.get(from));
+        zIndexes.put(to, zIndexes.get(from));
+        centerXs.put(to, centerXs.get(from));
+        centerYs.put(to, centerYs.get(from));
+        widths.put(to, widths.get(from));
+        heights.put(to, heights.get(from));
+        updatedAtMillis.put(to, updatedAtMillis.get(from));
+
+        zOrder.put(lowerBound(zIndexes.get(to)), to);
+        idToSlotMap.put(idMostSigBits.get(to), idLeastSigBits.get(to), to);
+    }
+
+    // Z-index in the high half keeps the order, slot in the low half points back to the widget
+    private long[] findSortedByZIndex(long minX, long minY, long maxX, long maxY) {
+        var sortKeys = new long[16];
+        var count = 0;
+
+        for (var slot = 0; slot < size; slot++) {
+            if (!intersects(slot, minX, minY, maxX, maxY))
+                continue;
+
+            if (count == sortKeys.length)
+                sortKeys = Arrays.copyOf(sortKeys, count * 2);
+
+            sortKeys[count++] = (long) zIndexes.get(slot) << 32 | slot;
+        }
+
+        sortKeys = Arrays.copyOf(sortKeys, count);
+        Arrays.sort(sortKeys);
+
+        return sortKeys;
+    }
+
+    // Bounds are doubled so that widgets of odd width or height keep integer coordinates
+    private boolean intersects(int slot, long minX, long minY, long maxX, long maxY) {
+        var doubledCenterX = 2L * centerXs.get(slot);
+        var doubledCenterY = 2L * centerYs.get(slot);
+        var width = widths.get(slot);
+        var height = heights.get(slot);
+
+        return doubledCenterX - width <= maxX && minX <= doubledCenterX + width &&
+            doubledCenterY - height <= maxY && minY <= doubledCenterY + height;
+    }
+
+    private void allocate(int capacity) {
+        idMostSigBits = PrimitiveBuffers.allocateLongs(capacity, isOffHeap);
+        idLeastSigBits = PrimitiveBuffers.allocateLongs(capacity, isOffHeap);
+        zIndexes = PrimitiveBuffers.allocateInts(capacity, isOffHeap);
+        centerXs = PrimitiveBuffers.allocateInts(capacity, isOffHeap);
+        centerYs = PrimitiveBuffers.allocateInts(capacity, isOffHeap);
+        widths = PrimitiveBuffers.allocateInts(capacity, isOffHeap);
+        heights = PrimitiveBuffers.allocateInts(capacity, isOffHeap);
+        updatedAtMillis = PrimitiveBuffers.allocateLongs(capacity, isOffHeap);
+        zOrder = PrimitiveBuffers.allocateInts(capacity, isOffHeap);
+        this.capacity = capacity;
+        size = 0;
+    }
+
+    // Empties the storage in place, an import or a delete of all widgets then costs no new buffers. The capacity
+    // never drops below the initial one, so the buffers are only allocated again if that changes
+    private void clearLocked() {
+        if (capacity < initialCapacity) {
+            allocate(initialCapacity);
+            return;
+        }
+
+        PrimitiveBuffers.clear(idMostSigBits, size);
+        PrimitiveBuffers.clear(idLeastSigBits, size);
+        PrimitiveBuffers.clear(zIndexes, size);
+        PrimitiveBuffers.clear(centerXs, size);
+        PrimitiveBuffers.clear(centerYs, size);
+        PrimitiveBuffers.clear(widths, size);
+        PrimitiveBuffers.clear(heights, size);
+        PrimitiveBuffers.clear(updatedAtMillis, size);
+        PrimitiveBuffers.clear(zOrder, size);
+        size = 0;
+    }
+
+    private void grow(int capacity) {
+        idMostSigBits = PrimitiveBuffers.grow(idMostSigBits, capacity);
+        idLeastSigBits = PrimitiveBuffers.grow(idLeastSigBits, capacity);
+        zIndexes = PrimitiveBuffers.grow(zIndexes, capacity);
+        centerXs = PrimitiveBuffers.grow(centerXs, capacity);
+        centerYs = PrimitiveBuffers.grow(centerYs, capacity);
+        widths = PrimitiveBuffers.grow(widths, capacity);
+        heights = PrimitiveBuffers.grow(heights, capacity);
+        updatedAtMillis = PrimitiveBuffers.grow(updatedAtMillis, capacity);
+        zOrder = PrimitiveBuffers.grow(zOrder, capacity);
+        this.capacity = capacity;
+    }
+}
@@ -0,0 +1,58 @@
+package com.miro.widget.service.repositories;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Guards the state of a repository. Writers are exclusive. Readers first run optimistically without taking the lock
+ * and keep the result only if no writer interfered, otherwise they fall back to the shared read lock. A reader
+ * racing with a writer may see a torn state, so it must only read fields and may fail with an exception, which is
+ * discarded the same way as an inconsistent result.
+ */
+class RepositoryLock {
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+
+    private final StampedLock lock = new StampedLock();
+
+    <T> T read(Supplier<T> reader) {
+        for (var attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            var stamp = lock.tryOptimisticRead();
+
+            if (stamp == 0)
+                break;
+
+            try {
+                var result = reader.get();
+
+                if (lock.validate(stamp))
+                    return result;
+            } catch (RuntimeException exc) {
+                if (lock.validate(stamp))
+                    throw exc;
+            }
+        }
+
+        return readLocked(reader);
+    }
+
+    // For long scans which would hardly survive a concurrent writer optimistically
+    <T> T readLocked(Supplier<T> reader) {
+        var stamp = lock.readLock();
+
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    <T> T write(Supplier<T> writer) {
+        var stamp = lock.writeLock();
+
+        try {
+            return writer.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
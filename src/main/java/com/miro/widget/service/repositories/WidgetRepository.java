@@ -1,12 +1,20 @@
 package com.miro.widget.service.repositories;
 
+import com.miro.widget.service.models.V1AreaDto;
+import com.miro.widget.service.models.V1WidgetColumnsDto;
 import com.miro.widget.service.models.V1WidgetDto;
+import com.miro.widget.service.models.V1WidgetVisitor;
+import com.miro.widget.service.repositories.models.V1BatchOperationModel;
 import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
 import com.miro.widget.service.repositories.models.V1UpdateWidgetModel;
 import com.miro.widget.service.models.V1WidgetRangeDto;
+import com.miro.widget.service.models.V1WidgetSliceDto;
 import result.PlainResult;
 import result.Result;
+import result.errors.Error;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 public interface WidgetRepository {
@@ -18,9 +26,116 @@ public interface WidgetRepository {
 
     Result<V1WidgetRangeDto> v1GetRange(int page, int size);
 
+    Result<V1WidgetSliceDto> v1GetSlice(Integer afterZ, Integer beforeZ, int size);
+
+    Result<V1WidgetRangeDto> v1GetRangeInArea(V1AreaDto area, int page, int size);
+
+    Result<List<V1WidgetDto>> v1GetAtPoint(int x, int y, boolean isStackRequired);
+
     Result<V1WidgetDto> v1Update(V1UpdateWidgetModel model);
 
     PlainResult v1Delete(UUID id);
 
     PlainResult v1DeleteAll();
+
+    // Replaces all widgets with the given ones, which have to be in strictly increasing Z-order, so no insert shifts.
+    // Repositories which can build their indexes in one pass override this one insert per widget
+    default PlainResult v1Load(V1WidgetColumnsDto widgets) {
+        var deleteAllResult = v1DeleteAll();
+
+        if (deleteAllResult.isFailed())
+            return deleteAllResult;
+
+        for (var i = 0; i < widgets.getCount(); i++) {
+            var insertWidgetResult = v1Insert(toInsertModel(widgets, i));
+
+            if (insertWidgetResult.isFailed())
+                return PlainResult.Fail(insertWidgetResult.getError());
+        }
+
+        return PlainResult.Ok();
+    }
+
+    // Applies the operations in order and returns their results in the same order, a deleted widget has no value.
+    // A created widget without Z-index goes above the topmost one, but not below minTopZ. Repositories which can
+    // apply the whole batch as one write override this one write per operation
+    default Result<List<Result<V1WidgetDto>>> v1ApplyBatch(List<V1BatchOperationModel> operations, int minTopZ) {
+        var results = new ArrayList<Result<V1WidgetDto>>(operations.size());
+
+        for (var operation : operations) {
+            switch (operation.getType()) {
+                case CREATE:
+                    results.add(operation.getZ() != null
+                        ? v1Insert(operation.toInsertModel(operation.getZ()))
+                        : v1InsertOnTop(operation, minTopZ));
+                    break;
+                case UPDATE:
+                    results.add(v1Update(operation.toUpdateModel()));
+                    break;
+                case DELETE:
+                    var deleteWidgetResult = v1Delete(operation.getId());
+                    results.add(deleteWidgetResult.isSucceed()
+                        ? Result.Ok(null)
+                        : Result.Fail(deleteWidgetResult.getError()));
+                    break;
+            }
+        }
+
+        return Result.Ok(results);
+    }
+
+    // Passes the widgets of the page to the visitor in Z-order and returns the count of all widgets. The visitor is
+    // called after the read, so it may take its time. Repositories which can pass widgets without making DTOs of them
+    // override this
+    default Result<Integer> v1VisitRange(int page, int size, V1WidgetVisitor visitor) {
+        var getRangeResult = v1GetRange(page, size);
+
+        if (getRangeResult.isFailed())
+            return Result.Fail(getRangeResult.getError());
+
+        getRangeResult.getValue().getWidgets().forEach(visitor::visit);
+
+        return Result.Ok(getRangeResult.getValue().getTotalWidgetsCount());
+    }
+
+    // Same for a slice, returns whether it is the last one
+    default Result<Boolean> v1VisitSlice(Integer afterZ, Integer beforeZ, int size, V1WidgetVisitor visitor) {
+        var getSliceResult = v1GetSlice(afterZ, beforeZ, size);
+
+        if (getSliceResult.isFailed())
+            return Result.Fail(getSliceResult.getError());
+
+        getSliceResult.getValue().getWidgets().forEach(visitor::visit);
+
+        return Result.Ok(getSliceResult.getValue().isLast());
+    }
+
+    // Waits until the writes made by the current thread survive a restart, if the repository makes them durable
+    default PlainResult v1AwaitDurable() {
+        return PlainResult.Ok();
+    }
+
+    private Result<V1WidgetDto> v1InsertOnTop(V1BatchOperationModel operation, int minTopZ) {
+        var getTopmostResult = v1GetSlice(null, Integer.MAX_VALUE, 1);
+
+        if (getTopmostResult.isFailed())
+            return Result.Fail(getTopmostResult.getError());
+
+        var widgets = getTopmostResult.getValue().getWidgets();
+        var z = widgets.isEmpty() ? minTopZ : Math.max(minTopZ, (long) widgets.get(0).getZ() + 1);
+
+        if (z >= Integer.MAX_VALUE)
+            return Result.Fail(new Error("Max available Z index value reached"));
+
+        return v1Insert(operation.toInsertModel((int) z));
+    }
+
+    private static V1InsertWidgetModel toInsertModel(V1WidgetColumnsDto widgets, int position) {
+        return new V1InsertWidgetModel(
+            widgets.getZIndexes()[position],
+            widgets.getCenterXs()[position],
+            widgets.getCenterYs()[position],
+            widgets.getWidths()[position],
+            widgets.getHeights()[position]);
+    }
 }
@@ -0,0 +1,151 @@
+package com.miro.widget.service.repositories;
+
+import com.miro.widget.mappers.BllAndDalMapper;
+import com.miro.widget.service.repositories.wal.Checkpointer;
+import com.miro.widget.service.repositories.wal.WalDurability;
+import com.miro.widget.service.repositories.wal.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates a separate storage for each board, of the same type as the storage of the default board. Boards keep their
+ * write-ahead log and snapshot under their own directory, so a board is restored when it is opened again.
+ */
+@Component
+public class WidgetRepositoryFactory implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(WidgetRepositoryFactory.class);
+
+    private final BllAndDalMapper mapper;
+    private final String type;
+    private final int offHeapInitialCapacity;
+    private final String h2Url;
+    private final Path directory;
+    private final boolean isLogEnabled;
+    private final WalDurability durability;
+    private final long batchIntervalMs;
+    private final boolean isSnapshotEnabled;
+    private final long snapshotIntervalMs;
+    private final Map<String, List<AutoCloseable>> boardResources = new HashMap<>();
+
+    @Autowired
+    public WidgetRepositoryFactory(
+        BllAndDalMapper mapper,
+        @Value("${widget.repository.type:in-memory}") String type,
+        @Value("${widget.boards.off-heap.initial-capacity:1024}") int offHeapInitialCapacity,
+        @Value("${widget.boards.h2.url:jdbc:h2:mem:board-%s;DB_CLOSE_DELAY=-1}") String h2Url,
+        @Value("${widget.boards.directory:data/boards}") Path directory,
+        @Value("${widget.wal.enabled:false}") boolean isLogEnabled,
+        @Value("${widget.wal.durability:SYNC}") WalDurability durability,
+        @Value("${widget.wal.batch-interval-ms:5}") long batchIntervalMs,
+        @Value("${widget.snapshot.enabled:false}") boolean isSnapshotEnabled,
+        @Value("${widget.snapshot.interval-ms:60000}") long snapshotIntervalMs
+    ) {
+        this.mapper = mapper;
+        this.type = type;
+        this.offHeapInitialCapacity = offHeapInitialCapacity;
+        this.h2Url = h2Url;
+        this.directory = directory;
+        this.isLogEnabled = isLogEnabled;
+        this.durability = durability;
+        this.batchIntervalMs = batchIntervalMs;
+        this.isSnapshotEnabled = isSnapshotEnabled;
+        this.snapshotIntervalMs = snapshotIntervalMs;
+    }
+
+    // The board ID must be safe to use as a file name
+    public WidgetRepository create(String boardId) {
+        switch (type) {
+            case "in-memory":
+                return createInMemory(boardId);
+            case "primitive":
+                return new PrimitiveRepositoryImpl();
+            case "off-heap":
+                return new OffHeapRepositoryImpl(offHeapInitialCapacity);
+            case "h2":
+                return register(boardId, new H2RepositoryImpl(mapper, String.format(h2Url, boardId)));
+            default:
+                throw new IllegalStateException(String.format("Unknown widget repository type '%s'", type));
+        }
+    }
+
+    // Whether boards keep their widgets in storage of their own, from which they are restored when opened again
+    public boolean isStored() {
+        return isLogEnabled && type.equals("in-memory");
+    }
+
+    // Whether the board has anything stored, only boards with storage of their own are known while closed
+    public boolean exists(String boardId) {
+        return isStored() && Files.isDirectory(directory.resolve(boardId));
+    }
+
+    // Releases the files of the board storage, so that another node may open it
+    public void close(String boardId) {
+        List<AutoCloseable> resources;
+
+        synchronized (boardResources) {
+            resources = boardResources.remove(boardId);
+        }
+
+        if (resources == null)
+            return;
+
+        // Checkpointers are closed before the logs they fold
+        for (var i = resources.size() - 1; i >= 0; i--) {
+            try {
+                resources.get(i).close();
+            } catch (Exception exc) {
+                log.error("Failed to close storage of board '{}': {}", boardId, exc.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        List<String> boardIds;
+
+        synchronized (boardResources) {
+            boardIds = new ArrayList<>(boardResources.keySet());
+        }
+
+        boardIds.forEach(this::close);
+    }
+
+    private WidgetRepository createInMemory(String boardId) {
+        if (!isLogEnabled)
+            return new InMemoryRepositoryImpl(mapper);
+
+        try {
+            var boardDirectory = directory.resolve(boardId);
+            var writeAheadLog = register(
+                boardId, new WriteAheadLog(boardDirectory.resolve("wal"), durability, batchIntervalMs));
+            var checkpointer = isSnapshotEnabled
+                ? register(boardId, new Checkpointer(
+                    boardDirectory.resolve("widgets.snapshot"), snapshotIntervalMs, writeAheadLog))
+                : null;
+
+            return new InMemoryRepositoryImpl(mapper, writeAheadLog, checkpointer);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    private <T extends AutoCloseable> T register(String boardId, T resource) {
+        synchronized (boardResources) {
+            boardResources.computeIfAbsent(boardId, id -> new ArrayList<>()).add(resource);
+        }
+
+        return resource;
+    }
+}
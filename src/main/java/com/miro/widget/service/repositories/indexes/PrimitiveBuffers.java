@@ -0,0 +1,72 @@
+package com.miro.widget.service.repositories.indexes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Zero-filled primitive buffers either on the heap or in direct (off-heap) memory. Callers use absolute get/put
+ * only, so the position of a buffer is always zero.
+ */
+public final class PrimitiveBuffers {
+    private PrimitiveBuffers() {
+    }
+
+    public static IntBuffer allocateInts(int capacity, boolean isOffHeap) {
+        return isOffHeap
+            ? ByteBuffer.allocateDirect(Math.multiplyExact(capacity, Integer.BYTES))
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer()
+            : IntBuffer.allocate(capacity);
+    }
+
+    public static LongBuffer allocateLongs(int capacity, boolean isOffHeap) {
+        return isOffHeap
+            ? ByteBuffer.allocateDirect(Math.multiplyExact(capacity, Long.BYTES))
+                .order(ByteOrder.nativeOrder())
+                .asLongBuffer()
+            : LongBuffer.allocate(capacity);
+    }
+
+    public static IntBuffer grow(IntBuffer buffer, int capacity) {
+        var grown = allocateInts(capacity, buffer.isDirect());
+        grown.duplicate().put(buffer.duplicate());
+
+        return grown;
+    }
+
+    public static LongBuffer grow(LongBuffer buffer, int capacity) {
+        var grown = allocateLongs(capacity, buffer.isDirect());
+        grown.duplicate().put(buffer.duplicate());
+
+        return grown;
+    }
+
+    // Zero-fills the first elements in place, so a cleared buffer is reused instead of allocated again
+    public static void clear(IntBuffer buffer, int count) {
+        if (buffer.hasArray()) {
+            Arrays.fill(buffer.array(), buffer.arrayOffset(), buffer.arrayOffset() + count, 0);
+            return;
+        }
+
+        for (var i = 0; i < count; i++)
+            buffer.put(i, 0);
+    }
+
+    public static void clear(LongBuffer buffer, int count) {
+        if (buffer.hasArray()) {
+            Arrays.fill(buffer.array(), buffer.arrayOffset(), buffer.arrayOffset() + count, 0L);
+            return;
+        }
+
+        for (var i = 0; i < count; i++)
+            buffer.put(i, 0L);
+    }
+
+    // Bulk copy between two views of the same buffer, which is a memmove for both heap and direct buffers
+    public static void move(IntBuffer buffer, int from, int to, int count) {
+        buffer.duplicate().position(to).put(buffer.duplicate().position(from).limit(from + count));
+    }
+}
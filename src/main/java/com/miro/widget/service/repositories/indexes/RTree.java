@@ -0,0 +1,636 @@
+package com.miro.widget.service.repositories.indexes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * R-tree (Guttman, quadratic split) over closed axis-aligned rectangles. Used as a spatial index of widgets, so
+ * that area and point queries visit only the widgets whose bounds may intersect the requested rectangle.
+ * <p>
+ * A tree with an order of values also keeps the topmost value under every node, which bounds the order of
+ * everything below it, so the topmost value at a point is searched best first and found without visiting the rest
+ * of the values there. The order of values may change as long as a value is removed before its order changes and
+ * inserted again after it, and the order of the others stays the same.
+ * <p>
+ * The tree isn't thread safe, callers are responsible for synchronization.
+ */
+public class RTree<T> {
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = 6;
+
+    private final ToIntFunction<T> order;
+    private Node root = new Node(true);
+    private int size;
+
+    public RTree() {
+        this(null);
+    }
+
+    public RTree(ToIntFunction<T> order) {
+        this.order = order;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void insert(long minX, long minY, long maxX, long maxY, T value) {
+        insert(new Entry<>(minX, minY, maxX, maxY, value));
+        size++;
+    }
+
+    public boolean remove(long minX, long minY, long maxX, long maxY, T value) {
+        var leaf = findLeaf(root, minX, minY, maxX, maxY, value);
+
+        if (leaf == null)
+            return false;
+
+        leaf.children.removeIf(child -> ((Entry<?>) child).value == value);
+        condense(leaf, value);
+        size--;
+
+        if (!root.isLeaf && root.children.size() == 1) {
+            root = (Node) root.children.get(0);
+            root.parent = null;
+        }
+
+        return true;
+    }
+
+    public void search(long minX, long minY, long maxX, long maxY, Consumer<T> consumer) {
+        search(root, minX, minY, maxX, maxY, consumer);
+    }
+
+    // Topmost value by the order whose bounds contain the point, or null if there is none. Nodes are searched in
+    // order of their topmost values, so the first value found to contain the point is above all the others there
+    @SuppressWarnings("unchecked")
+    public T searchTopmost(long x, long y) {
+        var candidates = new Candidates();
+
+        if (root.top != null && root.intersects(x, y, x, y))
+            candidates.add(rankOf(root), root);
+
+        while (!candidates.isEmpty()) {
+            var candidate = candidates.poll();
+
+            if (candidate instanceof Entry)
+                return ((Entry<T>) candidate).value;
+
+            for (var child : ((Node) candidate).children) {
+                if (child.intersects(x, y, x, y))
+                    candidates.add(rankOf(child), child);
+            }
+        }
+
+        return null;
+    }
+
+    public void clear() {
+        root = new Node(true);
+        size = 0;
+    }
+
+    // Replaces the content with the given values, bounds hold minX, minY, maxX and maxY of every value in a row.
+    // Values go in ascending order, so that their positions rank them without asking the order of every one
+    public void load(long[] bounds, List<T> values) {
+        List<Bounds> level = new ArrayList<>(values.size());
+
+        for (var i = 0; i < values.size(); i++) {
+            var offset = 4 * i;
+            level.add(new Entry<>(
+                bounds[offset], bounds[offset + 1], bounds[offset + 2], bounds[offset + 3], values.get(i)));
+        }
+
+        int[] ranks = null;
+        var isLeaf = true;
+
+        for (; level.size() > MAX_ENTRIES; isLeaf = false) {
+            var groups = pack(level);
+            var nodes = new ArrayList<Bounds>(groups.length);
+            var nodeRanks = new int[groups.length];
+
+            for (var i = 0; i < groups.length; i++) {
+                var node = new Node(isLeaf);
+                nodeRanks[i] = addAll(node, level, ranks, groups[i]);
+                nodes.add(node);
+            }
+
+            level = nodes;
+            ranks = nodeRanks;
+        }
+
+        var positions = new int[level.size()];
+
+        for (var i = 0; i < positions.length; i++)
+            positions[i] = i;
+
+        root = new Node(isLeaf);
+        addAll(root, level, ranks, positions);
+        size = values.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void search(Node node, long minX, long minY, long maxX, long maxY, Consumer<T> consumer) {
+        for (var child : node.children) {
+            if (!child.intersects(minX, minY, maxX, maxY))
+                continue;
+
+            if (node.isLeaf)
+                consumer.accept(((Entry<T>) child).value);
+            else
+                search((Node) child, minX, minY, maxX, maxY, consumer);
+        }
+    }
+
+    private void insert(Bounds entry) {
+        var leaf = chooseLeaf(root, entry);
+
+        leaf.add(entry);
+        adjust(leaf, entry);
+    }
+
+    private Node chooseLeaf(Node node, Bounds entry) {
+        while (!node.isLeaf) {
+            Node best = null;
+            var bestEnlargement = Double.MAX_VALUE;
+
+            for (var child : node.children) {
+                var enlargement = child.enlargement(entry);
+
+                if (best == null || enlargement < bestEnlargement ||
+                    enlargement == bestEnlargement && child.area() < best.area()) {
+                    best = (Node) child;
+                    bestEnlargement = enlargement;
+                }
+            }
+
+            node = best;
+        }
+
+        return node;
+    }
+
+    // Nodes on the way up take the entry as their topmost value while it is above theirs, split ones find it anew.
+    // Once it isn't, it isn't above the topmost values of the nodes further up either
+    private void adjust(Node node, Bounds entry) {
+        var isRaising = order != null;
+        var entryRank = isRaising ? rankOf(entry) : 0;
+
+        while (node != null) {
+            if (isRaising)
+                isRaising = node.top == null || entryRank > rankOf(node);
+
+            if (node.children.size() > MAX_ENTRIES) {
+                var sibling = split(node, isRaising ? entry.top() : null);
+
+                if (node.parent == null) {
+                    root = new Node(false);
+                    root.add(node);
+                    root.add(sibling);
+                    recalculateTop(root);
+                    return;
+                }
+
+                node.parent.add(sibling);
+            } else if (isRaising) {
+                node.top = entry.top();
+            }
+
+            node.recalculate();
+            node = node.parent;
+        }
+    }
+
+    // Quadratic split: the two entries which would waste the most area together seed the groups, the rest go
+    // one by one to the group which needs the least enlargement
+    private Node split(Node node, Object raisedTop) {
+        var top = node.top;
+        var entries = new ArrayList<>(node.children);
+        var sibling = new Node(node.isLeaf);
+
+        var firstSeed = 0;
+        var secondSeed = 1;
+        var maxWaste = -Double.MAX_VALUE;
+
+        for (var i = 0; i < entries.size(); i++) {
+            for (var j = i + 1; j < entries.size(); j++) {
+                var waste = entries.get(i).unionArea(entries.get(j)) - entries.get(i).area() - entries.get(j).area();
+
+                if (waste > maxWaste) {
+                    maxWaste = waste;
+                    firstSeed = i;
+                    secondSeed = j;
+                }
+            }
+        }
+
+        node.children.clear();
+        node.add(entries.get(firstSeed));
+        sibling.add(entries.get(secondSeed));
+        node.recalculate();
+        sibling.recalculate();
+
+        entries.remove(secondSeed);
+        entries.remove(firstSeed);
+
+        while (!entries.isEmpty()) {
+            if (node.children.size() + entries.size() == MIN_ENTRIES) {
+                entries.forEach(node::add);
+                break;
+            }
+
+            if (sibling.children.size() + entries.size() == MIN_ENTRIES) {
+                entries.forEach(sibling::add);
+                break;
+            }
+
+            var nextIndex = 0;
+            var maxDifference = -1.0;
+
+            for (var i = 0; i < entries.size(); i++) {
+                var difference = Math.abs(node.enlargement(entries.get(i)) - sibling.enlargement(entries.get(i)));
+
+                if (difference > maxDifference) {
+                    maxDifference = difference;
+                    nextIndex = i;
+                }
+            }
+
+            var next = entries.remove(nextIndex);
+            var nodeEnlargement = node.enlargement(next);
+            var siblingEnlargement = sibling.enlargement(next);
+            var target = nodeEnlargement < siblingEnlargement ? node
+                : siblingEnlargement < nodeEnlargement ? sibling
+                : node.area() < sibling.area() ? node
+                : sibling.area() < node.area() ? sibling
+                : node.children.size() <= sibling.children.size() ? node : sibling;
+
+            target.add(next);
+            target.recalculate();
+        }
+
+        node.recalculate();
+        sibling.recalculate();
+        splitTop(node, top, raisedTop);
+        splitTop(sibling, top, raisedTop);
+
+        return sibling;
+    }
+
+    // The topmost value of a split node, or the inserted one if it is above it, is still the topmost value of the
+    // group which holds it, only the other group has to find its own
+    private void splitTop(Node group, Object top, Object raisedTop) {
+        if (raisedTop != null && hasChildTop(group, raisedTop))
+            group.top = raisedTop;
+        else if (top != null && hasChildTop(group, top))
+            group.top = top;
+        else
+            recalculateTop(group);
+    }
+
+    private static boolean hasChildTop(Node node, Object top) {
+        for (var child : node.children) {
+            if (child.top() == top)
+                return true;
+        }
+
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node findLeaf(Node node, long minX, long minY, long maxX, long maxY, T value) {
+        for (var child : node.children) {
+            if (!child.contains(minX, minY, maxX, maxY))
+                continue;
+
+            if (node.isLeaf) {
+                if (((Entry<T>) child).value == value)
+                    return node;
+            } else {
+                var leaf = findLeaf((Node) child, minX, minY, maxX, maxY, value);
+
+                if (leaf != null)
+                    return leaf;
+            }
+        }
+
+        return null;
+    }
+
+    // Removes underfilled nodes on the way up and inserts their entries again. Nodes which lost their topmost value,
+    // either the removed one or one of the entries to be inserted again, find it anew
+    private void condense(Node leaf, T value) {
+        var orphans = new ArrayList<Bounds>();
+        var node = leaf;
+
+        while (node.parent != null) {
+            var parent = node.parent;
+
+            if (node.children.size() < MIN_ENTRIES) {
+                parent.children.remove(node);
+                collectEntries(node, orphans);
+            } else {
+                node.recalculate();
+
+                if (isLost(node.top, value, orphans))
+                    recalculateTop(node);
+            }
+
+            node = parent;
+        }
+
+        node.recalculate();
+
+        if (isLost(node.top, value, orphans))
+            recalculateTop(node);
+
+        for (var orphan : orphans)
+            insert(orphan);
+    }
+
+    private static boolean isLost(Object top, Object value, List<Bounds> orphans) {
+        if (top == value)
+            return true;
+
+        for (var orphan : orphans) {
+            if (orphan.top() == top)
+                return true;
+        }
+
+        return false;
+    }
+
+    private void recalculateTop(Node node) {
+        if (order == null)
+            return;
+
+        Object top = null;
+        var topRank = 0;
+
+        for (var child : node.children) {
+            var rank = rankOf(child);
+
+            if (top == null || rank > topRank) {
+                top = child.top();
+                topRank = rank;
+            }
+        }
+
+        node.top = top;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int rankOf(Bounds bounds) {
+        return order.applyAsInt((T) bounds.top());
+    }
+
+    // Adds the children at the given positions and takes the topmost value of them by ranks, or by positions if there
+    // are no ranks, which is what loaded entries are ranked by. Returns the rank of the topmost value
+    private static int addAll(Node node, List<Bounds> children, int[] ranks, int[] positions) {
+        var topRank = -1;
+
+        for (var position : positions) {
+            var child = children.get(position);
+            var rank = ranks == null ? position : ranks[position];
+
+            node.add(child);
+
+            if (rank > topRank) {
+                node.top = child.top();
+                topRank = rank;
+            }
+        }
+
+        return topRank;
+    }
+
+    // Sort-Tile-Recursive packing: entries are cut into vertical slabs by X and every slab into full nodes by Y,
+    // which gives nodes of little overlap in one pass instead of splitting them one insert at a time. Returns the
+    // positions of entries grouped by nodes, slabs hold whole nodes, so only the last node may be short of entries
+    private static int[][] pack(List<Bounds> entries) {
+        var sorted = new int[entries.size()];
+        var nodesCount = (sorted.length + MAX_ENTRIES - 1) / MAX_ENTRIES;
+        var slabSize = (int) Math.ceil(Math.sqrt(nodesCount)) * MAX_ENTRIES;
+        var nodes = new int[nodesCount][];
+        var nodeIndex = 0;
+
+        for (var i = 0; i < sorted.length; i++)
+            sorted[i] = i;
+
+        sortBy(sorted, 0, sorted.length, i -> entries.get(i).minX + entries.get(i).maxX);
+
+        for (var slabStart = 0; slabStart < sorted.length; slabStart += slabSize) {
+            var slabEnd = Math.min(slabStart + slabSize, sorted.length);
+
+            sortBy(sorted, slabStart, slabEnd, i -> entries.get(i).minY + entries.get(i).maxY);
+
+            for (var nodeStart = slabStart; nodeStart < slabEnd; nodeStart += MAX_ENTRIES) {
+                var nodeEnd = Math.min(nodeStart + MAX_ENTRIES, slabEnd);
+                nodes[nodeIndex++] = Arrays.copyOfRange(sorted, nodeStart, nodeEnd);
+            }
+        }
+
+        return nodes;
+    }
+
+    // Keys packed together with positions into longs are sorted as primitives, which is several times faster than
+    // sorting the positions with a comparator, unless the range of keys is too wide to leave room for positions
+    private static void sortBy(int[] positions, int from, int to, IntToLongFunction key) {
+        var minKey = Long.MAX_VALUE;
+        var maxKey = Long.MIN_VALUE;
+
+        for (var i = from; i < to; i++) {
+            minKey = Math.min(minKey, key.applyAsLong(positions[i]));
+            maxKey = Math.max(maxKey, key.applyAsLong(positions[i]));
+        }
+
+        var count = to - from;
+        var positionBits = 64 - Long.numberOfLeadingZeros(Math.max(1, count - 1));
+        var keyRange = maxKey - minKey;
+
+        if (keyRange < 0 || keyRange >>> (63 - positionBits) != 0) {
+            var boxed = Arrays.stream(positions, from, to).boxed().toArray(Integer[]::new);
+
+            Arrays.sort(boxed, Comparator.comparingLong(key::applyAsLong));
+
+            for (var i = 0; i < count; i++)
+                positions[from + i] = boxed[i];
+
+            return;
+        }
+
+        var packed = new long[count];
+
+        for (var i = 0; i < count; i++)
+            packed[i] = (key.applyAsLong(positions[from + i]) - minKey) << positionBits | i;
+
+        Arrays.parallelSort(packed);
+
+        var sorted = new int[count];
+        var positionMask = (1L << positionBits) - 1;
+
+        for (var i = 0; i < count; i++)
+            sorted[i] = positions[from + (int) (packed[i] & positionMask)];
+
+        System.arraycopy(sorted, 0, positions, from, count);
+    }
+
+    private static void collectEntries(Node node, List<Bounds> entries) {
+        if (node.isLeaf) {
+            entries.addAll(node.children);
+            return;
+        }
+
+        for (var child : node.children)
+            collectEntries((Node) child, entries);
+    }
+
+    private abstract static class Bounds {
+        long minX;
+        long minY;
+        long maxX;
+        long maxY;
+
+        boolean intersects(long minX, long minY, long maxX, long maxY) {
+            return this.minX <= maxX && minX <= this.maxX && this.minY <= maxY && minY <= this.maxY;
+        }
+
+        boolean contains(long minX, long minY, long maxX, long maxY) {
+            return this.minX <= minX && maxX <= this.maxX && this.minY <= minY && maxY <= this.maxY;
+        }
+
+        double area() {
+            return (double) (maxX - minX) * (maxY - minY);
+        }
+
+        double unionArea(Bounds other) {
+            return (double) (Math.max(maxX, other.maxX) - Math.min(minX, other.minX)) *
+                (Math.max(maxY, other.maxY) - Math.min(minY, other.minY));
+        }
+
+        double enlargement(Bounds other) {
+            return unionArea(other) - area();
+        }
+
+        abstract Object top();
+    }
+
+    private static final class Entry<T> extends Bounds {
+        final T value;
+
+        Entry(long minX, long minY, long maxX, long maxY, T value) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.value = value;
+        }
+
+        @Override
+        Object top() {
+            return value;
+        }
+    }
+
+    private static final class Node extends Bounds {
+        final boolean isLeaf;
+        final List<Bounds> children = new ArrayList<>(MAX_ENTRIES + 1);
+        Node parent;
+        Object top;
+
+        Node(boolean isLeaf) {
+            this.isLeaf = isLeaf;
+            this.minX = this.minY = Long.MAX_VALUE;
+            this.maxX = this.maxY = Long.MIN_VALUE;
+        }
+
+        void add(Bounds child) {
+            children.add(child);
+
+            if (child instanceof Node)
+                ((Node) child).parent = this;
+
+            minX = Math.min(minX, child.minX);
+            minY = Math.min(minY, child.minY);
+            maxX = Math.max(maxX, child.maxX);
+            maxY = Math.max(maxY, child.maxY);
+        }
+
+        void recalculate() {
+            minX = minY = Long.MAX_VALUE;
+            maxX = maxY = Long.MIN_VALUE;
+
+            for (var child : children) {
+                minX = Math.min(minX, child.minX);
+                minY = Math.min(minY, child.minY);
+                maxX = Math.max(maxX, child.maxX);
+                maxY = Math.max(maxY, child.maxY);
+            }
+        }
+
+        @Override
+        Object top() {
+            return top;
+        }
+    }
+
+    // Binary max-heap of candidates by the ranks of their topmost values
+    private static final class Candidates {
+        private int[] ranks = new int[MAX_ENTRIES];
+        private Bounds[] items = new Bounds[MAX_ENTRIES];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(int rank, Bounds item) {
+            if (size == items.length) {
+                ranks = Arrays.copyOf(ranks, 2 * size);
+                items = Arrays.copyOf(items, 2 * size);
+            }
+
+            var i = size++;
+
+            for (; i > 0 && ranks[(i - 1) / 2] < rank; i = (i - 1) / 2) {
+                ranks[i] = ranks[(i - 1) / 2];
+                items[i] = items[(i - 1) / 2];
+            }
+
+            ranks[i] = rank;
+            items[i] = item;
+        }
+
+        Bounds poll() {
+            var item = items[0];
+            var rank = ranks[--size];
+            var last = items[size];
+            var i = 0;
+
+            items[size] = null;
+
+            for (var child = 1; child < size; i = child, child = 2 * i + 1) {
+                if (child + 1 < size && ranks[child + 1] > ranks[child])
+                    child++;
+
+                if (ranks[child] <= rank)
+                    break;
+
+                ranks[i] = ranks[child];
+                items[i] = items[child];
+            }
+
+            if (size > 0) {
+                ranks[i] = rank;
+                items[i] = last;
+            }
+
+            return item;
+        }
+    }
+}
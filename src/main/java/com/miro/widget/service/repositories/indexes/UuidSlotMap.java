@@ -0,0 +1,179 @@
+package com.miro.widget.service.repositories.indexes;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Open addressing hash map from UUID (as two longs) to a non-negative int slot. Keys and values live in three
+ * primitive buffers, on the heap or off-heap, and collisions are resolved by linear probing, so a lookup doesn't
+ * allocate or chase pointers. Removal shifts the following entries back instead of leaving tombstones.
+ * <p>
+ * The map isn't thread safe, callers are responsible for synchronization.
+ */
+public class UuidSlotMap {
+    public static final int NO_SLOT = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int initialCapacity;
+    private final boolean isOffHeap;
+
+    private LongBuffer mostSigBits;
+    private LongBuffer leastSigBits;
+    // Slot + 1, so that zero-filled memory is an empty map
+    private IntBuffer slots;
+    private int capacity;
+    private int mask;
+    private int size;
+
+    public UuidSlotMap() {
+        this(0, false);
+    }
+
+    public UuidSlotMap(int expectedSize, boolean isOffHeap) {
+        this.initialCapacity = capacityFor(expectedSize);
+        this.isOffHeap = isOffHeap;
+        allocate(initialCapacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(long mostSigBits, long leastSigBits) {
+        var index = find(mostSigBits, leastSigBits);
+
+        return index == -1 ? NO_SLOT : slots.get(index) - 1;
+    }
+
+    public void put(long mostSigBits, long leastSigBits, int slot) {
+        var index = find(mostSigBits, leastSigBits);
+
+        if (index != -1) {
+            slots.put(index, slot + 1);
+            return;
+        }
+
+        if ((size + 1) * 4L > capacity * 3L)
+            resize(capacity * 2);
+
+        index = place(mostSigBits, leastSigBits);
+
+        this.mostSigBits.put(index, mostSigBits);
+        this.leastSigBits.put(index, leastSigBits);
+        slots.put(index, slot + 1);
+        size++;
+    }
+
+    public int remove(long mostSigBits, long leastSigBits) {
+        var hole = find(mostSigBits, leastSigBits);
+
+        if (hole == -1)
+            return NO_SLOT;
+
+        var removedSlot = slots.get(hole) - 1;
+
+        // Entries after the hole which can't be found from their home index any more are moved into it
+        for (var index = (hole + 1) & mask; slots.get(index) != 0; index = (index + 1) & mask) {
+            var home = home(this.mostSigBits.get(index), this.leastSigBits.get(index));
+            var isReachable = hole <= index ? hole < home && home <= index : hole < home || home <= index;
+
+            if (isReachable)
+                continue;
+
+            this.mostSigBits.put(hole, this.mostSigBits.get(index));
+            this.leastSigBits.put(hole, this.leastSigBits.get(index));
+            slots.put(hole, slots.get(index));
+            hole = index;
+        }
+
+        slots.put(hole, 0);
+        size--;
+
+        return removedSlot;
+    }
+
+    // Keeps the buffers, which stay as large as the map has grown, and only empties them. Keys needn't be zeroed,
+    // since a zero slot marks an entry as empty
+    public void clear() {
+        if (capacity < initialCapacity) {
+            allocate(initialCapacity);
+            return;
+        }
+
+        PrimitiveBuffers.clear(slots, capacity);
+        size = 0;
+    }
+
+    private int find(long mostSigBits, long leastSigBits) {
+        for (var index = home(mostSigBits, leastSigBits); slots.get(index) != 0; index = (index + 1) & mask) {
+            if (this.mostSigBits.get(index) == mostSigBits && this.leastSigBits.get(index) == leastSigBits)
+                return index;
+        }
+
+        return -1;
+    }
+
+    private int place(long mostSigBits, long leastSigBits) {
+        var index = home(mostSigBits, leastSigBits);
+
+        while (slots.get(index) != 0)
+            index = (index + 1) & mask;
+
+        return index;
+    }
+
+    private void allocate(int capacity) {
+        mostSigBits = PrimitiveBuffers.allocateLongs(capacity, isOffHeap);
+        leastSigBits = PrimitiveBuffers.allocateLongs(capacity, isOffHeap);
+        slots = PrimitiveBuffers.allocateInts(capacity, isOffHeap);
+        this.capacity = capacity;
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        var oldMostSigBits = mostSigBits;
+        var oldLeastSigBits = leastSigBits;
+        var oldSlots = slots;
+        var oldCapacity = this.capacity;
+        var oldSize = size;
+
+        allocate(capacity);
+
+        for (var i = 0; i < oldCapacity; i++) {
+            if (oldSlots.get(i) == 0)
+                continue;
+
+            var index = place(oldMostSigBits.get(i), oldLeastSigBits.get(i));
+
+            mostSigBits.put(index, oldMostSigBits.get(i));
+            leastSigBits.put(index, oldLeastSigBits.get(i));
+            slots.put(index, oldSlots.get(i));
+        }
+
+        size = oldSize;
+    }
+
+    // Random UUIDs are already well distributed, the finalizer of MurmurHash3 protects from the rest
+    private int home(long mostSigBits, long leastSigBits) {
+        var hash = mostSigBits * 31 + leastSigBits;
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return (int) hash & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        var capacity = INITIAL_CAPACITY;
+
+        while (capacity * 3L < expectedSize * 4L)
+            capacity *= 2;
+
+        return capacity;
+    }
+}
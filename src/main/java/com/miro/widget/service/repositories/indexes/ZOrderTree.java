@@ -0,0 +1,431 @@
+package com.miro.widget.service.repositories.indexes;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Implicit treap that keeps widgets ordered by Z-index. A node doesn't store its Z-index, only the gap to the
+ * previous node in order, so the Z-index is a prefix sum of gaps. Shifting a contiguous run of widgets upwards
+ * touches two gaps (the first node of the run and the first node after it), which makes inserting or moving
+ * into an occupied Z-index O(log n) regardless of the number of widgets above it.
+ * <p>
+ * The tree isn't thread safe, callers are responsible for synchronization. Read-only walks may run optimistically
+ * while a writer relinks the tree as long as the caller discards their results, so every walk is bounded by the
+ * number of nodes and fails with {@link ConcurrentModificationException} instead of looping on a torn structure.
+ */
+public class ZOrderTree<T> {
+    private final Split<T> split = new Split<>();
+    private Node<T> root;
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public Node<T> get(int z) {
+        var steps = walkLimit();
+        var offset = 0L;
+        var node = root;
+
+        while (node != null) {
+            steps = step(steps);
+            var nodeZ = offset + sum(node.left) + node.gap;
+
+            if (nodeZ == z)
+                return node;
+
+            if (nodeZ < z) {
+                offset = nodeZ;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+
+        return null;
+    }
+
+    // Node with the given rank in Z-order, or null if there are fewer nodes
+    public Node<T> nodeAt(int index) {
+        if (index < 0 || index >= size())
+            return null;
+
+        var steps = walkLimit();
+        var node = root;
+
+        while (true) {
+            steps = step(steps);
+            var leftSize = size(node.left);
+
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    // Number of nodes with Z-index less than the given one, which is also the rank of the first node at or above it
+    public int lowerBound(long z) {
+        var steps = walkLimit();
+        var count = 0;
+        var offset = 0L;
+        var node = root;
+
+        while (node != null) {
+            steps = step(steps);
+            var nodeZ = offset + sum(node.left) + node.gap;
+
+            if (nodeZ < z) {
+                count += size(node.left) + 1;
+                offset = nodeZ;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+
+        return count;
+    }
+
+    public Node<T> first() {
+        var steps = walkLimit();
+        var node = root;
+
+        while (node != null && node.left != null) {
+            steps = step(steps);
+            node = node.left;
+        }
+
+        return node;
+    }
+
+    public Node<T> last() {
+        var steps = walkLimit();
+        var node = root;
+
+        while (node != null && node.right != null) {
+            steps = step(steps);
+            node = node.right;
+        }
+
+        return node;
+    }
+
+    public Node<T> next(Node<T> node) {
+        var steps = walkLimit();
+
+        if (node.right != null) {
+            node = node.right;
+
+            while (node.left != null) {
+                steps = step(steps);
+                node = node.left;
+            }
+
+            return node;
+        }
+
+        while (node.parent != null && node.parent.right == node) {
+            steps = step(steps);
+            node = node.parent;
+        }
+
+        return node.parent;
+    }
+
+    public int zOf(Node<T> node) {
+        var steps = walkLimit();
+        var z = sum(node.left) + node.gap;
+
+        for (; node.parent != null; node = node.parent) {
+            steps = step(steps);
+
+            if (node.parent.right == node)
+                z += sum(node.parent.left) + node.parent.gap;
+        }
+
+        return (int) z;
+    }
+
+    public Node<T> insert(int z, T value) {
+        var node = new Node<T>(value);
+        insert(z, node);
+
+        return node;
+    }
+
+    public void move(Node<T> node, int z) {
+        remove(node);
+        insert(z, node);
+    }
+
+    public void remove(Node<T> node) {
+        var index = indexOf(node);
+
+        split(root, index, split);
+        var left = split.left;
+        split(split.right, 1, split);
+        var right = split.right;
+
+        root = merge(left, right);
+        if (root != null)
+            root.parent = null;
+
+        if (index < size())
+            addGap(root, index, node.gap);
+
+        node.left = node.right = node.parent = null;
+        node.gap = 0;
+        pull(node);
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    // Replaces the content with nodes added in order of strictly increasing Z-index
+    public Loader loader() {
+        root = null;
+        return new Loader();
+    }
+
+    private void insert(int z, Node<T> node) {
+        var index = lowerBound(z);
+
+        if (index < size() && zAt(index) == z) {
+            var runEnd = firstWideGap(root, index + 1, 0);
+
+            addGap(root, index, 1);
+            if (runEnd != -1)
+                addGap(root, runEnd, -1);
+        }
+
+        node.gap = index == 0 ? z : z - zAt(index - 1);
+        pull(node);
+
+        if (index < size())
+            addGap(root, index, -node.gap);
+
+        split(root, index, split);
+        root = merge(merge(split.left, node), split.right);
+        root.parent = null;
+    }
+
+    private long zAt(int index) {
+        var offset = 0L;
+        var node = root;
+
+        while (true) {
+            var leftSize = size(node.left);
+
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return offset + sum(node.left) + node.gap;
+            } else {
+                offset += sum(node.left) + node.gap;
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private int indexOf(Node<T> node) {
+        var index = size(node.left);
+
+        for (; node.parent != null; node = node.parent) {
+            if (node.parent.right == node)
+                index += size(node.parent.left) + 1;
+        }
+
+        return index;
+    }
+
+    // Index of the first node at or after 'from' which has a gap to its predecessor, or -1 if the run of
+    // consecutive Z-indexes lasts till the end
+    private int firstWideGap(Node<T> node, int from, int base) {
+        if (node == null || node.maxGap <= 1 || base + node.size <= from)
+            return -1;
+
+        var found = firstWideGap(node.left, from, base);
+        if (found != -1)
+            return found;
+
+        var index = base + size(node.left);
+        if (index >= from && node.gap > 1)
+            return index;
+
+        return firstWideGap(node.right, from, index + 1);
+    }
+
+    private void addGap(Node<T> node, int index, long delta) {
+        var leftSize = size(node.left);
+
+        if (index < leftSize)
+            addGap(node.left, index, delta);
+        else if (index == leftSize)
+            node.gap += delta;
+        else
+            addGap(node.right, index - leftSize - 1, delta);
+
+        pull(node);
+    }
+
+    private void split(Node<T> node, int count, Split<T> result) {
+        if (node == null) {
+            result.left = null;
+            result.right = null;
+            return;
+        }
+
+        if (size(node.left) < count) {
+            split(node.right, count - size(node.left) - 1, result);
+            node.right = result.left;
+            pull(node);
+            result.left = node;
+        } else {
+            split(node.left, count, result);
+            node.left = result.right;
+            pull(node);
+            result.right = node;
+        }
+    }
+
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null)
+            return right;
+
+        if (right == null)
+            return left;
+
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            pull(left);
+            return left;
+        }
+
+        right.left = merge(left, right.left);
+        pull(right);
+        return right;
+    }
+
+    private void pull(Node<T> node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        node.sum = node.gap + sum(node.left) + sum(node.right);
+        node.maxGap = Math.max(node.gap, Math.max(maxGap(node.left), maxGap(node.right)));
+
+        if (node.left != null)
+            node.left.parent = node;
+
+        if (node.right != null)
+            node.right.parent = node;
+    }
+
+    private int walkLimit() {
+        return size() + 1;
+    }
+
+    private static int step(int stepsLeft) {
+        if (stepsLeft <= 0)
+            throw new ConcurrentModificationException("Z-order tree changed during the walk");
+
+        return stepsLeft - 1;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static long sum(Node<?> node) {
+        return node == null ? 0 : node.sum;
+    }
+
+    private static long maxGap(Node<?> node) {
+        return node == null ? Long.MIN_VALUE : node.maxGap;
+    }
+
+    public static final class Node<T> {
+        // Volatile, so that a value replaced by a writer is seen by readers as a whole
+        @Getter
+        @Setter
+        private volatile T value;
+
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private long gap;
+        private long sum;
+        private long maxGap;
+        private int size = 1;
+        private Node<T> left;
+        private Node<T> right;
+        private Node<T> parent;
+
+        private Node(T value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Builds the tree in O(n) as a Cartesian tree over the random priorities of nodes, instead of O(n log n) for
+     * inserting them one by one. Only the right spine of the tree is open while nodes are added, every node which
+     * leaves it has its final subtree and is pulled once. The tree is empty until the loading is finished.
+     */
+    public final class Loader {
+        private final ArrayDeque<Node<T>> rightSpine = new ArrayDeque<>();
+        private long lastZ;
+        private boolean isEmpty = true;
+
+        public Node<T> add(int z, T value) {
+            if (!isEmpty && z <= lastZ)
+                throw new IllegalArgumentException(String.format("Z-index %d is not above %d", z, lastZ));
+
+            var node = new Node<T>(value);
+            node.gap = isEmpty ? z : z - lastZ;
+            lastZ = z;
+            isEmpty = false;
+
+            Node<T> left = null;
+
+            while (!rightSpine.isEmpty() && rightSpine.peek().priority < node.priority) {
+                left = rightSpine.pop();
+                pull(left);
+            }
+
+            node.left = left;
+            if (!rightSpine.isEmpty())
+                rightSpine.peek().right = node;
+
+            rightSpine.push(node);
+
+            return node;
+        }
+
+        public void finish() {
+            Node<T> node = null;
+
+            while (!rightSpine.isEmpty()) {
+                node = rightSpine.pop();
+                pull(node);
+            }
+
+            root = node;
+            if (root != null)
+                root.parent = null;
+        }
+    }
+
+    private static final class Split<T> {
+        private Node<T> left;
+        private Node<T> right;
+    }
+}
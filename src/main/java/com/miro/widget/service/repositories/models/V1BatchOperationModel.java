@@ -0,0 +1,35 @@
+package com.miro.widget.service.repositories.models;
+
+import com.miro.widget.service.models.V1BatchOperationType;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.UUID;
+
+@Value
+public class V1BatchOperationModel {
+    @NonNull
+    V1BatchOperationType type;
+
+    // Widget to update or delete
+    UUID id;
+
+    // A created widget without Z-index goes on top, an updated one keeps its Z-index
+    Integer z;
+
+    Integer centerX;
+
+    Integer centerY;
+
+    Integer width;
+
+    Integer height;
+
+    public V1InsertWidgetModel toInsertModel(int z) {
+        return new V1InsertWidgetModel(z, centerX, centerY, width, height);
+    }
+
+    public V1UpdateWidgetModel toUpdateModel() {
+        return new V1UpdateWidgetModel(id, z, centerX, centerY, width, height);
+    }
+}
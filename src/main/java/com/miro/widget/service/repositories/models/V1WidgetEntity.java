@@ -5,14 +5,12 @@ import lombok.*;
 import java.time.ZonedDateTime;
 import java.util.UUID;
 
-@Data
+// Immutable, so that a widget is replaced as a whole and readers never see a half-applied update
+@Value
 public class V1WidgetEntity {
     @NonNull
     UUID id;
 
-    @NonNull
-    Integer z;
-
     @NonNull
     Integer centerX;
 
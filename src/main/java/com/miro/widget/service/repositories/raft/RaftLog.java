@@ -0,0 +1,206 @@
+package com.miro.widget.service.repositories.raft;
+
+import com.miro.widget.service.repositories.wal.WalRecordCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Durable part of a Raft node: the log and the current term and vote. Log entries are write-ahead log records tagged
+ * with the term of the leader which appended them, an entry without a record is the no-op a new leader starts with.
+ * <p>
+ * Entries are kept in memory and appended to a single file as term (long), record length (int) and the record, so a
+ * torn entry at the end of the file is cut off by the record checksum. The log is not thread-safe, the node guards it.
+ * Appended entries reach the file on write and the disk on force, which the node runs without holding its lock.
+ */
+class RaftLog implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(RaftLog.class);
+    private static final int ENTRY_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int MAX_ENTRY_SIZE = ENTRY_HEADER_SIZE + WalRecordCodec.MAX_RECORD_SIZE;
+    private static final String ENTRIES_FILE = "entries.log";
+    private static final String STATE_FILE = "state";
+
+    private final Path directory;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+    // Index 0 is the empty log with term 0, real entries start from 1
+    private long[] terms = new long[1024];
+    private long[] offsets = new long[1024];
+    private byte[][] records = new byte[1024][];
+    private int lastIndex;
+    private int writtenIndex;
+    private long currentTerm;
+    private int votedFor = -1;
+
+    RaftLog(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.channel = FileChannel.open(directory.resolve(ENTRIES_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        readState();
+        readEntries();
+    }
+
+    long getCurrentTerm() {
+        return currentTerm;
+    }
+
+    int getVotedFor() {
+        return votedFor;
+    }
+
+    // Has to reach the disk before the node answers anyone in the new term
+    void setTermAndVote(long term, int candidateId) throws IOException {
+        var state = ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(term).putInt(candidateId).flip();
+        var temporaryPath = directory.resolve(STATE_FILE + ".tmp");
+
+        try (var stateChannel = FileChannel.open(temporaryPath,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            stateChannel.write(state);
+            stateChannel.force(true);
+        }
+
+        Files.move(temporaryPath, directory.resolve(STATE_FILE), StandardCopyOption.ATOMIC_MOVE);
+        currentTerm = term;
+        votedFor = candidateId;
+    }
+
+    int getLastIndex() {
+        return lastIndex;
+    }
+
+    long getLastTerm() {
+        return terms[lastIndex];
+    }
+
+    int getWrittenIndex() {
+        return writtenIndex;
+    }
+
+    long termAt(int index) {
+        return index > lastIndex ? -1 : terms[index];
+    }
+
+    // Encoded write-ahead log record of the entry, null for a no-op
+    byte[] recordAt(int index) {
+        return records[index];
+    }
+
+    int append(long term, byte[] record) {
+        if (lastIndex + 1 == terms.length) {
+            terms = Arrays.copyOf(terms, terms.length * 2);
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            records = Arrays.copyOf(records, records.length * 2);
+        }
+
+        lastIndex++;
+        terms[lastIndex] = term;
+        records[lastIndex] = record;
+
+        return lastIndex;
+    }
+
+    // Drops the entry at the index and all after it, they conflict with the log of the leader
+    void truncateFrom(int index) throws IOException {
+        if (index <= writtenIndex) {
+            channel.truncate(offsets[index]);
+            writtenIndex = index - 1;
+        }
+
+        Arrays.fill(records, index, lastIndex + 1, null);
+        lastIndex = index - 1;
+    }
+
+    // Writes appended entries to the file, returns the index of the last written one
+    int write() throws IOException {
+        while (writtenIndex < lastIndex) {
+            buffer.clear();
+
+            while (writtenIndex < lastIndex && buffer.remaining() >= MAX_ENTRY_SIZE) {
+                var index = ++writtenIndex;
+                var record = records[index];
+
+                offsets[index] = channel.position() + buffer.position();
+                buffer.putLong(terms[index]);
+                buffer.putInt(record == null ? 0 : record.length);
+
+                if (record != null)
+                    buffer.put(record);
+            }
+
+            buffer.flip();
+
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+
+        return writtenIndex;
+    }
+
+    // Safe to run concurrently with appends and writes
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readState() throws IOException {
+        var statePath = directory.resolve(STATE_FILE);
+
+        if (!Files.exists(statePath))
+            return;
+
+        var state = ByteBuffer.wrap(Files.readAllBytes(statePath));
+        currentTerm = state.getLong();
+        votedFor = state.getInt();
+    }
+
+    private void readEntries() throws IOException {
+        var size = channel.size();
+        var entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        while (entries.remaining() >= ENTRY_HEADER_SIZE) {
+            var offset = entries.position();
+            var term = entries.getLong();
+            var length = entries.getInt();
+
+            if (length < 0 || length > entries.remaining() ||
+                length > 0 && WalRecordCodec.recordSize(entries.slice().limit(length)) != length) {
+                entries.position(offset);
+                break;
+            }
+
+            var record = length == 0 ? null : new byte[length];
+
+            if (record != null)
+                entries.get(record);
+
+            var index = append(term, record);
+            offsets[index] = offset;
+        }
+
+        writtenIndex = lastIndex;
+
+        if (entries.position() < size) {
+            log.warn("Truncating Raft log {} from {} to {} bytes after a torn entry",
+                directory, size, entries.position());
+            channel.truncate(entries.position());
+            channel.force(true);
+        }
+
+        channel.position(channel.size());
+        log.info("Read {} Raft log entries up to term {}", lastIndex, getLastTerm());
+    }
+}
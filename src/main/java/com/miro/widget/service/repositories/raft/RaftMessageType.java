@@ -0,0 +1,17 @@
+package com.miro.widget.service.repositories.raft;
+
+/**
+ * Messages between Raft nodes. Requests go over the connection a node opens to each peer, and responses come back
+ * over the same connection in the order of the requests, so a leader may send requests without waiting for them.
+ * Every response carries the term of the responding node, whether the request succeeded and, for AppendEntries, the
+ * last index matching the leader log or, on a mismatch, the index the leader should go back to.
+ */
+enum RaftMessageType {
+    // Term, candidate ID, last log index and term of the candidate
+    VOTE_REQUEST,
+    // Term, leader ID, index and term of the entry before the sent ones, commit index, entries count and the entries,
+    // each as term, record length and a write-ahead log record
+    APPEND_REQUEST,
+    VOTE_RESPONSE,
+    APPEND_RESPONSE
+}
@@ -0,0 +1,1009 @@
+package com.miro.widget.service.repositories.raft;
+
+import com.miro.widget.service.repositories.wal.V1WalRecord;
+import com.miro.widget.service.repositories.wal.WalRecordCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Raft consensus over the writes of the in-memory repository between a fixed set of nodes, connected over TCP.
+ * <p>
+ * The leader applies a write to its repository right away and appends the resulting write-ahead log record to the
+ * Raft log, the writer then waits until a majority of nodes has the record on disk. Records carry the whole state of
+ * the widget after the write, so followers apply committed records to their repositories exactly like the leader
+ * applied them, Z-index shifts included. A node which loses leadership with writes that never committed rebuilds its
+ * state from the committed log, and a new leader applies its whole log before it accepts writes.
+ * <p>
+ * Reads on the leader are served from its repository, which has writes applied before they commit. A read can
+ * therefore see a write which never commits: if the leader loses leadership first, the write is rolled back when the
+ * node rebuilds its state after {@code isDiverged} is set, and readers then no longer see it.
+ * <p>
+ * The leader sends AppendEntries to each follower without waiting for the previous ones to be answered, each carries
+ * all entries appended since the previous one, and every node forces all entries appended during the previous force
+ * at once. The log is not compacted, so it grows with every write.
+ */
+@Component
+@ConditionalOnProperty(prefix = "widget.raft", name = "enabled", havingValue = "true")
+public class RaftNode implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(RaftNode.class);
+    private static final int MAX_BATCH_SIZE = 4096;
+    private static final int MAX_IN_FLIGHT = 32;
+
+    private final int id;
+    private final int membersCount;
+    private final RaftLog raftLog;
+    private final ServerSocket serverSocket;
+    private final long electionTimeoutMs;
+    private final long heartbeatIntervalMs;
+    private final long commitTimeoutMs;
+    private final List<Peer> peers = new ArrayList<>();
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition replicationRequested = lock.newCondition();
+    private final Condition flushRequested = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+    private final Condition applyRequested = lock.newCondition();
+    private final ThreadLocal<long[]> lastAppended = ThreadLocal.withInitial(() -> new long[2]);
+
+    private RaftRole role = RaftRole.FOLLOWER;
+    private int leaderId = -1;
+    private int commitIndex;
+    private int durableIndex;
+    private int lastApplied;
+    private long truncationsCount;
+    private long electionDeadline;
+    private boolean isReady;
+    private boolean isDiverged;
+    private boolean isClosed;
+    private IOException failure;
+
+    // Members are host:port addresses of all nodes, the same list on every node, the ID is the index of this node
+    @Autowired
+    public RaftNode(
+        @Value("${widget.raft.directory:data/raft}") Path directory,
+        @Value("${widget.raft.id:0}") int id,
+        @Value("${widget.raft.members:localhost:7101}") List<String> members,
+        @Value("${widget.raft.election-timeout-ms:150}") long electionTimeoutMs,
+        @Value("${widget.raft.heartbeat-interval-ms:50}") long heartbeatIntervalMs,
+        @Value("${widget.raft.commit-timeout-ms:5000}") long commitTimeoutMs
+    ) throws IOException {
+        if (id < 0 || id >= members.size())
+            throw new IllegalArgumentException(String.format("Raft node ID %d is not one of %s", id, members));
+
+        this.id = id;
+        this.membersCount = members.size();
+        this.electionTimeoutMs = electionTimeoutMs;
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.commitTimeoutMs = commitTimeoutMs;
+
+        for (var i = 0; i < members.size(); i++) {
+            if (i != id)
+                peers.add(new Peer(i, toAddress(members.get(i))));
+        }
+
+        this.raftLog = new RaftLog(directory);
+        this.durableIndex = raftLog.getLastIndex();
+
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(toAddress(members.get(id)));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Starts the node. The clear and the apply change the repository under its own lock, the node never holds its
+     * lock while calling them, since writers call the node under the lock of the repository.
+     */
+    public void start(Runnable clear, Consumer<V1WalRecord> apply) {
+        lock.lock();
+
+        try {
+            resetElectionDeadline();
+        } finally {
+            lock.unlock();
+        }
+
+        startThread(this::acceptConnections, "widget-raft-acceptor");
+        startThread(this::tick, "widget-raft-ticker");
+        startThread(this::flush, "widget-raft-flusher");
+        startThread(() -> applyCommitted(clear, apply), "widget-raft-applier");
+
+        for (var peer : peers)
+            startThread(() -> replicate(peer), "widget-raft-replicator-" + peer.id);
+    }
+
+    public RaftRole getRole() {
+        return withLock(() -> role);
+    }
+
+    // -1 while the node doesn't know the leader
+    public int getLeaderId() {
+        return withLock(() -> leaderId);
+    }
+
+    public long getCurrentTerm() {
+        return withLock(raftLog::getCurrentTerm);
+    }
+
+    public int getCommitIndex() {
+        return withLock(() -> commitIndex);
+    }
+
+    // Fails fast before a write is applied, only a leader which has applied its whole log takes writes
+    public void checkLeader() {
+        lock.lock();
+
+        try {
+            ensureLeader();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Has to be called under the lock of the repository, right after the write is applied
+    public void append(V1WalRecord record) {
+        var buffer = ByteBuffer.allocate(WalRecordCodec.MAX_RECORD_SIZE);
+        WalRecordCodec.encode(record, buffer);
+
+        var encodedRecord = Arrays.copyOf(buffer.array(), buffer.position());
+
+        lock.lock();
+
+        try {
+            try {
+                ensureLeader();
+            } catch (RuntimeException exc) {
+                // The write is applied already, so the state has to be rebuilt from the log
+                isDiverged = true;
+                applyRequested.signal();
+                throw exc;
+            }
+
+            var index = raftLog.append(raftLog.getCurrentTerm(), encodedRecord);
+            var appended = lastAppended.get();
+
+            appended[0] = index;
+            appended[1] = raftLog.getCurrentTerm();
+            lastApplied = index;
+
+            flushRequested.signal();
+            replicationRequested.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until the last record appended by the current thread is committed, fails if leadership is lost before
+    public void awaitCommitted() {
+        var appended = lastAppended.get();
+        var index = (int) appended[0];
+        var term = appended[1];
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commitTimeoutMs);
+
+        lock.lock();
+
+        try {
+            while (commitIndex < index && role == RaftRole.LEADER && raftLog.getCurrentTerm() == term &&
+                failure == null && !isClosed) {
+                var remainingNanos = deadline - System.nanoTime();
+
+                if (remainingNanos <= 0)
+                    throw new IllegalStateException("Write is not committed by a majority of Raft nodes in time");
+
+                committed.awaitNanos(remainingNanos);
+            }
+
+            if (commitIndex < index || raftLog.termAt(index) != term)
+                throw new IllegalStateException("Raft leadership is lost before the write is committed");
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the write to be committed");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+
+        try {
+            isClosed = true;
+            replicationRequested.signalAll();
+            flushRequested.signal();
+            flushed.signalAll();
+            committed.signalAll();
+            applyRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        serverSocket.close();
+        sockets.forEach(RaftNode::closeQuietly);
+
+        try {
+            for (var thread : threads)
+                thread.join();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        } finally {
+            raftLog.close();
+        }
+    }
+
+    // Starts an election when the leader hasn't been heard of for the election timeout
+    private void tick() {
+        while (true) {
+            lock.lock();
+
+            try {
+                if (isClosed)
+                    return;
+
+                if (role != RaftRole.LEADER && failure == null && System.nanoTime() >= electionDeadline)
+                    startElection();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                Thread.sleep(Math.max(1, Math.min(10, heartbeatIntervalMs / 2)));
+            } catch (InterruptedException exc) {
+                return;
+            }
+        }
+    }
+
+    private void startElection() {
+        setTermAndVote(raftLog.getCurrentTerm() + 1, id);
+        role = RaftRole.CANDIDATE;
+        leaderId = -1;
+        resetElectionDeadline();
+        log.info("Raft node {} starts election in term {}", id, raftLog.getCurrentTerm());
+
+        if (countVotes() > membersCount / 2)
+            becomeLeader();
+
+        replicationRequested.signalAll();
+    }
+
+    private void becomeLeader() {
+        role = RaftRole.LEADER;
+        leaderId = id;
+        isReady = false;
+
+        for (var peer : peers) {
+            peer.nextIndex = raftLog.getLastIndex() + 1;
+            peer.matchIndex = 0;
+        }
+
+        // Entries of previous terms are committed along with the first entry of the new term
+        raftLog.append(raftLog.getCurrentTerm(), null);
+        log.info("Raft node {} is the leader in term {}", id, raftLog.getCurrentTerm());
+
+        flushRequested.signal();
+        replicationRequested.signalAll();
+        applyRequested.signal();
+    }
+
+    private void stepDown(long term, int newLeaderId) {
+        if (term > raftLog.getCurrentTerm())
+            setTermAndVote(term, -1);
+
+        if (role == RaftRole.LEADER) {
+            log.info("Raft node {} is not the leader anymore in term {}", id, raftLog.getCurrentTerm());
+
+            if (lastApplied > commitIndex) {
+                isDiverged = true;
+                applyRequested.signal();
+            }
+        }
+
+        role = RaftRole.FOLLOWER;
+        leaderId = newLeaderId;
+        isReady = false;
+        committed.signalAll();
+    }
+
+    private void advanceCommitIndex() {
+        var matchIndexes = new int[membersCount];
+        matchIndexes[0] = durableIndex;
+
+        for (var i = 0; i < peers.size(); i++)
+            matchIndexes[i + 1] = peers.get(i).matchIndex;
+
+        Arrays.sort(matchIndexes);
+
+        // Stored on a majority of nodes, entries of previous terms are committed only indirectly
+        var majorityIndex = matchIndexes[membersCount - (membersCount / 2 + 1)];
+
+        if (majorityIndex > commitIndex && raftLog.termAt(majorityIndex) == raftLog.getCurrentTerm()) {
+            commitIndex = majorityIndex;
+            committed.signalAll();
+        }
+    }
+
+    // Writes appended entries to the file and forces them to disk, everything appended meanwhile goes in the next round
+    private void flush() {
+        while (true) {
+            int writtenIndex;
+            long truncationsCountBefore;
+
+            lock.lock();
+
+            try {
+                while (!isClosed && failure == null && raftLog.getLastIndex() <= durableIndex)
+                    flushRequested.awaitUninterruptibly();
+
+                if (isClosed || failure != null)
+                    return;
+
+                writtenIndex = raftLog.write();
+                truncationsCountBefore = truncationsCount;
+            } catch (IOException exc) {
+                fail(exc);
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                raftLog.force();
+            } catch (IOException exc) {
+                withLock(() -> fail(exc));
+                return;
+            }
+
+            lock.lock();
+
+            try {
+                // Entries truncated meanwhile may have been replaced by ones which are not forced yet
+                if (truncationsCount == truncationsCountBefore && writtenIndex > durableIndex)
+                    durableIndex = writtenIndex;
+
+                flushed.signalAll();
+
+                if (role == RaftRole.LEADER)
+                    advanceCommitIndex();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // The state has to follow the committed log, or the whole log on the leader, which has to apply it before writes
+    private void applyCommitted(Runnable clear, Consumer<V1WalRecord> apply) {
+        while (true) {
+            var records = new ArrayList<byte[]>();
+            boolean isRebuilding;
+
+            lock.lock();
+
+            try {
+                while (!isClosed && !isDiverged && applyTarget() <= lastApplied) {
+                    if (role == RaftRole.LEADER && !isReady) {
+                        isReady = true;
+                        log.info("Raft leader {} applied its log up to {} and takes writes", id, lastApplied);
+                    }
+
+                    applyRequested.awaitUninterruptibly();
+                }
+
+                if (isClosed)
+                    return;
+
+                isRebuilding = isDiverged;
+                isDiverged = false;
+
+                var target = isRebuilding ? commitIndex : applyTarget();
+
+                for (var index = isRebuilding ? 1 : lastApplied + 1; index <= target; index++) {
+                    if (raftLog.recordAt(index) != null)
+                        records.add(raftLog.recordAt(index));
+                }
+
+                lastApplied = target;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                if (isRebuilding) {
+                    log.warn("Raft node {} rebuilds its state from {} committed entries", id, records.size());
+                    clear.run();
+                }
+
+                for (var record : records)
+                    apply.accept(WalRecordCodec.decode(ByteBuffer.wrap(record)));
+            } catch (RuntimeException exc) {
+                log.error("Raft node {} failed to apply committed entries: {}", id, exc.getMessage());
+            }
+        }
+    }
+
+    private int applyTarget() {
+        return role == RaftRole.LEADER ? raftLog.getLastIndex() : commitIndex;
+    }
+
+    private void replicate(Peer peer) {
+        DataOutputStream output = null;
+        var connection = -1L;
+
+        while (true) {
+            Message message = null;
+
+            lock.lock();
+
+            try {
+                while (!isClosed && (message = nextMessage(peer)) == null)
+                    replicationRequested.await(heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+
+                if (isClosed)
+                    return;
+            } catch (InterruptedException exc) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                if (output == null || connection != withLock(() -> peer.connection)) {
+                    output = connect(peer);
+                    connection = withLock(() -> peer.connection);
+                }
+
+                message.writeTo(output);
+
+                // Messages requested meanwhile go out in the same flush
+                if (!withLock(() -> hasNextMessage(peer)))
+                    output.flush();
+            } catch (IOException exc) {
+                output = null;
+                withLock(() -> disconnect(peer, peer.connection));
+
+                try {
+                    Thread.sleep(heartbeatIntervalMs);
+                } catch (InterruptedException interruptedExc) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean hasNextMessage(Peer peer) {
+        if (role == RaftRole.CANDIDATE)
+            return peer.voteRequestedTerm != raftLog.getCurrentTerm();
+
+        return role == RaftRole.LEADER && peer.nextIndex <= raftLog.getLastIndex() && peer.inFlight < MAX_IN_FLIGHT;
+    }
+
+    private Message nextMessage(Peer peer) {
+        var term = raftLog.getCurrentTerm();
+
+        if (role == RaftRole.CANDIDATE && peer.voteRequestedTerm != term) {
+            peer.voteRequestedTerm = term;
+
+            var lastIndex = raftLog.getLastIndex();
+            var lastTerm = raftLog.getLastTerm();
+
+            return output -> {
+                output.writeByte(RaftMessageType.VOTE_REQUEST.ordinal());
+                output.writeLong(term);
+                output.writeInt(id);
+                output.writeInt(lastIndex);
+                output.writeLong(lastTerm);
+            };
+        }
+
+        if (role != RaftRole.LEADER)
+            return null;
+
+        var now = System.nanoTime();
+        var hasEntries = peer.nextIndex <= raftLog.getLastIndex() && peer.inFlight < MAX_IN_FLIGHT;
+
+        if (!hasEntries && now - peer.lastSentAt < TimeUnit.MILLISECONDS.toNanos(heartbeatIntervalMs))
+            return null;
+
+        var previousIndex = peer.nextIndex - 1;
+        var previousTerm = raftLog.termAt(previousIndex);
+        var lastIndex = hasEntries ? Math.min(raftLog.getLastIndex(), previousIndex + MAX_BATCH_SIZE) : previousIndex;
+        var entryTerms = new long[lastIndex - previousIndex];
+        var entryRecords = new byte[entryTerms.length][];
+        var leaderCommit = commitIndex;
+
+        for (var i = 0; i < entryTerms.length; i++) {
+            entryTerms[i] = raftLog.termAt(previousIndex + 1 + i);
+            entryRecords[i] = raftLog.recordAt(previousIndex + 1 + i);
+        }
+
+        peer.nextIndex = lastIndex + 1;
+        peer.inFlight++;
+        peer.lastSentAt = now;
+
+        return output -> {
+            output.writeByte(RaftMessageType.APPEND_REQUEST.ordinal());
+            output.writeLong(term);
+            output.writeInt(id);
+            output.writeInt(previousIndex);
+            output.writeLong(previousTerm);
+            output.writeInt(leaderCommit);
+            output.writeInt(entryTerms.length);
+
+            for (var i = 0; i < entryTerms.length; i++) {
+                output.writeLong(entryTerms[i]);
+                output.writeInt(entryRecords[i] == null ? 0 : entryRecords[i].length);
+
+                if (entryRecords[i] != null)
+                    output.write(entryRecords[i]);
+            }
+        };
+    }
+
+    private DataOutputStream connect(Peer peer) throws IOException {
+        var socket = new Socket();
+
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(peer.address, (int) Math.max(1, electionTimeoutMs));
+
+            var input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            var output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            var connection = withLock(() -> {
+                if (peer.socket != null) {
+                    closeQuietly(peer.socket);
+                    sockets.remove(peer.socket);
+                }
+
+                peer.socket = socket;
+
+                return ++peer.connection;
+            });
+
+            sockets.add(socket);
+            startThread(() -> receiveResponses(peer, connection, socket, input), "widget-raft-receiver-" + peer.id);
+
+            return output;
+        } catch (IOException exc) {
+            closeQuietly(socket);
+            throw exc;
+        }
+    }
+
+    // Entries in flight on the connection are lost, the follower will reject the next ones and tell where to resume
+    private Void disconnect(Peer peer, long connection) {
+        if (peer.connection != connection)
+            return null;
+
+        if (peer.socket != null) {
+            closeQuietly(peer.socket);
+            sockets.remove(peer.socket);
+        }
+
+        peer.socket = null;
+        peer.connection++;
+        peer.inFlight = 0;
+        peer.voteRequestedTerm = 0;
+
+        return null;
+    }
+
+    private void receiveResponses(Peer peer, long connection, Socket socket, DataInputStream input) {
+        try {
+            while (true) {
+                var type = readMessageType(input);
+                var term = input.readLong();
+                var isSuccessful = input.readBoolean();
+                var index = input.readInt();
+
+                lock.lock();
+
+                try {
+                    if (isClosed || peer.connection != connection)
+                        return;
+
+                    handleResponse(peer, type, term, isSuccessful, index);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException | RuntimeException exc) {
+            withLock(() -> disconnect(peer, connection));
+        } finally {
+            closeQuietly(socket);
+            sockets.remove(socket);
+            threads.remove(Thread.currentThread());
+        }
+    }
+
+    private void handleResponse(Peer peer, RaftMessageType type, long term, boolean isSuccessful, int index) {
+        if (term > raftLog.getCurrentTerm()) {
+            stepDown(term, -1);
+            return;
+        }
+
+        if (type == RaftMessageType.VOTE_RESPONSE) {
+            if (isSuccessful && role == RaftRole.CANDIDATE && term == raftLog.getCurrentTerm()) {
+                peer.votedTerm = term;
+
+                if (countVotes() > membersCount / 2)
+                    becomeLeader();
+            }
+
+            return;
+        }
+
+        peer.inFlight = Math.max(0, peer.inFlight - 1);
+
+        if (role != RaftRole.LEADER || term != raftLog.getCurrentTerm())
+            return;
+
+        if (isSuccessful && index > peer.matchIndex) {
+            peer.matchIndex = index;
+            advanceCommitIndex();
+        } else if (!isSuccessful) {
+            peer.nextIndex = Math.max(peer.matchIndex + 1, Math.min(peer.nextIndex, index + 1));
+        }
+
+        replicationRequested.signalAll();
+    }
+
+    private int countVotes() {
+        var votesCount = 1;
+
+        for (var peer : peers) {
+            if (peer.votedTerm == raftLog.getCurrentTerm())
+                votesCount++;
+        }
+
+        return votesCount;
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                var socket = serverSocket.accept();
+
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                startThread(() -> serve(socket), "widget-raft-server");
+            } catch (IOException exc) {
+                if (!serverSocket.isClosed())
+                    log.error("Raft node {} failed to accept a connection: {}", id, exc.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            var input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            var output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+            var responses = new ArrayList<Response>();
+
+            while (true) {
+                var type = readMessageType(input);
+
+                responses.add(type == RaftMessageType.VOTE_REQUEST ? serveVote(input) : serveAppend(input));
+
+                // Entries of all requests already received are forced to disk at once and answered in one flush
+                if (input.available() > 0)
+                    continue;
+
+                for (var response : awaitDurable(responses)) {
+                    output.writeByte(response.type.ordinal());
+                    output.writeLong(response.term);
+                    output.writeBoolean(response.isSuccessful);
+                    output.writeInt(response.index);
+                }
+
+                output.flush();
+                responses.clear();
+            }
+        } catch (IOException | RuntimeException exc) {
+            if (!withLock(() -> isClosed))
+                log.debug("Raft node {} closes connection from {}: {}",
+                    id, socket.getRemoteSocketAddress(), exc.getMessage());
+        } finally {
+            closeQuietly(socket);
+            sockets.remove(socket);
+            threads.remove(Thread.currentThread());
+        }
+    }
+
+    private Response serveVote(DataInputStream input) throws IOException {
+        var term = input.readLong();
+        var candidateId = input.readInt();
+        var lastIndex = input.readInt();
+        var lastTerm = input.readLong();
+
+        lock.lock();
+
+        try {
+            if (term > raftLog.getCurrentTerm())
+                stepDown(term, -1);
+
+            var isUpToDate = lastTerm > raftLog.getLastTerm() ||
+                lastTerm == raftLog.getLastTerm() && lastIndex >= raftLog.getLastIndex();
+            var isGranted = term == raftLog.getCurrentTerm() && isUpToDate &&
+                (raftLog.getVotedFor() == -1 || raftLog.getVotedFor() == candidateId);
+
+            if (isGranted) {
+                if (raftLog.getVotedFor() != candidateId)
+                    setTermAndVote(term, candidateId);
+
+                resetElectionDeadline();
+            }
+
+            return new Response(RaftMessageType.VOTE_RESPONSE, raftLog.getCurrentTerm(), isGranted, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Response serveAppend(DataInputStream input) throws IOException {
+        var term = input.readLong();
+        var newLeaderId = input.readInt();
+        var previousIndex = input.readInt();
+        var previousTerm = input.readLong();
+        var leaderCommit = input.readInt();
+        var entriesCount = input.readInt();
+
+        if (entriesCount < 0 || entriesCount > MAX_BATCH_SIZE)
+            throw new IOException(String.format("Raft AppendEntries of %d entries is corrupted", entriesCount));
+
+        var entryTerms = new long[entriesCount];
+        var entryRecords = new byte[entriesCount][];
+
+        for (var i = 0; i < entriesCount; i++) {
+            entryTerms[i] = input.readLong();
+
+            var length = input.readInt();
+
+            if (length < 0 || length > WalRecordCodec.MAX_RECORD_SIZE)
+                throw new IOException(String.format("Raft log entry of %d bytes is corrupted", length));
+
+            if (length > 0) {
+                entryRecords[i] = new byte[length];
+                input.readFully(entryRecords[i]);
+            }
+        }
+
+        lock.lock();
+
+        try {
+            if (term < raftLog.getCurrentTerm())
+                return appendResponse(false, raftLog.getLastIndex());
+
+            if (term > raftLog.getCurrentTerm() || role != RaftRole.FOLLOWER)
+                stepDown(term, newLeaderId);
+
+            leaderId = newLeaderId;
+            resetElectionDeadline();
+
+            if (previousIndex > raftLog.getLastIndex())
+                return appendResponse(false, raftLog.getLastIndex());
+
+            if (raftLog.termAt(previousIndex) != previousTerm) {
+                // Skips the whole conflicting term instead of going back one entry per round trip
+                var conflictingTerm = raftLog.termAt(previousIndex);
+                var resumeIndex = previousIndex - 1;
+
+                while (resumeIndex > commitIndex && raftLog.termAt(resumeIndex) == conflictingTerm)
+                    resumeIndex--;
+
+                return appendResponse(false, resumeIndex);
+            }
+
+            for (var i = 0; i < entriesCount; i++) {
+                var index = previousIndex + 1 + i;
+
+                if (index <= raftLog.getLastIndex()) {
+                    if (raftLog.termAt(index) == entryTerms[i])
+                        continue;
+
+                    raftLog.truncateFrom(index);
+                    truncationsCount++;
+                    durableIndex = Math.min(durableIndex, index - 1);
+                }
+
+                raftLog.append(entryTerms[i], entryRecords[i]);
+            }
+
+            var matchIndex = previousIndex + entriesCount;
+
+            if (leaderCommit > commitIndex && matchIndex > commitIndex) {
+                commitIndex = Math.min(leaderCommit, matchIndex);
+                applyRequested.signal();
+            }
+
+            // Succeeds once the entries are on disk
+            return appendResponse(true, matchIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Response appendResponse(boolean isSuccessful, int index) {
+        return new Response(RaftMessageType.APPEND_RESPONSE, raftLog.getCurrentTerm(), isSuccessful, index);
+    }
+
+    private List<Response> awaitDurable(List<Response> responses) {
+        var matchIndex = 0;
+
+        for (var response : responses) {
+            if (response.type == RaftMessageType.APPEND_RESPONSE && response.isSuccessful)
+                matchIndex = Math.max(matchIndex, response.index);
+        }
+
+        lock.lock();
+
+        try {
+            if (durableIndex < matchIndex)
+                flushRequested.signal();
+
+            while (durableIndex < matchIndex && failure == null && !isClosed)
+                flushed.awaitUninterruptibly();
+
+            if (durableIndex >= matchIndex)
+                return responses;
+
+            var durableResponses = new ArrayList<Response>(responses.size());
+
+            for (var response : responses) {
+                durableResponses.add(response.type == RaftMessageType.APPEND_RESPONSE && response.index > durableIndex
+                    ? new Response(response.type, response.term, false, durableIndex)
+                    : response);
+            }
+
+            return durableResponses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureLeader() {
+        if (failure != null)
+            throw new UncheckedIOException("Raft log failed", failure);
+
+        if (role != RaftRole.LEADER || !isReady)
+            throw new IllegalStateException("Widgets are written on the Raft leader only");
+    }
+
+    private void setTermAndVote(long term, int candidateId) {
+        try {
+            raftLog.setTermAndVote(term, candidateId);
+        } catch (IOException exc) {
+            fail(exc);
+            throw new UncheckedIOException("Failed to persist Raft term", exc);
+        }
+    }
+
+    // A node which can't tell what reached its disk stops taking part, its peers go on without it
+    private Void fail(IOException exc) {
+        log.error("Raft node {} failed: {}", id, exc.getMessage());
+        failure = exc;
+        role = RaftRole.FOLLOWER;
+        isReady = false;
+        flushed.signalAll();
+        committed.signalAll();
+
+        return null;
+    }
+
+    private void resetElectionDeadline() {
+        electionDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+            electionTimeoutMs + ThreadLocalRandom.current().nextLong(electionTimeoutMs + 1));
+    }
+
+    private <T> T withLock(Supplier<T> supplier) {
+        lock.lock();
+
+        try {
+            return supplier.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startThread(Runnable runnable, String name) {
+        var thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private static RaftMessageType readMessageType(DataInputStream input) throws IOException {
+        var typeOrdinal = input.readUnsignedByte();
+
+        if (typeOrdinal >= RaftMessageType.values().length)
+            throw new IOException(String.format("Unknown Raft message type %d", typeOrdinal));
+
+        return RaftMessageType.values()[typeOrdinal];
+    }
+
+    private static InetSocketAddress toAddress(String member) {
+        var separator = member.lastIndexOf(':');
+
+        if (separator < 0)
+            throw new IllegalArgumentException(String.format("Raft member '%s' is not host:port", member));
+
+        return new InetSocketAddress(member.substring(0, separator), Integer.parseInt(member.substring(separator + 1)));
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException exc) {
+            log.warn("Failed to close Raft socket: {}", exc.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Message {
+        void writeTo(DataOutputStream output) throws IOException;
+    }
+
+    private static final class Response {
+        private final RaftMessageType type;
+        private final long term;
+        private final boolean isSuccessful;
+        private final int index;
+
+        private Response(RaftMessageType type, long term, boolean isSuccessful, int index) {
+            this.type = type;
+            this.term = term;
+            this.isSuccessful = isSuccessful;
+            this.index = index;
+        }
+    }
+
+    // Guarded by the lock of the node
+    private static final class Peer {
+        private final int id;
+        private final InetSocketAddress address;
+        private Socket socket;
+        private long connection;
+        private int nextIndex = 1;
+        private int matchIndex;
+        private int inFlight;
+        private long lastSentAt;
+        private long voteRequestedTerm;
+        private long votedTerm;
+
+        private Peer(int id, InetSocketAddress address) {
+            this.id = id;
+            this.address = address;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.miro.widget.service.repositories.raft;
+
+public enum RaftRole {
+    FOLLOWER,
+    CANDIDATE,
+    LEADER
+}
@@ -0,0 +1,171 @@
+package com.miro.widget.service.repositories.replication;
+
+import com.miro.widget.service.models.V1WidgetDto;
+import com.miro.widget.service.repositories.wal.V1WalRecord;
+import com.miro.widget.service.repositories.wal.WalRecordCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tails the replication stream of the leader and applies it to the local repository. The follower starts from the
+ * state the leader sends on every connect, so after a lost connection it simply connects again and replaces its
+ * state. Staleness is the time since the leader moment up to which every write is applied here.
+ */
+@Component
+@ConditionalOnProperty(prefix = "widget.replication", name = "role", havingValue = "follower")
+public class ReplicationFollower implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    private final String leaderHost;
+    private final int leaderPort;
+    private final int timeoutMs;
+    private final long reconnectIntervalMs;
+
+    private volatile boolean isClosed;
+    private volatile boolean isConnected;
+    private volatile Socket socket;
+    private volatile long appliedSequence = -1;
+    private volatile long coveredUntil;
+    private Thread receiver;
+
+    @Autowired
+    public ReplicationFollower(
+        @Value("${widget.replication.leader-host:localhost}") String leaderHost,
+        @Value("${widget.replication.port:7070}") int leaderPort,
+        @Value("${widget.replication.timeout-ms:5000}") int timeoutMs,
+        @Value("${widget.replication.reconnect-interval-ms:1000}") long reconnectIntervalMs
+    ) {
+        this.leaderHost = leaderHost;
+        this.leaderPort = leaderPort;
+        this.timeoutMs = timeoutMs;
+        this.reconnectIntervalMs = reconnectIntervalMs;
+    }
+
+    // The reset replaces the whole state with widgets in Z-order, the apply handles every write after it
+    public void start(Consumer<List<V1WidgetDto>> reset, Consumer<V1WalRecord> apply) {
+        receiver = new Thread(() -> receive(reset, apply), "widget-replication-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public boolean isConnected() {
+        return isConnected;
+    }
+
+    // Sequence number of the last leader write applied here, -1 before the first state arrives
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    // -1 before the first state arrives
+    public long getStalenessMs() {
+        if (appliedSequence < 0)
+            return -1;
+
+        return Math.max(0, System.currentTimeMillis() - coveredUntil);
+    }
+
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+
+        if (socket != null)
+            socket.close();
+
+        if (receiver != null)
+            receiver.interrupt();
+    }
+
+    private void receive(Consumer<List<V1WidgetDto>> reset, Consumer<V1WalRecord> apply) {
+        while (!isClosed) {
+            try (var connection = new Socket(leaderHost, leaderPort)) {
+                socket = connection;
+                connection.setTcpNoDelay(true);
+                connection.setSoTimeout(timeoutMs);
+                isConnected = true;
+                log.info("Connected to replication leader {}:{}", leaderHost, leaderPort);
+
+                receiveFrames(new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16)),
+                    reset, apply);
+            } catch (IOException | RuntimeException exc) {
+                if (!isClosed)
+                    log.warn("Lost replication leader {}:{}: {}", leaderHost, leaderPort, exc.getMessage());
+            } finally {
+                isConnected = false;
+            }
+
+            try {
+                Thread.sleep(reconnectIntervalMs);
+            } catch (InterruptedException exc) {
+                return;
+            }
+        }
+    }
+
+    private void receiveFrames(DataInputStream input, Consumer<List<V1WidgetDto>> reset, Consumer<V1WalRecord> apply)
+        throws IOException {
+        var buffer = ByteBuffer.allocate(WalRecordCodec.MAX_RECORD_SIZE);
+        var snapshot = new ArrayList<V1WidgetDto>();
+
+        while (!isClosed) {
+            var typeOrdinal = input.readUnsignedByte();
+
+            if (typeOrdinal >= ReplicationFrameType.values().length)
+                throw new IOException(String.format("Unknown replication frame type %d", typeOrdinal));
+
+            var type = ReplicationFrameType.values()[typeOrdinal];
+            var sequence = input.readLong();
+            var frameCoveredUntil = input.readLong();
+
+            switch (type) {
+                case SNAPSHOT:
+                    snapshot.add(readRecord(input, buffer).getWidget());
+                    continue;
+                case SNAPSHOT_END:
+                    reset.accept(snapshot);
+                    snapshot = new ArrayList<>();
+                    log.info("Received the state of replication leader at write {}", sequence);
+                    break;
+                case RECORD:
+                    apply.accept(readRecord(input, buffer));
+                    break;
+                case HEARTBEAT:
+                    break;
+            }
+
+            appliedSequence = sequence;
+            coveredUntil = frameCoveredUntil;
+        }
+    }
+
+    private static V1WalRecord readRecord(DataInputStream input, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        input.readFully(buffer.array(), 0, WalRecordCodec.HEADER_SIZE);
+
+        var length = buffer.getInt(0);
+
+        if (length < 1 || length > WalRecordCodec.MAX_RECORD_SIZE - WalRecordCodec.HEADER_SIZE)
+            throw new IOException(String.format("Replication record of %d bytes is corrupted", length));
+
+        input.readFully(buffer.array(), WalRecordCodec.HEADER_SIZE, length);
+        buffer.limit(WalRecordCodec.HEADER_SIZE + length);
+
+        if (WalRecordCodec.recordSize(buffer) < 0)
+            throw new IOException("Replication record is corrupted");
+
+        return WalRecordCodec.decode(buffer);
+    }
+}
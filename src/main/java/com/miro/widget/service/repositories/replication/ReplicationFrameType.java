@@ -0,0 +1,15 @@
+package com.miro.widget.service.repositories.replication;
+
+/**
+ * Frames of the replication stream. Every frame carries the sequence number of the last write it covers and the
+ * leader time before which every write is covered, followed by a write-ahead log record for SNAPSHOT and RECORD.
+ */
+public enum ReplicationFrameType {
+    // A widget of the state the follower starts from, in Z-order
+    SNAPSHOT,
+    // The state is complete, writes follow
+    SNAPSHOT_END,
+    RECORD,
+    // Sent when there is nothing to send, so the follower knows it is still up to date
+    HEARTBEAT
+}
@@ -0,0 +1,249 @@
+package com.miro.widget.service.repositories.replication;
+
+import com.miro.widget.service.models.V1WidgetDto;
+import com.miro.widget.service.repositories.wal.V1WalRecord;
+import com.miro.widget.service.repositories.wal.WalRecordCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ships the writes of the in-memory repository to read replicas over TCP. A connecting follower gets the current
+ * state of the repository first and then every write in the order it was applied, as write-ahead log records. Each
+ * follower has its own queue and sender thread, so a slow follower doesn't hold up writers. A follower falling too
+ * far behind is disconnected and starts over from a fresh state when it reconnects.
+ */
+@Component
+@ConditionalOnProperty(prefix = "widget.replication", name = "role", havingValue = "leader")
+public class ReplicationLeader implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationLeader.class);
+
+    private final ServerSocket serverSocket;
+    private final long heartbeatIntervalMs;
+    private final int maxBacklog;
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(WalRecordCodec.MAX_RECORD_SIZE);
+
+    // Guarded by the lock of the repository
+    private long sequence;
+
+    @Autowired
+    public ReplicationLeader(
+        @Value("${widget.replication.bind-address:127.0.0.1}") String bindAddress,
+        @Value("${widget.replication.port:7070}") int port,
+        @Value("${widget.replication.heartbeat-interval-ms:100}") long heartbeatIntervalMs,
+        @Value("${widget.replication.max-backlog:100000}") int maxBacklog
+    ) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName(bindAddress));
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.maxBacklog = maxBacklog;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Starts accepting followers, the state they start from is taken from the source
+    public void start(SnapshotSource source) {
+        var acceptor = new Thread(() -> acceptFollowers(source), "widget-replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // Has to be called under the lock of the repository, so that followers get writes in the order they are applied
+    public void publish(V1WalRecord record) {
+        sequence++;
+
+        if (followers.isEmpty())
+            return;
+
+        buffer.clear();
+        WalRecordCodec.encode(record, buffer);
+
+        var encodedRecord = Arrays.copyOf(buffer.array(), buffer.position());
+        var pending = new Pending(sequence, System.currentTimeMillis(), encodedRecord);
+
+        for (var follower : followers)
+            follower.offer(pending);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        followers.forEach(Follower::close);
+    }
+
+    private void acceptFollowers(SnapshotSource source) {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException exc) {
+                if (!serverSocket.isClosed())
+                    log.error("Failed to accept a replication follower: {}", exc.getMessage());
+                continue;
+            }
+
+            try {
+                socket.setTcpNoDelay(true);
+
+                var follower = new Follower(socket);
+                var widgets = source.snapshot(() -> {
+                    follower.snapshotSequence = sequence;
+                    follower.snapshotTakenAt = System.currentTimeMillis();
+                    followers.add(follower);
+                });
+
+                log.info("Replication follower {} connected, sending {} widgets",
+                    socket.getRemoteSocketAddress(), widgets.size());
+                follower.start(widgets);
+            } catch (Exception exc) {
+                log.error("Failed to start replication to {}: {}", socket.getRemoteSocketAddress(), exc.getMessage());
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException exc) {
+            log.warn("Failed to close replication socket: {}", exc.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    public interface SnapshotSource {
+        // Runs the registration atomically with reading the state, so that no write falls between the two
+        List<V1WidgetDto> snapshot(Runnable registration);
+    }
+
+    private static final class Pending {
+        private final long sequence;
+        private final long publishedAt;
+        private final byte[] record;
+
+        private Pending(long sequence, long publishedAt, byte[] record) {
+            this.sequence = sequence;
+            this.publishedAt = publishedAt;
+            this.record = record;
+        }
+    }
+
+    private final class Follower {
+        private final Socket socket;
+        private final DataOutputStream output;
+        private final BlockingQueue<Pending> backlog = new LinkedBlockingQueue<>();
+        private long snapshotSequence;
+        private long snapshotTakenAt;
+        private volatile boolean isClosed;
+
+        private Follower(Socket socket) throws IOException {
+            this.socket = socket;
+            this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        }
+
+        private void offer(Pending pending) {
+            if (backlog.size() < maxBacklog) {
+                backlog.add(pending);
+                return;
+            }
+
+            log.warn("Replication follower {} is more than {} writes behind, disconnecting it",
+                socket.getRemoteSocketAddress(), maxBacklog);
+            close();
+        }
+
+        private void start(List<V1WidgetDto> widgets) {
+            var sender = new Thread(() -> send(widgets), "widget-replication-sender");
+            sender.setDaemon(true);
+            sender.start();
+        }
+
+        private void send(List<V1WidgetDto> widgets) {
+            try {
+                var snapshotBuffer = ByteBuffer.allocate(WalRecordCodec.MAX_RECORD_SIZE);
+
+                for (var widget : widgets) {
+                    snapshotBuffer.clear();
+                    WalRecordCodec.encode(V1WalRecord.put(widget), snapshotBuffer);
+                    writeFrame(ReplicationFrameType.SNAPSHOT, snapshotSequence, snapshotTakenAt,
+                        snapshotBuffer.array(), snapshotBuffer.position());
+                }
+
+                writeFrame(ReplicationFrameType.SNAPSHOT_END, snapshotSequence, snapshotTakenAt, null, 0);
+                output.flush();
+
+                var lastSequence = snapshotSequence;
+
+                while (!isClosed) {
+                    var pending = backlog.poll(heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+
+                    if (pending == null) {
+                        // Every write published before this moment is either sent or still in the backlog
+                        var now = System.currentTimeMillis();
+                        pending = backlog.poll();
+
+                        if (pending == null) {
+                            writeFrame(ReplicationFrameType.HEARTBEAT, lastSequence, now, null, 0);
+                            output.flush();
+                            continue;
+                        }
+                    }
+
+                    // Writes queued meanwhile go out in one flush
+                    do {
+                        writeFrame(ReplicationFrameType.RECORD, pending.sequence, pending.publishedAt,
+                            pending.record, pending.record.length);
+                        lastSequence = pending.sequence;
+                    } while ((pending = backlog.poll()) != null);
+
+                    output.flush();
+                }
+            } catch (IOException exc) {
+                if (!isClosed) {
+                    log.warn("Replication follower {} disconnected: {}",
+                        socket.getRemoteSocketAddress(), exc.getMessage());
+                }
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        private void writeFrame(ReplicationFrameType type, long sequence, long coveredUntil, byte[] record, int length)
+            throws IOException {
+            output.writeByte(type.ordinal());
+            output.writeLong(sequence);
+            output.writeLong(coveredUntil);
+
+            if (record != null)
+                output.write(record, 0, length);
+        }
+
+        private void close() {
+            isClosed = true;
+            followers.remove(this);
+            closeQuietly(socket);
+        }
+    }
+}
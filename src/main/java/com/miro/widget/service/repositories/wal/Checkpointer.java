@@ -0,0 +1,130 @@
+package com.miro.widget.service.repositories.wal;
+
+import com.miro.widget.service.repositories.indexes.ZOrderTree;
+import com.miro.widget.service.repositories.models.V1WidgetEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically folds closed write-ahead log segments into a new snapshot. The live repository isn't touched: the
+ * previous snapshot and the segments written after it are replayed into a private Z-order tree on a background
+ * thread, so writers are only held for the rotation of the log, which is one flush of the current batch.
+ */
+@Component
+@ConditionalOnProperty(prefix = "widget.snapshot", name = "enabled", havingValue = "true")
+public class Checkpointer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(Checkpointer.class);
+
+    private final Path path;
+    private final WriteAheadLog writeAheadLog;
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public Checkpointer(
+        @Value("${widget.snapshot.path:data/widgets.snapshot}") Path path,
+        @Value("${widget.snapshot.interval-ms:60000}") long intervalMs,
+        WriteAheadLog writeAheadLog
+    ) throws IOException {
+        if (path.toAbsolutePath().getParent() != null)
+            Files.createDirectories(path.toAbsolutePath().getParent());
+
+        this.path = path;
+        this.writeAheadLog = writeAheadLog;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "widget-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (intervalMs > 0)
+            scheduler.scheduleWithFixedDelay(this::checkpointQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Null if no checkpoint was made yet
+    public WidgetSnapshot latestSnapshot() throws IOException {
+        return WidgetSnapshot.open(path);
+    }
+
+    public synchronized void checkpoint() throws IOException {
+        var startedAt = System.nanoTime();
+        var lastSegment = writeAheadLog.rotate();
+        var snapshot = latestSnapshot();
+        var zOrderTree = new ZOrderTree<V1WidgetEntity>();
+        var idToWidgetMap = new HashMap<UUID, ZOrderTree.Node<V1WidgetEntity>>();
+        var afterSegment = 0L;
+
+        if (snapshot != null) {
+            var loader = zOrderTree.loader();
+
+            for (var i = 0; i < snapshot.size(); i++) {
+                var widget = snapshot.entityAt(i);
+                idToWidgetMap.put(widget.getId(), loader.add(snapshot.zAt(i), widget));
+            }
+
+            loader.finish();
+            afterSegment = snapshot.getLastSegment();
+        }
+
+        writeAheadLog.readSegments(afterSegment, lastSegment, record -> {
+            switch (record.getType()) {
+                case PUT:
+                    var widgetNode = idToWidgetMap.remove(record.getId());
+                    var widget = record.getWidget();
+
+                    if (widgetNode != null)
+                        zOrderTree.remove(widgetNode);
+
+                    idToWidgetMap.put(widget.getId(), zOrderTree.insert(widget.getZ(), new V1WidgetEntity(
+                        widget.getId(),
+                        widget.getCoordinates().getCenterX(),
+                        widget.getCoordinates().getCenterY(),
+                        widget.getSize().getWidth(),
+                        widget.getSize().getHeight(),
+                        widget.getUpdatedAt())));
+                    break;
+                case DELETE:
+                    var removedWidgetNode = idToWidgetMap.remove(record.getId());
+
+                    if (removedWidgetNode != null)
+                        zOrderTree.remove(removedWidgetNode);
+                    break;
+                case CLEAR:
+                    idToWidgetMap.clear();
+                    zOrderTree.clear();
+                    break;
+            }
+        });
+
+        WidgetSnapshot.write(path, lastSegment, zOrderTree);
+        writeAheadLog.deleteSegmentsUpTo(lastSegment);
+
+        log.info("Checkpointed {} widgets up to write-ahead log segment {} in {} ms",
+            zOrderTree.size(), lastSegment, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (Exception exc) {
+            log.error("Failed to checkpoint widgets: {}", exc.getMessage());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.miro.widget.service.repositories.wal;
+
+import com.miro.widget.service.models.V1WidgetDto;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.UUID;
+
+/**
+ * Logical WAL record. PUT carries the state of a widget after an insert or an update, so replaying it means placing
+ * the widget at its Z-index the same way the original operation did: removing its previous version and shifting the
+ * occupied run upwards.
+ */
+@Value
+public class V1WalRecord {
+    @NonNull
+    V1WalRecordType type;
+
+    UUID id;
+
+    V1WidgetDto widget;
+
+    public static V1WalRecord put(V1WidgetDto widget) {
+        return new V1WalRecord(V1WalRecordType.PUT, widget.getId(), widget);
+    }
+
+    public static V1WalRecord delete(UUID id) {
+        return new V1WalRecord(V1WalRecordType.DELETE, id, null);
+    }
+
+    public static V1WalRecord clear() {
+        return new V1WalRecord(V1WalRecordType.CLEAR, null, null);
+    }
+}
@@ -0,0 +1,7 @@
+package com.miro.widget.service.repositories.wal;
+
+public enum V1WalRecordType {
+    PUT,
+    DELETE,
+    CLEAR
+}
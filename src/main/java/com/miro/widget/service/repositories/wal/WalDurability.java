@@ -0,0 +1,12 @@
+package com.miro.widget.service.repositories.wal;
+
+public enum WalDurability {
+    // A write returns once its record is forced to disk, concurrent writes share one fsync
+    SYNC,
+
+    // A write returns at once, records are written and forced to disk every batch interval
+    BATCHED,
+
+    // A write returns at once, records are written right away and left to the OS to flush
+    ASYNC
+}
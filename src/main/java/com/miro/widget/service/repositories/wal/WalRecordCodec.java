@@ -0,0 +1,94 @@
+package com.miro.widget.service.repositories.wal;
+
+import com.miro.widget.service.models.V1CoordinatesDto;
+import com.miro.widget.service.models.V1SizeDto;
+import com.miro.widget.service.models.V1WidgetDto;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of WAL records: payload length (int), CRC32 of the payload (int) and the payload, which is the
+ * record type (byte) followed by the ID and the widget state for PUT or the ID for DELETE.
+ */
+public final class WalRecordCodec {
+    public static final int HEADER_SIZE = Integer.BYTES * 2;
+    public static final int MAX_RECORD_SIZE = HEADER_SIZE + 1 + Long.BYTES * 3 + Integer.BYTES * 6;
+
+    private WalRecordCodec() {
+    }
+
+    public static void encode(V1WalRecord record, ByteBuffer buffer) {
+        var start = buffer.position();
+        buffer.position(start + HEADER_SIZE);
+        buffer.put((byte) record.getType().ordinal());
+
+        if (record.getType() != V1WalRecordType.CLEAR) {
+            buffer.putLong(record.getId().getMostSignificantBits());
+            buffer.putLong(record.getId().getLeastSignificantBits());
+        }
+
+        if (record.getType() == V1WalRecordType.PUT) {
+            var widget = record.getWidget();
+            var updatedAt = widget.getUpdatedAt().toInstant();
+
+            buffer.putInt(widget.getZ());
+            buffer.putInt(widget.getCoordinates().getCenterX());
+            buffer.putInt(widget.getCoordinates().getCenterY());
+            buffer.putInt(widget.getSize().getWidth());
+            buffer.putInt(widget.getSize().getHeight());
+            buffer.putLong(updatedAt.getEpochSecond());
+            buffer.putInt(updatedAt.getNano());
+        }
+
+        var end = buffer.position();
+        var crc = new CRC32();
+        crc.update(buffer.duplicate().position(start + HEADER_SIZE).limit(end));
+
+        buffer.putInt(start, end - start - HEADER_SIZE);
+        buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+    }
+
+    // Size of the record at the buffer position, or -1 if the buffer doesn't hold a whole valid record yet
+    public static int recordSize(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE)
+            return -1;
+
+        var start = buffer.position();
+        var length = buffer.getInt(start);
+
+        if (length < 1 || length > MAX_RECORD_SIZE - HEADER_SIZE || buffer.remaining() < HEADER_SIZE + length)
+            return -1;
+
+        var crc = new CRC32();
+        crc.update(buffer.duplicate().position(start + HEADER_SIZE).limit(start + HEADER_SIZE + length));
+
+        return (int) crc.getValue() == buffer.getInt(start + Integer.BYTES) ? HEADER_SIZE + length : -1;
+    }
+
+    // Expects a valid record at the buffer position (see recordSize) and moves the position past it
+    public static V1WalRecord decode(ByteBuffer buffer) {
+        buffer.position(buffer.position() + HEADER_SIZE);
+        var type = V1WalRecordType.values()[buffer.get()];
+
+        if (type == V1WalRecordType.CLEAR)
+            return V1WalRecord.clear();
+
+        var id = new UUID(buffer.getLong(), buffer.getLong());
+
+        if (type == V1WalRecordType.DELETE)
+            return V1WalRecord.delete(id);
+
+        var z = buffer.getInt();
+        var coordinates = new V1CoordinatesDto(buffer.getInt(), buffer.getInt());
+        var size = new V1SizeDto(buffer.getInt(), buffer.getInt());
+        var updatedAt = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+
+        return V1WalRecord.put(new V1WidgetDto(
+            id, z, coordinates, size, ZonedDateTime.ofInstant(updatedAt, ZoneId.systemDefault())));
+    }
+}
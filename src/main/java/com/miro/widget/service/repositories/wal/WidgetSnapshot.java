@@ -0,0 +1,128 @@
+package com.miro.widget.service.repositories.wal;
+
+import com.miro.widget.service.repositories.indexes.ZOrderTree;
+import com.miro.widget.service.repositories.models.V1WidgetEntity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+/**
+ * Read-only view of a snapshot file mapped into memory. The file holds a header (magic, version, number of widgets
+ * and the last write-ahead log segment folded into it) followed by fixed-size records of widgets in Z-order, so any
+ * widget is read at a known offset without parsing the ones before it, and the records can be decoded in parallel.
+ */
+public class WidgetSnapshot {
+    private static final int MAGIC = 0x57534e31;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES * 3 + Long.BYTES;
+    private static final int RECORD_SIZE = Long.BYTES * 3 + Integer.BYTES * 6;
+    private static final int MAX_SIZE = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final long lastSegment;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private WidgetSnapshot(ByteBuffer buffer, Path path) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION)
+            throw new IllegalStateException(String.format("File %s is not a widget snapshot", path));
+
+        this.buffer = buffer;
+        this.size = buffer.getInt(Integer.BYTES * 2);
+        this.lastSegment = buffer.getLong(Integer.BYTES * 3);
+
+        if (buffer.capacity() != HEADER_SIZE + (long) size * RECORD_SIZE)
+            throw new IllegalStateException(String.format("Snapshot %s is truncated", path));
+    }
+
+    // Null if there is no snapshot yet
+    public static WidgetSnapshot open(Path path) throws IOException {
+        if (!Files.exists(path))
+            return null;
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new WidgetSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+        }
+    }
+
+    /**
+     * Writes the widgets of the tree through a mapped temporary file, forces it to disk and moves it over the
+     * previous snapshot, so that the path always holds a complete snapshot. The move is forced too, before anything
+     * the snapshot replaces may be deleted.
+     */
+    public static void write(Path path, long lastSegment, ZOrderTree<V1WidgetEntity> zOrderTree) throws IOException {
+        var size = zOrderTree.size();
+
+        if (size > MAX_SIZE)
+            throw new IllegalStateException(String.format("%d widgets don't fit into a snapshot", size));
+
+        var temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (var channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) size * RECORD_SIZE);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putLong(lastSegment);
+
+            for (var node = zOrderTree.first(); node != null; node = zOrderTree.next(node)) {
+                var widget = node.getValue();
+                var updatedAt = widget.getUpdatedAt().toInstant();
+
+                buffer.putLong(widget.getId().getMostSignificantBits());
+                buffer.putLong(widget.getId().getLeastSignificantBits());
+                buffer.putInt(zOrderTree.zOf(node));
+                buffer.putInt(widget.getCenterX());
+                buffer.putInt(widget.getCenterY());
+                buffer.putInt(widget.getWidth());
+                buffer.putInt(widget.getHeight());
+                buffer.putLong(updatedAt.getEpochSecond());
+                buffer.putInt(updatedAt.getNano());
+            }
+
+            buffer.force();
+        }
+
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        WriteAheadLog.forceDirectory(path.toAbsolutePath().getParent());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getLastSegment() {
+        return lastSegment;
+    }
+
+    public int zAt(int index) {
+        return buffer.getInt(offsetOf(index) + Long.BYTES * 2);
+    }
+
+    // Absolute reads only, so records may be decoded from many threads at once
+    public V1WidgetEntity entityAt(int index) {
+        var offset = offsetOf(index);
+
+        return new V1WidgetEntity(
+            new UUID(buffer.getLong(offset), buffer.getLong(offset + Long.BYTES)),
+            buffer.getInt(offset + Long.BYTES * 2 + Integer.BYTES),
+            buffer.getInt(offset + Long.BYTES * 2 + Integer.BYTES * 2),
+            buffer.getInt(offset + Long.BYTES * 2 + Integer.BYTES * 3),
+            buffer.getInt(offset + Long.BYTES * 2 + Integer.BYTES * 4),
+            ZonedDateTime.ofInstant(Instant.ofEpochSecond(
+                buffer.getLong(offset + Long.BYTES * 2 + Integer.BYTES * 5),
+                buffer.getInt(offset + Long.BYTES * 3 + Integer.BYTES * 5)), zone));
+    }
+
+    private static int offsetOf(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,480 @@
+package com.miro.widget.service.repositories.wal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only log of repository writes with group commit. Writers encode records into a shared in-memory buffer and
+ * a single flusher thread swaps it with a spare one, writes it to the file and, depending on durability, forces it
+ * to disk. All records appended while the previous batch was being written go out in the next write and share one
+ * fsync, so the number of fsyncs doesn't grow with the number of writers.
+ * <p>
+ * The log is a sequence of numbered segment files. Rotation closes the current segment at a batch boundary, so
+ * that a checkpoint can fold closed segments into a snapshot and delete them while writers go on with a new one.
+ * <p>
+ * The log has to be replayed once before appending, which also cuts off a torn or corrupted tail left by a crash.
+ * Once a write or fsync fails, the log stops accepting records, since it can't tell what reached the disk.
+ * <p>
+ * The directory is locked while the log is open, so that a board handed over to another node isn't written by both.
+ */
+@Component
+@ConditionalOnProperty(prefix = "widget.wal", name = "enabled", havingValue = "true")
+public class WriteAheadLog implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final int MAGIC = 0x57414c31;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = Integer.BYTES * 2;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String LOCK_FILE = "lock";
+
+    private final Path directory;
+    private final FileLock directoryLock;
+    private final WalDurability durability;
+    private final long batchIntervalNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushRequested = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final ThreadLocal<long[]> lastSequence = ThreadLocal.withInitial(() -> new long[1]);
+
+    private ByteBuffer activeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private ByteBuffer spareBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long appendedSequence;
+    private long flushedSequence;
+    private IOException failure;
+    private boolean isClosed;
+    private boolean isRotationRequested;
+    private FileChannel channel;
+    private long segment;
+    private Thread flusher;
+
+    @Autowired
+    public WriteAheadLog(
+        @Value("${widget.wal.directory:data/wal}") Path directory,
+        @Value("${widget.wal.durability:SYNC}") WalDurability durability,
+        @Value("${widget.wal.batch-interval-ms:5}") long batchIntervalMs
+    ) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.directoryLock = lockDirectory(this.directory);
+        this.durability = durability;
+        this.batchIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, batchIntervalMs));
+    }
+
+    public WalDurability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Passes every intact record of the segments after the given one to the consumer, truncates the last segment
+     * after its last record and opens it for appending. Segments up to the given one are already folded into a
+     * snapshot and deleted.
+     */
+    public void replay(long afterSegment, Consumer<V1WalRecord> consumer) throws IOException {
+        if (flusher != null)
+            throw new IllegalStateException("Write-ahead log is already replayed");
+
+        deleteSegmentsUpTo(afterSegment);
+
+        var segments = listSegments();
+        var recordsCount = 0L;
+
+        if (!segments.isEmpty() && isTornSegment(segmentPath(segments.get(segments.size() - 1)))) {
+            var path = segmentPath(segments.remove(segments.size() - 1));
+
+            log.warn("Deleting write-ahead log segment {} with a torn header", path);
+            Files.delete(path);
+        }
+
+        for (var i = 0; i < segments.size(); i++) {
+            var isLast = i == segments.size() - 1;
+            var path = segmentPath(segments.get(i));
+
+            try (var segmentChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                var validEnd = readSegment(path, segmentChannel, consumer);
+                recordsCount += validEnd.recordsCount;
+
+                if (validEnd.position < segmentChannel.size()) {
+                    if (!isLast)
+                        throw new IllegalStateException(String.format("Write-ahead log segment %s is corrupted", path));
+
+                    log.warn("Truncating write-ahead log segment {} from {} to {} bytes after a torn record",
+                        path, segmentChannel.size(), validEnd.position);
+                    segmentChannel.truncate(validEnd.position);
+                    segmentChannel.force(true);
+                }
+            }
+        }
+
+        log.info("Replayed {} write-ahead log records from {} segments", recordsCount, segments.size());
+
+        if (segments.isEmpty()) {
+            segment = afterSegment + 1;
+            channel = createSegment(segment);
+        } else {
+            segment = segments.get(segments.size() - 1);
+            channel = FileChannel.open(segmentPath(segment), StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+
+        flusher = new Thread(this::flushLoop, "widget-wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Passes the records of closed segments in the given range to the consumer, for folding them into a snapshot
+    public void readSegments(long afterSegment, long upToSegment, Consumer<V1WalRecord> consumer) throws IOException {
+        for (var closedSegment : listSegments()) {
+            if (closedSegment <= afterSegment || closedSegment > upToSegment)
+                continue;
+
+            var path = segmentPath(closedSegment);
+
+            try (var segmentChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (readSegment(path, segmentChannel, consumer).position < segmentChannel.size())
+                    throw new IllegalStateException(String.format("Write-ahead log segment %s is corrupted", path));
+            }
+        }
+    }
+
+    public void deleteSegmentsUpTo(long upToSegment) throws IOException {
+        for (var closedSegment : listSegments()) {
+            if (closedSegment <= upToSegment)
+                Files.delete(segmentPath(closedSegment));
+        }
+    }
+
+    // Closes the current segment after everything appended so far and returns its number
+    public long rotate() {
+        lock.lock();
+
+        try {
+            ensureWritable();
+
+            var closedSegment = segment;
+            isRotationRequested = true;
+            flushRequested.signal();
+
+            while (segment == closedSegment && failure == null && !isClosed)
+                flushed.awaitUninterruptibly();
+
+            ensureWritable();
+
+            return closedSegment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Fails fast before a write is applied, so that writes aren't acknowledged once the log can't keep them
+    public void checkHealthy() {
+        lock.lock();
+
+        try {
+            ensureWritable();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void append(V1WalRecord record) {
+        lock.lock();
+
+        try {
+            ensureWritable();
+
+            while (activeBuffer.remaining() < WalRecordCodec.MAX_RECORD_SIZE) {
+                flushRequested.signal();
+                flushed.awaitUninterruptibly();
+                ensureWritable();
+            }
+
+            WalRecordCodec.encode(record, activeBuffer);
+            lastSequence.get()[0] = ++appendedSequence;
+
+            // Batched mode flushes on its own schedule, so there is no one to wake up
+            if (durability != WalDurability.BATCHED)
+                flushRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // In SYNC mode blocks until the last record appended by the current thread is forced to disk
+    public void awaitDurable() {
+        if (durability != WalDurability.SYNC)
+            return;
+
+        var sequence = lastSequence.get()[0];
+
+        lock.lock();
+
+        try {
+            while (flushedSequence < sequence && failure == null)
+                flushed.awaitUninterruptibly();
+
+            if (flushedSequence < sequence)
+                throw new UncheckedIOException("Write-ahead log failed", failure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+
+        try {
+            isClosed = true;
+            flushRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            if (flusher != null)
+                flusher.join();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                if (channel != null)
+                    channel.close();
+            } finally {
+                directoryLock.channel().close();
+            }
+        }
+    }
+
+    private SegmentEnd readSegment(Path path, FileChannel segmentChannel, Consumer<V1WalRecord> consumer)
+        throws IOException {
+        var header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        segmentChannel.read(header, 0);
+
+        if (header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION)
+            throw new IllegalStateException(String.format("File %s is not a widget write-ahead log segment", path));
+
+        var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        var readPosition = (long) FILE_HEADER_SIZE;
+        var validEnd = new SegmentEnd(readPosition);
+
+        while (true) {
+            var read = segmentChannel.read(buffer, readPosition);
+
+            if (read > 0)
+                readPosition += read;
+
+            buffer.flip();
+
+            for (var size = WalRecordCodec.recordSize(buffer); size > 0; size = WalRecordCodec.recordSize(buffer)) {
+                consumer.accept(WalRecordCodec.decode(buffer));
+                validEnd.position += size;
+                validEnd.recordsCount++;
+            }
+
+            // A record that doesn't fit into a whole buffer or doesn't end before the end of the file is broken
+            if (read <= 0 || buffer.position() == 0 && buffer.limit() == buffer.capacity())
+                return validEnd;
+
+            buffer.compact();
+        }
+    }
+
+    // A crash while a segment is created may leave it without the whole header, which is the only thing written
+    // into it before it is forced, so a segment no longer than the header and without a valid one holds no records
+    private static boolean isTornSegment(Path path) throws IOException {
+        try (var segmentChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (segmentChannel.size() > FILE_HEADER_SIZE)
+                return false;
+
+            var header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            segmentChannel.read(header, 0);
+
+            return header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION;
+        }
+    }
+
+    private FileChannel createSegment(long number) throws IOException {
+        var segmentChannel = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.WRITE);
+
+        try {
+            segmentChannel.write(ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip());
+            segmentChannel.force(true);
+            forceDirectory(directory);
+        } catch (IOException exc) {
+            segmentChannel.close();
+            throw exc;
+        }
+
+        return segmentChannel;
+    }
+
+    // Forcing a file doesn't make its directory entry durable, which records forced into a new file rely on too.
+    // Directories can't be opened on Windows, where NTFS journals them anyway
+    static void forceDirectory(Path directory) throws IOException {
+        if (System.getProperty("os.name").startsWith("Windows"))
+            return;
+
+        try (var directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+    }
+
+    private static FileLock lockDirectory(Path directory) throws IOException {
+        var lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock directoryLock;
+
+        try {
+            directoryLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException exc) {
+            directoryLock = null;
+        }
+
+        if (directoryLock == null) {
+            lockChannel.close();
+            throw new IllegalStateException(String.format("Write-ahead log %s is already open elsewhere", directory));
+        }
+
+        return directoryLock;
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (var paths = Files.list(directory)) {
+            return paths
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%020d%s", number, SEGMENT_SUFFIX));
+    }
+
+    private void ensureWritable() {
+        if (failure != null)
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+
+        if (isClosed || flusher == null)
+            throw new IllegalStateException("Write-ahead log is not open for appending");
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long sequence;
+            boolean isRotating;
+            boolean isLast;
+
+            lock.lock();
+
+            try {
+                if (durability == WalDurability.BATCHED && !isClosed && !isRotationRequested) {
+                    flushRequested.awaitNanos(batchIntervalNanos);
+                } else {
+                    while (activeBuffer.position() == 0 && !isClosed && !isRotationRequested)
+                        flushRequested.await();
+                }
+
+                if (activeBuffer.position() == 0 && !isClosed && !isRotationRequested)
+                    continue;
+
+                batch = activeBuffer;
+                activeBuffer = spareBuffer;
+                spareBuffer = null;
+                sequence = appendedSequence;
+                isRotating = isRotationRequested;
+                isRotationRequested = false;
+                isLast = isClosed;
+            } catch (InterruptedException exc) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            FileChannel nextChannel = null;
+
+            try {
+                batch.flip();
+
+                while (batch.hasRemaining())
+                    channel.write(batch);
+
+                if (durability != WalDurability.ASYNC || isRotating || isLast)
+                    channel.force(false);
+
+                if (isRotating && !isLast)
+                    nextChannel = createSegment(segment + 1);
+            } catch (IOException exc) {
+                log.error("Failed to write to write-ahead log: {}", exc.getMessage());
+                error = exc;
+            }
+
+            batch.clear();
+            lock.lock();
+
+            try {
+                spareBuffer = batch;
+
+                if (error == null)
+                    flushedSequence = sequence;
+                else
+                    failure = error;
+
+                if (nextChannel != null) {
+                    closeQuietly(channel);
+                    channel = nextChannel;
+                    segment++;
+                }
+
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            if (isLast || error != null)
+                return;
+        }
+    }
+
+    private static void closeQuietly(FileChannel closedChannel) {
+        try {
+            closedChannel.close();
+        } catch (IOException exc) {
+            log.warn("Failed to close write-ahead log segment: {}", exc.getMessage());
+        }
+    }
+
+    private static final class SegmentEnd {
+        private long position;
+        private long recordsCount;
+
+        private SegmentEnd(long position) {
+            this.position = position;
+        }
+    }
+}
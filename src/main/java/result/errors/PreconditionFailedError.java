@@ -0,0 +1,7 @@
+package result.errors;
+
+public class PreconditionFailedError extends Error {
+    public PreconditionFailedError(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package result.errors;
+
+public class ValidationError extends Error {
+    public ValidationError(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,190 @@
+package com.miro.widget;
+
+import com.miro.widget.mappers.BllAndDalMapperImpl;
+import com.miro.widget.service.BoardRegistry;
+import com.miro.widget.service.TooManyOpenBoardsException;
+import com.miro.widget.service.cluster.BoardRouter;
+import com.miro.widget.service.cluster.HashRing;
+import com.miro.widget.service.models.V1CreateWidgetDto;
+import com.miro.widget.service.repositories.WidgetRepositoryFactory;
+import com.miro.widget.service.repositories.wal.WalDurability;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import result.errors.ValidationError;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BoardRegistryTests {
+    private final BoardRegistry boardRegistry = new BoardRegistry(new WidgetRepositoryFactory(
+        new BllAndDalMapperImpl(), "in-memory", 16, "", Path.of("unused"), false, WalDurability.SYNC, 5, false, 0),
+        2, 0);
+
+    @Test
+    public void should_keep_storage_and_z_sequence_of_each_board_apart() {
+        var firstBoard = boardRegistry.openBoard("first");
+        var secondBoard = boardRegistry.openBoard("second");
+
+        firstBoard.v1Create(new V1CreateWidgetDto(0, 0, 5, 1, 1));
+        firstBoard.v1Create(new V1CreateWidgetDto(0, 0, null, 1, 1));
+        var widget = secondBoard.v1Create(new V1CreateWidgetDto(0, 0, null, 1, 1)).getValue();
+
+        assertThat(widget.getZ()).isEqualTo(0);
+        assertThat(boardRegistry.openBoard("first")).isSameAs(firstBoard);
+        assertThat(firstBoard.v1GetRange(1, 10).getValue().getTotalWidgetsCount()).isEqualTo(2);
+        assertThat(secondBoard.v1GetRange(1, 10).getValue().getWidgets()).containsExactly(widget);
+        assertThat(firstBoard.v1GetById(widget.getId()).isFailed()).isTrue();
+    }
+
+    @Test
+    public void should_hand_board_over_to_the_joined_node_through_shared_directory(@TempDir Path directory) {
+        var firstNode = "http://localhost:8080";
+        var secondNode = "http://localhost:8081";
+        var firstRegistry = new BoardRegistry(createLoggedRepositoryFactory(directory), 16, 0);
+        var secondRegistry = new BoardRegistry(createLoggedRepositoryFactory(directory), 16, 0);
+        var members = List.of(firstNode, secondNode);
+        var firstRouter = new BoardRouter(firstRegistry, firstNode, List.of(firstNode), members, 16, 5_000);
+        var secondRouter = new BoardRouter(secondRegistry, secondNode, List.of(firstNode), members, 16, 5_000);
+        var boardId = IntStream.range(0, 100).mapToObj(i -> "board-" + i)
+            .filter(id -> new HashRing(List.of(firstNode, secondNode), 16).ownerOf(id).equals(secondNode))
+            .findFirst()
+            .orElseThrow();
+
+        assertThat(firstRouter.findRemoteOwner(boardId)).isNull();
+        assertThat(secondRouter.findRemoteOwner(boardId)).isEqualTo(firstNode);
+
+        var widget = firstRegistry.openBoard(boardId).v1Create(new V1CreateWidgetDto(0, 0, null, 1, 1)).getValue();
+
+        firstRouter.setNodes(List.of(firstNode, secondNode));
+        secondRouter.setNodes(List.of(firstNode + "/", secondNode));
+
+        assertThat(firstRouter.findRemoteOwner(boardId)).isEqualTo(secondNode);
+        assertThat(secondRouter.findRemoteOwner(boardId)).isNull();
+        assertThat(firstRegistry.getOpenBoardIds()).isEmpty();
+        assertThat(secondRegistry.findBoard(boardId).orElseThrow().v1GetById(widget.getId()).getValue())
+            .usingRecursiveComparison().isEqualTo(widget);
+
+        secondRegistry.closeBoard(boardId);
+    }
+
+    @Test
+    public void should_hand_board_over_only_after_requests_in_flight_on_it_finish(@TempDir Path directory)
+        throws InterruptedException {
+        var firstNode = "http://localhost:8080";
+        var secondNode = "http://localhost:8081";
+        var loggedRegistry = new BoardRegistry(createLoggedRepositoryFactory(directory), 16, 0);
+        var boardRouter = new BoardRouter(loggedRegistry, firstNode, List.of(firstNode),
+            List.of(firstNode, secondNode), 16, 5_000);
+        var boardId = IntStream.range(0, 100).mapToObj(i -> "board-" + i)
+            .filter(id -> new HashRing(List.of(firstNode, secondNode), 16).ownerOf(id).equals(secondNode))
+            .findFirst()
+            .orElseThrow();
+
+        assertThat(boardRouter.enter(boardId)).isNull();
+
+        var board = loggedRegistry.openBoard(boardId);
+        var handover = new Thread(() -> boardRouter.setNodes(List.of(firstNode, secondNode)));
+        handover.start();
+        handover.join(200);
+
+        assertThat(handover.isAlive()).isTrue();
+        assertThat(boardRouter.enter(boardId)).isEqualTo(secondNode);
+        assertThat(board.v1Create(new V1CreateWidgetDto(0, 0, null, 1, 1)).isSucceed()).isTrue();
+        assertThat(loggedRegistry.getOpenBoardIds()).containsExactly(boardId);
+
+        boardRouter.exit(boardId);
+        handover.join();
+
+        assertThat(loggedRegistry.getOpenBoardIds()).isEmpty();
+    }
+
+    @Test
+    public void should_not_close_board_with_requests_in_flight_to_make_room(@TempDir Path directory) {
+        var loggedRegistry = new BoardRegistry(createLoggedRepositoryFactory(directory), 1, 0);
+
+        loggedRegistry.enter("first");
+        loggedRegistry.openBoard("first");
+
+        assertThatThrownBy(() -> loggedRegistry.openBoard("second")).isInstanceOf(TooManyOpenBoardsException.class);
+
+        loggedRegistry.exit("first");
+        loggedRegistry.openBoard("second");
+
+        assertThat(loggedRegistry.getOpenBoardIds()).containsExactly("second");
+
+        loggedRegistry.closeBoard("second");
+    }
+
+    @Test
+    public void should_not_let_nodes_which_are_not_members_into_cluster() {
+        var node = "http://localhost:8080";
+        var boardRouter = new BoardRouter(boardRegistry, node, List.of(node), List.of(), 16, 5_000);
+        var board = boardRegistry.openBoard("first");
+
+        var setNodesResult = boardRouter.setNodes(List.of(node, "http://attacker:8080"));
+
+        assertThat(setNodesResult.hasError(ValidationError.class)).isTrue();
+        assertThat(boardRouter.getNodes()).containsExactly(node);
+        assertThat(boardRegistry.findBoard("first")).containsSame(board);
+    }
+
+    @Test
+    public void should_not_open_board_for_reads_before_it_is_written_to() {
+        assertThat(boardRegistry.findBoard("unknown")).isEmpty();
+        assertThat(boardRegistry.getOpenBoardIds()).isEmpty();
+
+        var board = boardRegistry.openBoard("unknown");
+
+        assertThat(boardRegistry.findBoard("unknown")).containsSame(board);
+    }
+
+    @Test
+    public void should_not_open_more_boards_than_limit_without_storage_to_close_them_to() {
+        boardRegistry.openBoard("first");
+        boardRegistry.openBoard("second");
+
+        assertThatThrownBy(() -> boardRegistry.openBoard("third")).isInstanceOf(TooManyOpenBoardsException.class);
+        assertThat(boardRegistry.getOpenBoardIds()).containsExactlyInAnyOrder("first", "second");
+    }
+
+    @Test
+    public void should_close_least_recently_used_board_to_open_another_over_limit(@TempDir Path directory) {
+        var loggedRegistry = new BoardRegistry(createLoggedRepositoryFactory(directory), 2, 0);
+        var widget = loggedRegistry.openBoard("first").v1Create(new V1CreateWidgetDto(0, 0, null, 1, 1)).getValue();
+
+        loggedRegistry.openBoard("second");
+        loggedRegistry.openBoard("third");
+
+        assertThat(loggedRegistry.getOpenBoardIds()).containsExactlyInAnyOrder("second", "third");
+        assertThat(loggedRegistry.findBoard("first").orElseThrow().v1GetById(widget.getId()).getValue())
+            .usingRecursiveComparison().isEqualTo(widget);
+        assertThat(loggedRegistry.getOpenBoardIds()).containsExactlyInAnyOrder("first", "third");
+
+        loggedRegistry.getOpenBoardIds().forEach(loggedRegistry::closeBoard);
+    }
+
+    @Test
+    public void should_close_idle_boards_with_storage(@TempDir Path directory) throws InterruptedException {
+        var loggedRegistry = new BoardRegistry(createLoggedRepositoryFactory(directory), 16, 50);
+
+        loggedRegistry.openBoard("idle");
+
+        for (var i = 0; i < 100 && !loggedRegistry.getOpenBoardIds().isEmpty(); i++)
+            Thread.sleep(50);
+
+        assertThat(loggedRegistry.getOpenBoardIds()).isEmpty();
+        assertThat(loggedRegistry.findBoard("idle")).isPresent();
+
+        loggedRegistry.closeBoard("idle");
+        loggedRegistry.close();
+    }
+
+    private static WidgetRepositoryFactory createLoggedRepositoryFactory(Path directory) {
+        return new WidgetRepositoryFactory(
+            new BllAndDalMapperImpl(), "in-memory", 16, "", directory, true, WalDurability.SYNC, 5, false, 0);
+    }
+}
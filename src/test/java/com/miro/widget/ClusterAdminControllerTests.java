@@ -0,0 +1,69 @@
+package com.miro.widget;
+
+import com.miro.widget.controllers.ClusterAdminController;
+import com.miro.widget.service.cluster.BoardRouter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import result.PlainResult;
+import result.errors.ValidationError;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(controllers = ClusterAdminController.class, properties = "widget.cluster.admin-token=secret")
+public class ClusterAdminControllerTests {
+    private static final String NODES = "[\"http://localhost:8080\",\"http://localhost:8081\"]";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private BoardRouter boardRouter;
+
+    @Test
+    public void v1_set_nodes_should_return_200() throws Exception {
+        Mockito.when(boardRouter.setNodes(any())).thenReturn(PlainResult.Ok());
+
+        mockMvc.perform(put("/internal/v1/cluster/nodes")
+                .header("X-Cluster-Token", "secret")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(NODES))
+            .andExpect(status().isOk());
+
+        Mockito.verify(boardRouter).setNodes(List.of("http://localhost:8080", "http://localhost:8081"));
+    }
+
+    @Test
+    public void v1_set_nodes_should_return_403_without_admin_token() throws Exception {
+        for (var token : new String[] { null, "", "secreT" }) {
+            var request = put("/internal/v1/cluster/nodes").contentType(MediaType.APPLICATION_JSON_VALUE).content(NODES);
+
+            mockMvc.perform(token == null ? request : request.header("X-Cluster-Token", token))
+                .andExpect(status().isForbidden());
+        }
+
+        Mockito.verifyNoInteractions(boardRouter);
+    }
+
+    @Test
+    public void v1_set_nodes_should_return_400_for_nodes_which_are_not_members() throws Exception {
+        Mockito.when(boardRouter.setNodes(any())).thenReturn(PlainResult.Fail(new ValidationError("not members")));
+
+        mockMvc.perform(put("/internal/v1/cluster/nodes")
+                .header("X-Cluster-Token", "secret")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(NODES))
+            .andExpect(status().isBadRequest());
+    }
+}
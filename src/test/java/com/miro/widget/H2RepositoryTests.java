@@ -0,0 +1,67 @@
+package com.miro.widget;
+
+import com.miro.widget.mappers.BllAndDalMapperImpl;
+import com.miro.widget.service.models.V1WidgetDto;
+import com.miro.widget.service.repositories.H2RepositoryImpl;
+import com.miro.widget.service.repositories.InMemoryRepositoryImpl;
+import com.miro.widget.service.repositories.WidgetRepository;
+import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
+import com.miro.widget.service.repositories.models.V1UpdateWidgetModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class H2RepositoryTests extends WidgetRepositoryTests {
+    private static final Logger log = LoggerFactory.getLogger(H2RepositoryTests.class);
+
+    @Override
+    protected WidgetRepository createRepository() {
+        return new H2RepositoryImpl(new BllAndDalMapperImpl(), "jdbc:h2:mem:widgets-tests;DB_CLOSE_DELAY=-1");
+    }
+
+    @Test
+    public void should_shift_only_the_consecutive_run_when_moving_into_occupied_z_index() {
+        var widgetRepository = createRepository();
+
+        for (var z : new int[] { 1, 2, 3, 5, 6 })
+            widgetRepository.v1Insert(new V1InsertWidgetModel(z, z, z, 1, 1));
+
+        var moved = widgetRepository.v1GetByZIndex(6).getValue();
+        widgetRepository.v1Update(new V1UpdateWidgetModel(moved.getId(), 2, null, null, null, null));
+
+        assertThat(widgetRepository.v1GetRange(1, 10).getValue().getWidgets())
+            .extracting(V1WidgetDto::getZ).containsExactly(1, 2, 3, 4, 5);
+        assertThat(widgetRepository.v1GetByZIndex(2).getValue().getId()).isEqualTo(moved.getId());
+        assertThat(widgetRepository.v1GetByZIndex(5).getValue().getCoordinates().getCenterX()).isEqualTo(5);
+    }
+
+    // Run with -Dbenchmark=true, every insert lands on the bottom of the stack and shifts all widgets above it
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void benchmark_inserts_into_occupied_z_index() {
+        var count = 20_000;
+
+        for (var widgetRepository : new WidgetRepository[] {
+            new InMemoryRepositoryImpl(new BllAndDalMapperImpl()),
+            createRepository()
+        }) {
+            widgetRepository.v1DeleteAll();
+
+            var startedAt = System.nanoTime();
+
+            for (var i = 0; i < count; i++)
+                widgetRepository.v1Insert(new V1InsertWidgetModel(0, i, i, 1, 1));
+
+            log.info("{}: {} inserts into occupied Z-index in {} ms", widgetRepository.getClass().getSimpleName(),
+                count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+
+            assertThat(widgetRepository.v1GetRange(1, 1).getValue().getTotalWidgetsCount()).isEqualTo(count);
+            widgetRepository.v1DeleteAll();
+        }
+    }
+}
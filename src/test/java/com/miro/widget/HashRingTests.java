@@ -0,0 +1,54 @@
+package com.miro.widget;
+
+import com.miro.widget.service.cluster.HashRing;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashRingTests {
+    private static final List<String> NODES = List.of(
+        "http://localhost:8080", "http://localhost:8081", "http://localhost:8082", "http://localhost:8083");
+
+    @Test
+    public void should_spread_boards_evenly_over_nodes() {
+        var hashRing = new HashRing(NODES, 128);
+        var boardsCount = new HashMap<String, Integer>();
+
+        for (var i = 0; i < 40_000; i++)
+            boardsCount.merge(hashRing.ownerOf("board-" + i), 1, Integer::sum);
+
+        assertThat(boardsCount).containsOnlyKeys(NODES);
+        assertThat(boardsCount.values()).allSatisfy(count -> assertThat(count).isBetween(8_000, 12_000));
+    }
+
+    @Test
+    public void should_move_only_boards_of_the_joined_node() {
+        var hashRing = new HashRing(NODES.subList(0, 3), 128);
+        var grownHashRing = new HashRing(NODES, 128);
+        var movedCount = 0;
+
+        for (var i = 0; i < 40_000; i++) {
+            var owner = hashRing.ownerOf("board-" + i);
+            var newOwner = grownHashRing.ownerOf("board-" + i);
+
+            if (!owner.equals(newOwner)) {
+                assertThat(newOwner).isEqualTo(NODES.get(3));
+                movedCount++;
+            }
+        }
+
+        assertThat(movedCount).isBetween(8_000, 12_000);
+    }
+
+    @Test
+    public void should_place_boards_the_same_way_regardless_of_node_order() {
+        var hashRing = new HashRing(NODES, 16);
+        var reversedHashRing = new HashRing(List.of(NODES.get(3), NODES.get(2), NODES.get(1), NODES.get(0)), 16);
+
+        for (var i = 0; i < 1_000; i++)
+            assertThat(reversedHashRing.ownerOf("board-" + i)).isEqualTo(hashRing.ownerOf("board-" + i));
+    }
+}
@@ -0,0 +1,59 @@
+package com.miro.widget;
+
+import com.miro.widget.service.repositories.OffHeapRepositoryImpl;
+import com.miro.widget.service.repositories.WidgetRepository;
+import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapRepositoryTests extends WidgetRepositoryTests {
+    @Override
+    protected WidgetRepository createRepository() {
+        return new OffHeapRepositoryImpl(16);
+    }
+
+    @Test
+    public void should_keep_widgets_when_storage_grows() {
+        var widgetRepository = createRepository();
+        var ids = new ArrayList<UUID>();
+
+        for (var z = 0; z < 5_000; z++)
+            ids.add(widgetRepository.v1Insert(new V1InsertWidgetModel(-z, z, z, 1, 1)).getValue().getId());
+
+        for (var i = 0; i < ids.size(); i++) {
+            var getByIdResult = widgetRepository.v1GetById(ids.get(i));
+
+            assertTrue(getByIdResult.isSucceed());
+            assertThat(getByIdResult.getValue().getZ()).isEqualTo(-i);
+            assertThat(getByIdResult.getValue().getCoordinates().getCenterX()).isEqualTo(i);
+        }
+
+        assertThat(widgetRepository.v1GetRange(1, 1).getValue().getWidgets().get(0).getId())
+            .isEqualTo(ids.get(4_999));
+    }
+
+    @Test
+    public void should_reuse_grown_storage_after_all_widgets_are_deleted() {
+        var widgetRepository = createRepository();
+        var ids = new ArrayList<UUID>();
+
+        for (var z = 0; z < 5_000; z++)
+            ids.add(widgetRepository.v1Insert(new V1InsertWidgetModel(z, z, z, 1, 1)).getValue().getId());
+
+        assertTrue(widgetRepository.v1DeleteAll().isSucceed());
+        assertThat(widgetRepository.v1GetRange(1, 10).getValue().getTotalWidgetsCount()).isZero();
+        assertTrue(widgetRepository.v1GetById(ids.get(0)).isFailed());
+        assertTrue(widgetRepository.v1GetByZIndex(0).isFailed());
+
+        var id = widgetRepository.v1Insert(new V1InsertWidgetModel(7, 1, 2, 3, 4)).getValue().getId();
+
+        assertThat(widgetRepository.v1GetById(id).getValue().getZ()).isEqualTo(7);
+        assertThat(widgetRepository.v1GetByZIndex(7).getValue().getId()).isEqualTo(id);
+        assertThat(widgetRepository.v1GetRange(1, 10).getValue().getTotalWidgetsCount()).isEqualTo(1);
+    }
+}
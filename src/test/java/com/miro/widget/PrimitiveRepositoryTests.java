@@ -0,0 +1,46 @@
+package com.miro.widget;
+
+import com.miro.widget.service.repositories.PrimitiveRepositoryImpl;
+import com.miro.widget.service.repositories.WidgetRepository;
+import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveRepositoryTests extends WidgetRepositoryTests {
+    @Override
+    protected WidgetRepository createRepository() {
+        return new PrimitiveRepositoryImpl();
+    }
+
+    @Test
+    public void should_keep_widgets_reachable_after_slots_are_compacted_on_delete() {
+        var widgetRepository = createRepository();
+        var ids = new ArrayList<UUID>();
+
+        for (var z = 0; z < 3_000; z++)
+            ids.add(widgetRepository.v1Insert(new V1InsertWidgetModel(z, z, z, 1, 1)).getValue().getId());
+
+        for (var i = 0; i < ids.size(); i += 2)
+            assertTrue(widgetRepository.v1Delete(ids.get(i)).isSucceed());
+
+        for (var i = 0; i < ids.size(); i++) {
+            var getByIdResult = widgetRepository.v1GetById(ids.get(i));
+
+            if (i % 2 == 0) {
+                assertTrue(getByIdResult.isFailed());
+            } else {
+                assertTrue(getByIdResult.isSucceed());
+                assertThat(getByIdResult.getValue().getZ()).isEqualTo(i);
+                assertThat(getByIdResult.getValue().getCoordinates().getCenterX()).isEqualTo(i);
+            }
+        }
+
+        assertThat(widgetRepository.v1GetRange(1, 10).getValue().getTotalWidgetsCount()).isEqualTo(1_500);
+        assertThat(widgetRepository.v1GetByZIndex(2_999).getValue().getId()).isEqualTo(ids.get(2_999));
+    }
+}
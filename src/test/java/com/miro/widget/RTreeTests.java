@@ -0,0 +1,195 @@
+package com.miro.widget;
+
+import com.miro.widget.service.repositories.indexes.RTree;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RTreeTests {
+    private RTree<String> rTree;
+
+    @BeforeEach
+    public void setUp() {
+        rTree = new RTree<>();
+    }
+
+    @Test
+    public void should_successfully_find_intersecting_rectangles() {
+        rTree.insert(0, 0, 10, 10, "first");
+        rTree.insert(5, 5, 15, 15, "second");
+        rTree.insert(20, 20, 30, 30, "third");
+
+        var found = new HashSet<String>();
+        rTree.search(10, 10, 12, 12, found::add);
+
+        assertThat(found).containsExactlyInAnyOrder("first", "second");
+    }
+
+    @Test
+    public void should_successfully_remove() {
+        var value = "first";
+        rTree.insert(0, 0, 10, 10, value);
+
+        assertFalse(rTree.remove(0, 0, 10, 11, value));
+        assertTrue(rTree.remove(0, 0, 10, 10, value));
+
+        var found = new HashSet<String>();
+        rTree.search(0, 0, 10, 10, found::add);
+
+        assertThat(found).isEmpty();
+        assertThat(rTree.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_find_the_same_rectangles_after_bulk_load_as_full_scan() {
+        var random = new Random(42);
+        var values = new ArrayList<String>();
+        var bounds = new long[4 * 5_000];
+
+        rTree.insert(0, 0, 10, 10, "replaced");
+
+        for (var i = 0; i < 5_000; i++) {
+            var x = random.nextInt(1_000);
+            var y = random.nextInt(1_000);
+
+            values.add("rectangle-" + i);
+            bounds[4 * i] = x;
+            bounds[4 * i + 1] = y;
+            bounds[4 * i + 2] = x + random.nextInt(50);
+            bounds[4 * i + 3] = y + random.nextInt(50);
+        }
+
+        rTree.load(bounds, values);
+
+        assertThat(rTree.size()).isEqualTo(5_000);
+        assertTrue(rTree.remove(bounds[40], bounds[41], bounds[42], bounds[43], values.get(10)));
+
+        for (var i = 0; i < 50; i++) {
+            var x = random.nextInt(1_000);
+            var y = random.nextInt(1_000);
+            var area = new long[]{x, y, x + random.nextInt(200), y + random.nextInt(200)};
+
+            var found = new HashSet<String>();
+            rTree.search(area[0], area[1], area[2], area[3], found::add);
+
+            var expected = new HashSet<String>();
+            for (var j = 0; j < values.size(); j++) {
+                if (j != 10 && bounds[4 * j] <= area[2] && area[0] <= bounds[4 * j + 2] &&
+                    bounds[4 * j + 1] <= area[3] && area[1] <= bounds[4 * j + 3])
+                    expected.add(values.get(j));
+            }
+
+            assertThat(found).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void should_find_the_same_rectangles_as_full_scan_on_random_operations() {
+        var random = new Random(42);
+        var rectangles = new HashMap<String, long[]>();
+
+        for (var i = 0; i < 10_000; i++) {
+            if (random.nextInt(10) < 6 || rectangles.isEmpty()) {
+                var x = random.nextInt(1_000);
+                var y = random.nextInt(1_000);
+                var rectangle = new long[]{x, y, x + random.nextInt(50), y + random.nextInt(50)};
+                var value = "rectangle-" + i;
+
+                rectangles.put(value, rectangle);
+                rTree.insert(rectangle[0], rectangle[1], rectangle[2], rectangle[3], value);
+            } else {
+                var values = new ArrayList<>(rectangles.keySet());
+                var value = values.get(random.nextInt(values.size()));
+                var rectangle = rectangles.remove(value);
+
+                assertTrue(rTree.remove(rectangle[0], rectangle[1], rectangle[2], rectangle[3], value));
+            }
+
+            if (i % 100 == 0) {
+                var x = random.nextInt(1_000);
+                var y = random.nextInt(1_000);
+                var area = new long[]{x, y, x + random.nextInt(200), y + random.nextInt(200)};
+
+                var found = new HashSet<String>();
+                rTree.search(area[0], area[1], area[2], area[3], found::add);
+
+                var expected = new HashSet<String>();
+                rectangles.forEach((value, rectangle) -> {
+                    if (rectangle[0] <= area[2] && area[0] <= rectangle[2] &&
+                        rectangle[1] <= area[3] && area[1] <= rectangle[3])
+                        expected.add(value);
+                });
+
+                assertThat(found).isEqualTo(expected);
+            }
+        }
+
+        assertThat(rTree.size()).isEqualTo(rectangles.size());
+    }
+
+    @Test
+    public void should_find_the_same_topmost_rectangle_as_full_scan_while_order_changes() {
+        var random = new Random(42);
+        var ranks = new HashMap<String, Integer>();
+        var rectangles = new HashMap<String, long[]>();
+        var values = new ArrayList<String>();
+        var bounds = new long[4 * 2_000];
+
+        rTree = new RTree<>(ranks::get);
+
+        for (var i = 0; i < 2_000; i++) {
+            var x = random.nextInt(1_000);
+            var y = random.nextInt(1_000);
+            var rectangle = new long[]{x, y, x + random.nextInt(100), y + random.nextInt(100)};
+            var value = "rectangle-" + i;
+
+            System.arraycopy(rectangle, 0, bounds, 4 * i, 4);
+            values.add(value);
+            ranks.put(value, i * 20_000);
+            rectangles.put(value, rectangle);
+        }
+
+        rTree.load(bounds, values);
+
+        for (var i = 0; i < 10_000; i++) {
+            var value = values.get(random.nextInt(values.size()));
+            var rectangle = rectangles.get(value);
+
+            assertTrue(rTree.remove(rectangle[0], rectangle[1], rectangle[2], rectangle[3], value));
+
+            if (random.nextBoolean()) {
+                ranks.put(value, random.nextInt(2_000) * 20_000 + i + 1);
+                rTree.insert(rectangle[0], rectangle[1], rectangle[2], rectangle[3], value);
+            } else {
+                var x = random.nextInt(1_000);
+                var y = random.nextInt(1_000);
+                var moved = new long[]{x, y, x + random.nextInt(100), y + random.nextInt(100)};
+
+                rectangles.put(value, moved);
+                rTree.insert(moved[0], moved[1], moved[2], moved[3], value);
+            }
+
+            var x = random.nextInt(1_100);
+            var y = random.nextInt(1_100);
+            String expected = null;
+
+            for (var entry : rectangles.entrySet()) {
+                var bound = entry.getValue();
+
+                if (bound[0] <= x && x <= bound[2] && bound[1] <= y && y <= bound[3] &&
+                    (expected == null || ranks.get(entry.getKey()) > ranks.get(expected)))
+                    expected = entry.getKey();
+            }
+
+            assertThat(rTree.searchTopmost(x, y)).isEqualTo(expected);
+        }
+    }
+}
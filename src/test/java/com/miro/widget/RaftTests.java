@@ -0,0 +1,145 @@
+package com.miro.widget;
+
+import com.miro.widget.mappers.BllAndDalMapperImpl;
+import com.miro.widget.service.WidgetServiceImpl;
+import com.miro.widget.service.models.V1CreateWidgetDto;
+import com.miro.widget.service.models.V1UpdateWidgetDto;
+import com.miro.widget.service.repositories.InMemoryRepositoryImpl;
+import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
+import com.miro.widget.service.repositories.raft.RaftNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RaftTests {
+    private static final Logger log = LoggerFactory.getLogger(RaftTests.class);
+    private static final int NODES_COUNT = 3;
+
+    @TempDir
+    Path directory;
+
+    private final List<String> members = new ArrayList<>();
+    private final RaftNode[] nodes = new RaftNode[NODES_COUNT];
+    private final InMemoryRepositoryImpl[] widgetRepositories = new InMemoryRepositoryImpl[NODES_COUNT];
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        for (var i = 0; i < NODES_COUNT; i++) {
+            try (var socket = new ServerSocket(0)) {
+                members.add("127.0.0.1:" + socket.getLocalPort());
+            }
+        }
+
+        for (var i = 0; i < NODES_COUNT; i++)
+            startNode(i);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (var node : nodes) {
+            if (node != null)
+                node.close();
+        }
+    }
+
+    @Test
+    public void should_keep_acknowledged_writes_after_leader_failure() throws Exception {
+        var leader = awaitLeader(-1);
+        var widgetService = new WidgetServiceImpl(widgetRepositories[leader]);
+
+        for (var i = 0; i < 100; i++)
+            assertTrue(widgetService.v1Create(new V1CreateWidgetDto(i, i, i % 10, 1, 1)).isSucceed());
+
+        var moved = widgetRepositories[leader].v1GetByZIndex(5).getValue();
+        assertTrue(widgetService.v1Update(moved.getId(), new V1UpdateWidgetDto(0)).isSucceed());
+
+        for (var i = 0; i < NODES_COUNT; i++) {
+            if (i != leader)
+                assertTrue(widgetRepositories[i].v1Insert(new V1InsertWidgetModel(0, 0, 0, 1, 1)).isFailed());
+        }
+
+        var expected = widgetRepositories[leader].v1GetRange(1, 1_000).getValue().getWidgets();
+
+        nodes[leader].close();
+        nodes[leader] = null;
+
+        var startedAt = System.nanoTime();
+        var newLeader = awaitLeader(leader);
+        var failoverMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        log.info("Raft node {} took over from node {} in {} ms", newLeader, leader, failoverMs);
+        assertThat(failoverMs).isLessThan(1_000);
+        assertThat(widgetRepositories[newLeader].v1GetRange(1, 1_000).getValue().getWidgets())
+            .usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(expected);
+
+        var created = new WidgetServiceImpl(widgetRepositories[newLeader])
+            .v1Create(new V1CreateWidgetDto(500, 500, null, 1, 1));
+
+        assertTrue(created.isSucceed());
+        assertThat(created.getValue().getZ()).isEqualTo(expected.get(expected.size() - 1).getZ() + 1);
+    }
+
+    @Test
+    public void should_successfully_restore_widgets_after_restart_of_all_nodes() throws Exception {
+        var leader = awaitLeader(-1);
+
+        for (var i = 0; i < 100; i++)
+            widgetRepositories[leader].v1Insert(new V1InsertWidgetModel(i % 7, i, i, 1, 1));
+
+        assertTrue(widgetRepositories[leader].v1AwaitDurable().isSucceed());
+
+        var expected = widgetRepositories[leader].v1GetRange(1, 1_000).getValue().getWidgets();
+
+        tearDown();
+
+        for (var i = 0; i < NODES_COUNT; i++)
+            startNode(i);
+
+        leader = awaitLeader(-1);
+
+        assertThat(widgetRepositories[leader].v1GetRange(1, 1_000).getValue().getWidgets())
+            .usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(expected);
+    }
+
+    private void startNode(int id) throws IOException {
+        nodes[id] = new RaftNode(directory.resolve("node-" + id), id, members, 150, 50, 5_000);
+        widgetRepositories[id] = new InMemoryRepositoryImpl(
+            new BllAndDalMapperImpl(), null, null, null, null, nodes[id]);
+    }
+
+    // The leader takes writes once it has applied its log
+    private int awaitLeader(int failedId) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + 10_000;
+
+        while (System.currentTimeMillis() < deadline) {
+            for (var i = 0; i < NODES_COUNT; i++) {
+                if (i == failedId)
+                    continue;
+
+                try {
+                    nodes[i].checkLeader();
+                    return i;
+                } catch (RuntimeException exc) {
+                    // Not the leader yet
+                }
+            }
+
+            Thread.sleep(1);
+        }
+
+        throw new AssertionError("No Raft leader is elected");
+    }
+}
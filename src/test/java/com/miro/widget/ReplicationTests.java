@@ -0,0 +1,63 @@
+package com.miro.widget;
+
+import com.miro.widget.mappers.BllAndDalMapperImpl;
+import com.miro.widget.service.models.V1WidgetDto;
+import com.miro.widget.service.repositories.InMemoryRepositoryImpl;
+import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
+import com.miro.widget.service.repositories.models.V1UpdateWidgetModel;
+import com.miro.widget.service.repositories.replication.ReplicationFollower;
+import com.miro.widget.service.repositories.replication.ReplicationLeader;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReplicationTests {
+    @Test
+    public void should_successfully_replicate_widgets_to_follower() throws Exception {
+        try (var leader = new ReplicationLeader("127.0.0.1", 0, 20, 100_000);
+             var follower = new ReplicationFollower("localhost", leader.getPort(), 2_000, 50)) {
+            var leaderRepository = new InMemoryRepositoryImpl(new BllAndDalMapperImpl(), null, null, leader, null);
+
+            // Widgets written before the follower connects come with the state of the leader
+            for (var z = 0; z < 100; z++)
+                leaderRepository.v1Insert(new V1InsertWidgetModel(z % 7, z, z, 1, 1));
+
+            var followerRepository = new InMemoryRepositoryImpl(new BllAndDalMapperImpl(), null, null, null, follower);
+
+            var moved = leaderRepository.v1Insert(new V1InsertWidgetModel(3, 500, 500, 2, 2)).getValue();
+            leaderRepository.v1Update(new V1UpdateWidgetModel(moved.getId(), 50, 600, null, null, null));
+            leaderRepository.v1Delete(leaderRepository.v1GetByZIndex(0).getValue().getId());
+
+            var expected = leaderRepository.v1GetRange(1, 1_000).getValue().getWidgets();
+            var deadline = System.currentTimeMillis() + 5_000;
+
+            while (!isReplicated(expected, followerRepository.v1GetRange(1, 1_000).getValue().getWidgets())
+                && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            assertThat(followerRepository.v1GetRange(1, 1_000).getValue().getWidgets())
+                .usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(expected);
+            assertThat(followerRepository.v1GetAtPoint(600, 500, false).getValue())
+                .extracting(V1WidgetDto::getId).containsExactly(moved.getId());
+            assertThat(follower.getStalenessMs()).isBetween(0L, 1_000L);
+            assertTrue(followerRepository.v1Insert(new V1InsertWidgetModel(1, 1, 1, 1, 1)).isFailed());
+        }
+    }
+
+    private static boolean isReplicated(List<V1WidgetDto> expected, List<V1WidgetDto> actual) {
+        if (expected.size() != actual.size())
+            return false;
+
+        for (var i = 0; i < expected.size(); i++) {
+            if (!expected.get(i).getId().equals(actual.get(i).getId())
+                || !expected.get(i).getZ().equals(actual.get(i).getZ())
+                || !expected.get(i).getUpdatedAt().equals(actual.get(i).getUpdatedAt()))
+                return false;
+        }
+
+        return true;
+    }
+}
@@ -4,13 +4,24 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miro.widget.controllers.WidgetController;
 import com.miro.widget.controllers.models.requests.V1CreateWidgetRequest;
 import com.miro.widget.controllers.models.requests.V1UpdateWidgetRequest;
+import com.miro.widget.controllers.models.requests.V1WidgetsCursor;
+import com.miro.widget.controllers.models.responses.V1Coordinates;
+import com.miro.widget.controllers.models.responses.V1GetAllWidgetsItem;
+import com.miro.widget.controllers.models.responses.V1GetAllWidgetsResponse;
+import com.miro.widget.controllers.models.responses.V1Size;
 import com.miro.widget.mappers.WebAndBllMapper;
+import com.miro.widget.service.BoardRegistry;
 import com.miro.widget.service.WidgetService;
+import com.miro.widget.service.cluster.BoardRouter;
+import com.miro.widget.service.models.V1AreaDto;
+import com.miro.widget.service.models.V1WidgetDto;
 import com.miro.widget.service.models.V1WidgetRangeDto;
+import com.miro.widget.service.models.V1WidgetVisitor;
 import org.apache.commons.lang3.RandomUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -21,14 +32,21 @@ import result.PlainResult;
 import result.Result;
 import result.errors.Error;
 import result.errors.NotFoundError;
+import result.errors.PreconditionFailedError;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 import static com.miro.widget.helpers.Generator.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
@@ -46,6 +64,12 @@ public class WidgetControllerTests {
     @MockBean
     private WidgetService widgetService;
 
+    @MockBean
+    private BoardRegistry boardRegistry;
+
+    @MockBean
+    private BoardRouter boardRouter;
+
     @Test
     public void v1_create_should_return_201() throws Exception {
         var request = generateV1CreateWidgetRequest();
@@ -155,6 +179,23 @@ public class WidgetControllerTests {
         mockMvc.perform(get("/api/v1/widgets/" + widgetId)).andExpect(status().isOk());
     }
 
+    @Test
+    public void v1_get_by_ID_should_return_304_for_matching_ETag() throws Exception {
+        var widgetId = UUID.randomUUID();
+
+        Mockito.when(widgetService.v1GetById(widgetId)).thenReturn(Result.Ok(generateV1WidgetDto()));
+
+        var eTag = mockMvc.perform(get("/api/v1/widgets/" + widgetId))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/v1/widgets/" + widgetId).header("If-None-Match", eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string("ETag", eTag));
+
+        Mockito.verify(webAndBllMapper, Mockito.times(1)).v1DtoToGetAllItem(any());
+    }
+
     @Test
     public void v1_get_by_ID_should_return_404() throws Exception {
         var widgetId = UUID.randomUUID();
@@ -182,19 +223,148 @@ public class WidgetControllerTests {
 
     @Test
     public void v1_get_all_should_return_200() throws Exception {
-        Mockito.when(widgetService.v1GetRange(1, 10))
-            .thenReturn(Result.Ok(new V1WidgetRangeDto(1, 1, List.of(generateV1WidgetDto()))));
+        Mockito.when(widgetService.v1VisitRange(eq(1), eq(10), any())).thenAnswer(visiting(1, generateV1WidgetDto()));
 
         mockMvc.perform(get("/api/v1/widgets")).andExpect(status().isOk());
     }
 
+    @Test
+    public void v1_get_all_should_return_200_when_page_changed() throws Exception {
+        Mockito.when(widgetService.v1VisitRange(eq(1), eq(10), any()))
+            .thenAnswer(visiting(1, generateV1WidgetDto()))
+            .thenAnswer(visiting(1, generateV1WidgetDto()));
+
+        var eTag = mockMvc.perform(get("/api/v1/widgets"))
+            .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/v1/widgets").header("If-None-Match", eTag))
+            .andExpect(status().isOk())
+            .andExpect(header().exists("ETag"));
+    }
+
+    @Test
+    public void v1_get_all_should_return_304_for_matching_ETag() throws Exception {
+        var widgetDto = generateV1WidgetDto();
+
+        Mockito.when(widgetService.v1VisitRange(eq(1), eq(10), any())).thenAnswer(visiting(1, widgetDto));
+
+        var eTag = mockMvc.perform(get("/api/v1/widgets"))
+            .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/v1/widgets").header("If-None-Match", eTag))
+            .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void v1_get_all_should_write_widgets_as_mapper_serializes_them() throws Exception {
+        var widgetDto = generateV1WidgetDto();
+        var item = new V1GetAllWidgetsItem(
+            widgetDto.getId(),
+            widgetDto.getZ(),
+            new V1Coordinates(widgetDto.getCoordinates().getCenterX(), widgetDto.getCoordinates().getCenterY()),
+            new V1Size(widgetDto.getSize().getWidth(), widgetDto.getSize().getHeight()),
+            widgetDto.getUpdatedAt());
+
+        Mockito.when(widgetService.v1VisitRange(eq(1), eq(10), any())).thenAnswer(visiting(11, widgetDto));
+
+        mockMvc.perform(get("/api/v1/widgets"))
+            .andExpect(status().isOk())
+            .andExpect(content().string(
+                objectMapper.writeValueAsString(new V1GetAllWidgetsResponse(11, 2, List.of(item)))));
+
+        Mockito.verifyNoInteractions(webAndBllMapper);
+    }
+
     @Test
     public void v1_get_all_should_return_500() throws Exception {
-        Mockito.when(widgetService.v1GetRange(1, 10)).thenReturn(Result.Fail(new Error("get all error")));
+        Mockito.when(widgetService.v1VisitRange(eq(1), eq(10), any()))
+            .thenReturn(Result.Fail(new Error("get all error")));
 
         mockMvc.perform(get("/api/v1/widgets")).andExpect(status().isInternalServerError());
     }
 
+    @Test
+    public void v1_get_slice_should_return_200() throws Exception {
+        Mockito.when(widgetService.v1VisitSlice(eq(10), isNull(), eq(10), any()))
+            .thenAnswer(visiting(false, generateV1WidgetDto()));
+
+        mockMvc.perform(get("/api/v1/widgets").param("afterZ", "10"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.nextCursor").isNotEmpty());
+    }
+
+    @Test
+    public void v1_get_slice_by_cursor_should_return_200() throws Exception {
+        Mockito.when(widgetService.v1VisitSlice(eq(10), eq(20), eq(10), any()))
+            .thenAnswer(visiting(true, generateV1WidgetDto()));
+
+        mockMvc.perform(get("/api/v1/widgets").param("cursor", new V1WidgetsCursor(10, 20).encode()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    public void v1_get_slice_should_return_400_for_invalid_cursor() throws Exception {
+        mockMvc.perform(get("/api/v1/widgets").param("cursor", "invalid"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.violations[0].fieldName").value("cursor"));
+    }
+
+    @Test
+    public void v1_get_slice_should_return_500() throws Exception {
+        Mockito.when(widgetService.v1VisitSlice(isNull(), eq(10), eq(10), any()))
+            .thenReturn(Result.Fail(new Error("get slice error")));
+
+        mockMvc.perform(get("/api/v1/widgets").param("beforeZ", "10")).andExpect(status().isInternalServerError());
+    }
+
+    @Test
+    public void v1_get_in_area_should_return_200() throws Exception {
+        Mockito.when(widgetService.v1GetRangeInArea(new V1AreaDto(0, 0, 100, 100), 1, 10))
+            .thenReturn(Result.Ok(new V1WidgetRangeDto(1, 1, List.of(generateV1WidgetDto()))));
+
+        mockMvc.perform(get("/api/v1/widgets")
+                .param("x1", "0")
+                .param("y1", "0")
+                .param("x2", "100")
+                .param("y2", "100"))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    public void v1_get_in_area_should_return_500() throws Exception {
+        Mockito.when(widgetService.v1GetRangeInArea(any(), eq(1), eq(10)))
+            .thenReturn(Result.Fail(new Error("get in area error")));
+
+        mockMvc.perform(get("/api/v1/widgets")
+                .param("x1", "0")
+                .param("y1", "0")
+                .param("x2", "100")
+                .param("y2", "100"))
+            .andExpect(status().isInternalServerError());
+    }
+
+    @Test
+    public void v1_get_at_point_should_return_200() throws Exception {
+        Mockito.when(widgetService.v1GetAtPoint(1, 2, true))
+            .thenReturn(Result.Ok(List.of(generateV1WidgetDto(), generateV1WidgetDto())));
+
+        mockMvc.perform(get("/api/v1/widgets/at").param("x", "1").param("y", "2").param("stack", "true"))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    public void v1_get_at_point_should_return_404() throws Exception {
+        Mockito.when(widgetService.v1GetAtPoint(1, 2, false)).thenReturn(Result.Ok(List.of()));
+
+        mockMvc.perform(get("/api/v1/widgets/at").param("x", "1").param("y", "2")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void v1_get_at_point_should_return_400() throws Exception {
+        mockMvc.perform(get("/api/v1/widgets/at").param("x", "1")).andExpect(status().isBadRequest());
+    }
+
     @Test
     public void v1_update_should_return_200() throws Exception {
         var request = generateV1UpdateWidgetRequest();
@@ -218,6 +388,18 @@ public class WidgetControllerTests {
             .andExpect(status().isNotFound());
     }
 
+    @Test
+    public void v1_update_should_return_412_for_changed_widget() throws Exception {
+        Mockito.when(widgetService.v1Update(any(), any(), any()))
+            .thenReturn(Result.Fail(new PreconditionFailedError("changed")));
+
+        mockMvc.perform(put("/api/v1/widgets/" + UUID.randomUUID())
+                .header("If-Match", "\"1\"")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(objectMapper.writeValueAsString(generateV1UpdateWidgetRequest())))
+            .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     public void v1_update_should_return_500() throws Exception {
         Mockito.when(widgetService.v1Update(any(), any())).thenReturn(Result.Fail(new Error("updating error")));
@@ -238,6 +420,29 @@ public class WidgetControllerTests {
             .andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void v1_update_should_leave_etag_unchanged_when_all_values_are_null() throws Exception {
+        var widgetDto = generateV1WidgetDto();
+
+        Mockito.when(widgetService.v1GetById(widgetDto.getId())).thenReturn(Result.Ok(widgetDto));
+
+        var eTag = mockMvc.perform(get("/api/v1/widgets/" + widgetDto.getId()))
+            .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(put("/api/v1/widgets/" + widgetDto.getId())
+                .header("If-Match", eTag)
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(objectMapper.writeValueAsString(new V1UpdateWidgetRequest(null, null, null, null, null))))
+            .andExpect(status().isBadRequest())
+            .andExpect(header().doesNotExist("ETag"));
+
+        Mockito.verify(widgetService, Mockito.never()).v1Update(any(), any(), any());
+
+        mockMvc.perform(get("/api/v1/widgets/" + widgetDto.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string("ETag", eTag));
+    }
+
     @Test
     public void v1_update_should_return_400_for_invalid_center_z_index() throws Exception {
         var request = new V1UpdateWidgetRequest(
@@ -315,4 +520,58 @@ public class WidgetControllerTests {
         mockMvc.perform(delete("/api/v1/widgets/" + null)).andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void v1_get_by_ID_on_board_should_return_200() throws Exception {
+        var widgetId = UUID.randomUUID();
+        var boardService = Mockito.mock(WidgetService.class);
+
+        Mockito.when(boardRegistry.findBoard("team-1")).thenReturn(Optional.of(boardService));
+        Mockito.when(boardService.v1GetById(widgetId)).thenReturn(Result.Ok(generateV1WidgetDto()));
+
+        mockMvc.perform(get("/api/v1/boards/team-1/widgets/" + widgetId)).andExpect(status().isOk());
+
+        Mockito.verifyNoInteractions(widgetService);
+    }
+
+    @Test
+    public void v1_get_by_ID_on_unknown_board_should_return_404() throws Exception {
+        Mockito.when(boardRegistry.findBoard("team-1")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/v1/boards/team-1/widgets/" + UUID.randomUUID())).andExpect(status().isNotFound());
+
+        Mockito.verify(boardRegistry, Mockito.never()).openBoard(Mockito.any());
+    }
+
+    @Test
+    public void v1_get_by_ID_on_board_should_return_400_for_invalid_board_ID() throws Exception {
+        mockMvc.perform(get("/api/v1/boards/team.1/widgets/" + UUID.randomUUID()))
+            .andExpect(status().isBadRequest());
+
+        Mockito.verifyNoInteractions(boardRegistry);
+    }
+
+    @Test
+    public void v1_create_on_board_of_another_node_should_return_307() throws Exception {
+        Mockito.when(boardRouter.enter("team-1")).thenReturn("http://localhost:8081");
+
+        mockMvc.perform(post("/api/v1/boards/team-1/widgets?source=test")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(objectMapper.writeValueAsString(generateV1CreateWidgetRequest())))
+            .andExpect(status().isTemporaryRedirect())
+            .andExpect(header().string("Location", "http://localhost:8081/api/v1/boards/team-1/widgets?source=test"));
+
+        Mockito.verifyNoInteractions(boardRegistry);
+    }
+
+    // Passes the widgets to the visitor, which is the last argument, and returns the value
+    private static Answer<Result<Object>> visiting(Object value, V1WidgetDto... widgets) {
+        return invocation -> {
+            V1WidgetVisitor visitor = invocation.getArgument(invocation.getArguments().length - 1);
+
+            for (var widget : widgets)
+                visitor.visit(widget);
+
+            return Result.Ok(value);
+        };
+    }
 }
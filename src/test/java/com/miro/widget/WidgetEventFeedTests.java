@@ -0,0 +1,112 @@
+package com.miro.widget;
+
+import com.miro.widget.service.events.WidgetEvent;
+import com.miro.widget.service.events.WidgetEventFeed;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.miro.widget.helpers.Generator.*;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WidgetEventFeedTests {
+    @Test
+    public void should_give_every_subscriber_the_same_frames() {
+        var eventFeed = new WidgetEventFeed(16);
+        var first = eventFeed.subscribe(null);
+        var second = eventFeed.subscribe(null);
+        var widget = generateV1WidgetDto();
+
+        eventFeed.publishShifted(widget.getZ(), widget.getId());
+        eventFeed.publishCreated(widget);
+
+        var frames = first.poll();
+
+        assertThat(frames).hasSize(2);
+        assertThat(second.poll()).containsExactlyElementsOf(frames);
+        assertThat(decode(frames).get(0))
+            .isEqualTo(String.format("id: 1\nevent: shifted\ndata: {\"z\":%d,\"id\":\"%s\"}\n\n",
+                widget.getZ(), widget.getId()));
+        assertThat(decode(frames).get(1)).startsWith("id: 2\nevent: created\n");
+    }
+
+    @Test
+    public void should_collapse_consecutive_updates_of_one_widget() {
+        var eventFeed = new WidgetEventFeed(16);
+        var subscription = eventFeed.subscribe(null);
+        var widget = generateV1WidgetDto();
+
+        eventFeed.publishUpdated(widget);
+        eventFeed.publishUpdated(widget);
+        eventFeed.publishDeleted(UUID.randomUUID());
+        eventFeed.publishUpdated(widget);
+        eventFeed.publishUpdated(widget);
+
+        assertThat(decode(subscription.poll()))
+            .extracting(frame -> frame.substring(0, frame.indexOf('\n')))
+            .containsExactly("id: 2", "id: 3", "id: 5");
+    }
+
+    @Test
+    public void should_resync_subscriber_which_fell_behind() {
+        var eventFeed = new WidgetEventFeed(4);
+        var subscription = eventFeed.subscribe(null);
+
+        for (var i = 0; i < 10; i++)
+            eventFeed.publishDeleted(UUID.randomUUID());
+
+        assertThat(decode(subscription.poll())).containsExactly("id: 10\nevent: resync\ndata: {}\n\n");
+
+        eventFeed.publishDeleted(UUID.randomUUID());
+
+        assertThat(decode(subscription.poll())).hasSize(1).allMatch(frame -> frame.startsWith("id: 11\n"));
+        assertThat(decode(eventFeed.subscribe(8L).poll())).hasSize(3);
+        assertThat(decode(eventFeed.subscribe(2L).poll())).allMatch(frame -> frame.contains("event: resync"));
+    }
+
+    @Test
+    public void should_tell_listener_of_every_event() {
+        var eventFeed = new WidgetEventFeed(16);
+        var subscription = eventFeed.subscribe(null);
+        var polled = new ArrayList<byte[]>();
+
+        eventFeed.setListener(() -> polled.addAll(subscription.poll()));
+        eventFeed.publishDeleted(UUID.randomUUID());
+        eventFeed.publishDeleted(UUID.randomUUID());
+
+        assertThat(decode(polled))
+            .extracting(frame -> frame.substring(0, frame.indexOf('\n')))
+            .containsExactly("id: 1", "id: 2");
+    }
+
+    @Test
+    public void should_give_events_after_version_while_ring_holds_them() {
+        var eventFeed = new WidgetEventFeed(4, 100);
+        var widget = generateV1WidgetDto();
+
+        eventFeed.publishCreated(widget);
+        eventFeed.publishUpdated(widget);
+        eventFeed.publishUpdated(widget);
+
+        assertThat(eventFeed.getVersion()).isEqualTo(103);
+        assertThat(eventFeed.getEventsAfter(100)).hasValueSatisfying(events -> assertThat(events)
+            .extracting(WidgetEvent::getVersion)
+            .containsExactly(101L, 103L));
+
+        for (var i = 0; i < 3; i++)
+            eventFeed.publishDeleted(UUID.randomUUID());
+
+        assertThat(eventFeed.getEventsAfter(103)).hasValueSatisfying(events -> assertThat(events).hasSize(3));
+        assertThat(eventFeed.getEventsAfter(106)).hasValueSatisfying(events -> assertThat(events).isEmpty());
+        assertThat(eventFeed.getEventsAfter(100)).isEmpty();
+        assertThat(eventFeed.getEventsAfter(107)).isEmpty();
+    }
+
+    private static List<String> decode(List<byte[]> frames) {
+        return frames.stream().map(frame -> new String(frame, StandardCharsets.UTF_8)).collect(toList());
+    }
+}
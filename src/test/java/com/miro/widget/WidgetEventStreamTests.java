@@ -0,0 +1,98 @@
+package com.miro.widget;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "widget.events.dispatcher-threads=1",
+        "widget.events.heartbeat-interval-ms=100",
+        "widget.events.max-stall-ms=1000"
+    })
+public class WidgetEventStreamTests {
+    private static final int BATCHES_COUNT = 30;
+    private static final int BATCH_SIZE = 1_000;
+    private static final String MARKER = "\"centerX\":777777";
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    public void should_stream_to_others_while_subscriber_never_reads_with_one_thread() throws Exception {
+        try (var stalled = new Socket()) {
+            // A small window fills up after a few events
+            stalled.setReceiveBufferSize(4_096);
+            stalled.connect(new InetSocketAddress("localhost", port));
+            stalled.getOutputStream().write(("GET /api/v1/widgets:events HTTP/1.1\r\nHost: localhost\r\n" +
+                "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            stalled.getOutputStream().flush();
+
+            var reader = client.send(request("/api/v1/widgets:events").build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+            var received = CompletableFuture.supplyAsync(() -> readUntilMarker(reader.body()));
+
+            var batch = IntStream.range(0, BATCH_SIZE)
+                .mapToObj(i -> "{\"op\":\"create\",\"centerX\":1,\"centerY\":2,\"width\":3,\"height\":4}")
+                .collect(Collectors.joining(",", "[", "]"));
+
+            for (var i = 0; i < BATCHES_COUNT; i++)
+                assertThat(post("/api/v1/widgets:batch", batch).statusCode()).isEqualTo(200);
+
+            assertThat(post("/api/v1/widgets", "{" + MARKER + ",\"centerY\":2,\"width\":3,\"height\":4}")
+                .statusCode()).isEqualTo(201);
+            assertThat(received.get(30, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    private boolean readUntilMarker(InputStream body) {
+        var buffer = new byte[8_192];
+        var tail = "";
+
+        try (body) {
+            for (var count = body.read(buffer); count >= 0; count = body.read(buffer)) {
+                var text = tail + new String(buffer, 0, count, StandardCharsets.UTF_8);
+
+                if (text.contains(MARKER))
+                    return true;
+
+                tail = text.substring(Math.max(0, text.length() - MARKER.length()));
+            }
+        } catch (IOException exc) {
+            return false;
+        }
+
+        return false;
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        return client.send(request(path)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).timeout(Duration.ofSeconds(30));
+    }
+}
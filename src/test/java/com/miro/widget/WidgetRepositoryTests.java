@@ -0,0 +1,486 @@
+package com.miro.widget;
+
+import com.miro.widget.service.models.V1AreaDto;
+import com.miro.widget.service.models.V1BatchOperationType;
+import com.miro.widget.service.models.V1CoordinatesDto;
+import com.miro.widget.service.models.V1SizeDto;
+import com.miro.widget.service.models.V1WidgetColumnsDto;
+import com.miro.widget.service.models.V1WidgetDto;
+import com.miro.widget.service.models.V1WidgetVisitor;
+import com.miro.widget.service.repositories.WidgetRepository;
+import com.miro.widget.service.repositories.models.V1BatchOperationModel;
+import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
+import com.miro.widget.service.repositories.models.V1UpdateWidgetModel;
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import result.errors.NotFoundError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.miro.widget.helpers.Generator.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public abstract class WidgetRepositoryTests {
+    private WidgetRepository widgetRepository;
+
+    protected abstract WidgetRepository createRepository();
+
+    @BeforeEach
+    public void setUp() {
+        widgetRepository = createRepository();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        widgetRepository.v1DeleteAll();
+    }
+
+    @Test
+    public void should_successfully_insert() {
+        var insertModel = generateV1InsertWidgetModel();
+        var insertionResult = widgetRepository.v1Insert(insertModel);
+
+        assertTrue(insertionResult.isSucceed());
+        assertNotNull(insertionResult.getValue().getId());
+        assertEquals(insertionResult.getValue().getZ(), insertModel.getZ());
+        assertEquals(insertionResult.getValue().getCoordinates().getCenterX(), insertModel.getCenterX());
+        assertEquals(insertionResult.getValue().getCoordinates().getCenterY(), insertModel.getCenterY());
+        assertEquals(insertionResult.getValue().getSize().getWidth(), insertModel.getWidth());
+        assertEquals(insertionResult.getValue().getSize().getHeight(), insertModel.getHeight());
+
+        assertThat(insertionResult.getValue())
+            .usingRecursiveComparison()
+            .isEqualTo(widgetRepository.v1GetById(insertionResult.getValue().getId()).getValue());
+    }
+
+    @Test
+    public void should_be_failed_when_failed_to_insert() {
+        var insertionResult = widgetRepository.v1Insert(null);
+
+        assertTrue(insertionResult.isFailed());
+        assertNull(insertionResult.getValue());
+        assertThat(widgetRepository.v1GetRange(1, 10).getValue().getWidgets().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_successfully_get_by_ID() {
+        var insertedWidget = widgetRepository.v1Insert(generateV1InsertWidgetModel()).getValue();
+
+        var getByIdResult = widgetRepository.v1GetById(insertedWidget.getId());
+
+        assertTrue(getByIdResult.isSucceed());
+        assertThat(getByIdResult.getValue()).usingRecursiveComparison().isEqualTo(insertedWidget);
+    }
+
+    @Test
+    public void should_be_failed_when_failed_to_get_by_ID() {
+        widgetRepository.v1Insert(generateV1InsertWidgetModel());
+
+        var getByIdResult = widgetRepository.v1GetById(UUID.randomUUID());
+
+        assertTrue(getByIdResult.isFailed());
+        assertTrue(getByIdResult.hasError(NotFoundError.class));
+    }
+
+    @Test
+    public void should_successfully_get_by_Z_index() {
+        var insertedWidget = widgetRepository.v1Insert(generateV1InsertWidgetModel()).getValue();
+
+        var getByZIndexResult = widgetRepository.v1GetByZIndex(insertedWidget.getZ());
+
+        assertTrue(getByZIndexResult.isSucceed());
+        assertThat(getByZIndexResult.getValue()).usingRecursiveComparison().isEqualTo(insertedWidget);
+    }
+
+    @Test
+    public void should_be_failed_when_failed_to_get_by_Z_index() {
+        widgetRepository.v1Insert(generateV1InsertWidgetModel());
+
+        var getByZResult = widgetRepository.v1GetByZIndex(RandomUtils.nextInt());
+
+        assertTrue(getByZResult.isFailed());
+        assertTrue(getByZResult.hasError(NotFoundError.class));
+    }
+
+    @Test
+    public void should_successfully_get_all_inserted_widgets() {
+        var insertedWidget = widgetRepository.v1Insert(generateV1InsertWidgetModel()).getValue();
+
+        var getAllResult = widgetRepository.v1GetRange(1, 10);
+
+        assertTrue(getAllResult.isSucceed());
+        assertThat(getAllResult.getValue().getWidgets().size()).isEqualTo(1);
+        assertThat(getAllResult.getValue().getWidgets().get(0)).usingRecursiveComparison().isEqualTo(insertedWidget);
+    }
+
+    @Test
+    public void should_successfully_get_requested_page() {
+        for (var z = 0; z < 25; z++)
+            widgetRepository.v1Insert(new V1InsertWidgetModel(z * 2, 0, 0, 1, 1));
+
+        var getLastPageResult = widgetRepository.v1GetRange(3, 10);
+        var getMissingPageResult = widgetRepository.v1GetRange(4, 10);
+
+        assertTrue(getLastPageResult.isSucceed());
+        assertThat(getLastPageResult.getValue().getTotalWidgetsCount()).isEqualTo(25);
+        assertThat(getLastPageResult.getValue().getTotalPagesCount()).isEqualTo(3);
+        assertThat(getLastPageResult.getValue().getWidgets().size()).isEqualTo(5);
+        assertThat(getLastPageResult.getValue().getWidgets().get(0).getZ()).isEqualTo(40);
+        assertTrue(getMissingPageResult.isSucceed());
+        assertThat(getMissingPageResult.getValue().getWidgets().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_successfully_get_slices_by_Z_index_bounds() {
+        for (var z = 0; z < 25; z++)
+            widgetRepository.v1Insert(new V1InsertWidgetModel(z * 2, 0, 0, 1, 1));
+
+        var getAfterResult = widgetRepository.v1GetSlice(9, null, 3);
+        var getBeforeResult = widgetRepository.v1GetSlice(null, 9, 3);
+        var getBetweenResult = widgetRepository.v1GetSlice(40, 46, 10);
+
+        assertTrue(getAfterResult.isSucceed());
+        assertThat(getAfterResult.getValue().getWidgets().stream().map(V1WidgetDto::getZ))
+            .containsExactly(10, 12, 14);
+        assertFalse(getAfterResult.getValue().isLast());
+        assertTrue(getBeforeResult.isSucceed());
+        assertThat(getBeforeResult.getValue().getWidgets().stream().map(V1WidgetDto::getZ))
+            .containsExactly(4, 6, 8);
+        assertFalse(getBeforeResult.getValue().isLast());
+        assertTrue(getBetweenResult.isSucceed());
+        assertThat(getBetweenResult.getValue().getWidgets().stream().map(V1WidgetDto::getZ))
+            .containsExactly(42, 44);
+        assertTrue(getBetweenResult.getValue().isLast());
+    }
+
+    @Test
+    public void should_visit_the_same_widgets_as_it_gets() {
+        for (var z = 0; z < 25; z++)
+            widgetRepository.v1Insert(new V1InsertWidgetModel(z * 2, z, -z, z + 1, z + 2));
+
+        var rangeWidgets = new ArrayList<V1WidgetDto>();
+        var sliceWidgets = new ArrayList<V1WidgetDto>();
+        V1WidgetVisitor rangeVisitor = (id, z, centerX, centerY, width, height, updatedAt) -> rangeWidgets.add(
+            new V1WidgetDto(id, z, new V1CoordinatesDto(centerX, centerY), new V1SizeDto(width, height), updatedAt));
+        V1WidgetVisitor sliceVisitor = (id, z, centerX, centerY, width, height, updatedAt) -> sliceWidgets.add(
+            new V1WidgetDto(id, z, new V1CoordinatesDto(centerX, centerY), new V1SizeDto(width, height), updatedAt));
+
+        var visitRangeResult = widgetRepository.v1VisitRange(3, 10, rangeVisitor);
+        var visitSliceResult = widgetRepository.v1VisitSlice(null, 9, 3, sliceVisitor);
+
+        assertTrue(visitRangeResult.isSucceed());
+        assertThat(visitRangeResult.getValue()).isEqualTo(25);
+        assertThat(rangeWidgets)
+            .usingRecursiveFieldByFieldElementComparator()
+            .containsExactlyElementsOf(widgetRepository.v1GetRange(3, 10).getValue().getWidgets());
+        assertTrue(visitSliceResult.isSucceed());
+        assertFalse(visitSliceResult.getValue());
+        assertThat(sliceWidgets)
+            .usingRecursiveFieldByFieldElementComparator()
+            .containsExactlyElementsOf(widgetRepository.v1GetSlice(null, 9, 3).getValue().getWidgets());
+    }
+
+    @Test
+    public void should_successfully_get_widgets_in_area_sorted_by_Z_index() {
+        var upper = widgetRepository.v1Insert(new V1InsertWidgetModel(5, 10, 10, 4, 4)).getValue();
+        var lower = widgetRepository.v1Insert(new V1InsertWidgetModel(1, 0, 0, 10, 10)).getValue();
+        widgetRepository.v1Insert(new V1InsertWidgetModel(3, 100, 100, 10, 10));
+
+        var getInAreaResult = widgetRepository.v1GetRangeInArea(new V1AreaDto(9, 9, 4, 4), 1, 10);
+
+        assertTrue(getInAreaResult.isSucceed());
+        assertThat(getInAreaResult.getValue().getTotalWidgetsCount()).isEqualTo(2);
+        assertThat(getInAreaResult.getValue().getWidgets()).usingRecursiveComparison().isEqualTo(List.of(lower, upper));
+    }
+
+    @Test
+    public void should_successfully_get_widgets_at_point_from_the_top() {
+        var lower = widgetRepository.v1Insert(new V1InsertWidgetModel(1, 0, 0, 10, 10)).getValue();
+        var upper = widgetRepository.v1Insert(new V1InsertWidgetModel(5, 2, 2, 4, 4)).getValue();
+        widgetRepository.v1Insert(new V1InsertWidgetModel(7, 50, 50, 4, 4));
+
+        var getTopmostResult = widgetRepository.v1GetAtPoint(3, 3, false);
+        var getStackResult = widgetRepository.v1GetAtPoint(3, 3, true);
+        var getNothingResult = widgetRepository.v1GetAtPoint(30, 30, true);
+
+        assertTrue(getTopmostResult.isSucceed());
+        assertThat(getTopmostResult.getValue()).usingRecursiveComparison().isEqualTo(List.of(upper));
+        assertTrue(getStackResult.isSucceed());
+        assertThat(getStackResult.getValue()).usingRecursiveComparison().isEqualTo(List.of(upper, lower));
+        assertTrue(getNothingResult.isSucceed());
+        assertThat(getNothingResult.getValue()).isEmpty();
+    }
+
+    @Test
+    public void should_get_topmost_widget_at_point_after_moving_it_in_z_order() {
+        var lower = widgetRepository.v1Insert(new V1InsertWidgetModel(1, 0, 0, 10, 10)).getValue();
+        widgetRepository.v1Insert(new V1InsertWidgetModel(5, 2, 2, 4, 4));
+
+        widgetRepository.v1Update(new V1UpdateWidgetModel(lower.getId(), 10, null, null, null, null));
+        var getMovedResult = widgetRepository.v1GetAtPoint(3, 3, false);
+
+        var shifting = widgetRepository.v1Insert(new V1InsertWidgetModel(10, 3, 3, 2, 2)).getValue();
+        var getShiftedResult = widgetRepository.v1GetAtPoint(3, 3, false);
+
+        assertThat(getMovedResult.getValue()).extracting(V1WidgetDto::getId).containsExactly(lower.getId());
+        assertThat(getShiftedResult.getValue()).extracting(V1WidgetDto::getId).containsExactly(lower.getId());
+        assertThat(getShiftedResult.getValue().get(0).getZ()).isEqualTo(11);
+        assertThat(shifting.getZ()).isEqualTo(10);
+    }
+
+    @Test
+    public void should_successfully_move_widget_in_spatial_index_on_update() {
+        var widget = widgetRepository.v1Insert(new V1InsertWidgetModel(1, 0, 0, 10, 10)).getValue();
+
+        widgetRepository.v1Update(new V1UpdateWidgetModel(widget.getId(), null, 100, 100, null, null));
+
+        var getOldAreaResult = widgetRepository.v1GetRangeInArea(new V1AreaDto(-5, -5, 5, 5), 1, 10);
+        var getNewAreaResult = widgetRepository.v1GetRangeInArea(new V1AreaDto(95, 95, 105, 105), 1, 10);
+
+        assertThat(getOldAreaResult.getValue().getWidgets().size()).isEqualTo(0);
+        assertThat(getNewAreaResult.getValue().getWidgets().size()).isEqualTo(1);
+        assertThat(getNewAreaResult.getValue().getWidgets().get(0).getId()).isEqualTo(widget.getId());
+    }
+
+    @Test
+    public void should_read_consistent_pages_while_inserts_shift_widgets() throws InterruptedException {
+        var isWritten = new AtomicBoolean();
+        var inconsistentPage = new AtomicReference<List<Integer>>();
+        var readers = new ArrayList<Thread>();
+
+        for (var i = 0; i < 4; i++) {
+            readers.add(new Thread(() -> {
+                while (!isWritten.get()) {
+                    var zIndexes = new ArrayList<Integer>();
+
+                    for (var widget : widgetRepository.v1GetRange(1, 50).getValue().getWidgets())
+                        zIndexes.add(widget.getZ());
+
+                    for (var z = 0; z < zIndexes.size(); z++) {
+                        if (zIndexes.get(z) != z)
+                            inconsistentPage.set(zIndexes);
+                    }
+                }
+            }));
+        }
+
+        readers.forEach(Thread::start);
+
+        for (var i = 0; i < 2_000; i++)
+            widgetRepository.v1Insert(new V1InsertWidgetModel(0, i, i, 1, 1));
+
+        isWritten.set(true);
+        for (var reader : readers)
+            reader.join();
+
+        assertNull(inconsistentPage.get());
+        assertThat(widgetRepository.v1GetRange(1, 10).getValue().getTotalWidgetsCount()).isEqualTo(2_000);
+    }
+
+    @Test
+    public void should_never_read_half_updated_widget() throws InterruptedException {
+        var widget = widgetRepository.v1Insert(new V1InsertWidgetModel(0, 0, 0, 0, 0)).getValue();
+        widgetRepository.v1Insert(new V1InsertWidgetModel(1, 0, 0, 1, 1));
+
+        var isUpdated = new AtomicBoolean();
+        var tornWidget = new AtomicReference<V1WidgetDto>();
+        var readers = new ArrayList<Thread>();
+
+        for (var i = 0; i < 4; i++) {
+            readers.add(new Thread(() -> {
+                while (!isUpdated.get()) {
+                    var readWidget = widgetRepository.v1GetById(widget.getId()).getValue();
+                    var value = readWidget.getCoordinates().getCenterX();
+
+                    if (!readWidget.getCoordinates().getCenterY().equals(value) ||
+                        !readWidget.getSize().getWidth().equals(value) ||
+                        !readWidget.getSize().getHeight().equals(value) ||
+                        readWidget.getZ() != value % 2)
+                        tornWidget.set(readWidget);
+                }
+            }));
+        }
+
+        readers.forEach(Thread::start);
+
+        for (var value = 1; value <= 20_000; value++)
+            widgetRepository.v1Update(new V1UpdateWidgetModel(widget.getId(), value % 2, value, value, value, value));
+
+        isUpdated.set(true);
+        for (var reader : readers)
+            reader.join();
+
+        assertNull(tornWidget.get());
+    }
+
+    @Test
+    public void should_successfully_update() {
+        var insertedWidget = widgetRepository.v1Insert(generateV1InsertWidgetModel()).getValue();
+
+        var updatingModel = generateV1UpdateWidgetModel(insertedWidget.getId());
+        var updatingResult = widgetRepository.v1Update(updatingModel);
+
+        assertTrue(updatingResult.isSucceed());
+        assertThat(updatingResult.getValue().getId()).isEqualTo(insertedWidget.getId());
+        assertEquals(updatingResult.getValue().getZ(), updatingModel.getZ());
+        assertEquals(updatingResult.getValue().getCoordinates().getCenterX(), updatingModel.getCenterX());
+        assertEquals(updatingResult.getValue().getCoordinates().getCenterY(), updatingModel.getCenterY());
+        assertEquals(updatingResult.getValue().getSize().getWidth(), updatingModel.getWidth());
+        assertEquals(updatingResult.getValue().getSize().getHeight(), updatingModel.getHeight());
+
+        assertNotEquals(updatingResult.getValue().getZ(), insertedWidget.getZ());
+        assertNotEquals(
+            updatingResult.getValue().getCoordinates().getCenterX(), insertedWidget.getCoordinates().getCenterX());
+        assertNotEquals(
+            updatingResult.getValue().getCoordinates().getCenterY(), insertedWidget.getCoordinates().getCenterY());
+        assertNotEquals(updatingResult.getValue().getSize().getWidth(), insertedWidget.getSize().getWidth());
+        assertNotEquals(updatingResult.getValue().getSize().getHeight(), insertedWidget.getSize().getHeight());
+
+        assertThat(updatingResult.getValue())
+            .usingRecursiveComparison()
+            .isEqualTo(widgetRepository.v1GetById(updatingModel.getId()).getValue());
+        assertThat(updatingResult.getValue())
+            .usingRecursiveComparison()
+            .isEqualTo(widgetRepository.v1GetByZIndex(updatingModel.getZ()).getValue());
+        assertThat(updatingResult.getValue())
+            .usingRecursiveComparison()
+            .isEqualTo(widgetRepository.v1GetRange(1, 10).getValue().getWidgets().get(0));
+    }
+
+    @Test
+    public void should_be_failed_when_failed_to_update() {
+        widgetRepository.v1Insert(generateV1InsertWidgetModel());
+
+        var updatingModel = generateV1UpdateWidgetModel(UUID.randomUUID());
+        var updatingResult = widgetRepository.v1Update(updatingModel);
+
+        assertTrue(updatingResult.isFailed());
+        assertTrue(updatingResult.hasError(NotFoundError.class));
+    }
+
+    @Test
+    public void should_successfully_delete_by_ID() {
+        var insertedWidget = widgetRepository.v1Insert(generateV1InsertWidgetModel()).getValue();
+
+        var deletingResult = widgetRepository.v1Delete(insertedWidget.getId());
+
+        var getAllResult = widgetRepository.v1GetRange(1, 10);
+
+        assertTrue(deletingResult.isSucceed());
+        assertTrue(getAllResult.isSucceed());
+        assertThat(getAllResult.getValue().getWidgets().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_be_failed_when_failed_to_delete_by_ID() {
+        widgetRepository.v1Insert(generateV1InsertWidgetModel());
+
+        var deletingResult = widgetRepository.v1Delete(UUID.randomUUID());
+
+        assertTrue(deletingResult.isFailed());
+        assertTrue(deletingResult.hasError(NotFoundError.class));
+    }
+
+    @Test
+    public void should_successfully_delete_all() {
+        widgetRepository.v1Insert(generateV1InsertWidgetModel());
+
+        var deletingResult = widgetRepository.v1DeleteAll();
+
+        var getAllResult = widgetRepository.v1GetRange(1, 10);
+
+        assertTrue(deletingResult.isSucceed());
+        assertTrue(getAllResult.isSucceed());
+        assertThat(getAllResult.getValue().getWidgets().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_apply_batch_in_order() {
+        var first = widgetRepository.v1Insert(new V1InsertWidgetModel(5, 0, 0, 1, 1)).getValue();
+        var second = widgetRepository.v1Insert(new V1InsertWidgetModel(6, 0, 0, 1, 1)).getValue();
+
+        var batchResult = widgetRepository.v1ApplyBatch(List.of(
+            new V1BatchOperationModel(V1BatchOperationType.CREATE, null, null, 1, 1, 2, 2),
+            new V1BatchOperationModel(V1BatchOperationType.CREATE, null, 5, 1, 1, 2, 2),
+            new V1BatchOperationModel(V1BatchOperationType.UPDATE, first.getId(), 100, null, null, null, null),
+            new V1BatchOperationModel(V1BatchOperationType.DELETE, UUID.randomUUID(), null, null, null, null, null),
+            new V1BatchOperationModel(V1BatchOperationType.DELETE, second.getId(), null, null, null, null, null),
+            new V1BatchOperationModel(V1BatchOperationType.CREATE, null, null, 1, 1, 2, 2)), 0);
+
+        assertTrue(batchResult.isSucceed());
+
+        var results = batchResult.getValue();
+
+        assertThat(results.get(0).getValue().getZ()).isEqualTo(7);
+        assertThat(results.get(1).getValue().getZ()).isEqualTo(5);
+        assertThat(results.get(2).getValue().getZ()).isEqualTo(100);
+        assertTrue(results.get(3).hasError(NotFoundError.class));
+        assertTrue(results.get(4).isSucceed());
+        assertNull(results.get(4).getValue());
+        assertThat(results.get(5).getValue().getZ()).isEqualTo(101);
+        assertThat(widgetRepository.v1GetRange(1, 10).getValue().getWidgets())
+            .extracting(V1WidgetDto::getZ)
+            .containsExactly(5, 8, 100, 101);
+    }
+
+    @Test
+    public void should_never_read_half_applied_batch() throws InterruptedException {
+        var isApplied = new AtomicBoolean();
+        var oddCount = new AtomicReference<Integer>();
+        var readers = new ArrayList<Thread>();
+
+        for (var i = 0; i < 2; i++) {
+            readers.add(new Thread(() -> {
+                while (!isApplied.get()) {
+                    var count = widgetRepository.v1GetRange(1, 1).getValue().getTotalWidgetsCount();
+
+                    if (count % 2 != 0)
+                        oddCount.set(count);
+                }
+            }));
+        }
+
+        readers.forEach(Thread::start);
+
+        for (var i = 0; i < 1_000; i++) {
+            var batchResult = widgetRepository.v1ApplyBatch(List.of(
+                new V1BatchOperationModel(V1BatchOperationType.CREATE, null, null, i, i, 1, 1),
+                new V1BatchOperationModel(V1BatchOperationType.CREATE, null, null, i, i, 1, 1)), 0);
+
+            assertTrue(batchResult.isSucceed());
+        }
+
+        isApplied.set(true);
+        for (var reader : readers)
+            reader.join();
+
+        assertNull(oddCount.get());
+        assertThat(widgetRepository.v1GetRange(1, 1).getValue().getTotalWidgetsCount()).isEqualTo(2_000);
+    }
+
+    @Test
+    public void should_replace_all_widgets_on_load() {
+        widgetRepository.v1Insert(new V1InsertWidgetModel(1, 0, 0, 1, 1));
+
+        var loadResult = widgetRepository.v1Load(new V1WidgetColumnsDto(3,
+            new int[]{-3, 1, 7}, new int[]{10, 20, 30}, new int[]{10, 20, 30}, new int[]{2, 2, 2}, new int[]{2, 2, 2}));
+
+        assertTrue(loadResult.isSucceed());
+        assertThat(widgetRepository.v1GetRange(1, 10).getValue().getWidgets())
+            .extracting(V1WidgetDto::getZ)
+            .containsExactly(-3, 1, 7);
+        assertThat(widgetRepository.v1GetAtPoint(20, 20, false).getValue())
+            .extracting(V1WidgetDto::getZ)
+            .containsExactly(1);
+    }
+}
@@ -2,7 +2,9 @@ package com.miro.widget;
 
 import com.miro.widget.service.WidgetServiceImpl;
 import com.miro.widget.service.repositories.WidgetRepository;
+import com.miro.widget.service.models.V1WidgetDto;
 import com.miro.widget.service.models.V1WidgetRangeDto;
+import com.miro.widget.service.models.V1WidgetSliceDto;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,6 +15,7 @@ import result.Result;
 import result.errors.Error;
 import result.errors.NotFoundError;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,7 +23,10 @@ import static com.miro.widget.helpers.Generator.*;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +37,10 @@ public class WidgetServiceTests {
 
     @BeforeEach
     public void setUp() {
+        lenient().when(widgetRepository.v1GetSlice(null, Integer.MAX_VALUE, 1))
+            .thenReturn(Result.Ok(new V1WidgetSliceDto(List.of(), true)));
+        lenient().when(widgetRepository.v1AwaitDurable()).thenReturn(PlainResult.Ok());
+
         widgetService = new WidgetServiceImpl(widgetRepository);
     }
 
@@ -148,7 +158,6 @@ public class WidgetServiceTests {
             .thenReturn(Result.Fail(new NotFoundError("")));
         when(widgetRepository.v1Insert(argThat(x -> x.getZ().equals(creationDto.getZ()))))
             .thenReturn(Result.Ok(createdWidget));
-        when(widgetRepository.v1GetById(createdWidget.getId())).thenReturn(Result.Ok(createdWidget));
         when(widgetRepository.v1Update(argThat(x -> x.getId().equals(createdWidget.getId()))))
             .thenReturn(Result.Ok(updatedWidget));
 
@@ -162,7 +171,6 @@ public class WidgetServiceTests {
         verify(widgetRepository, times(1)).v1GetByZIndex(creationDto.getZ());
         verify(widgetRepository, times(1)).v1GetByZIndex(updatingDto.getZ());
         verify(widgetRepository, times(1)).v1Insert(argThat(x -> x.getZ().equals(creationDto.getZ())));
-        verify(widgetRepository, times(1)).v1GetById(createdWidget.getId());
         verify(widgetRepository, times(1)).v1Update(argThat(x -> x.getId().equals(createdWidget.getId())));
     }
 
@@ -218,4 +226,21 @@ public class WidgetServiceTests {
 
         verify(widgetRepository, times(1)).v1Delete(widgetId);
     }
+
+    @Test
+    public void should_export_widgets_slice_by_slice() {
+        var first = generateV1WidgetDto();
+        var second = generateV1WidgetDto();
+
+        when(widgetRepository.v1GetSlice(isNull(), isNull(), anyInt()))
+            .thenReturn(Result.Ok(new V1WidgetSliceDto(List.of(first), false)));
+        when(widgetRepository.v1GetSlice(eq(first.getZ()), isNull(), anyInt()))
+            .thenReturn(Result.Ok(new V1WidgetSliceDto(List.of(second), true)));
+
+        var widgets = new ArrayList<V1WidgetDto>();
+        var exportResult = widgetService.v1Export(widgets::add);
+
+        assertTrue(exportResult.isSucceed());
+        assertThat(widgets).containsExactly(first, second);
+    }
 }
@@ -0,0 +1,213 @@
+package com.miro.widget;
+
+import com.miro.widget.mappers.BllAndDalMapperImpl;
+import com.miro.widget.service.models.V1WidgetDto;
+import com.miro.widget.service.repositories.InMemoryRepositoryImpl;
+import com.miro.widget.service.repositories.models.V1InsertWidgetModel;
+import com.miro.widget.service.repositories.models.V1UpdateWidgetModel;
+import com.miro.widget.service.repositories.wal.Checkpointer;
+import com.miro.widget.service.repositories.wal.V1WalRecord;
+import com.miro.widget.service.repositories.wal.WalDurability;
+import com.miro.widget.service.repositories.wal.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import static com.miro.widget.helpers.Generator.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WriteAheadLogTests {
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(WalDurability.class)
+    public void should_successfully_restore_widgets_after_restart(WalDurability durability) throws IOException {
+        var path = directory.resolve("wal");
+        var kept = new ArrayList<V1WidgetDto>();
+
+        try (var writeAheadLog = new WriteAheadLog(path, durability, 1)) {
+            var widgetRepository = new InMemoryRepositoryImpl(new BllAndDalMapperImpl(), writeAheadLog, null);
+
+            var first = widgetRepository.v1Insert(new V1InsertWidgetModel(1, 10, 10, 2, 2)).getValue();
+            var second = widgetRepository.v1Insert(new V1InsertWidgetModel(1, 20, 20, 4, 4)).getValue();
+            var third = widgetRepository.v1Insert(new V1InsertWidgetModel(5, 30, 30, 6, 6)).getValue();
+
+            widgetRepository.v1Update(new V1UpdateWidgetModel(third.getId(), 2, 35, null, null, 8));
+            widgetRepository.v1Delete(second.getId());
+
+            assertTrue(widgetRepository.v1AwaitDurable().isSucceed());
+
+            kept.add(widgetRepository.v1GetById(third.getId()).getValue());
+            kept.add(widgetRepository.v1GetById(first.getId()).getValue());
+        }
+
+        try (var writeAheadLog = new WriteAheadLog(path, durability, 1)) {
+            var widgetRepository = new InMemoryRepositoryImpl(new BllAndDalMapperImpl(), writeAheadLog, null);
+            var widgets = widgetRepository.v1GetRange(1, 10).getValue().getWidgets();
+
+            assertThat(widgets).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(kept);
+            assertThat(widgetRepository.v1GetAtPoint(35, 30, false).getValue())
+                .usingRecursiveFieldByFieldElementComparator().containsExactly(kept.get(0));
+        }
+    }
+
+    @Test
+    public void should_truncate_torn_record_at_the_end() throws IOException {
+        var path = directory.resolve("wal");
+        var widget = generateV1WidgetDto();
+
+        try (var writeAheadLog = new WriteAheadLog(path, WalDurability.SYNC, 1)) {
+            writeAheadLog.replay(0, record -> { });
+            writeAheadLog.append(V1WalRecord.put(widget));
+            writeAheadLog.awaitDurable();
+        }
+
+        // A crash in the middle of a write leaves a part of the record
+        try (var channel = FileChannel.open(path.resolve("00000000000000000001.wal"), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(12).putInt(0, 41));
+        }
+
+        var records = new ArrayList<V1WalRecord>();
+
+        try (var writeAheadLog = new WriteAheadLog(path, WalDurability.SYNC, 1)) {
+            writeAheadLog.replay(0, records::add);
+            writeAheadLog.append(V1WalRecord.delete(widget.getId()));
+            writeAheadLog.awaitDurable();
+        }
+
+        assertThat(records).usingRecursiveFieldByFieldElementComparator()
+            .containsExactly(V1WalRecord.put(widget));
+
+        records.clear();
+
+        try (var writeAheadLog = new WriteAheadLog(path, WalDurability.SYNC, 1)) {
+            writeAheadLog.replay(0, records::add);
+        }
+
+        assertThat(records).usingRecursiveFieldByFieldElementComparator()
+            .containsExactly(V1WalRecord.put(widget), V1WalRecord.delete(widget.getId()));
+    }
+
+    @Test
+    public void should_delete_segment_with_torn_header_at_the_end() throws IOException {
+        var path = directory.resolve("wal");
+        var widget = generateV1WidgetDto();
+
+        try (var writeAheadLog = new WriteAheadLog(path, WalDurability.SYNC, 1)) {
+            writeAheadLog.replay(0, record -> { });
+            writeAheadLog.append(V1WalRecord.put(widget));
+            writeAheadLog.awaitDurable();
+        }
+
+        // A crash right after a rotation creates the next segment leaves a part of its header
+        try (var channel = FileChannel.open(path.resolve("00000000000000000002.wal"),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(3));
+        }
+
+        var records = new ArrayList<V1WalRecord>();
+
+        try (var writeAheadLog = new WriteAheadLog(path, WalDurability.SYNC, 1)) {
+            writeAheadLog.replay(0, records::add);
+            writeAheadLog.append(V1WalRecord.delete(widget.getId()));
+            writeAheadLog.awaitDurable();
+        }
+
+        assertThat(records).usingRecursiveFieldByFieldElementComparator()
+            .containsExactly(V1WalRecord.put(widget));
+        assertThat(path.resolve("00000000000000000002.wal")).doesNotExist();
+
+        records.clear();
+
+        try (var writeAheadLog = new WriteAheadLog(path, WalDurability.SYNC, 1)) {
+            writeAheadLog.replay(0, records::add);
+        }
+
+        assertThat(records).usingRecursiveFieldByFieldElementComparator()
+            .containsExactly(V1WalRecord.put(widget), V1WalRecord.delete(widget.getId()));
+    }
+
+    @Test
+    public void should_keep_records_of_all_concurrent_writers() throws Exception {
+        var path = directory.resolve("wal");
+        var writers = new ArrayList<Thread>();
+        var recordsCount = new int[1];
+
+        try (var writeAheadLog = new WriteAheadLog(path, WalDurability.SYNC, 1)) {
+            writeAheadLog.replay(0, record -> { });
+
+            for (var i = 0; i < 8; i++) {
+                var writer = new Thread(() -> {
+                    for (var j = 0; j < 500; j++) {
+                        writeAheadLog.append(V1WalRecord.put(generateV1WidgetDto()));
+                        writeAheadLog.awaitDurable();
+                    }
+                });
+
+                writers.add(writer);
+                writer.start();
+            }
+
+            for (var writer : writers)
+                writer.join();
+        }
+
+        try (var writeAheadLog = new WriteAheadLog(path, WalDurability.SYNC, 1)) {
+            writeAheadLog.replay(0, record -> recordsCount[0]++);
+        }
+
+        assertThat(recordsCount[0]).isEqualTo(4_000);
+    }
+
+    @Test
+    public void should_successfully_restore_widgets_from_snapshot_and_log_tail() throws IOException {
+        var walPath = directory.resolve("wal");
+        var snapshotPath = directory.resolve("widgets.snapshot");
+        var kept = new ArrayList<V1WidgetDto>();
+
+        try (var writeAheadLog = new WriteAheadLog(walPath, WalDurability.SYNC, 1);
+             var checkpointer = new Checkpointer(snapshotPath, 0, writeAheadLog)) {
+            var widgetRepository = new InMemoryRepositoryImpl(new BllAndDalMapperImpl(), writeAheadLog, checkpointer);
+
+            for (var z = 0; z < 100; z++)
+                widgetRepository.v1Insert(new V1InsertWidgetModel(z, z, z, 1, 1));
+
+            var moved = widgetRepository.v1GetByZIndex(10).getValue();
+            widgetRepository.v1Update(new V1UpdateWidgetModel(moved.getId(), 50, null, null, null, null));
+            checkpointer.checkpoint();
+
+            widgetRepository.v1Delete(widgetRepository.v1GetByZIndex(0).getValue().getId());
+            widgetRepository.v1Insert(new V1InsertWidgetModel(20, 500, 500, 3, 3));
+            checkpointer.checkpoint();
+
+            widgetRepository.v1Insert(new V1InsertWidgetModel(30, 700, 700, 5, 5));
+            widgetRepository.v1AwaitDurable();
+
+            kept.addAll(widgetRepository.v1GetRange(1, 1_000).getValue().getWidgets());
+        }
+
+        assertThat(walPath.resolve("00000000000000000002.wal")).doesNotExist();
+        assertThat(walPath.resolve("00000000000000000003.wal")).exists();
+
+        try (var writeAheadLog = new WriteAheadLog(walPath, WalDurability.SYNC, 1);
+             var checkpointer = new Checkpointer(snapshotPath, 0, writeAheadLog)) {
+            var widgetRepository = new InMemoryRepositoryImpl(new BllAndDalMapperImpl(), writeAheadLog, checkpointer);
+
+            assertThat(checkpointer.latestSnapshot().size()).isEqualTo(100);
+            assertThat(widgetRepository.v1GetRange(1, 1_000).getValue().getWidgets())
+                .usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(kept);
+            assertThat(widgetRepository.v1GetAtPoint(500, 500, true).getValue())
+                .extracting(V1WidgetDto::getZ).containsExactly(20);
+        }
+    }
+}
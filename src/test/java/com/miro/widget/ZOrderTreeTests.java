@@ -0,0 +1,190 @@
+package com.miro.widget;
+
+import com.miro.widget.service.repositories.indexes.ZOrderTree;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZOrderTreeTests {
+    private ZOrderTree<String> zOrderTree;
+
+    @BeforeEach
+    public void setUp() {
+        zOrderTree = new ZOrderTree<>();
+    }
+
+    @Test
+    public void should_successfully_insert_into_free_Z_indexes() {
+        var second = zOrderTree.insert(5, "second");
+        var first = zOrderTree.insert(-3, "first");
+        var third = zOrderTree.insert(10, "third");
+
+        assertThat(zOrderTree.size()).isEqualTo(3);
+        assertThat(zOrderTree.zOf(first)).isEqualTo(-3);
+        assertThat(zOrderTree.zOf(second)).isEqualTo(5);
+        assertThat(zOrderTree.zOf(third)).isEqualTo(10);
+        assertThat(values()).isEqualTo(List.of("first", "second", "third"));
+    }
+
+    @Test
+    public void should_shift_only_the_consecutive_run_when_inserting_into_occupied_Z_index() {
+        var first = zOrderTree.insert(1, "first");
+        var second = zOrderTree.insert(2, "second");
+        var third = zOrderTree.insert(4, "third");
+
+        var inserted = zOrderTree.insert(1, "inserted");
+
+        assertThat(zOrderTree.zOf(inserted)).isEqualTo(1);
+        assertThat(zOrderTree.zOf(first)).isEqualTo(2);
+        assertThat(zOrderTree.zOf(second)).isEqualTo(3);
+        assertThat(zOrderTree.zOf(third)).isEqualTo(4);
+        assertThat(values()).isEqualTo(List.of("inserted", "first", "second", "third"));
+    }
+
+    @Test
+    public void should_successfully_move_into_occupied_Z_index() {
+        var first = zOrderTree.insert(1, "first");
+        var second = zOrderTree.insert(2, "second");
+        var third = zOrderTree.insert(3, "third");
+
+        zOrderTree.move(third, 1);
+
+        assertThat(zOrderTree.zOf(third)).isEqualTo(1);
+        assertThat(zOrderTree.zOf(first)).isEqualTo(2);
+        assertThat(zOrderTree.zOf(second)).isEqualTo(3);
+        assertNull(zOrderTree.get(4));
+    }
+
+    @Test
+    public void should_successfully_remove() {
+        var first = zOrderTree.insert(1, "first");
+        var second = zOrderTree.insert(2, "second");
+        var third = zOrderTree.insert(7, "third");
+
+        zOrderTree.remove(second);
+
+        assertThat(zOrderTree.size()).isEqualTo(2);
+        assertNull(zOrderTree.get(2));
+        assertThat(zOrderTree.zOf(first)).isEqualTo(1);
+        assertThat(zOrderTree.zOf(third)).isEqualTo(7);
+        assertThat(values()).isEqualTo(List.of("first", "third"));
+    }
+
+    @Test
+    public void should_successfully_get_node_by_rank() {
+        for (var i = 0; i < 100; i++)
+            zOrderTree.insert(i * 3, "widget-" + i);
+
+        assertThat(zOrderTree.nodeAt(0).getValue()).isEqualTo("widget-0");
+        assertThat(zOrderTree.nodeAt(57).getValue()).isEqualTo("widget-57");
+        assertThat(zOrderTree.zOf(zOrderTree.nodeAt(57))).isEqualTo(171);
+        assertThat(zOrderTree.nodeAt(99).getValue()).isEqualTo("widget-99");
+        assertNull(zOrderTree.nodeAt(100));
+        assertNull(zOrderTree.nodeAt(-1));
+    }
+
+    @Test
+    public void should_behave_as_cascading_shift_on_random_operations() {
+        var random = new Random(42);
+        var expected = new TreeMap<Integer, String>();
+        var nodes = new HashMap<String, ZOrderTree.Node<String>>();
+
+        for (var i = 0; i < 5_000; i++) {
+            var z = random.nextInt(200) - 100;
+            var operation = random.nextInt(3);
+
+            if (operation == 0 || nodes.isEmpty()) {
+                var value = "widget-" + i;
+                shift(expected, z);
+                expected.put(z, value);
+                nodes.put(value, zOrderTree.insert(z, value));
+            } else {
+                var values = new ArrayList<>(nodes.keySet());
+                var value = values.get(random.nextInt(values.size()));
+
+                expected.values().remove(value);
+
+                if (operation == 1) {
+                    zOrderTree.remove(nodes.remove(value));
+                } else {
+                    shift(expected, z);
+                    expected.put(z, value);
+                    zOrderTree.move(nodes.get(value), z);
+                }
+            }
+
+            assertThat(zOrderTree.size()).isEqualTo(expected.size());
+        }
+
+        var node = zOrderTree.first();
+        for (var entry : expected.entrySet()) {
+            assertNotNull(node);
+            assertThat(node.getValue()).isEqualTo(entry.getValue());
+            assertThat(zOrderTree.zOf(node)).isEqualTo(entry.getKey());
+            assertSame(node, zOrderTree.get(entry.getKey()));
+            node = zOrderTree.next(node);
+        }
+        assertNull(node);
+    }
+
+    @Test
+    public void should_behave_as_inserted_one_by_one_when_loaded_in_Z_order() {
+        zOrderTree.insert(7, "replaced");
+
+        var loader = zOrderTree.loader();
+        var nodes = new ArrayList<ZOrderTree.Node<String>>();
+
+        for (var i = 0; i < 1_000; i++)
+            nodes.add(loader.add(i * 2 - (i % 3 == 0 ? 1 : 0) - 500, "widget-" + i));
+
+        loader.finish();
+
+        assertThat(zOrderTree.size()).isEqualTo(1_000);
+        assertThat(zOrderTree.zOf(nodes.get(301))).isEqualTo(102);
+        assertSame(nodes.get(301), zOrderTree.get(102));
+        assertSame(nodes.get(999), zOrderTree.last());
+
+        var inserted = zOrderTree.insert(-501, "inserted");
+        zOrderTree.remove(nodes.get(500));
+
+        assertThat(zOrderTree.zOf(inserted)).isEqualTo(-501);
+        assertThat(zOrderTree.zOf(nodes.get(0))).isEqualTo(-500);
+        assertThat(zOrderTree.zOf(nodes.get(1))).isEqualTo(-498);
+        assertThat(values().subList(0, 3)).isEqualTo(List.of("inserted", "widget-0", "widget-1"));
+        assertThat(values()).hasSize(1_000).doesNotContain("replaced", "widget-500");
+    }
+
+    @Test
+    public void should_fail_to_load_Z_indexes_out_of_order() {
+        var loader = zOrderTree.loader();
+        loader.add(1, "first");
+
+        assertThrows(IllegalArgumentException.class, () -> loader.add(1, "second"));
+    }
+
+    private static void shift(TreeMap<Integer, String> widgets, int z) {
+        var end = z;
+        while (widgets.containsKey(end))
+            end++;
+
+        for (var i = end - 1; i >= z; i--)
+            widgets.put(i + 1, widgets.remove(i));
+    }
+
+    private List<String> values() {
+        var values = new ArrayList<String>();
+
+        for (var node = zOrderTree.first(); node != null; node = zOrderTree.next(node))
+            values.add(node.getValue());
+
+        return values;
+    }
+}
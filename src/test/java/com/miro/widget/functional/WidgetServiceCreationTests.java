@@ -142,4 +142,24 @@ public class WidgetServiceCreationTests {
             .usingRecursiveComparison(RecursiveComparisonConfiguration.builder().withIgnoredFields("updatedAt").build())
             .isEqualTo(List.of(firstWidget, insertedWidget, secondWidget, thirdWidget, fourthWidget));
     }
+
+    @Test
+    public void should_give_all_widgets_at_their_version_while_widgets_are_created() throws InterruptedException {
+        var initialVersion = widgetService.v1GetChanges(null).getValue().getVersion();
+        var writer = new Thread(() -> {
+            for (var i = 0; i < 2_000; i++)
+                widgetService.v1Create(generateV1CreateWidgetDto(null));
+        });
+
+        writer.start();
+
+        // Widgets without Z-index go on top without a shift, so every event is one more widget
+        while (writer.isAlive()) {
+            var changes = widgetService.v1GetChanges(null).getValue();
+
+            assertThat(changes.getWidgets()).hasSize((int) (changes.getVersion() - initialVersion));
+        }
+
+        writer.join();
+    }
 }
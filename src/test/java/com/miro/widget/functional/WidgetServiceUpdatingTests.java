@@ -12,6 +12,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
+import result.errors.PreconditionFailedError;
 
 import java.util.List;
 
@@ -284,4 +285,17 @@ public class WidgetServiceUpdatingTests {
             .usingRecursiveComparison(RecursiveComparisonConfiguration.builder().withIgnoredFields("updatedAt").build())
             .isEqualTo(List.of(firstWidget, thirdWidget, secondWidget, fourthWidget));
     }
+
+    @Test
+    public void should_not_update_widget_which_fails_precondition() {
+        var widget = widgetService.v1Create(generateV1CreateWidgetDto(1)).getValue();
+
+        var updateWidgetResult = widgetService.v1Update(
+            widget.getId(), new V1UpdateWidgetDto(2), current -> current.getZ() == 0);
+
+        assertTrue(updateWidgetResult.hasError(PreconditionFailedError.class));
+        assertThat(widgetService.v1GetById(widget.getId()).getValue().getZ()).isEqualTo(1);
+        assertTrue(widgetService.v1Update(widget.getId(), new V1UpdateWidgetDto(2), current -> current.getZ() == 1)
+            .isSucceed());
+    }
 }